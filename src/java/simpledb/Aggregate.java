@@ -7,7 +7,7 @@ import java.util.*;
  * min). Note that we only support aggregates over a single column, grouped by a
  * single column.
  */
-public class Aggregate extends Operator {
+public class Aggregate extends Operator implements BatchOpIterator {
 
     private static final long serialVersionUID = 1L;
     private Aggregator aggregator;
@@ -16,6 +16,7 @@ public class Aggregate extends Operator {
     private final int gField;
     private final Aggregator.Op operation;
     private OpIterator iterator;
+    private transient TupleBatch buffer;
 
     /**
      * Constructor.
@@ -50,7 +51,8 @@ public class Aggregate extends Operator {
                     afield,
                     aop);
         }
-        else if(aType == Type.STRING_TYPE){
+        else if(aType == Type.STRING_TYPE || aType == Type.VARCHAR_TYPE
+                || aType == Type.DICT_TYPE){
             aggregator = new StringAggregator(
                     gfield,
                     gfield == -1 ? null : desc.getFieldType(gField),
@@ -58,6 +60,14 @@ public class Aggregate extends Operator {
                     aop);
 
         }
+        else {
+            aggregator = new NumericAggregator(
+                    gfield,
+                    gfield == -1 ? null : desc.getFieldType(gField),
+                    afield,
+                    aType,
+                    aop);
+        }
         iterator = aggregator.iterator();
 
     }
@@ -119,8 +129,11 @@ public class Aggregate extends Operator {
 	// some code goes here
         child.open();
         super.open();
-        while (child.hasNext()){
-            aggregator.mergeTupleIntoGroup(child.next());
+        // the child is consumed a batch at a time
+        TupleBatch in = new TupleBatch(child.getTupleDesc());
+        TupleBatch b;
+        while ((b = TupleBatch.next(child, in)) != null){
+            aggregator.mergeBatch(b);
         }
         iterator = aggregator.iterator();
         iterator.open();
@@ -142,6 +155,15 @@ public class Aggregate extends Operator {
         return null;
     }
 
+    /**
+     * Returns the next group aggregate results as a batch.
+     */
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (buffer == null)
+            buffer = new TupleBatch(iterator.getTupleDesc());
+        return TupleBatch.next(iterator, buffer);
+    }
+
     public void rewind() throws DbException, TransactionAbortedException {
 	// some code goes here
         iterator.rewind();
@@ -76,6 +76,17 @@ public interface Aggregator extends Serializable {
      */
     public void mergeTupleIntoGroup(Tuple tup);
 
+    /**
+     * Merge the selected rows of a batch into the aggregates, as
+     * mergeTupleIntoGroup does for each of them.
+     *
+     * @param b the batch containing aggregate fields and group-by fields
+     */
+    default void mergeBatch(TupleBatch b) {
+        for (int i = 0; i < b.size(); i++)
+            mergeTupleIntoGroup(b.getTuple(b.row(i)));
+    }
+
     /**
      * Create a OpIterator over group aggregate results.
      * @see simpledb.TupleIterator for a possible helper
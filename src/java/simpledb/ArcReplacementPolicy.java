@@ -0,0 +1,85 @@
+package simpledb;
+
+/**
+ * Adaptive Replacement Cache (Megiddo and Modha, FAST '03). Resident pages
+ * are split between T1 (seen once recently) and T2 (seen at least twice),
+ * both LRU ordered, and the ids of pages recently evicted from them are
+ * remembered in the ghost lists B1 and B2. A hit in a ghost list moves the
+ * target size p of T1 towards the list that would have kept the page, so
+ * the policy adapts between recency and frequency. Pages read only once,
+ * such as those of a large scan, never leave T1.
+ */
+public class ArcReplacementPolicy implements ReplacementPolicy {
+
+    private final int capacity;
+    // target size of T1
+    private int p = 0;
+
+    private final LruReplacementPolicy.PageList t1 = new LruReplacementPolicy.PageList();
+    private final LruReplacementPolicy.PageList t2 = new LruReplacementPolicy.PageList();
+    private final LruReplacementPolicy.PageList b1 = new LruReplacementPolicy.PageList();
+    private final LruReplacementPolicy.PageList b2 = new LruReplacementPolicy.PageList();
+
+    /**
+     * @param capacity number of frames of the buffer pool
+     */
+    public ArcReplacementPolicy(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    public void pageHit(PageId pid) {
+        if (t1.remove(pid) || t2.contains(pid))
+            t2.addMostRecent(pid);
+    }
+
+    public void pageAdded(PageId pid) {
+        if (t1.contains(pid) || t2.contains(pid)) {
+            pageHit(pid);
+            return;
+        }
+        if (b1.remove(pid)) {
+            // T1 was too small to keep this page
+            p = Math.min(capacity, p + Math.max(b2.size() / Math.max(1, b1.size()), 1));
+            t2.addMostRecent(pid);
+            return;
+        }
+        if (b2.remove(pid)) {
+            // T2 was too small to keep this page
+            p = Math.max(0, p - Math.max(b1.size() / Math.max(1, b2.size()), 1));
+            t2.addMostRecent(pid);
+            return;
+        }
+        t1.addMostRecent(pid);
+        // bound the directory to 2 * capacity entries, with at most
+        // capacity of them in T1 + B1
+        if (t1.size() + b1.size() > capacity)
+            b1.removeLeastRecent();
+        if (t1.size() + t2.size() + b1.size() + b2.size() > 2 * capacity)
+            b2.removeLeastRecent();
+    }
+
+    public void pageRemoved(PageId pid) {
+        if (!t1.remove(pid))
+            t2.remove(pid);
+    }
+
+    public PageId evict(PageId incoming, Evictable evictable) {
+        boolean fromT1 = t1.size() > 0
+                && (t1.size() > p || (incoming != null && b2.contains(incoming) && t1.size() == p));
+        PageId victim = fromT1 ? evictFrom(t1, b1, evictable) : evictFrom(t2, b2, evictable);
+        if (victim == null)
+            victim = fromT1 ? evictFrom(t2, b2, evictable) : evictFrom(t1, b1, evictable);
+        return victim;
+    }
+
+    private PageId evictFrom(LruReplacementPolicy.PageList list, LruReplacementPolicy.PageList ghosts,
+                             Evictable evictable) {
+        PageId victim = list.removeLeastRecent(evictable);
+        if (victim != null) {
+            ghosts.addMostRecent(victim);
+            if (ghosts.size() > capacity)
+                ghosts.removeLeastRecent();
+        }
+        return victim;
+    }
+}
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import simpledb.Predicate.Op;
@@ -24,6 +25,7 @@ public class BTreeFile implements DbFile {
 	private final TupleDesc td;
 	private final int tableid ;
 	private int keyField;
+	private final PageChannel channel;
 
 	/**
 	 * Constructs a B+ tree file backed by the specified file.
@@ -38,6 +40,7 @@ public class BTreeFile implements DbFile {
 		this.tableid = f.getAbsoluteFile().hashCode();
 		this.keyField = key;
 		this.td = td;
+		this.channel = new PageChannel(f);
 	}
 
 	/**
@@ -78,40 +81,19 @@ public class BTreeFile implements DbFile {
 	 */
 	public Page readPage(PageId pid) {
 		BTreePageId id = (BTreePageId) pid;
-		BufferedInputStream bis = null;
 
 		try {
-			bis = new BufferedInputStream(new FileInputStream(f));
 			if(id.pgcateg() == BTreePageId.ROOT_PTR) {
-				byte pageBuf[] = new byte[BTreeRootPtrPage.getPageSize()];
-				int retval = bis.read(pageBuf, 0, BTreeRootPtrPage.getPageSize());
-				if (retval == -1) {
-					throw new IllegalArgumentException("Read past end of table");
-				}
-				if (retval < BTreeRootPtrPage.getPageSize()) {
-					throw new IllegalArgumentException("Unable to read "
-							+ BTreeRootPtrPage.getPageSize() + " bytes from BTreeFile");
-				}
+				ByteBuffer pageBuf = readFully(0, BTreeRootPtrPage.getPageSize());
 				Debug.log(1, "BTreeFile.readPage: read page %d", id.getPageNumber());
+				channel.verify(id, pageBuf);
 				BTreeRootPtrPage p = new BTreeRootPtrPage(id, pageBuf);
 				return p;
 			}
 			else {
-				byte pageBuf[] = new byte[BufferPool.getPageSize()];
-				if (bis.skip(BTreeRootPtrPage.getPageSize() + (id.getPageNumber()-1) * BufferPool.getPageSize()) !=
-						BTreeRootPtrPage.getPageSize() + (id.getPageNumber()-1) * BufferPool.getPageSize()) {
-					throw new IllegalArgumentException(
-							"Unable to seek to correct place in BTreeFile");
-				}
-				int retval = bis.read(pageBuf, 0, BufferPool.getPageSize());
-				if (retval == -1) {
-					throw new IllegalArgumentException("Read past end of table");
-				}
-				if (retval < BufferPool.getPageSize()) {
-					throw new IllegalArgumentException("Unable to read "
-							+ BufferPool.getPageSize() + " bytes from BTreeFile");
-				}
+				ByteBuffer pageBuf = readFully(pageOffset(id), BufferPool.getPageSize());
 				Debug.log(1, "BTreeFile.readPage: read page %d", id.getPageNumber());
+				channel.verify(id, pageBuf);
 				if(id.pgcateg() == BTreePageId.INTERNAL) {
 					BTreeInternalPage p = new BTreeInternalPage(id, pageBuf, keyField);
 					return p;
@@ -127,17 +109,38 @@ public class BTreeFile implements DbFile {
 			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
-		} finally {
-			// Close the file on success or error
-			try {
-				if (bis != null)
-					bis.close();
-			} catch (IOException ioe) {
-				// Ignore failures closing the file
-			}
 		}
 	}
 
+	/**
+	 * Read len bytes at the specified offset of the file, as a view of the
+	 * mapping of the file in memory-mapped mode
+	 * @throws IllegalArgumentException if the file ends before len bytes could be read
+	 */
+	private ByteBuffer readFully(long offset, int len) throws IOException {
+		ByteBuffer mapped = channel.slice(offset, len);
+		if (mapped != null)
+			return mapped;
+		ByteBuffer buf = ByteBuffer.allocate(len);
+		int retval = channel.read(buf, offset);
+		if (retval == 0) {
+			throw new IllegalArgumentException("Read past end of table");
+		}
+		if (retval < len) {
+			throw new IllegalArgumentException("Unable to read "
+					+ len + " bytes from BTreeFile");
+		}
+		buf.flip();
+		return buf;
+	}
+
+	/**
+	 * Returns the offset in the file of a page other than the root pointer page
+	 */
+	private long pageOffset(BTreePageId id) {
+		return BTreeRootPtrPage.getPageSize() + (long) (id.getPageNumber()-1) * BufferPool.getPageSize();
+	}
+
 	/**
 	 * Write a page to disk.  This should not be called directly but should 
 	 * be called from the BufferPool when pages are flushed to disk
@@ -147,18 +150,90 @@ public class BTreeFile implements DbFile {
 	public void writePage(Page page) throws IOException {
 		BTreePageId id = (BTreePageId) page.getId();
 		
-		byte[] data = page.getPageData();
-		RandomAccessFile rf = new RandomAccessFile(f, "rw");
 		if(id.pgcateg() == BTreePageId.ROOT_PTR) {
-			rf.write(data);
-			rf.close();
+			channel.writePage(page, 0);
 		}
 		else {
-			rf.seek(BTreeRootPtrPage.getPageSize() + (page.getId().getPageNumber()-1) * BufferPool.getPageSize());
-			rf.write(data);
-			rf.close();
+			channel.writePage(page, pageOffset(id));
 		}
 	}
+
+	/**
+	 * Write pages to disk, coalescing the ones that are adjacent in the file.
+	 * The root pointer page sits right before page 1.
+	 * 
+	 * @param pages - the pages to write to disk
+	 */
+	public void writePages(List<Page> pages) throws IOException {
+		pages.sort(Comparator.comparingInt(p -> p.getId().getPageNumber()));
+		channel.writePages(pages, p -> {
+			BTreePageId id = (BTreePageId) p.getId();
+			return id.pgcateg() == BTreePageId.ROOT_PTR ? 0 : pageOffset(id);
+		});
+	}
+
+	// see DbFile.java for javadocs
+	public void setMemoryMapped(boolean memoryMapped) {
+		channel.setMemoryMapped(memoryMapped);
+	}
+
+	// see DbFile.java for javadocs
+	public boolean isMemoryMapped() {
+		return channel.isMemoryMapped();
+	}
+
+	// see DbFile.java for javadocs
+	public synchronized void setChecksummed(boolean checksummed) throws IOException {
+		PageChecksums old = channel.getChecksums();
+		if(checksummed == (old != null))
+			return;
+		// the root pointer page is page 0, the others are numbered from 1
+		channel.setChecksums(checksummed
+				? new PageChecksums(PageChecksums.of(f), numPages() + 1) : null);
+		if(old != null)
+			old.close();
+	}
+
+	// see DbFile.java for javadocs
+	public boolean isChecksummed() {
+		return channel.getChecksums() != null;
+	}
+
+	// see DbFile.java for javadocs
+	public List<Integer> scrub(java.util.function.Predicate<PageId> skip) throws IOException {
+		List<Integer> corrupt = new ArrayList<Integer>();
+		PageChecksums sums = channel.getChecksums();
+		if(sums == null || f.length() == 0)
+			return corrupt;
+		if(!skip.test(BTreeRootPtrPage.getId(tableid))) {
+			ByteBuffer buf = ByteBuffer.allocate(BTreeRootPtrPage.getPageSize());
+			channel.read(buf, 0);
+			buf.flip();
+			if(!sums.matches(0, buf))
+				corrupt.add(0);
+		}
+		// the category of a page is only known from its parent, so a page
+		// is skipped if it is cached as any of them
+		ByteBuffer buf = ByteBuffer.allocate(BufferPool.getPageSize());
+		int numPages = numPages();
+		for(int i = 1; i <= numPages; i++) {
+			if(skip.test(new BTreePageId(tableid, i, BTreePageId.INTERNAL))
+					|| skip.test(new BTreePageId(tableid, i, BTreePageId.LEAF))
+					|| skip.test(new BTreePageId(tableid, i, BTreePageId.HEADER)))
+				continue;
+			buf.clear();
+			channel.read(buf, BTreeRootPtrPage.getPageSize() + (long) (i-1) * BufferPool.getPageSize());
+			buf.flip();
+			if(!sums.matches(i, buf))
+				corrupt.add(i);
+		}
+		return corrupt;
+	}
+
+	// see DbFile.java for javadocs
+	public void close() throws IOException {
+		channel.close();
+	}
 	
 	/**
 	 * Returns the number of pages in this BTreeFile.
@@ -848,13 +923,11 @@ public class BTreeFile implements DbFile {
 		synchronized(this) {
 			if(f.length() == 0) {
 				// create the root pointer page and the root page
-				BufferedOutputStream bw = new BufferedOutputStream(
-						new FileOutputStream(f, true));
+				// through the channel, so that the pages are checksummed
 				byte[] emptyRootPtrData = BTreeRootPtrPage.createEmptyPageData();
 				byte[] emptyLeafData = BTreeLeafPage.createEmptyPageData();
-				bw.write(emptyRootPtrData);
-				bw.write(emptyLeafData);
-				bw.close();
+				channel.writePage(0, ByteBuffer.wrap(emptyRootPtrData), 0);
+				channel.writePage(1, ByteBuffer.wrap(emptyLeafData), emptyRootPtrData.length);
 			}
 		}
 
@@ -945,10 +1018,8 @@ public class BTreeFile implements DbFile {
 		BTreePageId newPageId = new BTreePageId(tableid, emptyPageNo, pgcateg);
 		
 		// write empty page to disk
-		RandomAccessFile rf = new RandomAccessFile(f, "rw");
-		rf.seek(BTreeRootPtrPage.getPageSize() + (emptyPageNo-1) * BufferPool.getPageSize());
-		rf.write(BTreePage.createEmptyPageData());
-		rf.close();
+		channel.writePage(emptyPageNo, ByteBuffer.wrap(BTreePage.createEmptyPageData()),
+				pageOffset(newPageId));
 		
 		// make sure the page is not in the buffer pool	or in the local cache		
 		Database.getBufferPool().discardPage(newPageId);
@@ -1078,6 +1149,10 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 
 	Iterator<Tuple> it = null;
 	BTreeLeafPage curp = null;
+	// private frames for scans larger than a fraction of the pool
+	BufferRing ring = null;
+	// reads the next leaves into the pool in the background
+	ReadAhead readAhead = null;
 
 	TransactionId tid;
 	BTreeFile f;
@@ -1101,6 +1176,11 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 		BTreePageId root = rootPtr.getRootId();
 		curp = f.findLeafPage(tid, root, Permissions.READ_ONLY, null);
 		it = curp.iterator();
+		ring = Database.getBufferPool().newScanRing(f.numPages());
+		readAhead = Database.getBufferPool().newReadAhead(ring,
+				page -> ((BTreeLeafPage) page).getRightSiblingId());
+		if (readAhead != null)
+			readAhead.access(curp.getId());
 	}
 
 	/**
@@ -1120,8 +1200,10 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 				curp = null;
 			}
 			else {
+				if (readAhead != null)
+					readAhead.access(nextp);
 				curp = (BTreeLeafPage) Database.getBufferPool().getPage(tid,
-						nextp, Permissions.READ_ONLY);
+						nextp, Permissions.READ_ONLY, ring);
 				it = curp.iterator();
 				if (!it.hasNext())
 					it = null;
@@ -1148,6 +1230,10 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 		super.close();
 		it = null;
 		curp = null;
+		ring = null;
+		if (readAhead != null)
+			readAhead.close();
+		readAhead = null;
 	}
 }
 
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of BTreeHeaderPage stores data for one page of a BTreeFile and 
@@ -23,9 +24,19 @@ public class BTreeHeaderPage implements Page {
 	private int nextPage; // next header page or 0
 	private int prevPage; // previous header page or 0
 
+	// contents of the page before it was first modified since it was read
+	// or last committed, or null if it was not modified
 	byte[] oldData;
 	private final Byte oldDataLock=new Byte((byte)0);
 
+	/**
+	 * Create a BTreeHeaderPage from a set of bytes of data read from disk.
+	 * @see #BTreeHeaderPage(BTreePageId, ByteBuffer)
+	 */
+	public BTreeHeaderPage(BTreePageId id, byte[] data) throws IOException {
+		this(id, ByteBuffer.wrap(data));
+	}
+
 	/**
 	 * Create a BTreeHeaderPage from a set of bytes of data read from disk.
 	 * The format of a BTreeHeaderPage is two pointers to the next and previous
@@ -34,10 +45,10 @@ public class BTreeHeaderPage implements Page {
 	 * @see BufferPool#getPageSize()
 	 * 
 	 */
-	public BTreeHeaderPage(BTreePageId id, byte[] data) throws IOException {
+	public BTreeHeaderPage(BTreePageId id, ByteBuffer data) throws IOException {
 		this.pid = id;
 		this.numSlots = getNumSlots();
-		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+		DataInputStream dis = new DataInputStream(new ByteBufferInputStream(data));
 
 		// Read the next and prev pointers
 		try {
@@ -60,14 +71,13 @@ public class BTreeHeaderPage implements Page {
 			header[i] = dis.readByte();
 
 		dis.close();
-
-		setBeforeImage();
 	}
 
 	/**
 	 * Initially mark all slots in the header used.
 	 */
 	public void init() {
+		saveBeforeImage();
 		for (int i=0; i<header.length; i++)
 			header[i] = (byte) 0xFF;
 	}
@@ -95,7 +105,7 @@ public class BTreeHeaderPage implements Page {
 			byte[] oldDataRef = null;
 			synchronized(oldDataLock)
 			{
-				oldDataRef = oldData;
+				oldDataRef = oldData != null ? oldData : getPageData();
 			}
 			return new BTreeHeaderPage(pid,oldDataRef);
 		} catch (IOException e) {
@@ -109,7 +119,19 @@ public class BTreeHeaderPage implements Page {
 	public void setBeforeImage() {
 		synchronized(oldDataLock)
 		{
-			oldData = getPageData().clone();
+			oldData = null;
+		}
+	}
+
+	/**
+	 * Keep the current contents of the page as its before image, if it was
+	 * not modified since it was read or last committed.
+	 */
+	private void saveBeforeImage() {
+		synchronized(oldDataLock)
+		{
+			if (oldData == null)
+				oldData = getPageData();
 		}
 	}
 
@@ -132,41 +154,20 @@ public class BTreeHeaderPage implements Page {
 	 * @return A byte array correspond to the bytes of this page.
 	 */
 	public byte[] getPageData() {
-		int len = BufferPool.getPageSize();
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-		DataOutputStream dos = new DataOutputStream(baos);
+		byte[] data = new byte[BufferPool.getPageSize()];
+		writePageData(ByteBuffer.wrap(data));
+		return data;
+	}
 
+	public void writePageData(ByteBuffer dst) {
+		int end = dst.position() + BufferPool.getPageSize();
 		// write out the next and prev pointers
-		try {
-			dos.writeInt(nextPage);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		try {
-			dos.writeInt(prevPage);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		// create the header of the page
-		for (int i=0; i<header.length; i++) {
-			try {
-				dos.writeByte(header[i]);
-			} catch (IOException e) {
-				// this really shouldn't happen
-				e.printStackTrace();
-			}
-		}
-
-		try {
-			dos.flush();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		return baos.toByteArray();
+		dst.putInt(nextPage);
+		dst.putInt(prevPage);
+		// and the header of the page
+		dst.put(header);
+		while (dst.position() < end)
+			dst.put((byte) 0);
 	}
 
 	/**
@@ -211,6 +212,7 @@ public class BTreeHeaderPage implements Page {
 	 * @throws DbException
 	 */
 	public void setPrevPageId(BTreePageId id) throws DbException {
+		saveBeforeImage();
 		if(id == null) {
 			prevPage = 0;
 		}
@@ -231,6 +233,7 @@ public class BTreeHeaderPage implements Page {
 	 * @throws DbException
 	 */
 	public void setNextPageId(BTreePageId id) throws DbException {
+		saveBeforeImage();
 		if(id == null) {
 			nextPage = 0;
 		}
@@ -281,6 +284,7 @@ public class BTreeHeaderPage implements Page {
 		int headerbyte = (i - headerbit) / 8;
 
 		Debug.log(1, "BTreeHeaderPage.setSlot: setting slot %d to %b", i, value);
+		saveBeforeImage();
 		if(value)
 			header[headerbyte] |= 1 << headerbit;
 		else
@@ -2,6 +2,7 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 import simpledb.Predicate.Op;
 
@@ -41,6 +42,14 @@ public class BTreeInternalPage extends BTreePage {
 		}
 	}
 	
+	/**
+	 * Create a BTreeInternalPage from a set of bytes of data read from disk.
+	 * @see #BTreeInternalPage(BTreePageId, ByteBuffer, int)
+	 */
+	public BTreeInternalPage(BTreePageId id, byte[] data, int key) throws IOException {
+		this(id, ByteBuffer.wrap(data), key);
+	}
+
 	/**
 	 * Create a BTreeInternalPage from a set of bytes of data read from disk.
 	 * The format of a BTreeInternalPage is a set of header bytes indicating
@@ -65,10 +74,10 @@ public class BTreeInternalPage extends BTreePage {
 	 * @param data - the raw data of this page
 	 * @param key - the field which the index is keyed on
 	 */
-	public BTreeInternalPage(BTreePageId id, byte[] data, int key) throws IOException {
+	public BTreeInternalPage(BTreePageId id, ByteBuffer data, int key) throws IOException {
 		super(id, key);
 		this.numSlots = getMaxEntries() + 1;
-		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+		DataInputStream dis = new DataInputStream(new ByteBufferInputStream(data));
 
 		// Read the parent pointer
 		try {
@@ -108,7 +117,7 @@ public class BTreeInternalPage extends BTreePage {
 		}
 		dis.close();
 
-		setBeforeImage();
+		setImage(data);
 	}
 
 	/** 
@@ -140,12 +149,7 @@ public class BTreeInternalPage extends BTreePage {
         -- used by recovery */
 	public BTreeInternalPage getBeforeImage(){
 		try {
-			byte[] oldDataRef = null;
-			synchronized(oldDataLock)
-			{
-				oldDataRef = oldData;
-			}
-			return new BTreeInternalPage(pid,oldDataRef,keyField);
+			return new BTreeInternalPage(pid,getBeforeImageData(),keyField);
 		} catch (IOException e) {
 			e.printStackTrace();
 			//should never happen -- we parsed it OK before!
@@ -154,13 +158,6 @@ public class BTreeInternalPage extends BTreePage {
 		return null;
 	}
 
-	public void setBeforeImage() {
-		synchronized(oldDataLock)
-		{
-			oldData = getPageData().clone();
-		}
-	}
-
 	/**
 	 * Read keys from the source file.
 	 */
@@ -220,117 +217,29 @@ public class BTreeInternalPage extends BTreePage {
 		return child;
 	}
 
-	/**
-	 * Generates a byte array representing the contents of this page.
-	 * Used to serialize this page to disk.
-	 * <p>
-	 * The invariant here is that it should be possible to pass the byte
-	 * array generated by getPageData to the BTreeInternalPage constructor and
-	 * have it produce an identical BTreeInternalPage object.
-	 *
-	 * @see #BTreeInternalPage
-	 * @return A byte array correspond to the bytes of this page.
-	 */
-	public byte[] getPageData() {
-		int len = BufferPool.getPageSize();
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-		DataOutputStream dos = new DataOutputStream(baos);
-
-		// write out the parent pointer
-		try {
-			dos.writeInt(parent);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		// write out the child page category
-		try {
-			dos.writeByte((byte) childCategory);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		// create the header of the page
-		for (int i=0; i<header.length; i++) {
-			try {
-				dos.writeByte(header[i]);
-			} catch (IOException e) {
-				// this really shouldn't happen
-				e.printStackTrace();
-			}
-		}
-
-		// create the keys
-		// start from 1 because the first key slot is not used
-		// since a node with m keys has m+1 pointers
-		for (int i=1; i<keys.length; i++) {
-
-			// empty slot
-			if (!isSlotUsed(i)) {
-				for (int j=0; j<td.getFieldType(keyField).getLen(); j++) {
-					try {
-						dos.writeByte(0);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-
-				}
-				continue;
-			}
-
-			// non-empty slot
-			try {
-				keys[i].serialize(dos);
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-
-		}
-
-		// create the child pointers
-		for (int i=0; i<children.length; i++) {
-
-			// empty slot
-			if (!isSlotUsed(i)) {
-				for (int j=0; j<INDEX_SIZE; j++) {
-					try {
-						dos.writeByte(0);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-
-				}
-				continue;
-			}
-
-			// non-empty slot
-			try {
-				dos.writeInt(children[i]);
-
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
+	protected void writeHeader(ByteBuffer dst) {
+		dst.putInt(parent);
+		dst.put((byte) childCategory);
+		dst.put(header);
+	}
 
-		// padding
-		int zerolen = BufferPool.getPageSize() - (INDEX_SIZE + 1 + header.length + 
-				td.getFieldType(keyField).getLen() * (keys.length - 1) + INDEX_SIZE * children.length); 
-		byte[] zeroes = new byte[zerolen];
-		try {
-			dos.write(zeroes, 0, zerolen);
-		} catch (IOException e) {
-			e.printStackTrace();
+	protected void writeSlot(ByteBuffer image, int i) {
+		int keySize = td.getFieldType(keyField).getLen();
+		int keysOffset = INDEX_SIZE + 1 + header.length;
+		int childOffset = keysOffset + keySize * (numSlots - 1) + i * INDEX_SIZE;
+		// the first key slot is not stored
+		if (!isSlotUsed(i)) {
+			if (i > 0)
+				zero(image, keysOffset + (i - 1) * keySize, keySize);
+			zero(image, childOffset, INDEX_SIZE);
+			return;
 		}
-
-		try {
-			dos.flush();
-		} catch (IOException e) {
-			e.printStackTrace();
+		if (i > 0) {
+			ByteBuffer buf = image.duplicate();
+			buf.position(keysOffset + (i - 1) * keySize);
+			td.getFieldType(keyField).write(keys[i], buf);
 		}
-
-		return baos.toByteArray();
+		image.putInt(childOffset, children[i]);
 	}
 
 	/**
@@ -359,6 +268,7 @@ public class BTreeInternalPage extends BTreePage {
 			for(int i = rid.getTupleNumber() - 1; i >= 0; i--) {
 				if(isSlotUsed(i)) {
 					children[i] = children[rid.getTupleNumber()];
+					markSlotDirty(i);
 					markSlotUsed(rid.getTupleNumber(), false);
 					break;
 				}	
@@ -426,11 +336,13 @@ public class BTreeInternalPage extends BTreePage {
 							" HINT: updated key must be greater than or equal to keys on the left");
 				}
 				children[i] = e.getLeftChild().getPageNumber();
+				markSlotDirty(i);
 				break;
 			}	
 		}
 		children[rid.getTupleNumber()] = e.getRightChild().getPageNumber();
 		keys[rid.getTupleNumber()] = e.getKey();
+		markSlotDirty(rid.getTupleNumber());
 	}
 
 	/**
@@ -452,6 +364,7 @@ public class BTreeInternalPage extends BTreePage {
 				throw new DbException("child page category mismatch in insertEntry");
 
 			childCategory = e.getLeftChild().pgcateg();
+			markHeaderDirty();
 		}
 		else if(e.getLeftChild().pgcateg() != childCategory || e.getRightChild().pgcateg() != childCategory)
 			throw new DbException("child page category mismatch in insertEntry");
@@ -495,6 +408,7 @@ public class BTreeInternalPage extends BTreePage {
 					lessOrEqKey = i;
 					if(children[i] == e.getRightChild().getPageNumber()) {
 						children[i] = e.getLeftChild().getPageNumber();
+						markSlotDirty(i);
 					}
 				}
 				else if(lessOrEqKey != -1) {
@@ -595,6 +509,7 @@ public class BTreeInternalPage extends BTreePage {
 		int headerbyte = (i - headerbit) / 8;
 
 		Debug.log(1, "BTreeInternalPage.setSlot: setting slot %d to %b", i, value);
+		markSlotDirty(i);
 		if(value)
 			header[headerbyte] |= 1 << headerbit;
 		else
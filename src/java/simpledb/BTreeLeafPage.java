@@ -2,6 +2,7 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of BTreeLeafPage stores data for one page of a BTreeFile and 
@@ -40,6 +41,14 @@ public class BTreeLeafPage extends BTreePage {
 		}
 	}
 
+	/**
+	 * Create a BTreeLeafPage from a set of bytes of data read from disk.
+	 * @see #BTreeLeafPage(BTreePageId, ByteBuffer, int)
+	 */
+	public BTreeLeafPage(BTreePageId id, byte[] data, int key) throws IOException {
+		this(id, ByteBuffer.wrap(data), key);
+	}
+
 	/**
 	 * Create a BTreeLeafPage from a set of bytes of data read from disk.
 	 * The format of a BTreeLeafPage is a set of header bytes indicating
@@ -61,10 +70,10 @@ public class BTreeLeafPage extends BTreePage {
 	 * @param data - the raw data of this page
 	 * @param key - the field which the index is keyed on
 	 */
-	public BTreeLeafPage(BTreePageId id, byte[] data, int key) throws IOException {
+	public BTreeLeafPage(BTreePageId id, ByteBuffer data, int key) throws IOException {
 		super(id, key);
 		this.numSlots = getMaxTuples();
-		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+		DataInputStream dis = new DataInputStream(new ByteBufferInputStream(data));
 
 		// Read the parent and sibling pointers
 		try {
@@ -103,7 +112,7 @@ public class BTreeLeafPage extends BTreePage {
 		}
 		dis.close();
 
-		setBeforeImage();
+		setImage(data);
 	}
 
 	/** 
@@ -132,12 +141,7 @@ public class BTreeLeafPage extends BTreePage {
         -- used by recovery */
 	public BTreeLeafPage getBeforeImage(){
 		try {
-			byte[] oldDataRef = null;
-			synchronized(oldDataLock)
-			{
-				oldDataRef = oldData;
-			}
-			return new BTreeLeafPage(pid,oldDataRef,keyField);
+			return new BTreeLeafPage(pid,getBeforeImageData(),keyField);
 		} catch (IOException e) {
 			e.printStackTrace();
 			//should never happen -- we parsed it OK before!
@@ -146,13 +150,6 @@ public class BTreeLeafPage extends BTreePage {
 		return null;
 	}
 
-	public void setBeforeImage() {
-		synchronized(oldDataLock)
-		{
-			oldData = getPageData().clone();
-		}
-	}
-
 	/**
 	 * Read tuples from the source file.
 	 */
@@ -187,96 +184,27 @@ public class BTreeLeafPage extends BTreePage {
 		return t;
 	}
 
-	/**
-	 * Generates a byte array representing the contents of this page.
-	 * Used to serialize this page to disk.
-	 * <p>
-	 * The invariant here is that it should be possible to pass the byte
-	 * array generated by getPageData to the BTreeLeafPage constructor and
-	 * have it produce an identical BTreeLeafPage object.
-	 *
-	 * @see #BTreeLeafPage
-	 * @return A byte array corresponding to the bytes of this page.
-	 */
-	public byte[] getPageData() {
-		int len = BufferPool.getPageSize();
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-		DataOutputStream dos = new DataOutputStream(baos);
-
-		// write out the parent and sibling pointers
-		try {
-			dos.writeInt(parent);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		try {
-			dos.writeInt(leftSibling);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		try {
-			dos.writeInt(rightSibling);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		// create the header of the page
-		for (int i=0; i<header.length; i++) {
-			try {
-				dos.writeByte(header[i]);
-			} catch (IOException e) {
-				// this really shouldn't happen
-				e.printStackTrace();
-			}
-		}
-
-		// create the tuples
-		for (int i=0; i<tuples.length; i++) {
-
-			// empty slot
-			if (!isSlotUsed(i)) {
-				for (int j=0; j<td.getSize(); j++) {
-					try {
-						dos.writeByte(0);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-
-				}
-				continue;
-			}
-
-			// non-empty slot
-			for (int j=0; j<td.numFields(); j++) {
-				Field f = tuples[i].getField(j);
-				try {
-					f.serialize(dos);
-
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			}
-		}
+	protected void writeHeader(ByteBuffer dst) {
+		dst.putInt(parent);
+		dst.putInt(leftSibling);
+		dst.putInt(rightSibling);
+		dst.put(header);
+	}
 
-		// padding
-		int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length + 3 * INDEX_SIZE); //- numSlots * td.getSize();
-		byte[] zeroes = new byte[zerolen];
-		try {
-			dos.write(zeroes, 0, zerolen);
-		} catch (IOException e) {
-			e.printStackTrace();
+	protected void writeSlot(ByteBuffer image, int i) {
+		int offset = 3 * INDEX_SIZE + header.length + i * td.getSize();
+		if (!isSlotUsed(i)) {
+			zero(image, offset, td.getSize());
+			return;
 		}
-
-		try {
-			dos.flush();
-		} catch (IOException e) {
-			e.printStackTrace();
+		ByteBuffer buf = image.duplicate();
+		for (int j=0; j<td.numFields(); j++) {
+			// every field has its fixed width, even a shorter VARCHAR
+			Type type = td.getFieldType(j);
+			buf.position(offset);
+			type.write(tuples[i].getField(j), buf);
+			offset += type.getLen();
 		}
-
-		return baos.toByteArray();
 	}
 
 	/**
@@ -412,6 +340,7 @@ public class BTreeLeafPage extends BTreePage {
 			}
 			leftSibling = id.getPageNumber();
 		}
+		markHeaderDirty();
 	}
 
 	/**
@@ -432,6 +361,7 @@ public class BTreeLeafPage extends BTreePage {
 			}
 			rightSibling = id.getPageNumber();
 		}
+		markHeaderDirty();
 	}
 
 	/**
@@ -469,6 +399,7 @@ public class BTreeLeafPage extends BTreePage {
 		int headerbyte = (i - headerbit) / 8;
 
 		Debug.log(1, "BTreeLeafPage.setSlot: setting slot %d to %b", i, value);
+		markSlotDirty(i);
 		if(value)
 			header[headerbyte] |= 1 << headerbit;
 		else
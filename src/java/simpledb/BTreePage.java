@@ -1,6 +1,9 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * Each instance of BTreeInternalPage stores data for one page of a BTreeFile and 
@@ -21,9 +24,23 @@ public abstract class BTreePage implements Page {
 	protected final int keyField;
 
 	protected int parent; // parent is always internal node or 0 for root node
-	protected byte[] oldData;
 	protected final Byte oldDataLock=new Byte((byte)0);
 
+	// the bytes of the page, as read from disk (possibly a read-only view
+	// of a mapped file) or last committed, until the first modified slot is
+	// written out, and then a private copy. The slots in dirtySlots changed
+	// since they were last written to it; the pointers and header are
+	// written on the fly.
+	private ByteBuffer image;
+	private boolean imagePrivate = false;
+	private final BitSet dirtySlots = new BitSet();
+	// whether the pointers changed since the page was read or committed
+	private boolean headerDirty = false;
+	// the image before it was copied, which is the before image of the page
+	// (guarded by oldDataLock). If the image was not copied yet, the image
+	// itself is: the pointers and header it holds are still the old ones.
+	private ByteBuffer oldData;
+
 	/**
 	 * Create a BTreeInternalPage from a set of bytes of data read from disk.
 	 * The format of a BTreeInternalPage is a set of header bytes indicating
@@ -75,6 +92,140 @@ public abstract class BTreePage implements Page {
 		return new byte[len]; //all 0
 	}
 
+	/**
+	 * Keep the specified bytes the page was read from as its image. They
+	 * must not be modified afterwards.
+	 */
+	protected void setImage(ByteBuffer data) {
+		ByteBuffer view = data.duplicate();
+		view.limit(view.position() + BufferPool.getPageSize());
+		image = view.slice();
+	}
+
+	/**
+	 * Record that the contents of the specified slot changed.
+	 */
+	protected void markSlotDirty(int i) {
+		dirtySlots.set(i);
+	}
+
+	/**
+	 * Record that the pointers of this page changed.
+	 */
+	protected void markHeaderDirty() {
+		headerDirty = true;
+	}
+
+	/**
+	 * Return the bytes of this page before it was modified. They are not
+	 * written to, and only parsed into a page by getBeforeImage.
+	 */
+	protected ByteBuffer getBeforeImageData() {
+		synchronized(oldDataLock)
+		{
+			return (oldData != null ? oldData : image).duplicate();
+		}
+	}
+
+	/**
+	 * The current contents of the page become its before image: they are
+	 * written to the image, which is copied again before the next
+	 * modification. Pages that were not modified keep their image as is.
+	 */
+	public void setBeforeImage() {
+		synchronized(oldDataLock)
+		{
+			if (!imagePrivate && dirtySlots.isEmpty() && !headerDirty)
+				return;
+			makeImagePrivate();
+			writeDirtySlots();
+			ByteBuffer header = image.duplicate();
+			header.position(0);
+			writeHeader(header);
+			imagePrivate = false;
+			headerDirty = false;
+			oldData = null;
+		}
+	}
+
+	/**
+	 * Write the contents of the specified slot (or zeroes, if it is empty)
+	 * to the image, at their absolute offsets.
+	 */
+	protected abstract void writeSlot(ByteBuffer image, int i);
+
+	/**
+	 * Write the pointers and header of this page to dst, at its position.
+	 */
+	protected abstract void writeHeader(ByteBuffer dst);
+
+	/**
+	 * Zero len bytes of the image at the specified offset.
+	 */
+	protected static void zero(ByteBuffer image, int offset, int len) {
+		Arrays.fill(image.array(), image.arrayOffset() + offset, image.arrayOffset() + offset + len, (byte) 0);
+	}
+
+	/**
+	 * Copy the image before writing to it for the first time since the
+	 * page was read or committed, keeping the old one as the before image.
+	 */
+	private void makeImagePrivate() {
+		if (imagePrivate)
+			return;
+		ByteBuffer copy = ByteBuffer.allocate(BufferPool.getPageSize());
+		copy.put(image.duplicate());
+		copy.clear();
+		synchronized(oldDataLock)
+		{
+			oldData = image;
+		}
+		image = copy;
+		imagePrivate = true;
+	}
+
+	/**
+	 * Write the dirty slots to the image, copying it first if it is still
+	 * the one read from disk.
+	 */
+	private void writeDirtySlots() {
+		if (dirtySlots.isEmpty())
+			return;
+		makeImagePrivate();
+		for (int i = dirtySlots.nextSetBit(0); i >= 0; i = dirtySlots.nextSetBit(i + 1))
+			writeSlot(image, i);
+		dirtySlots.clear();
+	}
+
+	/**
+	 * Write the bytes of this page to dst: the slots that did not change
+	 * since the page was read or last written are copied as one block.
+	 */
+	public void writePageData(ByteBuffer dst) {
+		writeDirtySlots();
+		int base = dst.position();
+		dst.put(image.duplicate());
+		ByteBuffer header = dst.duplicate();
+		header.position(base);
+		writeHeader(header);
+	}
+
+	/**
+	 * Generates a byte array representing the contents of this page.
+	 * Used to serialize this page to disk.
+	 * <p>
+	 * The invariant here is that it should be possible to pass the byte
+	 * array generated by getPageData to the BTreeInternalPage or
+	 * BTreeLeafPage constructor and have it produce an identical page.
+	 *
+	 * @return A byte array corresponding to the bytes of this page.
+	 */
+	public byte[] getPageData() {
+		byte[] data = new byte[BufferPool.getPageSize()];
+		writePageData(ByteBuffer.wrap(data));
+		return data;
+	}
+
 	/**
 	 * Get the parent id of this page
 	 * @return the parent id
@@ -107,6 +258,7 @@ public abstract class BTreePage implements Page {
 		else {
 			parent = id.getPageNumber();
 		}
+		markHeaderDirty();
 	}
 
 	/**
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * BTreeRootPtrPage stores the pointer to the root node used in the B+ tree and
@@ -22,8 +23,20 @@ public class BTreeRootPtrPage implements Page {
 	private int rootCategory;
 	private int header;
 
+	// contents of the page before it was first modified since it was read
+	// or last committed, or null if it was not modified
 	private byte[] oldData;
 
+	/**
+	 * Constructor.
+	 * Construct the BTreeRootPtrPage from a set of bytes of data read from
+	 * disk.
+	 * @see #BTreeRootPtrPage(BTreePageId, ByteBuffer)
+	 */
+	public BTreeRootPtrPage(BTreePageId id, byte[] data) throws IOException {
+		this(id, ByteBuffer.wrap(data));
+	}
+
 	/**
 	 * Constructor.
 	 * Construct the BTreeRootPtrPage from a set of bytes of data read from
@@ -33,9 +46,9 @@ public class BTreeRootPtrPage implements Page {
 	 * (either leaf or internal), followed by an integer for the page number
 	 * of the first header page
 	 */
-	public BTreeRootPtrPage(BTreePageId id, byte[] data) throws IOException {
+	public BTreeRootPtrPage(BTreePageId id, ByteBuffer data) throws IOException {
 		this.pid = id;
-		this.dis = new DataInputStream(new ByteArrayInputStream(data));
+		this.dis = new DataInputStream(new ByteBufferInputStream(data));
 
 		// read in the root pointer
 		root = dis.readInt();
@@ -43,12 +56,19 @@ public class BTreeRootPtrPage implements Page {
 
 		// read in the header pointer
 		header = dis.readInt();
-		
-		setBeforeImage();
 	}
 
 	public void setBeforeImage() {
-		oldData = getPageData().clone();
+		oldData = null;
+	}
+
+	/**
+	 * Keep the current contents of the page as its before image, if it was
+	 * not modified since it was read or last committed.
+	 */
+	private void saveBeforeImage() {
+		if (oldData == null)
+			oldData = getPageData();
 	}
 
 	/**
@@ -78,38 +98,18 @@ public class BTreeRootPtrPage implements Page {
 	 * @return A byte array corresponding to the bytes of this root pointer page.
 	 */
 	public byte[] getPageData(){
-		int len = PAGE_SIZE;
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-		DataOutputStream dos = new DataOutputStream(baos);
-
-		// write out the root pointer (page number of the root page)
-		try{
-			dos.writeInt(root);
-		}catch(IOException e){
-			e.printStackTrace();
-		}
-
-		// write out the category of the root page (leaf or internal)
-		try{
-			dos.writeByte((byte) rootCategory);
-		}catch(IOException e){
-			e.printStackTrace();
-		}
-
-		// write out the header pointer (page number of the first header page)
-		try{
-			dos.writeInt(header);
-		}catch(IOException e){
-			e.printStackTrace();
-		}
-
-		try {
-			dos.flush();
-		}catch(IOException e) {
-			e.printStackTrace();
-		}
+		byte[] data = new byte[PAGE_SIZE];
+		writePageData(ByteBuffer.wrap(data));
+		return data;
+	}
 
-		return baos.toByteArray();
+	public void writePageData(ByteBuffer dst) {
+		// the root pointer (page number of the root page), the category of
+		// the root page (leaf or internal) and the header pointer (page
+		// number of the first header page)
+		dst.putInt(root);
+		dst.put((byte) rootCategory);
+		dst.putInt(header);
 	}
 
 	/**
@@ -142,7 +142,7 @@ public class BTreeRootPtrPage implements Page {
         -- used by recovery */
 	public BTreeRootPtrPage getBeforeImage(){
 		try {
-			return new BTreeRootPtrPage(pid,oldData);
+			return new BTreeRootPtrPage(pid,oldData != null ? oldData : getPageData());
 		} catch (IOException e) {
 			e.printStackTrace();
 			//should never happen -- we parsed it OK before!
@@ -168,6 +168,7 @@ public class BTreeRootPtrPage implements Page {
 	 * @throws DbException if the id is invalid
 	 */
 	public void setRootId(BTreePageId id) throws DbException {
+		saveBeforeImage();
 		if(id == null) {
 			root = 0;
 		}
@@ -200,6 +201,7 @@ public class BTreeRootPtrPage implements Page {
 	 * @throws DbException if the id is invalid
 	 */
 	public void setHeaderId(BTreePageId id) throws DbException {
+		saveBeforeImage();
 		if(id == null) {
 			header = 0;
 		}
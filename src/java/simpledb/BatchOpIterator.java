@@ -0,0 +1,24 @@
+package simpledb;
+
+/**
+ * BatchOpIterator is implemented by the operators that can return their
+ * tuples a batch at a time, as a {@link TupleBatch} of column vectors, in
+ * addition to one at a time. Operators that consume batches get them from
+ * their children with {@link TupleBatch#next}, which also adapts the
+ * children that only implement OpIterator, so plans can mix both.
+ * <p>
+ * An iterator should be consumed either with nextBatch or with
+ * hasNext/next, not both, between two calls to open or rewind.
+ */
+public interface BatchOpIterator extends OpIterator {
+
+    /**
+     * Returns the next batch of tuples of the operator. The batch holds at
+     * least one selected row, and is only valid until the next call to
+     * nextBatch: the operator reuses it.
+     *
+     * @return the next batch, or null if there are no more tuples.
+     * @throws IllegalStateException If the iterator has not been opened
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException;
+}
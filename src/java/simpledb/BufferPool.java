@@ -4,7 +4,12 @@ import java.io.*;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -26,6 +31,19 @@ public class BufferPool {
     //private final HashMap<PageId,Page> pool;
     private PageBufferPool pbp;
 
+    private final LockManager lockManager;
+
+    // writes the pages forced by committing transactions
+    private final PageWriter writer = new PageWriter();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong prefetches = new AtomicLong();
+
+    // reads in progress, so that a page is only read once however many
+    // transactions (or read-aheads) ask for it meanwhile. Guarded by this.
+    private final HashMap<PageId, CompletableFuture<Page>> reading = new HashMap<>();
+
     //private int freePages;
     /** Default number of pages passed to the constructor. This is used by
     other classes. BufferPool should use the numPages argument to the
@@ -39,7 +57,19 @@ public class BufferPool {
      */
     public BufferPool(int numPages) {
         // some code goes here
-        pbp = new PageBufferPool(numPages);
+        this(numPages, ReplacementPolicy.Kind.LRU);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages, evicting pages
+     * according to the specified replacement policy.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the replacement policy used to choose eviction victims
+     */
+    public BufferPool(int numPages, ReplacementPolicy.Kind policy) {
+        pbp = new PageBufferPool(numPages, policy.create(numPages));
+        lockManager = new LockManager();
     }
 
     public static int getPageSize() {
@@ -56,6 +86,43 @@ public class BufferPool {
     	BufferPool.pageSize = DEFAULT_PAGE_SIZE;
     }
 
+    /** Return the number of getPage calls served from the pool */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /** Return the number of getPage calls that had to read the page from disk */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /** Return the number of pages read into the pool by read-aheads */
+    public long getPrefetchCount() {
+        return prefetches.get();
+    }
+
+    /** Return the fraction of getPage calls served from the pool, 0 if there were none */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /** Reset the hit and miss counters */
+    public void resetStats() {
+        hits.set(0);
+        misses.set(0);
+        prefetches.set(0);
+    }
+
+    /**
+     * Set the policy used to choose which transaction gets aborted when a
+     * deadlock is detected.
+     */
+    public void setVictimPolicy(LockManager.VictimPolicy policy) {
+        lockManager.setVictimPolicy(policy);
+    }
+
     /**
      * Retrieve the specified page with the associated permissions.
      * Will acquire a lock and may block if that lock is held by another
@@ -70,22 +137,179 @@ public class BufferPool {
      * @param tid the ID of the transaction requesting the page
      * @param pid the ID of the requested page
      * @param perm the requested permissions on the page
+     * @throws TransactionAbortedException if waiting for the lock would
+     *   deadlock and tid was chosen to be aborted
      */
     public  Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
         // some code goes here
-        if (pbp.containsKey(pid))
-            return pbp.get(pid);
-        else if (pbp.freePages() == 0) {
-            evictPage();
+        return getPage(tid, pid, perm, null);
+    }
+
+    /**
+     * Same as {@link #getPage(TransactionId, PageId, Permissions)}, for
+     * sequential scans reading through a private ring of frames: if the page
+     * is not cached, it takes the frame of the oldest page the scan read
+     * through the ring rather than one chosen by the replacement policy.
+     *
+     * @param ring the ring of the scan, or null to use the pool normally
+     * @see BufferRing
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm, BufferRing ring)
+        throws TransactionAbortedException, DbException {
+        // the lock is acquired before touching the pool, so that a blocked
+        // transaction never holds the BufferPool monitor while it waits
+        lockManager.acquireLock(tid, pid, perm);
+
+        Page cached = pbp.get(pid);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        return loadPage(pid, ring, false);
+    }
+
+    /**
+     * Return the ring a sequential scan over numPages pages should read
+     * through, or null if the scan is small enough to use the pool normally.
+     */
+    public BufferRing newScanRing(int numPages) {
+        return BufferRing.forScan(numPages, pbp.capacity);
+    }
+
+    /**
+     * Return the read-ahead of a scan that reads pages one after the other,
+     * or null if the pool is too small to read ahead.
+     *
+     * @param ring the ring the scan reads through, or null
+     * @param successor returns the id of the page the scan reads after the
+     *   specified one, or null if it is the last
+     * @see ReadAhead
+     */
+    public ReadAhead newReadAhead(BufferRing ring, Function<Page, PageId> successor) {
+        return ReadAhead.forScan(this, ring, pbp.capacity, successor);
+    }
+
+    /**
+     * Read the specified page into the pool on behalf of a read-ahead,
+     * without locking it. This is safe because the page is read exactly as
+     * a later miss would read it, and a page cannot be modified while it is
+     * being read: a writer has to get it from the pool first.
+     *
+     * @return the page, or null if it could not be read (e.g. because all
+     *   the pages in the pool are dirty)
+     */
+    Page prefetchPage(PageId pid, BufferRing ring) {
+        Page cached = pbp.peek(pid);
+        if (cached != null)
+            return cached;
+        try {
+            return loadPage(pid, ring, true);
+        } catch (DbException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** Return true if the specified page is cached */
+    boolean isCached(PageId pid) {
+        return pbp.peek(pid) != null;
+    }
+
+    /** Return true if the specified page is being read from disk */
+    synchronized boolean isReading(PageId pid) {
+        return reading.containsKey(pid);
+    }
+
+    /**
+     * Read the specified page from disk into the pool, evicting a page if
+     * the pool is full. Only page misses go through the BufferPool monitor,
+     * and the read itself happens outside of it: concurrent requests for a
+     * page that is being read wait for that read instead of issuing their
+     * own.
+     *
+     * @param prefetch true if the page is read by a read-ahead rather than
+     *   requested by a transaction
+     */
+    private Page loadPage(PageId pid, BufferRing ring, boolean prefetch) throws DbException {
+        CompletableFuture<Page> read;
+        boolean reader = false;
+        synchronized (this) {
+            // another transaction may have loaded the page in the meantime
+            Page cached = prefetch ? pbp.peek(pid) : pbp.get(pid);
+            if (cached != null)
+                return cached;
+            read = reading.get(pid);
+            if (read == null) {
+                reserveFrame(pid, ring);
+                read = new CompletableFuture<>();
+                reading.put(pid, read);
+                reader = true;
+                if (prefetch)
+                    prefetches.incrementAndGet();
+                else
+                    misses.incrementAndGet();
+            }
+        }
+        if (!reader)
+            return await(read);
+
+        Page selectedPage;
+        try {
+            selectedPage = Database.getCatalog()
+                    .getDatabaseFile(pid.getTableId())
+                    .readPage(pid);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                reading.remove(pid, read);
+            }
+            read.completeExceptionally(e);
+            if (e instanceof CorruptPageException)
+                throw new DbException(e.getMessage());
+            throw e;
+        }
+        synchronized (this) {
+            // a page discarded while it was being read must not be cached
+            if (reading.remove(pid, read))
+                pbp.put(pid, selectedPage);
         }
-        Page selectedPage = Database.getCatalog()
-                .getDatabaseFile(pid.getTableId())
-                .readPage(pid);
-        pbp.put(pid,selectedPage);
+        read.complete(selectedPage);
         return selectedPage;
     }
 
+    /**
+     * Make room in the pool for a page about to be read: recycle the frame
+     * of the oldest page of the ring, or evict a page if the pool is full.
+     * The frames of the pages being read count as taken.
+     */
+    private synchronized void reserveFrame(PageId pid, BufferRing ring) throws DbException {
+        if (ring != null) {
+            // recycle the frame of the page the scan read a ring ago, unless
+            // somebody dirtied it since
+            PageId recycled = ring.nextToRecycle();
+            Page old = recycled == null ? null : pbp.peek(recycled);
+            if (old != null && old.isDirty() == null)
+                pbp.remove(recycled);
+        }
+        if (pbp.freePages() - reading.size() <= 0) {
+            evictPage(pid);
+        }
+        if (ring != null)
+            ring.loaded(pid);
+    }
+
+    /** Wait for a read started by another thread and return its page */
+    private static Page await(CompletableFuture<Page> read) throws DbException {
+        try {
+            return read.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof CorruptPageException)
+                throw new DbException(e.getCause().getMessage());
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new DbException("Unable to read page: " + e.getCause());
+        }
+    }
+
     /**
      * Releases the lock on a page.
      * Calling this is very risky, and may result in wrong behavior. Think hard
@@ -98,6 +322,7 @@ public class BufferPool {
     public  void releasePage(TransactionId tid, PageId pid) {
         // some code goes here
         // not necessary for lab1|lab2
+        lockManager.releaseLock(tid, pid);
     }
 
     /**
@@ -108,13 +333,14 @@ public class BufferPool {
     public void transactionComplete(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
+        transactionComplete(tid, true);
     }
 
     /** Return true if the specified transaction has a lock on the specified page */
     public boolean holdsLock(TransactionId tid, PageId p) {
         // some code goes here
         // not necessary for lab1|lab2
-        return false;
+        return lockManager.holdsLock(tid, p);
     }
 
     /**
@@ -128,6 +354,30 @@ public class BufferPool {
         throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
+        try {
+            if (commit)
+                flushPages(tid);
+            else
+                revertPages(tid);
+        } finally {
+            lockManager.releaseAllLocks(tid);
+        }
+    }
+
+    /**
+     * Replace every page dirtied by tid with its on-disk version, undoing
+     * the changes of an aborted transaction.
+     */
+    private synchronized void revertPages(TransactionId tid) {
+        // only pages locked by tid can have been dirtied by it
+        for (PageId pid : lockManager.getLockedPages(tid)) {
+            Page page = pbp.peek(pid);
+            // dropping the page makes the next reader fetch it from disk
+            if (page != null && tid.equals(page.isDirty())) {
+                Database.getCatalog().getDatabaseFile(pid.getTableId()).pageReverted(page);
+                pbp.remove(pid);
+            }
+        }
     }
 
     /**
@@ -154,9 +404,13 @@ public class BufferPool {
                 .getDatabaseFile(tableId)
                 .insertTuple(tid, t);
 
-        for (Page page : pages) {
-            page.markDirty(true, tid);
-            pbp.put(page.getId(),page);
+        synchronized (this) {
+            for (Page page : pages) {
+                page.markDirty(true, tid);
+                if (!pbp.containsKey(page.getId()) && pbp.freePages() - reading.size() <= 0)
+                    evictPage();
+                pbp.put(page.getId(),page);
+            }
         }
     }
 
@@ -183,9 +437,13 @@ public class BufferPool {
                 .getDatabaseFile(tableId)
                 .deleteTuple(tid, t);
 
-        for (Page page: pages){
-            page.markDirty(true, tid);
-            pbp.put(page.getId(),page);
+        synchronized (this) {
+            for (Page page : pages) {
+                page.markDirty(true, tid);
+                if (!pbp.containsKey(page.getId()) && pbp.freePages() - reading.size() <= 0)
+                    evictPage();
+                pbp.put(page.getId(),page);
+            }
         }
     }
 
@@ -197,9 +455,22 @@ public class BufferPool {
     public synchronized void flushAllPages() throws IOException {
         // some code goes here
         // not necessary for lab1
-        ArrayList<PageId> pids = pbp.getPIDs();
-        for (PageId pid : pids) {
-            flushPage(pid);
+        ArrayList<Page> dirty = new ArrayList<>();
+        for (PageId pid : pbp.getPIDs()) {
+            Page page = pbp.peek(pid);
+            if (page != null && page.isDirty() != null)
+                dirty.add(page);
+        }
+        // in disk order, coalescing adjacent pages
+        HashMap<Integer, Throwable> failed = PageWriter.writeSorted(dirty);
+        for (Page page : dirty) {
+            if (!failed.containsKey(page.getId().getTableId()))
+                page.markDirty(false, null);
+        }
+        for (Throwable error : failed.values()) {
+            if (error instanceof IOException)
+                throw (IOException) error;
+            throw (RuntimeException) error;
         }
     }
 
@@ -215,6 +486,8 @@ public class BufferPool {
         // some code goes here
         // not necessary for lab1
         pbp.remove(pid);
+        // a read in progress must not bring the page back
+        reading.remove(pid);
     }
 
     /**
@@ -225,7 +498,9 @@ public class BufferPool {
         // some code goes here
         // not necessary for lab1
         // No pages get actually removed fron BP
-        Page selectedPage = pbp.get(pid);
+        Page selectedPage = pbp.peek(pid);
+        if (selectedPage == null)
+            return;
         if (selectedPage.isDirty() != null) {
             DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
             file.writePage(selectedPage);
@@ -234,83 +509,167 @@ public class BufferPool {
     }
 
     /** Write all pages of the specified transaction to disk.
+     * The writes are done by the PageWriter, together with those of the
+     * transactions committing at the same time; the call returns once the
+     * pages are on disk.
      */
-    public synchronized  void flushPages(TransactionId tid) throws IOException {
+    public void flushPages(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
+        ArrayList<Page> pages = new ArrayList<>();
+        ArrayList<Page> dirty = new ArrayList<>();
+        synchronized (this) {
+            for (PageId pid : lockManager.getLockedPages(tid)) {
+                Page page = pbp.peek(pid);
+                if (page == null)
+                    continue;
+                pages.add(page);
+                if (page.isDirty() != null)
+                    dirty.add(page);
+            }
+        }
+        // tid holds the locks of its pages, so they cannot change while
+        // they are written, and stay dirty (not evictable) until they are
+        writer.write(dirty);
+        for (Page page : dirty)
+            page.markDirty(false, null);
+        for (Page page : pages) {
+            // the committed contents are the before image of the next writer
+            page.setBeforeImage();
+        }
     }
 
     /**
      * Discards a page from the buffer pool.
-     * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * Only clean pages are evicted (NO STEAL), so the page never needs to
+     * be written back: pages dirtied by a running transaction must stay in
+     * memory until it commits or aborts.
+     *
+     * @throws DbException if every page in the buffer pool is dirty
      */
     private synchronized  void evictPage() throws DbException {
         // some code goes here
         // not necessary for
-        // Effectuve removal happens when pbp.remove is called
-        PageId lru = pbp.getLastRecentlyUsed();
-        try {
-            flushPage(lru);
-        }
-        catch (Exception e) {
-            throw new DbException("Flushing page to free space failed");
-        }
-        pbp.remove(lru);
+        evictPage(null);
     }
 
-    // Implements functionalities of a queue, where least-recently used pages
-    // get returned to main BufferPool class
-    // Based on lab1 solution
+    /**
+     * Same as {@link #evictPage()}, telling the replacement policy which
+     * page is going to take the freed frame.
+     */
+    private synchronized void evictPage(PageId incoming) throws DbException {
+        if (pbp.evictClean(incoming) == null)
+            throw new DbException("All pages in the buffer pool are dirty");
+    }
+
+    // Page table of the pool. Which page to evict is delegated to a
+    // ReplacementPolicy, which is told about every admission and removal
+    // under the lock of the page table. Cache hits take no lock: they look
+    // the page up in a concurrent map and record the hit in a HitBuffer,
+    // which is drained into the policy by whoever takes the lock next (or
+    // by the hit that fills it up, if the lock is free).
     private static class PageBufferPool {
-        // Change type of pageBuffer to not store a page twice
         private final int capacity;
-        private final ArrayList<PageId> pageBuffer;
         private final ConcurrentHashMap<PageId, Page> pageIdToPage;
+        private final ReplacementPolicy policy;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final HitBuffer hits = new HitBuffer();
 
-        public PageBufferPool(int size) {
+        public PageBufferPool(int size, ReplacementPolicy policy) {
             this.capacity = size;
-            this.pageBuffer = new ArrayList<>(size);
-            this.pageIdToPage = new ConcurrentHashMap<>(size);
+            this.pageIdToPage = new ConcurrentHashMap<>(size * 2);
+            this.policy = policy;
         }
 
         public boolean containsKey(PageId id) {
             return pageIdToPage.containsKey(id);
         }
 
+        /** Return the cached page, recording the access with the policy */
         public Page get(PageId id) {
+            Page page = pageIdToPage.get(id);
+            if (page != null && hits.record(id) && lock.tryLock()) {
+                try {
+                    drainHits();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return page;
+        }
+
+        /** Return the cached page without recording an access */
+        public Page peek(PageId id) {
             return pageIdToPage.get(id);
         }
 
+        /** Tell the policy about the recorded hits; the lock is held */
+        private void drainHits() {
+            hits.drain(pid -> {
+                // the page may have left the pool since
+                if (pageIdToPage.containsKey(pid))
+                    policy.pageHit(pid);
+            });
+        }
+
         public void put(PageId id, Page page) {
-            pageIdToPage.put(id, page);
-            pageBuffer.add(id);
+            lock.lock();
+            try {
+                drainHits();
+                // re-putting a page replaces it in place, and counts as a use
+                if (pageIdToPage.put(id, page) == null)
+                    policy.pageAdded(id);
+                else
+                    policy.pageHit(id);
+            } finally {
+                lock.unlock();
+            }
         }
 
         public Page remove(PageId pid) {
-            if (pageIdToPage.containsKey(pid)) {
-                pageBuffer.remove(pid);
-                return pageIdToPage.remove(pid);
+            lock.lock();
+            try {
+                drainHits();
+                Page page = pageIdToPage.remove(pid);
+                if (page != null)
+                    policy.pageRemoved(pid);
+                return page;
+            } finally {
+                lock.unlock();
             }
-            return null;
         }
 
         public int size() {
-            return pageBuffer.size();
+            return pageIdToPage.size();
         }
 
         public int freePages() {
-            return capacity-pageBuffer.size();
+            return capacity - pageIdToPage.size();
         }
 
-        public PageId removeLastRecentlyUsed() {
-            pageIdToPage.remove(pageBuffer.get(0));
-            return pageBuffer.remove(0);
-        }
-        public PageId getLastRecentlyUsed() {
-            return pageBuffer.get(0);
+        /**
+         * Evict the page chosen by the policy among the clean ones, since
+         * dirty pages cannot be evicted under NO STEAL.
+         *
+         * @param incoming the page that will take the freed frame, if known
+         * @return the evicted page id, or null if every cached page is dirty
+         */
+        public PageId evictClean(PageId incoming) {
+            lock.lock();
+            try {
+                drainHits();
+                PageId victim = policy.evict(incoming, pid -> pageIdToPage.get(pid).isDirty() == null);
+                if (victim != null)
+                    pageIdToPage.remove(victim);
+                return victim;
+            } finally {
+                lock.unlock();
+            }
         }
+
+        /** Return a snapshot of the ids of the cached pages */
         public ArrayList<PageId> getPIDs() {
-            return pageBuffer;
+            return new ArrayList<>(pageIdToPage.keySet());
         }
     }
 
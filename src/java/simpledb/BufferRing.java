@@ -0,0 +1,66 @@
+package simpledb;
+
+/**
+ * BufferRing is the bulk-read access strategy used by large sequential
+ * scans (the same idea as the BAS_BULKREAD ring of PostgreSQL).
+ * <p>
+ * A scan that owns a ring passes it to {@link BufferPool#getPage(TransactionId,
+ * PageId, Permissions, BufferRing)}. Every page the scan has to read from
+ * disk takes the frame of the page it read ringSize misses ago, as long as
+ * that page is still cached and clean, instead of evicting a page chosen by
+ * the replacement policy. A scan over a table much larger than the pool
+ * therefore only ever occupies ringSize frames and leaves the working set
+ * of the other queries alone. Pages the scan finds already cached are not
+ * put in the ring.
+ * <p>
+ * A ring belongs to a single iterator. It is only used under the monitor of
+ * the BufferPool, by the iterator and by its {@link ReadAhead}.
+ */
+public class BufferRing {
+
+    /**
+     * A scan only gets a ring if it reads more than this many quarters of
+     * the pool. PostgreSQL uses a single quarter, but our pools are small
+     * enough that a table filling most of one is worth keeping cached.
+     */
+    public static final int SCAN_QUARTERS = 3;
+
+    /** Upper bound on the number of frames of a ring */
+    public static final int MAX_RING_SIZE = 32;
+
+    private final PageId[] frames;
+    private int next = 0;
+
+    /**
+     * @param ringSize number of frames the scan may occupy
+     */
+    public BufferRing(int ringSize) {
+        frames = new PageId[Math.max(1, ringSize)];
+    }
+
+    /**
+     * Return the ring to use for a scan of numPages pages through a pool of
+     * poolPages frames, or null if the scan is small enough to go through
+     * the pool normally.
+     */
+    public static BufferRing forScan(int numPages, int poolPages) {
+        if ((long) numPages * 4 <= (long) poolPages * SCAN_QUARTERS)
+            return null;
+        return new BufferRing(Math.min(MAX_RING_SIZE, Math.max(1, poolPages / 8)));
+    }
+
+    public int size() {
+        return frames.length;
+    }
+
+    /** Return the page whose frame the next page read by the scan will reuse, or null */
+    PageId nextToRecycle() {
+        return frames[next];
+    }
+
+    /** Record that pid is read into the pool on behalf of the scan */
+    void loaded(PageId pid) {
+        frames[next] = pid;
+        next = (next + 1) % frames.length;
+    }
+}
@@ -140,20 +140,48 @@ public class Catalog {
         return name2IdMap.values().iterator();
     }
 
+    /**
+     * Turn memory-mapped reads on or off for the specified table.
+     * @see DbFile#setMemoryMapped
+     * @throws NoSuchElementException if the table doesn't exist
+     */
+    public void setMemoryMapped(int tableid, boolean memoryMapped) throws NoSuchElementException {
+        getDatabaseFile(tableid).setMemoryMapped(memoryMapped);
+    }
+
     public String getTableName(int id) {
         // some code goes here
         return catalog.get(id).getName();
     }
 
-    /** Delete all tables from the catalog */
+    /** Delete all tables from the catalog, closing their files */
     public void clear() {
         // some code goes here
+        for (DbTable table : catalog.values()) {
+            try {
+                table.getFile().close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         catalog.clear();
         name2IdMap.clear();
     }
 
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * A table declaration may be followed by the options mmap, to read the
+     * table through a memory mapping, checksum, to checksum its pages, and
+     * pax, for a table stored column by column in a {@link PaxFile}, e.g.
+     * <pre>    name (f1 int pk, f2 string) mmap checksum</pre>
+     * A table file compressed with <tt>SimpleDb compress</tt> needs no
+     * option: the index next to it marks it as compressed. A field of type varchar,
+     * or varchar(n) for n up to {@link Type#STRING_LEN}, is a string stored
+     * in only as many bytes as it has. The other types are int, long,
+     * double and date (or timestamp). A string field annotated dict, e.g.
+     * <pre>    f2 string dict</pre>
+     * is dictionary-encoded: its pages store the 4 byte codes of its
+     * strings, in a dictionary kept next to the table.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -166,7 +194,7 @@ public class Catalog {
                 //assume line is of the format name (field type, field type, ...)
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
-                String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
+                String fields = line.substring(line.indexOf("(") + 1, line.lastIndexOf(")")).trim();
                 String[] els = fields.split(",");
                 ArrayList<String> names = new ArrayList<String>();
                 ArrayList<Type> types = new ArrayList<Type>();
@@ -178,15 +206,28 @@ public class Catalog {
                         types.add(Type.INT_TYPE);
                     else if (els2[1].trim().toLowerCase().equals("string"))
                         types.add(Type.STRING_TYPE);
+                    else if (isVarchar(els2[1].trim().toLowerCase()))
+                        types.add(Type.VARCHAR_TYPE);
+                    else if (els2[1].trim().toLowerCase().equals("long"))
+                        types.add(Type.LONG_TYPE);
+                    else if (els2[1].trim().toLowerCase().equals("double"))
+                        types.add(Type.DOUBLE_TYPE);
+                    else if (els2[1].trim().toLowerCase().equals("date")
+                            || els2[1].trim().toLowerCase().equals("timestamp"))
+                        types.add(Type.DATE_TYPE);
                     else {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
                     }
-                    if (els2.length == 3) {
-                        if (els2[2].trim().equals("pk"))
+                    for (int i = 2; i < els2.length; i++) {
+                        if (els2[i].trim().equals("pk"))
                             primaryKey = els2[0].trim();
+                        else if (els2[i].trim().equals("dict")
+                                && (types.get(types.size() - 1) == Type.STRING_TYPE
+                                    || types.get(types.size() - 1) == Type.VARCHAR_TYPE))
+                            types.set(types.size() - 1, Type.DICT_TYPE);
                         else {
-                            System.out.println("Unknown annotation " + els2[2]);
+                            System.out.println("Unknown annotation " + els2[i]);
                             System.exit(0);
                         }
                     }
@@ -194,7 +235,24 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                String[] options = line.substring(line.lastIndexOf(")") + 1).trim()
+                        .toLowerCase().split("\\s+");
+                File tabFile = new File(baseFolder+"/"+name + ".dat");
+                HeapFile tabHf = Arrays.asList(options).contains("pax")
+                        ? new PaxFile(tabFile, t) : new HeapFile(tabFile, t);
+                for (String option : options) {
+                    if (option.equals("pax"))
+                        continue;
+                    else if (option.equals("mmap"))
+                        tabHf.setMemoryMapped(true);
+                    else if (option.equals("checksum"))
+                        tabHf.setChecksummed(true);
+                    else if (option.length() > 0) {
+                        System.out.println("Unknown table option " + option);
+                        System.exit(0);
+                    }
+                }
+                tabHf.setFreeSpaceMapSaved(true);
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
@@ -206,5 +264,22 @@ public class Catalog {
             System.exit(0);
         }
     }
+
+    /**
+     * Return true if the specified type of a catalog file is varchar or
+     * varchar(n) with n not larger than {@link Type#STRING_LEN}.
+     */
+    private static boolean isVarchar(String type) {
+        if (type.equals("varchar"))
+            return true;
+        if (!type.startsWith("varchar(") || !type.endsWith(")"))
+            return false;
+        try {
+            int n = Integer.parseInt(type.substring("varchar(".length(), type.length() - 1));
+            return n > 0 && n <= Type.STRING_LEN;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
 }
 
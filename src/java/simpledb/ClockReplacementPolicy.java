@@ -0,0 +1,75 @@
+package simpledb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * CLOCK (second chance) replacement. Cached pages sit on a circular array
+ * with a reference bit each; a hit only sets the bit, and the clock hand
+ * evicts the first page whose bit is clear, clearing the bits it passes.
+ * Hits are cheaper than with LRU since they never relink anything.
+ */
+public class ClockReplacementPolicy implements ReplacementPolicy {
+
+    private final ArrayList<PageId> slots = new ArrayList<>();
+    private final HashMap<PageId, Integer> slotOf = new HashMap<>();
+    private final BitSet referenced = new BitSet();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private int hand = 0;
+
+    public void pageHit(PageId pid) {
+        Integer slot = slotOf.get(pid);
+        if (slot != null)
+            referenced.set(slot);
+    }
+
+    public void pageAdded(PageId pid) {
+        if (slotOf.containsKey(pid)) {
+            pageHit(pid);
+            return;
+        }
+        int slot;
+        if (freeSlots.isEmpty()) {
+            slot = slots.size();
+            slots.add(pid);
+        } else {
+            slot = freeSlots.poll();
+            slots.set(slot, pid);
+        }
+        slotOf.put(pid, slot);
+        // a new page starts unreferenced, so a page read only once (e.g. by
+        // a scan) is the first to go
+        referenced.clear(slot);
+    }
+
+    public void pageRemoved(PageId pid) {
+        Integer slot = slotOf.remove(pid);
+        if (slot == null)
+            return;
+        slots.set(slot, null);
+        referenced.clear(slot);
+        freeSlots.add(slot);
+    }
+
+    public PageId evict(PageId incoming, Evictable evictable) {
+        int n = slots.size();
+        // two full turns: the first one may only clear reference bits
+        for (int i = 0; i < 2 * n; i++) {
+            if (hand >= n)
+                hand = 0;
+            int slot = hand++;
+            PageId pid = slots.get(slot);
+            if (pid == null || !evictable.canEvict(pid))
+                continue;
+            if (referenced.get(slot)) {
+                referenced.clear(slot);
+                continue;
+            }
+            pageRemoved(pid);
+            return pid;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,260 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * CompressedPageFile stores the pages of a HeapFile compressed, for tables
+ * that are written once and rarely read, which then take a fraction of the
+ * disk space and of the disk bandwidth of a scan.
+ * <p>
+ * Each page is compressed with a Deflater at its fastest level into an
+ * extent of the data file, whose offset and length are kept in an index
+ * next to it (12 bytes per page), so that any page is still read with a
+ * single positional read. A page that does not compress is stored as is.
+ * Extents are only ever appended: writing a page again appends its new
+ * extent and then updates its index entry, which leaves the space of the
+ * old one unused. So a process that dies in the middle of a write leaves
+ * the old version of the page or the new one, never a page half replaced.
+ * Like the pages of other files, neither the extents nor the index are
+ * forced to disk, so the OS may write them in any order: after an OS
+ * crash an entry can point at an extent that never reached the disk, and
+ * the page then reads as corrupt (or fails its checksum, see
+ * {@link PageChecksums}).
+ * <p>
+ * The pages are decompressed by HeapFile.readPage, so the BufferPool caches
+ * them decompressed as any other page.
+ *
+ * @see HeapFile
+ * @Threadsafe
+ */
+public class CompressedPageFile {
+
+    private static final int ENTRY_SIZE = 12;
+
+    private static final ThreadLocal<Deflater> deflaters =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> inflaters =
+            ThreadLocal.withInitial(Inflater::new);
+
+    private final PageChannel channel;
+    private final PageChannel indexChannel;
+    // offset and length of the extent of each page; guarded by this
+    private long[] offsets;
+    private int[] lengths;
+    private int numPages;
+    // end of the last extent, where the next one is appended
+    private long end;
+
+    /**
+     * Open the compressed pages stored in file, and in the index next to
+     * it. The I/O of file goes through the specified channel, whose
+     * checksums, if any, are recorded for the pages written.
+     */
+    public CompressedPageFile(File file, PageChannel channel) throws IOException {
+        this.channel = channel;
+        File index = indexOf(file);
+        try (RandomAccessFile raf = new RandomAccessFile(index, "rw")) {
+            // a torn entry at the end is dropped
+            numPages = (int) (raf.length() / ENTRY_SIZE);
+            byte[] entries = new byte[numPages * ENTRY_SIZE];
+            raf.readFully(entries);
+            raf.setLength((long) numPages * ENTRY_SIZE);
+            ByteBuffer buf = ByteBuffer.wrap(entries);
+            offsets = new long[Math.max(numPages, 16)];
+            lengths = new int[offsets.length];
+            for (int i = 0; i < numPages; i++) {
+                offsets[i] = buf.getLong();
+                lengths[i] = buf.getInt();
+                end = Math.max(end, offsets[i] + lengths[i]);
+            }
+        }
+        indexChannel = new PageChannel(index);
+    }
+
+    /** Return the index of the compressed data file file */
+    public static File indexOf(File file) {
+        return new File(file.getPath() + ".idx");
+    }
+
+    /** Return true if the specified data file is stored compressed */
+    public static boolean isUsedFor(File file) {
+        return indexOf(file).exists();
+    }
+
+    /** Return the number of pages in the file */
+    public synchronized int numPages() {
+        return numPages;
+    }
+
+    /**
+     * Read and decompress the specified page into data, whose length is the
+     * page size. A page past the end of the file reads as zeros.
+     *
+     * @return false if the extent of the page cannot be decompressed
+     */
+    public boolean readPage(int pageNumber, byte[] data) throws IOException {
+        long offset;
+        int length;
+        synchronized (this) {
+            if (pageNumber >= numPages) {
+                Arrays.fill(data, (byte) 0);
+                return true;
+            }
+            offset = offsets[pageNumber];
+            length = lengths[pageNumber];
+        }
+        if (length == data.length) {
+            // stored as is
+            return channel.read(ByteBuffer.wrap(data), offset) == length;
+        }
+        byte[] extent = new byte[length];
+        if (channel.read(ByteBuffer.wrap(extent), offset) < length)
+            return false;
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(extent);
+        try {
+            return inflater.inflate(data) == data.length && inflater.finished();
+        } catch (DataFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Compress the specified pages, append their extents to the file with
+     * a single write, and then point their index entries at them.
+     */
+    public void writePages(List<? extends Page> pages) throws IOException {
+        PageChecksums sums = channel.getChecksums();
+        byte[][] data = new byte[pages.size()][];
+        int total = 0;
+        for (int i = 0; i < data.length; i++) {
+            byte[] page = pages.get(i).getPageData();
+            if (sums != null) {
+                // the checksums are those of the pages, not of the extents
+                int pageNumber = pages.get(i).getId().getPageNumber();
+                sums.record(pageNumber, ByteBuffer.wrap(page));
+                sums.save(pageNumber, pageNumber);
+            }
+            data[i] = compress(page);
+            total += data[i].length;
+        }
+        ByteBuffer extents = ByteBuffer.allocate(total);
+        for (byte[] d : data)
+            extents.put(d);
+        extents.flip();
+        synchronized (this) {
+            long start = end;
+            channel.write(extents, start);
+            end += total;
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            long offset = start;
+            for (int i = 0; i < data.length; i++) {
+                int pageNumber = pages.get(i).getId().getPageNumber();
+                if (pageNumber >= offsets.length) {
+                    offsets = Arrays.copyOf(offsets, Math.max(2 * offsets.length, pageNumber + 1));
+                    lengths = Arrays.copyOf(lengths, offsets.length);
+                }
+                offsets[pageNumber] = offset;
+                lengths[pageNumber] = data[i].length;
+                numPages = Math.max(numPages, pageNumber + 1);
+                entry.clear();
+                entry.putLong(offset).putInt(data[i].length).flip();
+                indexChannel.write(entry, (long) pageNumber * ENTRY_SIZE);
+                offset += data[i].length;
+            }
+        }
+    }
+
+    /**
+     * Return the extent of a page with the specified data: the data
+     * compressed, or the data itself if it does not compress.
+     */
+    private static byte[] compress(byte[] page) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(page);
+        deflater.finish();
+        // anything that does not fit in fewer bytes than the page is stored as is
+        byte[] out = new byte[page.length];
+        int n = deflater.deflate(out);
+        if (!deflater.finished() || n >= page.length)
+            return page;
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Write a compressed copy of the uncompressed heap file src, with
+     * pages of the size of the BufferPool, to dst and its index.
+     */
+    public static void compress(File src, File dst) throws IOException {
+        dst.delete();
+        indexOf(dst).delete();
+        PageChannel channel = new PageChannel(dst);
+        CompressedPageFile compressed = new CompressedPageFile(dst, channel);
+        int pageSize = BufferPool.getPageSize();
+        long numPages = src.length() / pageSize;
+        try (RandomAccessFile in = new RandomAccessFile(src, "r")) {
+            List<Page> batch = new ArrayList<>();
+            for (int i = 0; i < numPages; i++) {
+                byte[] data = new byte[pageSize];
+                in.readFully(data);
+                batch.add(new RawPage(i, data));
+                if (batch.size() == PageChannel.MAX_COALESCED_PAGES || i == numPages - 1) {
+                    compressed.writePages(batch);
+                    batch.clear();
+                }
+            }
+        } finally {
+            compressed.close();
+            channel.close();
+        }
+    }
+
+    /** Close the index. It is reopened if it is written again. */
+    public void close() throws IOException {
+        indexChannel.close();
+    }
+
+    /** The bytes of a page being copied, as a Page */
+    private static class RawPage implements Page {
+        private final PageId pid;
+        private final byte[] data;
+
+        RawPage(int pageNumber, byte[] data) {
+            this.pid = new HeapPageId(0, pageNumber);
+            this.data = data;
+        }
+
+        public PageId getId() {
+            return pid;
+        }
+
+        public TransactionId isDirty() {
+            return null;
+        }
+
+        public void markDirty(boolean dirty, TransactionId tid) {
+        }
+
+        public byte[] getPageData() {
+            return data;
+        }
+
+        public Page getBeforeImage() {
+            return this;
+        }
+
+        public void setBeforeImage() {
+        }
+    }
+}
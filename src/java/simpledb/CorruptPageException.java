@@ -0,0 +1,27 @@
+package simpledb;
+
+import java.io.File;
+
+/**
+ * Exception thrown when the data of a page read from disk matches none of
+ * its checksums. The BufferPool reports it to the transaction that
+ * requested the page as a DbException with the same message.
+ *
+ * @see PageChecksums
+ */
+public class CorruptPageException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final PageId pid;
+
+    public CorruptPageException(PageId pid, File file) {
+        super("page " + pid.getPageNumber() + " of table " + pid.getTableId()
+                + " (" + file + ") does not match its checksum");
+        this.pid = pid;
+    }
+
+    /** Return the id of the corrupt page */
+    public PageId getPageId() {
+        return pid;
+    }
+}
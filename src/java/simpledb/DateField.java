@@ -0,0 +1,109 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Instance of Field that stores a date and time, as the number of
+ * milliseconds since 1970-01-01 00:00:00 UTC. Dates are compared as these
+ * numbers, without being formatted.
+ * <p>
+ * In text (data files and queries) a DateField is written yyyy-MM-dd, or
+ * yyyy-MM-dd HH:mm:ss[.SSS] if it has a time of day, in UTC.
+ */
+public class DateField implements Field {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final DateTimeFormatter TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss[.SSS]");
+    private static final DateTimeFormatter SECONDS =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter MILLIS =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final long millis;
+
+    /**
+     * @return the number of milliseconds since 1970-01-01 00:00:00 UTC
+     */
+    public long getTime() {
+        return millis;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param millis The number of milliseconds since 1970-01-01 00:00:00 UTC.
+     */
+    public DateField(long millis) {
+        this.millis = millis;
+    }
+
+    /**
+     * Parse a date in the text format of DateFields.
+     *
+     * @throws IllegalArgumentException if s is not a date
+     */
+    public static DateField parse(String s) {
+        s = s.trim();
+        try {
+            if (s.length() <= 10)
+                return new DateField(LocalDate.parse(s).toEpochDay() * MILLIS_PER_DAY);
+            return new DateField(LocalDateTime.parse(s, TIMESTAMP)
+                    .toInstant(ZoneOffset.UTC).toEpochMilli());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("not a date: " + s, e);
+        }
+    }
+
+    public String toString() {
+        LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+        if (t.toLocalTime().equals(LocalTime.MIDNIGHT))
+            return t.toLocalDate().toString();
+        return t.format(t.getNano() == 0 ? SECONDS : MILLIS);
+    }
+
+    public int hashCode() {
+        return Long.hashCode(millis);
+    }
+
+    public boolean equals(Object field) {
+        return ((DateField) field).millis == millis;
+    }
+
+    public void serialize(DataOutputStream dos) throws IOException {
+        dos.writeLong(millis);
+    }
+
+    public void serialize(ByteBuffer buf) {
+        buf.putLong(millis);
+    }
+
+    /**
+     * Compare the specified field to the value of this Field.
+     * Return semantics are as specified by Field.compare
+     *
+     * @throws IllegalCastException if val is not a DateField
+     * @see Field#compare
+     */
+    public boolean compare(Predicate.Op op, Field val) {
+        return LongField.compare(millis, op, ((DateField) val).millis);
+    }
+
+    /**
+     * Return the Type of this field.
+     * @return Type.DATE_TYPE
+     */
+    public Type getType() {
+        return Type.DATE_TYPE;
+    }
+}
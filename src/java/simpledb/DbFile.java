@@ -28,6 +28,90 @@ public interface DbFile {
      */
     public void writePage(Page p) throws IOException;
 
+    /**
+     * Push the specified pages to disk, as successive calls to writePage
+     * would. Files may coalesce pages that are adjacent on disk into single
+     * writes.
+     *
+     * @param pages the pages to write, which the call may reorder
+     * @throws IOException if a write fails
+     */
+    public default void writePages(List<Page> pages) throws IOException {
+        for (Page p : pages)
+            writePage(p);
+    }
+
+    /**
+     * Turn memory-mapped reads on or off. In memory-mapped mode readPage
+     * decodes pages straight from a read-only mapping of the file instead of
+     * reading them into a private buffer, which saves a system call and a
+     * copy per page miss for read-mostly tables that fit in the OS page
+     * cache. Files that do not support it ignore the setting.
+     */
+    public default void setMemoryMapped(boolean memoryMapped) {}
+
+    /**
+     * @return true if readPage reads through a mapping of the file
+     */
+    public default boolean isMemoryMapped() {
+        return false;
+    }
+
+    /**
+     * Turn page checksums on or off. With checksums on, a checksum of each
+     * page written is kept next to the file, and readPage throws a
+     * {@link CorruptPageException} if the page read matches none of its
+     * checksums, e.g. because its write was torn by a crash. Files that do
+     * not support it ignore the setting.
+     *
+     * @throws IOException if the checksums cannot be read
+     * @see PageChecksums
+     */
+    public default void setChecksummed(boolean checksummed) throws IOException {}
+
+    /**
+     * @return true if the pages of this file are checksummed
+     */
+    public default boolean isChecksummed() {
+        return false;
+    }
+
+    /**
+     * Verify the pages of this file as they are on disk against their
+     * checksums, without reading them into the buffer pool. Used to find
+     * corrupt pages that are not read for a long time.
+     *
+     * @param skip true of the pages not to verify, e.g. those cached in the
+     *   buffer pool, which are not read from disk anyway
+     * @return the numbers of the pages that match none of their checksums
+     * @throws IOException if the file cannot be read
+     * @see PageScrubber
+     */
+    public default List<Integer> scrub(java.util.function.Predicate<PageId> skip) throws IOException {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Called by the BufferPool before it drops a page dirtied by an aborted
+     * transaction, so that the file can forget what it learned from the
+     * changes, e.g. the free space of the page. Files that keep nothing
+     * about their pages ignore it.
+     *
+     * @param page the page as the aborted transaction left it, whose
+     *   before image is its contents on disk
+     */
+    public default void pageReverted(Page page) {}
+
+    /**
+     * Release the operating system resources (e.g. open file handles) held
+     * by this file. The file must remain usable: it may reacquire them if it
+     * is accessed again.
+     *
+     * @throws IOException if closing the underlying file fails
+     */
+    public default void close() throws IOException {
+    }
+
     /**
      * Inserts the specified tuple to the file on behalf of transaction.
      * This method will acquire a lock on the affected pages of the file, and
@@ -0,0 +1,54 @@
+package simpledb;
+
+/**
+ * StringField of a dictionary-encoded column, which keeps the code of its
+ * string in the dictionary of the column. Fields of the same dictionary
+ * are compared for equality by their codes.
+ *
+ * @see StringDictionary
+ */
+public class DictionaryField extends StringField {
+
+    private static final long serialVersionUID = 1L;
+
+    private final StringDictionary dictionary;
+    private final int code;
+
+    /**
+     * Constructor.
+     *
+     * @param dictionary the dictionary of the column
+     * @param code the code of the value of this field in the dictionary
+     */
+    public DictionaryField(StringDictionary dictionary, int code) {
+        super(dictionary.value(code), Type.STRING_LEN);
+        this.dictionary = dictionary;
+        this.code = code;
+    }
+
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public boolean equals(Object field) {
+        if (field instanceof DictionaryField && ((DictionaryField) field).dictionary == dictionary)
+            return ((DictionaryField) field).code == code;
+        return super.equals(field);
+    }
+
+    public int hashCode() {
+        // the hash of the string, which the dictionary keeps computed
+        return super.hashCode();
+    }
+
+    /**
+     * @return the Type for this Field
+     */
+    public Type getType() {
+        return Type.DICT_TYPE;
+    }
+}
@@ -0,0 +1,126 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * DictionaryFile stores the dictionaries of the dictionary-encoded columns
+ * of a HeapFile, in a file next to it. The file is a log of (column,
+ * string) records in the order the strings were added: the code of a
+ * string is its position among the strings of its column, and adding a
+ * string appends a record, which is forced to disk before the code can be
+ * written to a page.
+ *
+ * @see StringDictionary
+ * @see HeapFile
+ */
+public class DictionaryFile {
+
+    private final File file;
+    private final StringDictionary[] dictionaries;
+    private FileOutputStream fos;
+    private DataOutputStream out;
+    private boolean force = true;
+
+    /**
+     * Open the dictionaries of the DICT_TYPE columns of a table with the
+     * specified TupleDesc stored in file, which need not exist yet.
+     */
+    public DictionaryFile(File file, TupleDesc td) throws IOException {
+        this.file = file;
+        dictionaries = new StringDictionary[td.numFields()];
+        for (int i = 0; i < dictionaries.length; i++)
+            if (td.getFieldType(i) == Type.DICT_TYPE)
+                dictionaries[i] = new StringDictionary(this, i);
+        if (file.exists())
+            read();
+    }
+
+    /** Return the file the dictionaries of the specified data file are stored in */
+    public static File of(File dataFile) {
+        return new File(dataFile.getPath() + ".dict");
+    }
+
+    /** Return true if the specified TupleDesc has dictionary-encoded columns */
+    public static boolean isUsedFor(TupleDesc td) {
+        for (int i = 0; i < td.numFields(); i++)
+            if (td.getFieldType(i) == Type.DICT_TYPE)
+                return true;
+        return false;
+    }
+
+    /** Return the dictionary of column i, or null if it is not encoded */
+    public StringDictionary getDictionary(int i) {
+        return dictionaries[i];
+    }
+
+    /**
+     * Return a copy of the specified TupleDesc whose DICT_TYPE fields have
+     * the dictionaries of this file.
+     */
+    public TupleDesc attachTo(TupleDesc td) {
+        return new TupleDesc(td, dictionaries);
+    }
+
+    private void read() throws IOException {
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int column = in.readUnsignedShort();
+                String s = in.readUTF();
+                if (column >= dictionaries.length || dictionaries[column] == null)
+                    throw new IOException("dictionary " + file + " does not match its table");
+                dictionaries[column].add(s);
+                valid += 2 + 2 + utfLength(s);
+            }
+        } catch (EOFException e) {
+            // the end of the file, or a record cut short by a crash
+        }
+        if (valid < file.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(valid);
+            }
+        }
+    }
+
+    /** Return the number of bytes writeUTF writes s in, without its length */
+    private static int utfLength(String s) {
+        int len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            len += (c >= 0x0001 && c <= 0x007F) ? 1 : c > 0x07FF ? 3 : 2;
+        }
+        return len;
+    }
+
+    /**
+     * Turn off forcing every new string to disk, e.g. while a whole table is
+     * written; the strings are then forced when the file is closed.
+     */
+    public synchronized void setForce(boolean force) {
+        this.force = force;
+    }
+
+    /** Save a new string of the specified column */
+    synchronized void append(int column, String s) throws IOException {
+        if (out == null) {
+            fos = new FileOutputStream(file, true);
+            out = new DataOutputStream(new BufferedOutputStream(fos));
+        }
+        out.writeShort(column);
+        out.writeUTF(s);
+        out.flush();
+        if (force)
+            fos.getFD().sync();
+    }
+
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.flush();
+            fos.getFD().sync();
+            out.close();
+            out = null;
+            fos = null;
+        }
+    }
+}
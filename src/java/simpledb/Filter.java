@@ -5,11 +5,12 @@ import java.util.*;
 /**
  * Filter is an operator that implements a relational select.
  */
-public class Filter extends Operator {
+public class Filter extends Operator implements BatchOpIterator {
 
     private static final long serialVersionUID = 1L;
     private final Predicate predicate;
     private OpIterator child;
+    private transient TupleBatch buffer;
 
     /**
      * Constructor accepts a predicate to apply and a child operator to read
@@ -73,6 +74,22 @@ public class Filter extends Operator {
         return null;
     }
 
+    /**
+     * Returns the next batch of the child in which some rows pass the
+     * predicate, with its selection narrowed to those rows.
+     */
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (buffer == null)
+            buffer = new TupleBatch(child.getTupleDesc());
+        TupleBatch b;
+        while ((b = TupleBatch.next(child, buffer)) != null) {
+            predicate.filter(b);
+            if (b.size() > 0)
+                return b;
+        }
+        return null;
+    }
+
     @Override
     public OpIterator[] getChildren() {
         // some code goes here
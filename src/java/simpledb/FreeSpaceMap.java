@@ -0,0 +1,175 @@
+package simpledb;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * FreeSpaceMap records how full each page of a HeapFile is, so that an
+ * insert can find a page with room without reading the pages of the file
+ * one after the other.
+ * <p>
+ * The fullness of a page is summarized in a single byte, its category:
+ * 0 for a full page, and otherwise the fraction of free slots scaled to
+ * 1..255. The categories are the leaves of a complete binary max-tree, so
+ * the first page of at least a given category is found, and a category
+ * updated, in O(log n) (the same structure as the free space map of
+ * PostgreSQL, in memory).
+ * <p>
+ * The map is a hint: a page may have less (or more) room than its category
+ * says, e.g. while another transaction changes it. Users check the page
+ * itself and correct the map with {@link #update}. It may be stored next to
+ * the file it describes (see {@link HeapFile#setFreeSpaceMapSaved}), and is
+ * then only trusted if the file was not modified since it was saved;
+ * otherwise it is rebuilt from the pages.
+ *
+ * @Threadsafe
+ */
+public class FreeSpaceMap {
+
+    private static final int MAGIC = 0x46534d31; // "FSM1"
+
+    // tree[1] is the root, the category of page i is tree[leaves + i], and
+    // every inner node holds the maximum of its children
+    private byte[] tree;
+    private int leaves;
+    private int numPages;
+    private boolean dirty = false;
+    // length and modification time of the data file when the map was
+    // loaded or last saved
+    private long savedLength = -1;
+    private long savedLastModified = -1;
+
+    /** Create an empty map */
+    public FreeSpaceMap() {
+        leaves = 1;
+        tree = new byte[2];
+        numPages = 0;
+    }
+
+    /**
+     * Return the category of a page with the specified number of free slots
+     * out of numSlots.
+     */
+    public static int category(int freeSlots, int numSlots) {
+        if (freeSlots <= 0 || numSlots <= 0)
+            return 0;
+        return Math.max(1, (int) ((long) freeSlots * 255 / numSlots));
+    }
+
+    /** Return the number of pages the map knows about */
+    public synchronized int numPages() {
+        return numPages;
+    }
+
+    /** Return the category of the specified page, 0 if it is unknown */
+    public synchronized int get(int pageNumber) {
+        if (pageNumber < 0 || pageNumber >= numPages)
+            return 0;
+        return tree[leaves + pageNumber] & 0xff;
+    }
+
+    /**
+     * Set the category of the specified page, growing the map if the page
+     * is past its end.
+     */
+    public synchronized void update(int pageNumber, int category) {
+        if (pageNumber < 0)
+            throw new IllegalArgumentException("negative page number " + pageNumber);
+        if (pageNumber >= numPages) {
+            if (pageNumber >= leaves)
+                grow(pageNumber + 1);
+            numPages = pageNumber + 1;
+        }
+        int node = leaves + pageNumber;
+        if ((tree[node] & 0xff) == category)
+            return;
+        tree[node] = (byte) category;
+        dirty = true;
+        // propagate the maximum up, as long as it changes
+        for (node /= 2; node >= 1; node /= 2) {
+            byte max = (byte) Math.max(tree[2 * node] & 0xff, tree[2 * node + 1] & 0xff);
+            if (tree[node] == max)
+                break;
+            tree[node] = max;
+        }
+    }
+
+    /**
+     * Return the first page whose category is at least minCategory, or -1
+     * if there is none.
+     */
+    public synchronized int find(int minCategory) {
+        if ((tree[1] & 0xff) < minCategory)
+            return -1;
+        int node = 1;
+        while (node < leaves)
+            node = (tree[2 * node] & 0xff) >= minCategory ? 2 * node : 2 * node + 1;
+        return node - leaves;
+    }
+
+    private void grow(int pages) {
+        int newLeaves = leaves;
+        while (newLeaves < pages)
+            newLeaves *= 2;
+        byte[] newTree = new byte[2 * newLeaves];
+        System.arraycopy(tree, leaves, newTree, newLeaves, numPages);
+        for (int node = newLeaves - 1; node >= 1; node--)
+            newTree[node] = (byte) Math.max(newTree[2 * node] & 0xff, newTree[2 * node + 1] & 0xff);
+        tree = newTree;
+        leaves = newLeaves;
+    }
+
+    /**
+     * Load the map saved for the specified data file.
+     *
+     * @return the map, or null if none was saved or the data file changed
+     *   since it was
+     */
+    public static FreeSpaceMap load(File mapFile, File dataFile) {
+        if (!mapFile.exists())
+            return null;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mapFile)))) {
+            if (in.readInt() != MAGIC)
+                return null;
+            long length = in.readLong();
+            long lastModified = in.readLong();
+            if (length != dataFile.length() || lastModified != dataFile.lastModified())
+                return null;
+            int pages = in.readInt();
+            byte[] categories = new byte[pages];
+            in.readFully(categories);
+            FreeSpaceMap map = new FreeSpaceMap();
+            for (int i = pages - 1; i >= 0; i--)
+                map.update(i, categories[i] & 0xff);
+            map.dirty = false;
+            map.savedLength = length;
+            map.savedLastModified = lastModified;
+            return map;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Save the map next to the specified data file, unless neither changed
+     * since the map was loaded or last saved.
+     */
+    public synchronized void save(File mapFile, File dataFile) throws IOException {
+        long length = dataFile.length();
+        long lastModified = dataFile.lastModified();
+        if (!dirty && length == savedLength && lastModified == savedLastModified)
+            return;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(mapFile)))) {
+            out.writeInt(MAGIC);
+            out.writeLong(length);
+            out.writeLong(lastModified);
+            out.writeInt(numPages);
+            out.write(Arrays.copyOfRange(tree, leaves, leaves + numPages));
+        }
+        dirty = false;
+        savedLength = length;
+        savedLastModified = lastModified;
+    }
+}
@@ -1,18 +1,25 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * HashEquiJoin is a hybrid hash join: child1 is read into a hash table, and
+ * child2 probes it. When child1 does not fit in MAP_SIZE tuples, both
+ * inputs are split into NUM_PARTITIONS partitions by the hash of their join
+ * fields; partition 0 of child1 stays in memory and is probed as child2 is
+ * read, and the other partitions are spilled to temporary files and then
+ * joined pair by pair, so each input is read once and written at most
+ * once.
  */
-public class HashEquiJoin extends Operator {
+public class HashEquiJoin extends Operator implements BatchOpIterator {
 
     private static final long serialVersionUID = 1L;
     private JoinPredicate pred;
     private OpIterator child1, child2;
     private TupleDesc comboTD;
-    transient private Tuple t1 = null;
-    transient private Tuple t2 = null;
 
     /**
      * Constructor. Accepts to children to join and the predicate to join them
@@ -50,32 +57,331 @@ public class HashEquiJoin extends Operator {
 	return this.child2.getTupleDesc().getFieldName(this.pred.getField2());
     }
     
-    HashMap<Object, ArrayList<Tuple>> map = new HashMap<Object, ArrayList<Tuple>>();
+    /** The number of tuples of child1 held in memory at once */
     public final static int MAP_SIZE = 20000;
+    /** The number of partitions the inputs are split into once they spill */
+    public final static int NUM_PARTITIONS = 16;
 
+    // the spill files of the partitions of child1 and child2, null until
+    // child1 does not fit in MAP_SIZE tuples
+    transient private SpillFile[] buildParts, probeParts;
+    // the hash table: the tuples of child1 it holds, with for each the
+    // index of the next tuple with the same key or -1, and the first and
+    // last tuples of each group of equal keys
+    transient private Tuple[] buildTuples;
+    transient private int[] nextTuple, heads, tails;
+    transient private int numTuples, numGroups;
+    // the groups of the keys: without boxing them when both join fields
+    // are INT_TYPE, in a HashMap otherwise
+    transient private IntHashTable intGroups;
+    transient private HashMap<Field, Integer> groups;
+    // whether partition 0 of child1 is still held in the hash table
+    transient private boolean memoryPartition;
+    // the spilled partition being joined, NUM_PARTITIONS once done, and
+    // the iterators over its files
+    transient private int partition;
+    transient private DbFileIterator buildIt, probeIt;
+    // state between calls: the batch of child2 (or of a partition of it)
+    // being probed, the index of the next of its selected rows to probe,
+    // and the index of the next tuple of child1 matching the row probed
+    // last, or -1
+    transient private TupleBatch out, probeBuffer, probe;
+    transient private int probeIndex, probeRow;
+    transient private int match = -1;
+
+    /** Return the partition of the tuples whose join field is key */
+    static int partitionOf(Field key) {
+        return partitionOf(key.hashCode());
+    }
+
+    /**
+     * Return the partition of the tuples whose join field has the
+     * specified hash code (the value of an IntField)
+     */
+    private static int partitionOf(int hash) {
+        // the top bits of a multiplicative hash, which are independent of
+        // the low bits the hash tables bucket by
+        return (hash * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(NUM_PARTITIONS));
+    }
+
+    private int buildPartition(Tuple t) {
+        if (intGroups != null)
+            return partitionOf(t.getInt(pred.getField1()));
+        return partitionOf(t.getField(pred.getField1()));
+    }
+
+    private void clearTable() {
+        for (int i = 0; i < numTuples; i++)
+            buildTuples[i] = null;
+        numTuples = 0;
+        numGroups = 0;
+        if (intGroups != null)
+            intGroups.clear();
+        else
+            groups.clear();
+    }
+
+    /** Add a tuple of child1 to the hash table */
+    private void addToTable(Tuple t) {
+        int g;
+        if (intGroups != null) {
+            g = intGroups.add(t.getInt(pred.getField1()));
+        } else {
+            Field key = t.getField(pred.getField1());
+            Integer group = groups.get(key);
+            if (group == null)
+                groups.put(key, group = numGroups);
+            g = group;
+        }
+        if (numTuples == buildTuples.length) {
+            buildTuples = Arrays.copyOf(buildTuples, 2 * numTuples);
+            nextTuple = Arrays.copyOf(nextTuple, 2 * numTuples);
+        }
+        if (g == heads.length) {
+            heads = Arrays.copyOf(heads, 2 * g);
+            tails = Arrays.copyOf(tails, 2 * g);
+        }
+        int i = numTuples++;
+        // the tuple stays in memory, but not the page it was read from
+        t.detach();
+        buildTuples[i] = t;
+        nextTuple[i] = -1;
+        if (g == numGroups) {
+            numGroups++;
+            heads[g] = i;
+        } else {
+            nextTuple[tails[g]] = i;
+        }
+        tails[g] = i;
+    }
+
+    /**
+     * Return the index of the first tuple of the hash table matching the
+     * specified row of b, or -1 if there is none.
+     */
+    private int firstMatch(TupleBatch b, int row) {
+        int g;
+        if (intGroups != null) {
+            g = intGroups.find(b.getInt(pred.getField2(), row));
+        } else {
+            Integer group = groups.get(b.getField(pred.getField2(), row));
+            g = group == null ? -1 : group;
+        }
+        return g < 0 ? -1 : heads[g];
+    }
+
+    /**
+     * Read child1 into the hash table. If it does not fit in MAP_SIZE
+     * tuples, it is split into NUM_PARTITIONS partitions by the hash of
+     * its join field, and all of them but partition 0 are spilled to disk
+     * (partition 0 too if it still does not fit).
+     */
+    private void build() throws DbException, TransactionAbortedException {
+        clearTable();
+        try {
+            while (child1.hasNext()) {
+                Tuple t = child1.next();
+                int p = buildParts == null ? 0 : buildPartition(t);
+                if (p != 0 || !memoryPartition) {
+                    buildParts[p].add(t);
+                    continue;
+                }
+                addToTable(t);
+                if (numTuples <= MAP_SIZE)
+                    continue;
+                if (buildParts == null) {
+                    buildParts = new SpillFile[NUM_PARTITIONS];
+                    probeParts = new SpillFile[NUM_PARTITIONS];
+                    for (int i = 0; i < NUM_PARTITIONS; i++) {
+                        buildParts[i] = new SpillFile(child1.getTupleDesc());
+                        probeParts[i] = new SpillFile(child2.getTupleDesc());
+                    }
+                }
+                // keep the tuples of partition 0 if they fit, and spill the
+                // others
+                Tuple[] tuples = Arrays.copyOf(buildTuples, numTuples);
+                int[] parts = new int[tuples.length];
+                int inPartition0 = 0;
+                for (int i = 0; i < tuples.length; i++) {
+                    parts[i] = buildPartition(tuples[i]);
+                    if (parts[i] == 0)
+                        inPartition0++;
+                }
+                memoryPartition = inPartition0 <= MAP_SIZE;
+                clearTable();
+                for (int i = 0; i < tuples.length; i++) {
+                    if (parts[i] == 0 && memoryPartition)
+                        addToTable(tuples[i]);
+                    else
+                        buildParts[parts[i]].add(tuples[i]);
+                }
+            }
+        } catch (IOException e) {
+            throw new DbException("cannot spill join input: " + e.getMessage());
+        }
+        partition = buildParts == null ? NUM_PARTITIONS : -1;
+    }
+
+    /** Delete the spill files */
+    private void closePartitions() {
+        if (buildIt != null)
+            buildIt.close();
+        if (probeIt != null)
+            probeIt.close();
+        buildIt = probeIt = null;
+        if (buildParts != null) {
+            for (int i = 0; i < NUM_PARTITIONS; i++) {
+                buildParts[i].close();
+                probeParts[i].close();
+            }
+        }
+        buildParts = probeParts = null;
+        memoryPartition = true;
+    }
+
+    private void resetProbe() {
+        probe = null;
+        probeIndex = 0;
+        match = -1;
+    }
+
+    /**
+     * Load the next MAP_SIZE tuples of the partition being joined into the
+     * hash table.
+     *
+     * @return false if the partition has no more tuples
+     */
     private boolean loadMap() throws DbException, TransactionAbortedException {
-        int cnt = 0;
-        map.clear();
-        while (child1.hasNext()) {
-            t1 = child1.next();
-            ArrayList<Tuple> list = map.get(t1.getField(pred.getField1()));
-            if (list == null) {
-                list = new ArrayList<Tuple>();
-                map.put(t1.getField(pred.getField1()), list);
+        clearTable();
+        while (numTuples < MAP_SIZE && buildIt.hasNext())
+            addToTable(buildIt.next());
+        return numTuples > 0;
+    }
+
+    /**
+     * Move to the next spilled partition that has tuples on both sides, and
+     * load its first tuples of child1.
+     *
+     * @return false if there is none
+     */
+    private boolean nextPartition() throws DbException, TransactionAbortedException {
+        if (buildIt != null) {
+            buildIt.close();
+            probeIt.close();
+            buildIt = probeIt = null;
+        }
+        while (++partition < NUM_PARTITIONS) {
+            if (buildParts[partition].size() == 0 || probeParts[partition].size() == 0)
+                continue;
+            buildIt = buildParts[partition].iterator();
+            probeIt = probeParts[partition].iterator();
+            buildIt.open();
+            probeIt.open();
+            return loadMap();
+        }
+        clearTable();
+        return false;
+    }
+
+    /**
+     * Return the next batch of tuples of child2 to probe the hash table
+     * with, or null if there are no more. While child1 is spilled, the
+     * tuples of child2 that are not in partition 0 are spilled to the
+     * partitions of child2 instead; once child2 is exhausted, the spilled
+     * partitions are joined in turn, a hash table of MAP_SIZE tuples at a
+     * time.
+     */
+    private TupleBatch nextProbe() throws DbException, TransactionAbortedException {
+        if (probeBuffer == null)
+            probeBuffer = new TupleBatch(child2.getTupleDesc());
+        while (partition < NUM_PARTITIONS) {
+            if (partition < 0) {
+                TupleBatch b = TupleBatch.next(child2, probeBuffer);
+                if (b == null) {
+                    nextPartition();
+                    continue;
+                }
+                spillProbe(b);
+                if (b.size() > 0)
+                    return b;
+                continue;
+            }
+            probeBuffer.clear();
+            while (!probeBuffer.isFull() && probeIt.hasNext())
+                probeBuffer.addTuple(probeIt.next());
+            if (probeBuffer.size() > 0)
+                return probeBuffer;
+            // the partition of child2 is done: advance the partition of child1
+            if (loadMap())
+                probeIt.rewind();
+            else
+                nextPartition();
+        }
+        if (buildParts == null)
+            return TupleBatch.next(child2, probeBuffer);
+        return null;
+    }
+
+    /**
+     * Spill the selected rows of b that are not in a partition held in
+     * memory, and narrow its selection to the others.
+     */
+    private void spillProbe(TupleBatch b) throws DbException {
+        int f2 = pred.getField2();
+        int[] sel = b.selection();
+        int kept = 0;
+        try {
+            for (int i = 0; i < b.size(); i++) {
+                int r = sel[i];
+                int p = intGroups != null ? partitionOf(b.getInt(f2, r)) : partitionOf(b.getField(f2, r));
+                if (p == 0 && memoryPartition)
+                    sel[kept++] = r;
+                else if (buildParts[p].size() > 0)
+                    probeParts[p].add(b.getTuple(r));
             }
-            list.add(t1);
-            if (cnt++ == MAP_SIZE)
-                return true;
+        } catch (IOException e) {
+            throw new DbException("cannot spill join input: " + e.getMessage());
         }
-        return cnt > 0;
+        b.setSize(kept);
+    }
 
+    /**
+     * Move to the next tuple of child2 to probe, and look up its matches.
+     *
+     * @return false if there are no more tuples to probe
+     */
+    private boolean nextMatches() throws DbException, TransactionAbortedException {
+        while (probe == null || probeIndex >= probe.size()) {
+            probe = nextProbe();
+            probeIndex = 0;
+            if (probe == null)
+                return false;
+        }
+        probeRow = probe.row(probeIndex++);
+        match = firstMatch(probe, probeRow);
+        return true;
     }
 
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child1.open();
         child2.open();
-        loadMap();
+        if (child1.getTupleDesc().getFieldType(pred.getField1()) == Type.INT_TYPE
+                && child2.getTupleDesc().getFieldType(pred.getField2()) == Type.INT_TYPE) {
+            intGroups = new IntHashTable();
+            groups = null;
+        } else {
+            intGroups = null;
+            groups = new HashMap<Field, Integer>();
+        }
+        buildTuples = new Tuple[16];
+        nextTuple = new int[16];
+        heads = new int[16];
+        tails = new int[16];
+        numTuples = numGroups = 0;
+        memoryPartition = true;
+        build();
+        resetProbe();
         super.open();
     }
 
@@ -83,19 +389,28 @@ public class HashEquiJoin extends Operator {
         super.close();
         child2.close();
         child1.close();
-        this.t1=null;
-        this.t2=null;
-        this.listIt=null;
-        this.map.clear();
+        closePartitions();
+        resetProbe();
+        // release the hash table
+        buildTuples = null;
+        nextTuple = heads = tails = null;
+        intGroups = null;
+        groups = null;
+        numTuples = numGroups = 0;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        child1.rewind();
         child2.rewind();
+        if (buildParts != null) {
+            // the partitions of child2 are spilled again, and the hash table
+            // no longer holds partition 0 of child1
+            closePartitions();
+            child1.rewind();
+            build();
+        }
+        resetProbe();
     }
 
-    transient Iterator<Tuple> listIt = null;
-
     /**
      * Returns the next tuple generated by the join, or null if there are no
      * more tuples. Logically, this is the next tuple in r1 cross r2 that
@@ -114,49 +429,52 @@ public class HashEquiJoin extends Operator {
      * @return The next matching tuple.
      * @see JoinPredicate#filter
      */
-    private Tuple processList() throws TransactionAbortedException, DbException {
-        t1 = listIt.next();
-
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (match < 0) {
+            if (!nextMatches())
+                return null;
+        }
+        Tuple t1 = buildTuples[match];
+        match = nextTuple[match];
+        Tuple t2 = probe.getTuple(probeRow);
         int td1n = t1.getTupleDesc().numFields();
         int td2n = t2.getTupleDesc().numFields();
 
         // set fields in combined tuple
         Tuple t = new Tuple(comboTD);
         for (int i = 0; i < td1n; i++)
-            t.setField(i, t1.getField(i));
+            t.setField(i, t1, i);
         for (int i = 0; i < td2n; i++)
-            t.setField(td1n + i, t2.getField(i));
+            t.setField(td1n + i, t2, i);
         return t;
-
     }
 
-    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        if (listIt != null && listIt.hasNext()) {
-            return processList();
-        }
-
-        // loop around child2
-        while (child2.hasNext()) {
-            t2 = child2.next();
-
-            // if match, create a combined tuple and fill it with the values
-            // from both tuples
-            ArrayList<Tuple> l = map.get(t2.getField(pred.getField2()));
-            if (l == null)
+    /**
+     * Returns the next batch of joined tuples. child2 is probed against
+     * the hash table a batch at a time, and the joined rows are written to
+     * the column vectors of the output batch.
+     */
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (out == null)
+            out = new TupleBatch(comboTD);
+        out.clear();
+        int td1n = child1.getTupleDesc().numFields();
+        int td2n = child2.getTupleDesc().numFields();
+        while (!out.isFull()) {
+            if (match >= 0) {
+                Tuple left = buildTuples[match];
+                match = nextTuple[match];
+                int r = out.addRow();
+                for (int i = 0; i < td1n; i++)
+                    out.setField(i, r, left, i);
+                for (int i = 0; i < td2n; i++)
+                    out.setField(td1n + i, r, probe, i, probeRow);
                 continue;
-            listIt = l.iterator();
-
-            return processList();
-
-        }
-
-        // child2 is done: advance child1
-        child2.rewind();
-        if (loadMap()) {
-            return fetchNext();
+            }
+            if (!nextMatches())
+                break;
         }
-
-        return null;
+        return out.size() == 0 ? null : out;
     }
 
     @Override
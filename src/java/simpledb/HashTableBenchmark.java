@@ -0,0 +1,181 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Compares the IntHashTable paths of HashEquiJoin and IntegerAggregator
+ * with the HashMap paths they replace, for int keys.
+ * <p>
+ * Usage:
+ * <pre>
+ *   java -Xmx16g -cp dist/simpledb.jar simpledb.HashTableBenchmark [passes [keys...]]
+ * </pre>
+ * e.g. <tt>3 1000000 10000000 100000000</tt>; the default is 3 passes over
+ * 1M and 10M keys. For each number of keys n, and each kind of table:
+ * <ul>
+ * <li>join build: n tuple indexes are chained under n random keys;</li>
+ * <li>join probe: n random keys, half of them present, are looked up;</li>
+ * <li>group by: the count and sum of n values are aggregated into n / 4
+ * random groups.</li>
+ * </ul>
+ * The HashMap side is skipped (and reported as such) when its boxed
+ * entries do not fit in the heap, which at 100M keys needs far more than
+ * the IntHashTable side. The first pass includes the JIT warm-up.
+ */
+public class HashTableBenchmark {
+
+    public static void main(String[] args) {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        ArrayList<Integer> sizes = new ArrayList<Integer>();
+        for (int i = 1; i < args.length; i++)
+            sizes.add(Integer.parseInt(args[i]));
+        if (sizes.isEmpty()) {
+            sizes.add(1000000);
+            sizes.add(10000000);
+        }
+        for (int n : sizes) {
+            int[] keys = randomKeys(n, 1);
+            int[] probes = randomKeys(n, 2);
+            for (int i = 0; i < n; i += 2)
+                probes[i] = keys[i];
+            int[] groupKeys = randomKeys(n, 3);
+            for (int i = 0; i < n; i++)
+                groupKeys[i] = groupKeys[i % Math.max(n / 4, 1)];
+            for (int pass = 0; pass < passes; pass++) {
+                System.out.printf("%,d keys, pass %d%n", n, pass + 1);
+                intJoin(keys, probes);
+                try {
+                    mapJoin(keys, probes);
+                } catch (OutOfMemoryError e) {
+                    System.out.println("  HashMap      join: out of memory");
+                }
+                intGroupBy(groupKeys);
+                try {
+                    mapGroupBy(groupKeys);
+                } catch (OutOfMemoryError e) {
+                    System.out.println("  HashMap      group by: out of memory");
+                }
+            }
+        }
+    }
+
+    private static int[] randomKeys(int n, long seed) {
+        Random r = new Random(seed);
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = r.nextInt();
+        return keys;
+    }
+
+    private static void report(String name, String phase, long start, int n, long check) {
+        double ns = (double) (System.nanoTime() - start) / n;
+        System.out.printf("  %-12s %-10s %8.1f ns/key   (%d)%n", name, phase, ns, check);
+    }
+
+    /** The hash table of HashEquiJoin: groups of keys and chains of tuples */
+    private static void intJoin(int[] keys, int[] probes) {
+        int n = keys.length;
+        long start = System.nanoTime();
+        IntHashTable groups = new IntHashTable();
+        int[] next = new int[n];
+        int[] heads = new int[16];
+        int[] tails = new int[16];
+        for (int i = 0; i < n; i++) {
+            int size = groups.size();
+            int g = groups.add(keys[i]);
+            if (g == heads.length) {
+                heads = Arrays.copyOf(heads, 2 * g);
+                tails = Arrays.copyOf(tails, 2 * g);
+            }
+            next[i] = -1;
+            if (g == size)
+                heads[g] = i;
+            else
+                next[tails[g]] = i;
+            tails[g] = i;
+        }
+        report("IntHashTable", "join build", start, n, groups.size());
+
+        start = System.nanoTime();
+        long matches = 0;
+        for (int i = 0; i < n; i++) {
+            int g = groups.find(probes[i]);
+            if (g >= 0)
+                for (int t = heads[g]; t >= 0; t = next[t])
+                    matches++;
+        }
+        report("IntHashTable", "join probe", start, n, matches);
+    }
+
+    /** The hash table HashEquiJoin used to build: boxed keys, lists of tuples */
+    private static void mapJoin(int[] keys, int[] probes) {
+        int n = keys.length;
+        long start = System.nanoTime();
+        HashMap<Object, ArrayList<Integer>> map = new HashMap<Object, ArrayList<Integer>>();
+        for (int i = 0; i < n; i++) {
+            Field key = new IntField(keys[i]);
+            ArrayList<Integer> list = map.get(key);
+            if (list == null) {
+                list = new ArrayList<Integer>();
+                map.put(key, list);
+            }
+            list.add(i);
+        }
+        report("HashMap", "join build", start, n, map.size());
+
+        start = System.nanoTime();
+        long matches = 0;
+        for (int i = 0; i < n; i++) {
+            ArrayList<Integer> list = map.get(new IntField(probes[i]));
+            if (list != null)
+                matches += list.size();
+        }
+        report("HashMap", "join probe", start, n, matches);
+    }
+
+    /** The int group-by of IntegerAggregator */
+    private static void intGroupBy(int[] keys) {
+        long start = System.nanoTime();
+        IntHashTable groups = new IntHashTable();
+        int[] counts = new int[16];
+        int[] sums = new int[16];
+        for (int i = 0; i < keys.length; i++) {
+            int size = groups.size();
+            int g = groups.add(keys[i]);
+            if (g == counts.length) {
+                counts = Arrays.copyOf(counts, 2 * g);
+                sums = Arrays.copyOf(sums, 2 * g);
+            }
+            if (g == size) {
+                counts[g] = 1;
+                sums[g] = i;
+            } else {
+                counts[g]++;
+                sums[g] += i;
+            }
+        }
+        report("IntHashTable", "group by", start, keys.length, groups.size());
+    }
+
+    /** The group-by IntegerAggregator used: one boxed map per aggregate */
+    private static void mapGroupBy(int[] keys) {
+        long start = System.nanoTime();
+        HashMap<Field, Integer> counts = new HashMap<Field, Integer>();
+        HashMap<Field, Integer> sums = new HashMap<Field, Integer>();
+        for (int i = 0; i < keys.length; i++) {
+            Field group = new IntField(keys[i]);
+            if (!counts.containsKey(group))
+                counts.put(group, 1);
+            else
+                counts.put(group, counts.get(group) + 1);
+            if (!sums.containsKey(group))
+                sums.put(group, i);
+            else
+                sums.put(group, sums.get(group) + i);
+        }
+        report("HashMap", "group by", start, keys.length, counts.size());
+    }
+}
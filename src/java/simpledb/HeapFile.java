@@ -2,6 +2,7 @@ package simpledb;
 
 import java.io.*;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -9,15 +10,35 @@ import java.util.*;
  * in no particular order. Tuples are stored on pages, each of which is a fixed
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
- * constructor.
+ * constructor. Tables with variable-length fields store their tuples in
+ * SlottedHeapPages instead, whose records only take the bytes they need,
+ * and PaxFiles store theirs in PaxPages, column by column.
+ * The dictionaries of dictionary-encoded columns are kept in a
+ * DictionaryFile next to the file, and attached to the TupleDesc of the
+ * HeapFile, through which the pages read and write the codes. Pages may
+ * be checksummed, in a PageChecksums file next to the file. A file with a
+ * CompressedPageFile index next to it stores its pages compressed; such a
+ * file is never memory-mapped.
  *
  * @see simpledb.HeapPage#HeapPage
+ * @see SlottedHeapPage
  * @author Sam Madden
  */
 public class HeapFile implements DbFile {
 
     private final File file;
     private final TupleDesc tupleDesc;
+    private final PageChannel channel;
+    // whether the pages are SlottedHeapPages rather than HeapPages
+    private final boolean slotted;
+    // the extents of the pages if they are compressed, null otherwise
+    private final CompressedPageFile compressed;
+    // the dictionaries of the DICT_TYPE columns, or null if there are none
+    private final DictionaryFile dictionaries;
+    // loaded or rebuilt on the first insert, guarded by this
+    private FreeSpaceMap freeSpace;
+    // whether the free space map is saved next to the file on close
+    private volatile boolean freeSpaceMapSaved = false;
 
     /**
      * Constructs a heap file backed by the specified file.
@@ -29,7 +50,28 @@ public class HeapFile implements DbFile {
     public HeapFile(File f, TupleDesc td) {
         // some code goes here
         file = f;
+        if (DictionaryFile.isUsedFor(td)) {
+            try {
+                dictionaries = new DictionaryFile(DictionaryFile.of(f), td);
+            } catch (IOException e) {
+                throw new RuntimeException("could not read the dictionaries of " + f, e);
+            }
+            td = dictionaries.attachTo(td);
+        } else {
+            dictionaries = null;
+        }
         tupleDesc = td;
+        channel = new PageChannel(f);
+        slotted = SlottedHeapPage.isUsedFor(td);
+        if (CompressedPageFile.isUsedFor(f)) {
+            try {
+                compressed = new CompressedPageFile(f, channel);
+            } catch (IOException e) {
+                throw new RuntimeException("could not read the page index of " + f, e);
+            }
+        } else {
+            compressed = null;
+        }
     }
 
     /**
@@ -71,15 +113,20 @@ public class HeapFile implements DbFile {
         // some code goes here
         if(pid.getTableId() != getId())
             throw  new IllegalArgumentException();
-        int pageSize = BufferPool.getPageSize();
         int pageNumber = pid.getPageNumber();
         HeapPageId hpid = new HeapPageId(pid.getTableId(),pid.getPageNumber());
-        byte[] data = new byte[pageSize];
         try {
-            RandomAccessFile raf = new RandomAccessFile(file,"r");
-            raf.seek((long) pageSize *pageNumber);
-            raf.read(data,0,pageSize);
-            return new HeapPage(hpid,data);
+            ByteBuffer mapped = readPageData(pageNumber);
+            if (mapped == null)
+                throw new CorruptPageException(hpid, file);
+            channel.verify(hpid, mapped);
+            HeapFilePage page = newPage(hpid, mapped);
+            // the page as it is on disk is the best hint there is; pages
+            // the map does not know yet are added by insertTuple
+            FreeSpaceMap map = loadedFreeSpaceMap();
+            if (map != null && pageNumber < map.numPages())
+                updateFreeSpace(map, page);
+            return page;
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -87,21 +134,169 @@ public class HeapFile implements DbFile {
         return null;
     }
 
+    /**
+     * Construct a page of this file from its bytes: a SlottedHeapPage if
+     * the table has variable-length fields, a HeapPage otherwise.
+     * Subclasses that lay their pages out differently override it.
+     *
+     * @see PaxFile
+     */
+    protected HeapFilePage newPage(HeapPageId pid, ByteBuffer data) throws IOException {
+        return slotted ? new SlottedHeapPage(pid, tupleDesc, data) : new HeapPage(pid, data);
+    }
+
+    /**
+     * Return the bytes of the specified page: a view of the mapping of the
+     * file in memory-mapped mode, a buffer of their own otherwise. A page
+     * past the end of the file reads as an empty page.
+     *
+     * @return the bytes, or null if the page is compressed and its extent
+     *   cannot be decompressed
+     */
+    private ByteBuffer readPageData(int pageNumber) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        if (compressed != null) {
+            byte[] data = new byte[pageSize];
+            return compressed.readPage(pageNumber, data) ? ByteBuffer.wrap(data) : null;
+        }
+        long offset = (long) pageSize * pageNumber;
+        ByteBuffer mapped = channel.slice(offset, pageSize);
+        if (mapped == null) {
+            byte[] data = new byte[pageSize];
+            channel.read(ByteBuffer.wrap(data), offset);
+            mapped = ByteBuffer.wrap(data);
+        }
+        return mapped;
+    }
+
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
         // some code goes here
         // not necessary for lab1
 
-        // this try-catch block manages automatically the resource
-        // then the file is not closed "by hand"
-        try (RandomAccessFile raFile = new RandomAccessFile(file, "rw")) {
-            //numPages++;
-            long offset = (long) page.getId().getPageNumber() * BufferPool.getPageSize();
-            raFile.seek(offset);
-            raFile.write(page.getPageData());
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (compressed != null) {
+            compressed.writePages(Collections.singletonList(page));
+            return;
+        }
+        long offset = (long) page.getId().getPageNumber() * BufferPool.getPageSize();
+        channel.writePage(page, offset);
+    }
+
+    // see DbFile.java for javadocs
+    public void writePages(List<Page> pages) throws IOException {
+        pages.sort(Comparator.comparingInt(p -> p.getId().getPageNumber()));
+        if (compressed != null) {
+            compressed.writePages(pages);
+            return;
         }
+        channel.writePages(pages, p -> (long) p.getId().getPageNumber() * BufferPool.getPageSize());
+    }
+
+    // see DbFile.java for javadocs
+    public void setMemoryMapped(boolean memoryMapped) {
+        if (compressed == null)
+            channel.setMemoryMapped(memoryMapped);
+    }
+
+    // see DbFile.java for javadocs
+    public boolean isMemoryMapped() {
+        return channel.isMemoryMapped();
+    }
+
+    // see DbFile.java for javadocs
+    public synchronized void setChecksummed(boolean checksummed) throws IOException {
+        PageChecksums old = channel.getChecksums();
+        if (checksummed == (old != null))
+            return;
+        channel.setChecksums(checksummed
+                ? new PageChecksums(PageChecksums.of(file), numPages()) : null);
+        if (old != null)
+            old.close();
+    }
+
+    // see DbFile.java for javadocs
+    public boolean isChecksummed() {
+        return channel.getChecksums() != null;
+    }
+
+    // see DbFile.java for javadocs
+    public List<Integer> scrub(java.util.function.Predicate<PageId> skip) throws IOException {
+        List<Integer> corrupt = new ArrayList<>();
+        PageChecksums sums = channel.getChecksums();
+        if (sums == null)
+            return corrupt;
+        int numPages = numPages();
+        for (int i = 0; i < numPages; i++) {
+            if (skip.test(new HeapPageId(getId(), i)))
+                continue;
+            ByteBuffer data = readPageData(i);
+            if (data == null || !sums.matches(i, data))
+                corrupt.add(i);
+        }
+        return corrupt;
+    }
+
+    // see DbFile.java for javadocs
+    public void close() throws IOException {
+        FreeSpaceMap map = loadedFreeSpaceMap();
+        if (map != null && freeSpaceMapSaved)
+            map.save(freeSpaceMapFile(), file);
+        if (dictionaries != null)
+            dictionaries.close();
+        if (compressed != null)
+            compressed.close();
+        channel.close();
+    }
+
+    /**
+     * Save the free space map next to the file when it is closed, and load
+     * it from there, rather than rebuild it from the pages the first time
+     * a tuple is inserted. Only worth it for tables that outlive the
+     * process, such as those of the catalog; off by default, so that
+     * temporary tables leave no map behind.
+     */
+    public void setFreeSpaceMapSaved(boolean saved) {
+        freeSpaceMapSaved = saved;
+    }
+
+    /** Return the file the free space map of this HeapFile is saved in */
+    public File freeSpaceMapFile() {
+        return new File(file.getPath() + ".fsm");
+    }
+
+    private synchronized FreeSpaceMap loadedFreeSpaceMap() {
+        return freeSpace;
+    }
+
+    /**
+     * Return the free space map of this file, loading it, or rebuilding it
+     * from the pages on disk if the saved one is missing or out of date.
+     */
+    synchronized FreeSpaceMap freeSpaceMap() {
+        if (freeSpace == null) {
+            FreeSpaceMap map = freeSpaceMapSaved
+                    ? FreeSpaceMap.load(freeSpaceMapFile(), file) : null;
+            if (map == null) {
+                map = new FreeSpaceMap();
+                int numPages = numPages();
+                for (int i = 0; i < numPages; i++)
+                    updateFreeSpace(map, (HeapFilePage) readPage(new HeapPageId(getId(), i)));
+            }
+            freeSpace = map;
+        }
+        return freeSpace;
+    }
+
+    // see DbFile.java for javadocs
+    public void pageReverted(Page page) {
+        // the map followed the changes of the aborted transaction
+        FreeSpaceMap map = loadedFreeSpaceMap();
+        if (map != null)
+            updateFreeSpace(map, (HeapFilePage) page.getBeforeImage());
+    }
+
+    private static void updateFreeSpace(FreeSpaceMap map, HeapFilePage page) {
+        map.update(page.getId().getPageNumber(), page.getFreeSpaceCategory());
     }
 
     /**
@@ -109,6 +304,8 @@ public class HeapFile implements DbFile {
      */
     public int numPages() {
         // some code goes here
+        if (compressed != null)
+            return compressed.numPages();
         return (int) (file.length() / BufferPool.getPageSize());
     }
 
@@ -119,34 +316,43 @@ public class HeapFile implements DbFile {
         // not necessary for proj1
         ArrayList<Page> writtenPages = new ArrayList<>();
 
+        // only visit the pages the free space map says have room
+        FreeSpaceMap map = freeSpaceMap();
         int numPages = this.numPages();
-        for(int i = 0; i < numPages; ++i){
+        // a slotted page needs enough free bytes for the record
+        int minCategory = slotted ? SlottedHeapPage.minCategory(tupleDesc, t) : 1;
+        int i;
+        while ((i = map.find(minCategory)) >= 0 && i < numPages) {
             HeapPageId hpid = new HeapPageId(getId(), i);
             // access the page corresponding to the heappage index
-            HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, hpid, Permissions.READ_WRITE);
+            HeapFilePage page = (HeapFilePage) Database.getBufferPool().getPage(tid, hpid, Permissions.READ_WRITE);
 
             // for each page, if has slots
             // write the page
-            if (page.getNumEmptySlots() != 0) {
+            if (page.hasRoomFor(t)) {
                 page.insertTuple(t);
                 page.markDirty(true, tid);
                 writtenPages.add(page);
-                break;
             }
+            // the map may have been out of date
+            updateFreeSpace(map, page);
+            if (!writtenPages.isEmpty())
+                break;
         }
         // if I never exited the loop
         // i.e. no page written
         if (writtenPages.size() == 0){
             HeapPageId hpid = new HeapPageId(getId(), numPages);
 
-            HeapPage blank = (HeapPage) Database.getBufferPool().getPage(tid, hpid, Permissions.READ_WRITE);
+            HeapFilePage blank = (HeapFilePage) Database.getBufferPool().getPage(tid, hpid, Permissions.READ_WRITE);
             writePage(blank);
 
 
-            HeapPage newPage = (HeapPage) Database.getBufferPool().getPage(tid, hpid, Permissions.READ_WRITE);
+            HeapFilePage newPage = (HeapFilePage) Database.getBufferPool().getPage(tid, hpid, Permissions.READ_WRITE);
             newPage.insertTuple(t);
             newPage.markDirty(true, tid);
             writtenPages.add(newPage);
+            updateFreeSpace(map, newPage);
         }
 
         return writtenPages;
@@ -159,8 +365,9 @@ public class HeapFile implements DbFile {
         // some code goes here
         // not necessary for lab1
         RecordId rid = t.getRecordId();
-        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, rid.getPageId(), Permissions.READ_WRITE);
+        HeapFilePage page = (HeapFilePage) Database.getBufferPool().getPage(tid, rid.getPageId(), Permissions.READ_WRITE);
         page.deleteTuple(t);
+        updateFreeSpace(freeSpaceMap(), page);
         return new ArrayList<>(Collections.singletonList(page));
     }
 
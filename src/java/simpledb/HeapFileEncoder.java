@@ -1,7 +1,10 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.regex.Pattern;
 
 /**
  * HeapFileEncoder reads a comma delimited text file or accepts
@@ -78,7 +81,13 @@ public class HeapFileEncoder {
     * The format of the output file will be as specified in HeapPage and
     * HeapFile.
     *
+    * If any of the types has a variable length, the pages are written in
+    * the format of SlottedHeapPage instead, and npagebytes must be the page
+    * size of the BufferPool. The dictionaries of DICT_TYPE fields are
+    * written to the DictionaryFile of outFile.
+    *
     * @see HeapPage
+    * @see SlottedHeapPage
     * @see HeapFile
     * @param inFile The input file to read data from
     * @param outFile The output file to write data to
@@ -90,10 +99,60 @@ public class HeapFileEncoder {
   public static void convert(File inFile, File outFile, int npagebytes,
                  int numFields, Type[] typeAr, char fieldSeparator)
       throws IOException {
+      convert(inFile, outFile, npagebytes, numFields, typeAr, fieldSeparator, false);
+  }
+
+  /**
+   * Convert the specified input text file into a binary page file, as
+   * {@link #convert(File, File, int, int, Type[], char)} does, in the
+   * format of PaxPage if columnar. The types of a columnar file must all
+   * have fixed lengths.
+   *
+   * @see PaxFile
+   */
+  public static void convert(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, char fieldSeparator, boolean columnar)
+      throws IOException {
+
+      TupleDesc td = new TupleDesc(Arrays.copyOf(typeAr, numFields));
+      // the checksums and the index of a previous version no longer apply
+      PageChecksums.of(outFile).delete();
+      CompressedPageFile.indexOf(outFile).delete();
+      DictionaryFile dictionaries = null;
+      if (DictionaryFile.isUsedFor(td)) {
+          // the table is written anew, and so are its dictionaries
+          File dictionaryFile = DictionaryFile.of(outFile);
+          dictionaryFile.delete();
+          dictionaries = new DictionaryFile(dictionaryFile, td);
+          dictionaries.setForce(false);
+          td = dictionaries.attachTo(td);
+      }
+      try {
+          if (SlottedHeapPage.isUsedFor(td)) {
+              if (columnar)
+                  throw new IllegalArgumentException("columnar pages cannot store variable-length fields");
+              convertSlotted(inFile, outFile, npagebytes, td, fieldSeparator);
+          } else {
+              convertFixed(inFile, outFile, npagebytes, numFields, typeAr, fieldSeparator, td);
+              if (columnar)
+                  transposePages(outFile, npagebytes, td);
+          }
+      } finally {
+          if (dictionaries != null)
+              dictionaries.close();
+      }
+  }
+
+  /**
+   * Convert the specified input text file into a file of HeapPages.
+   */
+  private static void convertFixed(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, char fieldSeparator, TupleDesc td)
+      throws IOException {
 
       int nrecbytes = 0;
       for (int i = 0; i < numFields ; i++) {
-          nrecbytes += typeAr[i].getLen();
+          nrecbytes += td.getFieldLen(i);
       }
       int nrecords = (npagebytes * 8) /  (nrecbytes * 8 + 1);  //floor comes for free
       
@@ -157,6 +216,19 @@ public class HeapFileEncoder {
                 while (overflow-- > 0)
                     pageStream.write((byte)0);
             }
+            else if (typeAr[fieldNo] == Type.DICT_TYPE) {
+                pageStream.writeInt(td.getDictionary(fieldNo).encode(s.trim()));
+            }
+            else {
+                try {
+                    typeAr[fieldNo].parse(s).serialize(pageStream);
+                } catch (IllegalArgumentException e) {
+                    System.out.println ("BAD LINE : " + s);
+                    // keep the following fields in place
+                    for (int k = 0; k < typeAr[fieldNo].getLen(); k++)
+                        pageStream.writeByte(0);
+                }
+            }
             curpos = 0;
             if (c == '\n')
                 fieldNo = 0;
@@ -223,4 +295,72 @@ public class HeapFileEncoder {
     br.close();
     os.close();
   }
+
+  /**
+   * Rewrite the HeapPages of the specified file as PaxPages.
+   */
+  private static void transposePages(File file, int npagebytes, TupleDesc td)
+      throws IOException {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+          byte[] page = new byte[npagebytes];
+          long numPages = raf.length() / npagebytes;
+          for (long i = 0; i < numPages; i++) {
+              raf.seek(i * npagebytes);
+              raf.readFully(page);
+              raf.seek(i * npagebytes);
+              raf.write(PaxPage.fromRows(td, page));
+          }
+      }
+  }
+
+  /**
+   * Convert the specified input text file into a file of SlottedHeapPages,
+   * filling each page with as many records as fit.
+   */
+  private static void convertSlotted(File inFile, File outFile, int npagebytes,
+                 TupleDesc td, char fieldSeparator) throws IOException {
+      if (npagebytes != BufferPool.getPageSize())
+          throw new IllegalArgumentException("slotted pages must have the page size of the BufferPool");
+      BufferedReader br = new BufferedReader(new FileReader(inFile));
+      FileOutputStream os = new FileOutputStream(outFile);
+      int npages = 0;
+      SlottedHeapPage page = emptySlottedPage(td, npages);
+      boolean pageEmpty = true;
+      String line;
+      while ((line = br.readLine()) != null) {
+          if (line.isEmpty())
+              continue;
+          String[] values = line.split(Pattern.quote(String.valueOf(fieldSeparator)), -1);
+          Tuple t = new Tuple(td);
+          try {
+              for (int j = 0; j < td.numFields(); j++) {
+                  String s = j < values.length ? values[j].trim() : "";
+                  t.setField(j, td.getFieldType(j).parse(s));
+              }
+          } catch (IllegalArgumentException e) {
+              System.out.println ("BAD LINE : " + line);
+              continue;
+          }
+          try {
+              if (!page.hasRoomFor(t)) {
+                  os.write(page.getPageData());
+                  page = emptySlottedPage(td, ++npages);
+              }
+              page.insertTuple(t);
+              pageEmpty = false;
+          } catch (DbException e) {
+              throw new IOException(e);
+          }
+      }
+      // flush the last page, or an empty page if the file is empty
+      if (!pageEmpty || npages == 0)
+          os.write(page.getPageData());
+      br.close();
+      os.close();
+  }
+
+  private static SlottedHeapPage emptySlottedPage(TupleDesc td, int pageNo) throws IOException {
+      return new SlottedHeapPage(new HeapPageId(0, pageNo), td,
+              ByteBuffer.wrap(HeapPage.createEmptyPageData()));
+  }
 }
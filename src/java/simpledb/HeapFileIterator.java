@@ -7,8 +7,12 @@ public class HeapFileIterator implements DbFileIterator {
     private final TransactionId transactionId;
     private int currentPageNumber;
     private HeapPageId currentHPId;
-    private HeapPage currentHP;
+    private HeapFilePage currentHP;
     private Iterator<Tuple> iterator;
+    // private frames for scans larger than a fraction of the pool
+    private BufferRing ring;
+    // reads the next pages into the pool in the background
+    private ReadAhead readAhead;
 
     public HeapFileIterator(int numPages, int heapFileId, TransactionId transactionId) {
         this.numPages = numPages;
@@ -23,8 +27,15 @@ public class HeapFileIterator implements DbFileIterator {
     @Override
     public void open() throws DbException, TransactionAbortedException {
         currentPageNumber = 0;
+        ring = Database.getBufferPool().newScanRing(numPages);
+        readAhead = Database.getBufferPool().newReadAhead(ring, page -> {
+            int next = page.getId().getPageNumber() + 1;
+            return next < numPages ? new HeapPageId(heapFileId, next) : null;
+        });
         currentHPId = new HeapPageId(heapFileId, currentPageNumber);
-        currentHP = (HeapPage)Database.getBufferPool().getPage(transactionId, currentHPId, null);
+        if (readAhead != null)
+            readAhead.access(currentHPId);
+        currentHP = (HeapFilePage) Database.getBufferPool().getPage(transactionId, currentHPId, Permissions.READ_ONLY, ring);
         iterator = currentHP.iterator();
     }
 
@@ -79,6 +90,10 @@ public class HeapFileIterator implements DbFileIterator {
         currentHPId = null;
         currentHP = null;
         iterator = null;
+        ring = null;
+        if (readAhead != null)
+            readAhead.close();
+        readAhead = null;
     }
 
     /**
@@ -87,7 +102,9 @@ public class HeapFileIterator implements DbFileIterator {
     public void advanceToNextPage() throws TransactionAbortedException, DbException {
         ++currentPageNumber;
         currentHPId = new HeapPageId(heapFileId, currentPageNumber);
-        currentHP = (HeapPage) Database.getBufferPool().getPage(transactionId, currentHPId, null);
+        if (readAhead != null)
+            readAhead.access(currentHPId);
+        currentHP = (HeapFilePage) Database.getBufferPool().getPage(transactionId, currentHPId, Permissions.READ_ONLY, ring);
         iterator = currentHP.iterator();
     }
 }
@@ -0,0 +1,48 @@
+package simpledb;
+
+import java.util.Iterator;
+
+/**
+ * HeapFilePage is a page of a HeapFile, in either of the page formats a
+ * HeapFile can use: {@link HeapPage}, whose tuples have fixed-size slots,
+ * or {@link SlottedHeapPage}, whose records have the size of their values.
+ *
+ * @see HeapFile
+ */
+public interface HeapFilePage extends Page {
+
+    public HeapPageId getId();
+
+    /**
+     * @return true if the specified tuple can be inserted into this page
+     */
+    public boolean hasRoomFor(Tuple t);
+
+    /**
+     * @return how much room this page has left, as a category of the
+     *   {@link FreeSpaceMap}
+     */
+    public int getFreeSpaceCategory();
+
+    /**
+     * Adds the specified tuple to the page, and sets its RecordId.
+     *
+     * @throws DbException if the page has no room for it or its TupleDesc
+     *   does not match the page
+     */
+    public void insertTuple(Tuple t) throws DbException;
+
+    /**
+     * Deletes the specified tuple from the page.
+     *
+     * @throws DbException if the tuple is not on this page, or its slot is
+     *   already empty
+     */
+    public void deleteTuple(Tuple t) throws DbException;
+
+    /**
+     * @return an iterator over the tuples on this page (calling remove on
+     *   this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator();
+}
@@ -2,23 +2,53 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * A HeapPage keeps the raw bytes of the page, possibly a view of a memory
+ * mapped file, and only decodes the header when it is created. The tuples
+ * of the page are decoded lazily: the iterator hands out tuples whose
+ * fields are read from the page the first time they are accessed, so that
+ * a scan only decodes the fields its predicates and projections touch.
+ * Each call creates a new tuple, which only its reader uses, so decoding
+ * needs no synchronization. Such a tuple reads the bytes the page had
+ * when it was created: the page never writes to bytes it handed tuples out
+ * of, but copies them first, so a tuple keeps its values whatever later
+ * transactions do to its slot. Operators that keep tuples beyond the next
+ * call to next() {@link Tuple#detach} them, so that they do not keep the
+ * bytes of the page in memory.
+ * The raw bytes are copied the first time the page is modified, and kept
+ * up to date by insertTuple and deleteTuple, so getPageData is a copy.
+ * <p>
+ * The bytes the page had before that first modification are its before
+ * image: they are never written to, so keeping them costs nothing more
+ * than a reference, and they are only parsed back into a page when
+ * {@link #getBeforeImage} is called. A page that is only read keeps no
+ * before image of its own.
  *
  * @see HeapFile
  * @see BufferPool
  *
  */
-public class HeapPage implements Page {
+public class HeapPage implements HeapFilePage {
 
     final HeapPageId pid;
     final TupleDesc td;
     final byte header[];
-    final Tuple tuples[];
     final int numSlots;
 
+    // raw contents of the page, read only until the page is first modified
+    private ByteBuffer data;
+    private boolean privateData = false;
+    // whether tuples were handed out that read data, which must then be
+    // copied again before it is modified
+    private volatile boolean dataShared = false;
+    // offset of each field within a tuple
+    private final int[] fieldOffsets;
+
     // boolean value to flag current page
     // as dirty (default: false)
     private boolean dirty = false;
@@ -26,9 +56,21 @@ public class HeapPage implements Page {
     // hook to last transaction id
     private TransactionId lastTransactionId;
 
-    byte[] oldData;
+    // contents of the page before it was first modified since it was read
+    // or last committed, or null if it was not modified
+    private ByteBuffer oldData;
     private final Byte oldDataLock=new Byte((byte)0);
 
+    /**
+     * Create a HeapPage from a set of bytes of data read from disk. The page
+     * reads from data as long as it is not modified, so the array must not
+     * be changed afterwards.
+     * @see #HeapPage(HeapPageId, ByteBuffer)
+     */
+    public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
     /**
      * Create a HeapPage from a set of bytes of data read from disk.
      * The format of a HeapPage is a set of header bytes indicating
@@ -45,28 +87,22 @@ public class HeapPage implements Page {
      * @see Catalog#getTupleDesc
      * @see BufferPool#getPageSize()
      */
-    public HeapPage(HeapPageId id, byte[] data) throws IOException {
+    public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        this.data = data.slice();
+        if (this.data.remaining() < BufferPool.getPageSize())
+            throw new IOException("page " + id + " is only " + this.data.remaining() + " bytes long");
 
         // allocate and read the header slots of this page
         header = new byte[getHeaderSize()];
         for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-
-        tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
-        }
-        dis.close();
+            header[i] = this.data.get(i);
 
-        setBeforeImage();
+        fieldOffsets = new int[td.numFields()];
+        for (int j = 1; j < fieldOffsets.length; j++)
+            fieldOffsets[j] = fieldOffsets[j - 1] + td.getFieldLen(j - 1);
     }
 
     /** Retrieve the number of tuples on this page.
@@ -94,12 +130,14 @@ public class HeapPage implements Page {
         -- used by recovery */
     public HeapPage getBeforeImage(){
         try {
-            byte[] oldDataRef = null;
+            ByteBuffer oldDataRef = null;
             synchronized(oldDataLock)
             {
-                oldDataRef = oldData;
+                // an unmodified page is its own before image, and its
+                // bytes are not written to until they are copied
+                oldDataRef = oldData != null ? oldData : data;
             }
-            return new HeapPage(pid,oldDataRef);
+            return newPage(oldDataRef);
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -111,7 +149,15 @@ public class HeapPage implements Page {
     public void setBeforeImage() {
         synchronized(oldDataLock)
         {
-        oldData = getPageData().clone();
+        if (!privateData)
+            return;
+        // the current bytes become the before image: bring their header up
+        // to date, and copy them again before the next modification
+        ByteBuffer h = data.duplicate();
+        h.position(0);
+        h.put(header);
+        privateData = false;
+        oldData = null;
         }
     }
 
@@ -123,38 +169,65 @@ public class HeapPage implements Page {
         return pid;
     }
 
+    /** Return a page of the same format with the specified bytes */
+    HeapPage newPage(ByteBuffer data) throws IOException {
+        return new HeapPage(pid, data);
+    }
+
+    /** Return the offset of field j of the specified slot in the page */
+    int fieldOffset(int slotId, int j) {
+        return header.length + slotId * td.getSize() + fieldOffsets[j];
+    }
+
     /**
-     * Suck up tuples from the source file.
+     * Decode field j of the tuple in the specified slot from the specified
+     * raw bytes of the page.
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
-        }
+    Field readField(ByteBuffer bytes, int slotId, int j) {
+        return td.parseField(j, bytes, fieldOffset(slotId, j));
+    }
 
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
+    /**
+     * Decode integer field j of the tuple in the specified slot from the
+     * specified raw bytes of the page.
+     */
+    int readInt(ByteBuffer bytes, int slotId, int j) {
+        return bytes.getInt(fieldOffset(slotId, j));
+    }
+
+    /**
+     * Return a new lazily decoded tuple for the specified (used) slot.
+     */
+    private Tuple getTuple(int slotId) {
+        dataShared = true;
+        return new LazyTuple(this, data, slotId);
+    }
+
+    /**
+     * Copy the raw bytes of the page before modifying them for the first
+     * time, since they may be shared (e.g. with a memory mapped file or a
+     * before image), and again before modifying bytes that tuples were
+     * handed out of. The bytes copied the first time are the before image
+     * of the page.
+     */
+    private void makeDataPrivate() {
+        if (privateData && !dataShared)
+            return;
+        if (!privateData) {
+            synchronized(oldDataLock)
+            {
+            oldData = data;
             }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
         }
-
-        return t;
+        ByteBuffer copy = ByteBuffer.allocate(BufferPool.getPageSize());
+        ByteBuffer src = data.duplicate();
+        src.position(0);
+        src.limit(BufferPool.getPageSize());
+        copy.put(src);
+        copy.clear();
+        data = copy;
+        privateData = true;
+        dataShared = false;
     }
 
     /**
@@ -169,64 +242,21 @@ public class HeapPage implements Page {
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        byte[] pageData = new byte[BufferPool.getPageSize()];
+        writePageData(ByteBuffer.wrap(pageData));
+        return pageData;
+    }
 
-        return baos.toByteArray();
+    public void writePageData(ByteBuffer dst) {
+        int base = dst.position();
+        ByteBuffer src = data.duplicate();
+        src.position(0);
+        src.limit(BufferPool.getPageSize());
+        dst.put(src);
+        // the header is kept up to date separately
+        ByteBuffer h = dst.duplicate();
+        h.position(base);
+        h.put(header);
     }
 
     /**
@@ -262,10 +292,15 @@ public class HeapPage implements Page {
             throw new DbException("The tuple to delete is not in page " + pid +
                     " or the tuple slot is already empty");
         }
-        // reset collection of tuples
-        tuples[tupleNumber] = null;
-        // mark as "no longer in use"
+        // the deleted tuple keeps its fields once the slot is cleared
+        t.detach();
+        // mark as "no longer in use", and clear the slot
         markSlotUsed(tupleNumber, false);
+        makeDataPrivate();
+        for (int j = 0; j < td.numFields(); j++) {
+            int offset = data.arrayOffset() + fieldOffset(tupleNumber, j);
+            Arrays.fill(data.array(), offset, offset + td.getFieldLen(j), (byte) 0);
+        }
     }
 
     /**
@@ -321,12 +356,27 @@ public class HeapPage implements Page {
     public int getNumEmptySlots() {
         // some code goes here
         int numEmpty = 0;
-        for (int i=0; i<tuples.length;i++)
+        for (int i=0; i<numSlots;i++)
             if(!isSlotUsed(i)) numEmpty++;
 
         return numEmpty;
     }
 
+    /**
+     * Returns the number of tuple slots on this page, used or not.
+     */
+    public int getNumSlots() {
+        return numSlots;
+    }
+
+    public boolean hasRoomFor(Tuple t) {
+        return getNumEmptySlots() > 0;
+    }
+
+    public int getFreeSpaceCategory() {
+        return FreeSpaceMap.category(getNumEmptySlots(), numSlots);
+    }
+
     /**
      * Returns true if associated slot on this page is filled.
      */
@@ -362,10 +412,29 @@ public class HeapPage implements Page {
      */
     public Iterator<Tuple> iterator() {
         // some code goes here
-        ArrayList<Tuple> tupleList = new ArrayList<>();
-        for (int i = 0; i<numSlots;i++)
-            if (isSlotUsed(i)) tupleList.add(tuples[i]);
-        return tupleList.iterator();
+        return new Iterator<Tuple>() {
+            private int next = nextUsedSlot(0);
+
+            public boolean hasNext() {
+                return next < numSlots;
+            }
+
+            public Tuple next() {
+                if (next >= numSlots)
+                    throw new NoSuchElementException();
+                Tuple t = getTuple(next);
+                next = nextUsedSlot(next + 1);
+                return t;
+            }
+        };
+    }
+
+    /** Return the first used slot from the specified one on, numSlots if none */
+    private int nextUsedSlot(int from) {
+        int i = from;
+        while (i < numSlots && !isSlotUsed(i))
+            i++;
+        return i;
     }
 
     /**
@@ -379,11 +448,91 @@ public class HeapPage implements Page {
     private void assignSlotToTuple(int slotId, Tuple tuple) {
         // first flag the slot as "in use"
         markSlotUsed(slotId, true);
+        // write the tuple to the page
+        makeDataPrivate();
+        ByteBuffer slot = data.duplicate();
+        for (int j = 0; j < td.numFields(); j++) {
+            // every field has its fixed width, even a shorter VARCHAR
+            slot.position(fieldOffset(slotId, j));
+            td.writeField(j, tuple.getField(j), slot);
+        }
         // add the record to the tuple
         RecordId rid = new RecordId(pid, slotId);
         tuple.setRecordId(rid);
-        // update the container of tuples
-        tuples[slotId] = tuple;
+    }
+
+    /**
+     * Tuple of a HeapPage whose fields are decoded from the bytes the page
+     * had when it was created, the first time they are accessed, until it
+     * is detached. It is only used by the reader it was created for.
+     */
+    private static class LazyTuple extends Tuple {
+
+        private static final long serialVersionUID = 1L;
+
+        private transient HeapPage page;
+        // the bytes of the page, which the page no longer writes to
+        private transient ByteBuffer bytes;
+        private final int slotId;
+
+        LazyTuple(HeapPage page, ByteBuffer bytes, int slotId) {
+            super(page.td);
+            this.page = page;
+            this.bytes = bytes;
+            this.slotId = slotId;
+            setRecordId(new RecordId(page.pid, slotId));
+        }
+
+        public Field getField(int i) {
+            HeapPage p = page;
+            if (!isSet(i) && p != null)
+                decode(p, i);
+            return super.getField(i);
+        }
+
+        public int getInt(int i) {
+            HeapPage p = page;
+            if (!isSet(i) && p != null)
+                decode(p, i);
+            return super.getInt(i);
+        }
+
+        protected boolean holdsInt(int i) {
+            return super.holdsInt(i) || (!isSet(i) && page != null
+                    && getTupleDesc().getFieldType(i) == Type.INT_TYPE);
+        }
+
+        /** Decode field i from the page, integers without a Field */
+        private void decode(HeapPage p, int i) {
+            if (getTupleDesc().getFieldType(i) == Type.INT_TYPE)
+                setInt(i, p.readInt(bytes, slotId, i));
+            else
+                setField(i, p.readField(bytes, slotId, i));
+        }
+
+        /** Decode all the fields, and stop reading from the page */
+        public void detach() {
+            HeapPage p = page;
+            if (p == null)
+                return;
+            for (int i = 0; i < getTupleDesc().numFields(); i++)
+                if (!isSet(i))
+                    decode(p, i);
+            page = null;
+            bytes = null;
+        }
+
+        public void resetTupleDesc(TupleDesc td) {
+            // the fields are reset: nothing left to read from the page
+            page = null;
+            bytes = null;
+            super.resetTupleDesc(td);
+        }
+
+        private Object writeReplace() {
+            detach();
+            return this;
+        }
     }
 
 }
@@ -0,0 +1,72 @@
+package simpledb;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * HitBuffer records the cache hits of the BufferPool without a lock, so
+ * that they can be reported to its ReplacementPolicy later, by the thread
+ * that holds the lock of the page table. Threads record their hits in one
+ * of a few small ring buffers (stripes), picked by thread id; a hit is
+ * dropped when its stripe is full or another thread is recording in it at
+ * the same time, so the policy sees most hits, in roughly their order,
+ * rather than all of them.
+ *
+ * @Threadsafe
+ */
+public class HitBuffer {
+
+    /** The number of hits a stripe holds */
+    static final int STRIPE_SIZE = 64;
+
+    private static class Stripe {
+        final AtomicLong writes = new AtomicLong();
+        // the number of hits drained, only written under the lock
+        volatile long reads;
+        final AtomicReferenceArray<PageId> hits = new AtomicReferenceArray<>(STRIPE_SIZE);
+    }
+
+    private final Stripe[] stripes;
+
+    public HitBuffer() {
+        int n = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+        stripes = new Stripe[n];
+        for (int i = 0; i < n; i++)
+            stripes[i] = new Stripe();
+    }
+
+    /**
+     * Record a hit on the specified page.
+     *
+     * @return true if the stripe of the hit is at least half full, so that
+     *   the buffer should be drained
+     */
+    public boolean record(PageId pid) {
+        Stripe s = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+        long w = s.writes.get();
+        long used = w - s.reads;
+        if (used >= STRIPE_SIZE)
+            return true;
+        if (s.writes.compareAndSet(w, w + 1))
+            s.hits.lazySet((int) (w & (STRIPE_SIZE - 1)), pid);
+        return used + 1 >= STRIPE_SIZE / 2;
+    }
+
+    /**
+     * Pass the recorded hits to the specified consumer, and forget them.
+     * The caller must hold the lock the hits are reported under.
+     */
+    public void drain(Consumer<PageId> consumer) {
+        for (Stripe s : stripes) {
+            long w = s.writes.get();
+            for (long r = s.reads; r < w; r++) {
+                // a hit still being recorded is lost
+                PageId pid = s.hits.getAndSet((int) (r & (STRIPE_SIZE - 1)), null);
+                if (pid != null)
+                    consumer.accept(pid);
+            }
+            s.reads = w;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package simpledb;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * IntHashTable maps int keys to group numbers, 0 for the first key added,
+ * 1 for the second, and so on, without boxing the keys. Operators keep
+ * whatever they associate with a key (aggregates, chains of tuples) in
+ * their own arrays indexed by group number, which are contiguous in memory
+ * rather than spread over the entries of a HashMap.
+ * <p>
+ * The table is open-addressed with linear probing over an array of group
+ * numbers, kept at most half full; the keys are stored in an array in the
+ * order of their groups.
+ */
+public class IntHashTable implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // group number + 1 of the key hashed to each slot, 0 if the slot is empty
+    private int[] slots;
+    private int mask;
+    // the key of each group
+    private int[] keys;
+    private int size;
+
+    /** Create an empty table */
+    public IntHashTable() {
+        this(16);
+    }
+
+    /** Create an empty table sized for the specified number of keys */
+    public IntHashTable(int expectedKeys) {
+        int capacity = Integer.highestOneBit(Math.max(2 * expectedKeys, 16) - 1) << 1;
+        slots = new int[capacity];
+        mask = capacity - 1;
+        keys = new int[capacity / 2];
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /** @return the number of keys in the table */
+    public int size() {
+        return size;
+    }
+
+    /** @return the group number of key, or -1 if it is not in the table */
+    public int find(int key) {
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int g = slots[i] - 1;
+            if (g < 0 || keys[g] == key)
+                return g;
+        }
+    }
+
+    /**
+     * Return the group number of key, adding it to the table as the next
+     * group if it is not in it.
+     */
+    public int add(int key) {
+        int i = hash(key) & mask;
+        for (; ; i = (i + 1) & mask) {
+            int g = slots[i] - 1;
+            if (g < 0)
+                break;
+            if (keys[g] == key)
+                return g;
+        }
+        if (size == keys.length) {
+            grow();
+            for (i = hash(key) & mask; slots[i] != 0; i = (i + 1) & mask)
+                ;
+        }
+        keys[size] = key;
+        slots[i] = ++size;
+        return size - 1;
+    }
+
+    /** @return the key of the specified group */
+    public int key(int group) {
+        return keys[group];
+    }
+
+    /** Remove all the keys */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+    private void grow() {
+        int capacity = 2 * slots.length;
+        slots = new int[capacity];
+        mask = capacity - 1;
+        keys = Arrays.copyOf(keys, capacity / 2);
+        for (int g = 0; g < size; g++) {
+            int i = hash(keys[g]) & mask;
+            while (slots[i] != 0)
+                i = (i + 1) & mask;
+            slots[i] = g + 1;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,6 +17,10 @@ public class IntegerAggregator implements Aggregator {
     private final int aField;
     private final Op operator;
     private final Map<Field, Integer> minmax, counts, sums, averages;
+    // the groups of an INT_TYPE group-by field, and their aggregates by
+    // group number, which replace the maps
+    private final IntHashTable intGroups;
+    private int[] groupCounts, groupSums, groupMinmax;
     private String gFieldName, aFieldName;
 
     /**
@@ -43,6 +48,15 @@ public class IntegerAggregator implements Aggregator {
         counts = new HashMap<>(); // contains the current count of tuples
         sums = new HashMap<>(); // contains the current sum of aggregate fields
         averages = new HashMap<>(); // contains the current average of aggregate fields
+        if (gbfield != Aggregator.NO_GROUPING && gbfieldtype == Type.INT_TYPE) {
+            // int groups are aggregated without boxing
+            intGroups = new IntHashTable();
+            groupCounts = new int[16];
+            groupSums = new int[16];
+            groupMinmax = new int[16];
+        } else {
+            intGroups = null;
+        }
     }
 
     /**
@@ -55,26 +69,112 @@ public class IntegerAggregator implements Aggregator {
     public void mergeTupleIntoGroup(Tuple tup) {
         // some code goes here
         Field groupField;
-        Field aggField;
+        int aggValue;
+        if (intGroups != null) {
+            gFieldName = tup.getTupleDesc().getFieldName(gbField);
+            aFieldName = tup.getTupleDesc().getFieldName(aField);
+            aggValue = tup.getInt(aField);
+            merge(tup.getInt(gbField), 1, aggValue, aggValue, aggValue);
+            return;
+        }
         if(gbField != Aggregator.NO_GROUPING) {
             groupField = tup.getField(gbField);
             gFieldName = tup.getTupleDesc().getFieldName(gbField);
         }
         else
             groupField = new IntField(Aggregator.NO_GROUPING);
-        aggField = tup.getField(aField);
+        // the aggregate field is read as an int, without an IntField
+        aggValue = tup.getInt(aField);
         aFieldName = tup.getTupleDesc().getFieldName(aField);
+        merge(groupField, 1, aggValue, aggValue, aggValue);
+    }
+
+    /**
+     * Merge the selected rows of a batch into the aggregates, reading the
+     * aggregate field from its int vector. Without grouping, the batch is
+     * aggregated in a loop over the vector and merged into the maps once.
+     *
+     * @param b
+     *            the batch containing aggregate fields and group-by fields
+     */
+    public void mergeBatch(TupleBatch b) {
+        int n = b.size();
+        if (n == 0)
+            return;
+        int[] sel = b.selection();
+        int[] v = b.ints(aField);
+        aFieldName = b.getTupleDesc().getFieldName(aField);
+        if (intGroups != null) {
+            gFieldName = b.getTupleDesc().getFieldName(gbField);
+            int[] groups = b.ints(gbField);
+            for (int i = 0; i < n; i++) {
+                int value = v[sel[i]];
+                merge(groups[sel[i]], 1, value, value, value);
+            }
+            return;
+        }
+        if (gbField != Aggregator.NO_GROUPING) {
+            gFieldName = b.getTupleDesc().getFieldName(gbField);
+            for (int i = 0; i < n; i++) {
+                int value = v[sel[i]];
+                merge(b.getField(gbField, sel[i]), 1, value, value, value);
+            }
+            return;
+        }
+        int sum = 0, min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            int value = v[sel[i]];
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        merge(new IntField(Aggregator.NO_GROUPING), n, sum, min, max);
+    }
+
+    /**
+     * Merge count values, whose sum, minimum and maximum are specified,
+     * into the aggregate of the int group key.
+     */
+    private void merge(int key, int count, int sum, int min, int max) {
+        if (operator == Op.SUM_COUNT || operator == Op.SC_AVG)
+            throw new UnsupportedOperationException("Operation not supported");
+        int size = intGroups.size();
+        int g = intGroups.add(key);
+        if (g == size) {
+            if (g == groupCounts.length) {
+                groupCounts = Arrays.copyOf(groupCounts, 2 * g);
+                groupSums = Arrays.copyOf(groupSums, 2 * g);
+                groupMinmax = Arrays.copyOf(groupMinmax, 2 * g);
+            }
+            groupCounts[g] = count;
+            groupSums[g] = sum;
+            groupMinmax[g] = operator == Op.MIN ? min : max;
+            return;
+        }
+        groupCounts[g] += count;
+        groupSums[g] += sum;
+        if (operator == Op.MIN)
+            groupMinmax[g] = Math.min(groupMinmax[g], min);
+        else
+            groupMinmax[g] = Math.max(groupMinmax[g], max);
+    }
+
+    /**
+     * Merge count values, whose sum, minimum and maximum are specified,
+     * into the aggregate of a group.
+     */
+    private void merge(Field groupField, int count, int sum, int min, int max) {
         if(operator == Op.COUNT || operator == Op.AVG) {
             if (!counts.containsKey(groupField))
-                counts.put(groupField, 1);
+                counts.put(groupField, count);
             else
-                counts.put(groupField, counts.get(groupField) + 1);
+                counts.put(groupField, counts.get(groupField) + count);
         }
         if(operator == Op.AVG || operator == Op.SUM) {
             if (!sums.containsKey(groupField))
-                sums.put(groupField, aggField.hashCode());
+                sums.put(groupField, sum);
             else
-                sums.put(groupField, sums.get(groupField) + aggField.hashCode());
+                sums.put(groupField, sums.get(groupField) + sum);
         }
         if(operator == Op.AVG)
             averages.put(groupField, sums.get(groupField) / counts.get(groupField));
@@ -88,18 +188,18 @@ public class IntegerAggregator implements Aggregator {
             }
             case MAX:{
                 if(!minmax.containsKey(groupField))
-                    minmax.put(groupField, aggField.hashCode());
+                    minmax.put(groupField, max);
                 else
                     minmax.put(groupField,
-                            Math.max(aggField.hashCode(), minmax.get(groupField)));
+                            Math.max(max, minmax.get(groupField)));
                 break;
             }
             case MIN:{
                 if(!minmax.containsKey(groupField))
-                    minmax.put(groupField, aggField.hashCode());
+                    minmax.put(groupField, min);
                 else
                     minmax.put(groupField,
-                            Math.min(aggField.hashCode(), minmax.get(groupField)));
+                            Math.min(min, minmax.get(groupField)));
                 break;
             }
             default:{
@@ -123,6 +223,8 @@ public class IntegerAggregator implements Aggregator {
         // some code goes here
         List<Tuple> results;
         TupleDesc desc = getTupleDesc();
+        if (intGroups != null)
+            return new TupleIterator(desc, getIntGroupTuples(desc));
         switch (operator){
             case COUNT:{
                 results = getTuples(counts, desc);
@@ -173,6 +275,41 @@ public class IntegerAggregator implements Aggregator {
         return new TupleDesc(typeAr, fieldAr);
     }
 
+    /**
+     * Helper method of iterator() to get a List of the tuples aggregated
+     * by int group
+     * @param desc contains the new TupleDesc
+     * @return the new List of tuples
+     */
+    private List<Tuple> getIntGroupTuples(TupleDesc desc) {
+        List<Tuple> tuples = new ArrayList<>();
+        for (int g = 0; g < intGroups.size(); g++) {
+            int value;
+            switch (operator) {
+                case COUNT:
+                    value = groupCounts[g];
+                    break;
+                case SUM:
+                    value = groupSums[g];
+                    break;
+                case AVG:
+                    value = groupSums[g] / groupCounts[g];
+                    break;
+                case MIN:
+                case MAX:
+                    value = groupMinmax[g];
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Operation not supported");
+            }
+            Tuple tuple = new Tuple(desc);
+            tuple.setInt(0, intGroups.key(g));
+            tuple.setInt(1, value);
+            tuples.add(tuple);
+        }
+        return tuples;
+    }
+
     /**
      * Helper method of iterator() to get a List of the tuples aggregated
      * @param values contains the map to transform in tuples
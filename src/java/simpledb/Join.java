@@ -144,10 +144,10 @@ public class Join extends Operator {
                     for(int i = 0; i < mergedTuple.getTupleDesc().numFields(); i++){
 
                         if(i < tuple1.getTupleDesc().numFields())
-                            mergedTuple.setField(i, tuple1.getField(i));
+                            mergedTuple.setField(i, tuple1, i);
 
                         else{
-                            mergedTuple.setField(i, tuple2.getField(j));
+                            mergedTuple.setField(i, tuple2, j);
                             j ++;
                         }
                     }
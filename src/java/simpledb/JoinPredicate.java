@@ -42,6 +42,10 @@ public class JoinPredicate implements Serializable {
      */
     public boolean filter(Tuple t1, Tuple t2) {
         // some code goes here
+        // compare integers without creating IntFields
+        if (t1.getTupleDesc().getFieldType(field1) == Type.INT_TYPE
+                && t2.getTupleDesc().getFieldType(field2) == Type.INT_TYPE)
+            return IntField.compare(t1.getInt(field1), operator, t2.getInt(field2));
         return t1.getField(field1).compare(operator, t2.getField(field2));
     }
     
@@ -0,0 +1,100 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * Limit is an operator that implements LIMIT and OFFSET: it skips the first
+ * offset tuples of its child and returns at most limit of the following
+ * ones. It stops reading its child as soon as it has returned them.
+ */
+public class Limit extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private OpIterator child;
+    private final int limit;
+    private final int offset;
+    // the number of tuples returned since open or rewind
+    private int returned;
+    private boolean skipped;
+
+    /**
+     * Constructor.
+     *
+     * @param limit
+     *            the maximum number of tuples to return, or -1 for no limit
+     * @param offset
+     *            the number of tuples of the child to skip
+     * @param child
+     *            The child operator
+     */
+    public Limit(int limit, int offset, OpIterator child) {
+        this.limit = limit;
+        this.offset = offset;
+        this.child = child;
+    }
+
+    /** @return the maximum number of tuples returned, or -1 for no limit */
+    public int getLimit() {
+        return limit;
+    }
+
+    /** @return the number of tuples of the child skipped */
+    public int getOffset() {
+        return offset;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        returned = 0;
+        skipped = false;
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+        returned = 0;
+        skipped = false;
+    }
+
+    /**
+     * Operator.fetchNext implementation. Returns the next tuple of the child
+     * after the offset, until limit tuples were returned.
+     *
+     * @return The next tuple, or null if there are no more tuples
+     */
+    protected Tuple fetchNext() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (limit >= 0 && returned >= limit)
+            return null;
+        if (!skipped) {
+            for (int i = 0; i < offset && child.hasNext(); i++)
+                child.next();
+            skipped = true;
+        }
+        if (!child.hasNext())
+            return null;
+        returned++;
+        return child.next();
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child = children[0];
+    }
+
+}
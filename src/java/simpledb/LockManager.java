@@ -0,0 +1,473 @@
+package simpledb;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LockManager keeps the page-level lock table used by the BufferPool to
+ * enforce strict two-phase locking.
+ * <p>
+ * Each page that is locked (or waited on) has its own PageLock entry, and
+ * all the bookkeeping for that page is protected by the entry's monitor, so
+ * transactions working on different pages never contend with each other.
+ * Blocked requests wait in a FIFO queue and are granted in order by the
+ * transaction that releases the conflicting lock (lock upgrades jump ahead of
+ * plain requests), which means waiters are only woken when they actually got
+ * the lock and never need to poll.
+ * <p>
+ * Deadlocks are detected eagerly: every blocked request adds edges to a
+ * waits-for graph, and the graph is checked for a cycle as soon as the
+ * edges of a waiter change. One transaction of the cycle, chosen by the
+ * configured {@link VictimPolicy}, is aborted right away with a
+ * TransactionAbortedException.
+ *
+ * @Threadsafe
+ */
+public class LockManager {
+
+    /** Policies used to pick which transaction of a deadlock cycle to abort. */
+    public enum VictimPolicy {
+        /** abort the transaction that started last */
+        YOUNGEST,
+        /** abort the transaction holding the fewest locks */
+        FEWEST_LOCKS,
+        /** abort the transaction that has written the fewest log bytes */
+        LEAST_LOG
+    }
+
+    /** A pending lock request, queued on the PageLock of the page. */
+    private static class LockRequest {
+        final TransactionId tid;
+        final PageLock lock;
+        final boolean exclusive;
+        final boolean upgrade;
+        boolean granted = false;
+        boolean aborted = false;
+
+        LockRequest(TransactionId tid, PageLock lock, boolean exclusive, boolean upgrade) {
+            this.tid = tid;
+            this.lock = lock;
+            this.exclusive = exclusive;
+            this.upgrade = upgrade;
+        }
+    }
+
+    /**
+     * Lock state of a single page. All fields are protected by the monitor
+     * of the PageLock itself.
+     */
+    private static class PageLock {
+        final PageId pid;
+        final HashSet<TransactionId> holders = new HashSet<>();
+        boolean exclusive = false;
+        final LinkedList<LockRequest> waiters = new LinkedList<>();
+        // set once the entry has been dropped from the lock table; a thread
+        // that raced with the removal must look the page up again
+        boolean retired = false;
+
+        PageLock(PageId pid) {
+            this.pid = pid;
+        }
+
+        boolean isFree() {
+            return holders.isEmpty() && waiters.isEmpty();
+        }
+
+        /** Return true if tid could be given the lock right now */
+        boolean isCompatible(TransactionId tid, boolean wantExclusive) {
+            if (holders.isEmpty())
+                return true;
+            if (wantExclusive)
+                return holders.size() == 1 && holders.contains(tid);
+            return !exclusive;
+        }
+
+        /** Return true if tid already holds a lock at least as strong as requested */
+        boolean isHeldBy(TransactionId tid, boolean wantExclusive) {
+            return holders.contains(tid) && (exclusive || !wantExclusive);
+        }
+    }
+
+    /**
+     * The waits-for graph. An edge t1 -> t2 means that a request of t1 on
+     * some page cannot be granted before t2 gives up its lock on, or its
+     * place in the queue of, that page. Edges are kept per (waiter, page)
+     * so that they can be replaced whenever the state of the page changes.
+     * <p>
+     * The graph has its own monitor, which is always taken after (never
+     * before) the monitor of a PageLock.
+     */
+    private static class WaitsForGraph {
+        private final HashMap<TransactionId, HashMap<PageId, Set<TransactionId>>> edges = new HashMap<>();
+
+        synchronized void setEdges(TransactionId waiter, PageId pid, Set<TransactionId> blockers) {
+            HashMap<PageId, Set<TransactionId>> out = edges.computeIfAbsent(waiter, k -> new HashMap<>());
+            out.put(pid, blockers);
+        }
+
+        synchronized void removeEdges(TransactionId waiter, PageId pid) {
+            HashMap<PageId, Set<TransactionId>> out = edges.get(waiter);
+            if (out == null)
+                return;
+            out.remove(pid);
+            if (out.isEmpty())
+                edges.remove(waiter);
+        }
+
+        synchronized void removeWaiter(TransactionId waiter) {
+            edges.remove(waiter);
+        }
+
+        /**
+         * Return the transactions of a cycle going through start, or null
+         * if start is not deadlocked.
+         */
+        synchronized List<TransactionId> findCycle(TransactionId start) {
+            ArrayList<TransactionId> path = new ArrayList<>();
+            HashSet<TransactionId> visited = new HashSet<>();
+            return dfs(start, start, path, visited) ? path : null;
+        }
+
+        private boolean dfs(TransactionId node, TransactionId target,
+                            ArrayList<TransactionId> path, HashSet<TransactionId> visited) {
+            path.add(node);
+            HashMap<PageId, Set<TransactionId>> out = edges.get(node);
+            if (out != null) {
+                for (Set<TransactionId> blockers : out.values()) {
+                    for (TransactionId next : blockers) {
+                        if (next.equals(target))
+                            return true;
+                        if (visited.add(next) && dfs(next, target, path, visited))
+                            return true;
+                    }
+                }
+            }
+            path.remove(path.size() - 1);
+            return false;
+        }
+    }
+
+    private final ConcurrentHashMap<PageId, PageLock> lockTable;
+    private final ConcurrentHashMap<TransactionId, Set<PageId>> lockedPages;
+    private final ConcurrentHashMap<TransactionId, Set<LockRequest>> pendingRequests;
+    private final WaitsForGraph waitsFor;
+    private volatile VictimPolicy victimPolicy = VictimPolicy.YOUNGEST;
+
+    public LockManager() {
+        lockTable = new ConcurrentHashMap<>();
+        lockedPages = new ConcurrentHashMap<>();
+        pendingRequests = new ConcurrentHashMap<>();
+        waitsFor = new WaitsForGraph();
+    }
+
+    /** Set the policy used to choose the transaction aborted to break a deadlock */
+    public void setVictimPolicy(VictimPolicy policy) {
+        this.victimPolicy = policy;
+    }
+
+    public VictimPolicy getVictimPolicy() {
+        return victimPolicy;
+    }
+
+    /**
+     * Acquire a lock on the specified page on behalf of tid, blocking until
+     * it can be granted.
+     *
+     * @param tid the transaction requesting the lock
+     * @param pid the page to lock
+     * @param perm READ_ONLY for a shared lock, READ_WRITE for an exclusive one
+     * @throws TransactionAbortedException if granting the lock would deadlock
+     *   and tid was chosen as the victim, or the thread is interrupted while
+     *   waiting, in which case its interrupt status is set again
+     */
+    public void acquireLock(TransactionId tid, PageId pid, Permissions perm)
+            throws TransactionAbortedException {
+        boolean wantExclusive = perm == Permissions.READ_WRITE;
+        while (true) {
+            PageLock lock = lockTable.computeIfAbsent(pid, PageLock::new);
+            LockRequest request;
+            TransactionId victim;
+            synchronized (lock) {
+                if (lock.retired)
+                    continue;
+                if (lock.isHeldBy(tid, wantExclusive))
+                    return;
+
+                boolean upgrade = lock.holders.contains(tid);
+                // plain requests queue behind earlier waiters so that a
+                // stream of readers cannot starve a writer
+                if ((upgrade || lock.waiters.isEmpty())
+                        && lock.isCompatible(tid, wantExclusive)) {
+                    grant(lock, tid, wantExclusive);
+                    return;
+                }
+
+                request = new LockRequest(tid, lock, wantExclusive, upgrade);
+                enqueue(lock, request);
+                victim = updateWaitsFor(lock);
+                if (tid.equals(victim))
+                    request.aborted = true;
+            }
+            // a victim waiting on another page is woken up here, since page
+            // monitors are never nested
+            if (victim != null && !tid.equals(victim))
+                abortWaiter(victim);
+            awaitGrant(request);
+            return;
+        }
+    }
+
+    /**
+     * Wait until the request has been granted by a releasing transaction,
+     * or aborted to break a deadlock.
+     *
+     * @throws TransactionAbortedException if the request was aborted
+     */
+    private void awaitGrant(LockRequest request) throws TransactionAbortedException {
+        PageLock lock = request.lock;
+        boolean granted = false;
+        TransactionId victim = null;
+        try {
+            synchronized (lock) {
+                try {
+                    while (!request.granted && !request.aborted)
+                        lock.wait();
+                } catch (InterruptedException e) {
+                    // handled below, like an abort; the caller still
+                    // sees the thread was interrupted
+                    Thread.currentThread().interrupt();
+                } finally {
+                    granted = request.granted;
+                    // the waiter gave up (deadlock victim, interrupted or
+                    // killed): withdraw the request and let whoever is
+                    // behind it proceed
+                    if (!granted)
+                        victim = withdraw(request);
+                }
+            }
+        } finally {
+            if (victim != null)
+                abortWaiter(victim);
+        }
+        if (!granted)
+            throw new TransactionAbortedException();
+    }
+
+    private void enqueue(PageLock lock, LockRequest request) {
+        pendingRequests.compute(request.tid, (tid, pending) -> {
+            if (pending == null)
+                pending = ConcurrentHashMap.newKeySet();
+            pending.add(request);
+            return pending;
+        });
+        if (!request.upgrade) {
+            lock.waiters.addLast(request);
+            return;
+        }
+        // upgrades go ahead of every plain request, after older upgrades
+        ListIterator<LockRequest> it = lock.waiters.listIterator();
+        while (it.hasNext()) {
+            if (!it.next().upgrade) {
+                it.previous();
+                break;
+            }
+        }
+        it.add(request);
+    }
+
+    /**
+     * Remove a request that will never be granted from the queue of its
+     * page. Must be called holding the monitor of the request's page.
+     *
+     * @return a deadlock victim that must be aborted, or null
+     */
+    private TransactionId withdraw(LockRequest request) {
+        PageLock lock = request.lock;
+        lock.waiters.remove(request);
+        forget(request);
+        return grantWaiters(lock);
+    }
+
+    private void forget(LockRequest request) {
+        // a transaction that no longer waits leaves no entry behind
+        pendingRequests.computeIfPresent(request.tid, (tid, pending) -> {
+            pending.remove(request);
+            return pending.isEmpty() ? null : pending;
+        });
+        waitsFor.removeEdges(request.tid, request.lock.pid);
+    }
+
+    private void grant(PageLock lock, TransactionId tid, boolean wantExclusive) {
+        lock.holders.add(tid);
+        lock.exclusive = wantExclusive || lock.exclusive;
+        lockedPages.computeIfAbsent(tid, k -> ConcurrentHashMap.newKeySet()).add(lock.pid);
+    }
+
+    /**
+     * Hand the lock over to the requests at the head of the queue that have
+     * become compatible. Must be called holding the monitor of lock.
+     *
+     * @return a deadlock victim waiting on another page, or null
+     */
+    private TransactionId grantWaiters(PageLock lock) {
+        boolean woken = false;
+        Iterator<LockRequest> it = lock.waiters.iterator();
+        while (it.hasNext()) {
+            LockRequest request = it.next();
+            // an aborted request is about to be withdrawn by its own thread
+            if (request.aborted)
+                continue;
+            if (!lock.isCompatible(request.tid, request.exclusive))
+                break;
+            it.remove();
+            forget(request);
+            grant(lock, request.tid, request.exclusive);
+            request.granted = true;
+            woken = true;
+        }
+        if (woken)
+            lock.notifyAll();
+        else if (lock.isFree()) {
+            lock.retired = true;
+            lockTable.remove(lock.pid, lock);
+            return null;
+        }
+        return updateWaitsFor(lock);
+    }
+
+    /**
+     * Recompute the waits-for edges of every request queued on lock and look
+     * for a deadlock involving them. A waiter whose request conflicts with the
+     * current holders waits for those holders, and also waits for every
+     * conflicting request queued ahead of it. Must be called holding the
+     * monitor of lock.
+     *
+     * @return the transaction to abort to break a deadlock, or null
+     */
+    private TransactionId updateWaitsFor(PageLock lock) {
+        ArrayList<LockRequest> ahead = new ArrayList<>();
+        for (LockRequest request : lock.waiters) {
+            if (request.aborted)
+                continue;
+            Set<TransactionId> blockers = new HashSet<>();
+            if (!lock.isCompatible(request.tid, request.exclusive))
+                blockers.addAll(lock.holders);
+            for (LockRequest other : ahead)
+                if (other.exclusive || request.exclusive)
+                    blockers.add(other.tid);
+            blockers.remove(request.tid);
+            waitsFor.setEdges(request.tid, lock.pid, blockers);
+            ahead.add(request);
+        }
+
+        for (LockRequest request : lock.waiters) {
+            if (request.aborted)
+                continue;
+            List<TransactionId> cycle = waitsFor.findCycle(request.tid);
+            if (cycle != null) {
+                TransactionId victim = chooseVictim(cycle);
+                // drop the victim from the graph right away so that nobody
+                // else picks a second victim for the same cycle
+                waitsFor.removeWaiter(victim);
+                return victim;
+            }
+        }
+        return null;
+    }
+
+    private TransactionId chooseVictim(List<TransactionId> cycle) {
+        TransactionId victim = null;
+        long victimCost = 0;
+        for (TransactionId tid : cycle) {
+            long cost;
+            switch (victimPolicy) {
+                case FEWEST_LOCKS:
+                    Set<PageId> pages = lockedPages.get(tid);
+                    cost = pages == null ? 0 : pages.size();
+                    break;
+                case LEAST_LOG:
+                    cost = Database.getLogFile().getLogBytesWritten(tid);
+                    break;
+                default:
+                    cost = -tid.getId();
+            }
+            // ties go to the youngest transaction
+            if (victim == null || cost < victimCost
+                    || (cost == victimCost && tid.getId() > victim.getId())) {
+                victim = tid;
+                victimCost = cost;
+            }
+        }
+        return victim;
+    }
+
+    /**
+     * Mark the pending requests of a deadlock victim as aborted and wake
+     * their threads up. Must not be called holding any PageLock monitor.
+     */
+    private void abortWaiter(TransactionId victim) {
+        Set<LockRequest> pending = pendingRequests.get(victim);
+        if (pending == null)
+            return;
+        for (LockRequest request : new ArrayList<>(pending)) {
+            synchronized (request.lock) {
+                if (!request.granted) {
+                    request.aborted = true;
+                    request.lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Release the lock that tid holds on the specified page, if any.
+     */
+    public void releaseLock(TransactionId tid, PageId pid) {
+        Set<PageId> pages = lockedPages.get(tid);
+        if (pages != null)
+            pages.remove(pid);
+
+        PageLock lock = lockTable.get(pid);
+        if (lock == null)
+            return;
+        TransactionId victim;
+        synchronized (lock) {
+            if (!lock.holders.remove(tid))
+                return;
+            if (lock.holders.isEmpty())
+                lock.exclusive = false;
+            victim = grantWaiters(lock);
+        }
+        if (victim != null)
+            abortWaiter(victim);
+    }
+
+    /**
+     * Release every lock held by tid.
+     */
+    public void releaseAllLocks(TransactionId tid) {
+        Set<PageId> pages = lockedPages.remove(tid);
+        waitsFor.removeWaiter(tid);
+        if (pages == null)
+            return;
+        for (PageId pid : pages)
+            releaseLock(tid, pid);
+    }
+
+    /** Return true if tid holds a lock (of either mode) on the specified page */
+    public boolean holdsLock(TransactionId tid, PageId pid) {
+        Set<PageId> pages = lockedPages.get(tid);
+        return pages != null && pages.contains(pid);
+    }
+
+    /**
+     * Return the pages tid currently holds locks on. The returned set is a
+     * snapshot and is not updated by later lock operations.
+     */
+    public Set<PageId> getLockedPages(TransactionId tid) {
+        Set<PageId> pages = lockedPages.get(tid);
+        if (pages == null)
+            return Collections.emptySet();
+        return new HashSet<>(pages);
+    }
+}
@@ -2,6 +2,7 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.lang.reflect.*;
 
@@ -59,7 +60,9 @@ CHECKPOINT
 <li>UPDATE RECORDS consist of two entries, a before image and an
 after image.  These images are serialized Page objects, and can be
 accessed with the LogFile.readPageData() and LogFile.writePageData()
-methods.  See LogFile.print() for an example.
+methods.  See LogFile.print() for an example.  The bytes of each page
+are followed by their checksum, so that an image damaged on disk is
+never written back to a table by recovery.
 
 <li> CHECKPOINT records consist of active transactions at the time
 the checkpoint was taken and their first log record on disk.  The format
@@ -90,8 +93,11 @@ public class LogFile {
     long currentOffset = -1;//protected by this
 //    int pageSize;
     int totalRecords = 0; // for PatchTest //protected by this
+    // page images are serialized into this buffer before they are logged
+    byte[] pageBuffer = new byte[0]; //protected by this
 
     HashMap<Long,Long> tidToFirstLogRecord = new HashMap<Long,Long>();
+    HashMap<Long,Long> tidToLogBytes = new HashMap<Long,Long>(); // protected by this
 
     /** Constructor.
         Initialize and back the log file with the specified file.
@@ -138,6 +144,15 @@ public class LogFile {
     public synchronized int getTotalRecords() {
         return totalRecords;
     }
+
+    /** Return the number of bytes of update records written so far on
+        behalf of the specified (live) transaction.  Used to pick the
+        cheapest transaction to abort when breaking a deadlock.
+    */
+    public synchronized long getLogBytesWritten(TransactionId tid) {
+        Long bytes = tidToLogBytes.get(tid.getId());
+        return bytes == null ? 0 : bytes;
+    }
     
     /** Write an abort record to the log for the specified tid, force
         the log to disk, and perform a rollback
@@ -164,6 +179,7 @@ public class LogFile {
                 currentOffset = raf.getFilePointer();
                 force();
                 tidToFirstLogRecord.remove(tid.getId());
+                tidToLogBytes.remove(tid.getId());
             }
         }
     }
@@ -184,6 +200,7 @@ public class LogFile {
         currentOffset = raf.getFilePointer();
         force();
         tidToFirstLogRecord.remove(tid.getId());
+        tidToLogBytes.remove(tid.getId());
     }
 
     /** Write an UPDATE record to disk for the specified tid and page
@@ -213,7 +230,9 @@ public class LogFile {
         writePageData(raf,before);
         writePageData(raf,after);
         raf.writeLong(currentOffset);
+        long recordStart = currentOffset;
         currentOffset = raf.getFilePointer();
+        tidToLogBytes.merge(tid.getId(), currentOffset - recordStart, Long::sum);
 
         Debug.log("WRITE OFFSET = " + currentOffset);
     }
@@ -229,6 +248,7 @@ public class LogFile {
         // id class data
         // page class bytes
         // page class data
+        // page class data checksum
 
         String pageClassName = p.getClass().getName();
         String idClassName = pid.getClass().getName();
@@ -240,9 +260,14 @@ public class LogFile {
         for (int i = 0; i < pageInfo.length; i++) {
             raf.writeInt(pageInfo[i]);
         }
-        byte[] pageData = p.getPageData();
-        raf.writeInt(pageData.length);
-        raf.write(pageData);
+        if (pageBuffer.length < BufferPool.getPageSize())
+            pageBuffer = new byte[BufferPool.getPageSize()];
+        ByteBuffer pageData = ByteBuffer.wrap(pageBuffer);
+        p.writePageData(pageData);
+        raf.writeInt(pageData.position());
+        raf.write(pageBuffer, 0, pageData.position());
+        pageData.flip();
+        raf.writeInt(PageChecksums.checksum(pageData));
         //        Debug.log ("WROTE PAGE DATA, CLASS = " + pageClassName + ", table = " +  pid.getTableId() + ", page = " + pid.pageno());
     }
 
@@ -269,7 +294,10 @@ public class LogFile {
             int pageSize = raf.readInt();
 
             byte[] pageData = new byte[pageSize];
-            raf.read(pageData); //read before image
+            raf.readFully(pageData); //read before image
+            if (raf.readInt() != PageChecksums.checksum(ByteBuffer.wrap(pageData)))
+                throw new IOException("the image of page " + pid.getPageNumber() + " of table "
+                        + pid.getTableId() + " in the log does not match its checksum");
 
             Object[] pageArgs = new Object[2];
             pageArgs[0] = pid;
@@ -35,6 +35,8 @@ public class LogicalPlan {
     private String aggField;
     private boolean oByAsc, hasOrderBy = false;
     private String oByField;
+    private int limit = -1, offset = 0;
+    private boolean hasLimit = false;
     private String query;
 //    private Query owner;
 
@@ -216,6 +218,17 @@ public class LogicalPlan {
         hasOrderBy = true;
     }
 
+    /** Add a LIMIT and OFFSET to the query: skip the first offset tuples of the
+        result, and return at most limit of the following ones.
+        @param limit the maximum number of tuples to return, or -1 for no limit
+        @param offset the number of tuples to skip
+    */
+    public void addLimit(int limit, int offset) {
+        this.limit = limit;
+        this.offset = offset;
+        hasLimit = true;
+    }
+
     /** Given a name of a field, try to figure out what table it belongs to by looking
      *   through all of the tables added via {@link #addScan}. 
      *  @return A fully qualified name of the form tableAlias.name.  If the name parameter is already qualified
@@ -325,8 +338,16 @@ public class LogicalPlan {
             }
             if (ftyp == Type.INT_TYPE)
                 f = new IntField(new Integer(lf.c).intValue());
-            else
+            else if (ftyp == Type.STRING_TYPE || ftyp == Type.VARCHAR_TYPE
+                    || ftyp == Type.DICT_TYPE)
                 f = new StringField(lf.c, Type.STRING_LEN);
+            else {
+                try {
+                    f = ftyp.parse(lf.c);
+                } catch (IllegalArgumentException e) {
+                    throw new ParsingException("Invalid " + ftyp + " constant " + lf.c);
+                }
+            }
 
             Predicate p = null;
             try {
@@ -417,13 +438,16 @@ public class LogicalPlan {
                 outFields.add(groupByField!=null?1:0);
                 TupleDesc td = node.getTupleDesc();
 //                int  id;
+                Type aggType;
                 try {
 //                    id = 
-                    td.fieldNameToIndex(si.fname);
+                    aggType = td.getFieldType(td.fieldNameToIndex(si.fname));
                 } catch (NoSuchElementException e) {
                     throw new ParsingException("Unknown field " +  si.fname + " in SELECT list");
                 }
-                outTypes.add(Type.INT_TYPE);  //the type of all aggregate functions is INT
+                //the aggregates of ints and strings are ints
+                Type resultType = NumericAggregator.resultType(aggType, getAggOp(si.aggOp));
+                outTypes.add(resultType != null ? resultType : Type.INT_TYPE);
 
             } else if (hasAgg) {
                     if (groupByField == null) {
@@ -475,7 +499,17 @@ public class LogicalPlan {
         }
 
         if (hasOrderBy) {
-            node = new OrderBy(node.getTupleDesc().fieldNameToIndex(oByField), oByAsc, node);
+            int field = node.getTupleDesc().fieldNameToIndex(oByField);
+            // an ORDER BY with a LIMIT only keeps the tuples it returns
+            if (hasLimit && limit >= 0 && TopN.fits(node.getTupleDesc(), (long) limit + offset)) {
+                node = new TopN(field, oByAsc, limit, offset, node);
+            } else {
+                node = new OrderBy(field, oByAsc, node);
+                if (hasLimit)
+                    node = new Limit(limit, offset, node);
+            }
+        } else if (hasLimit) {
+            node = new Limit(limit, offset, node);
         }
 
         return new Project(outFields, outTypes, node);
@@ -0,0 +1,112 @@
+package simpledb;
+
+import java.util.HashMap;
+
+/**
+ * Least-recently-used replacement. Pages are kept on an intrusive doubly
+ * linked list threaded through a hash map, so every operation is O(1)
+ * (eviction only walks past pages that cannot be evicted).
+ */
+public class LruReplacementPolicy implements ReplacementPolicy {
+
+    /** Intrusive doubly linked list of page ids, most recently used last */
+    static class PageList {
+
+        private static class Node {
+            final PageId pid;
+            Node prev;
+            Node next;
+
+            Node(PageId pid) {
+                this.pid = pid;
+            }
+        }
+
+        private final HashMap<PageId, Node> nodes = new HashMap<>();
+        // sentinel: head.next is the least recently used page, head.prev
+        // the most recently used one
+        private final Node head = new Node(null);
+
+        PageList() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        int size() {
+            return nodes.size();
+        }
+
+        boolean contains(PageId pid) {
+            return nodes.containsKey(pid);
+        }
+
+        /** Add pid at the most recently used end, or move it there */
+        void addMostRecent(PageId pid) {
+            Node n = nodes.get(pid);
+            if (n == null) {
+                n = new Node(pid);
+                nodes.put(pid, n);
+            } else {
+                unlink(n);
+            }
+            n.prev = head.prev;
+            n.next = head;
+            head.prev.next = n;
+            head.prev = n;
+        }
+
+        boolean remove(PageId pid) {
+            Node n = nodes.remove(pid);
+            if (n == null)
+                return false;
+            unlink(n);
+            return true;
+        }
+
+        /** Remove and return the least recently used page, or null if empty */
+        PageId removeLeastRecent() {
+            if (head.next == head)
+                return null;
+            PageId pid = head.next.pid;
+            remove(pid);
+            return pid;
+        }
+
+        /**
+         * Remove and return the least recently used page accepted by
+         * evictable, or null if there is none.
+         */
+        PageId removeLeastRecent(Evictable evictable) {
+            for (Node n = head.next; n != head; n = n.next) {
+                if (evictable.canEvict(n.pid)) {
+                    remove(n.pid);
+                    return n.pid;
+                }
+            }
+            return null;
+        }
+
+        private void unlink(Node n) {
+            n.prev.next = n.next;
+            n.next.prev = n.prev;
+        }
+    }
+
+    private final PageList pages = new PageList();
+
+    public void pageHit(PageId pid) {
+        pages.addMostRecent(pid);
+    }
+
+    public void pageAdded(PageId pid) {
+        pages.addMostRecent(pid);
+    }
+
+    public void pageRemoved(PageId pid) {
+        pages.remove(pid);
+    }
+
+    public PageId evict(PageId incoming, Evictable evictable) {
+        return pages.removeLeastRecent(evictable);
+    }
+}
@@ -0,0 +1,177 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Knows how to compute some aggregate over a set of LongFields,
+ * DoubleFields or DateFields. The values are accumulated as primitives:
+ * the sum and average of longs are longs (the average rounded towards
+ * zero, as IntegerAggregator does), those of doubles are doubles, and
+ * dates only have a minimum, maximum and count.
+ */
+public class NumericAggregator implements Aggregator {
+
+    private static final long serialVersionUID = 1L;
+    private final int gbField;
+    private final Type gbFieldType;
+    private final int aField;
+    private final Type aFieldType;
+    private final Op operator;
+    private final Map<Field, Group> groups;
+    private String gFieldName, aFieldName;
+
+    /** The running aggregate of a group */
+    private static class Group {
+        long count;
+        long sum, min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        double dsum, dmin = Double.POSITIVE_INFINITY, dmax = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Aggregate constructor
+     *
+     * @param gbfield
+     *            the 0-based index of the group-by field in the tuple, or
+     *            NO_GROUPING if there is no grouping
+     * @param gbfieldtype
+     *            the type of the group by field (e.g., Type.INT_TYPE), or null
+     *            if there is no grouping
+     * @param afield
+     *            the 0-based index of the aggregate field in the tuple
+     * @param afieldtype
+     *            the type of the aggregate field: LONG_TYPE, DOUBLE_TYPE or
+     *            DATE_TYPE
+     * @param what
+     *            the aggregation operator
+     * @throws IllegalArgumentException if the operator is not supported for
+     *             the type of the aggregate field
+     */
+    public NumericAggregator(int gbfield, Type gbfieldtype, int afield, Type afieldtype, Op what) {
+        if (resultType(afieldtype, what) == null)
+            throw new IllegalArgumentException("Operation " + what + " not supported for " + afieldtype);
+        this.gbField = gbfield;
+        this.gbFieldType = gbfieldtype;
+        this.aField = afield;
+        this.aFieldType = afieldtype;
+        this.operator = what;
+        groups = new HashMap<>();
+    }
+
+    /**
+     * Return the type of the result of the specified aggregate over a field
+     * of the specified type, or null if this aggregator does not support it.
+     */
+    public static Type resultType(Type afieldtype, Op what) {
+        if (afieldtype != Type.LONG_TYPE && afieldtype != Type.DOUBLE_TYPE
+                && afieldtype != Type.DATE_TYPE)
+            return null;
+        switch (what) {
+        case COUNT:
+            return Type.INT_TYPE;
+        case MIN:
+        case MAX:
+            return afieldtype;
+        case SUM:
+        case AVG:
+            return afieldtype == Type.DATE_TYPE ? null : afieldtype;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Merge a new tuple into the aggregate, grouping as indicated in the
+     * constructor
+     *
+     * @param tup
+     *            the Tuple containing an aggregate field and a group-by field
+     */
+    public void mergeTupleIntoGroup(Tuple tup) {
+        Field groupField;
+        if (gbField != Aggregator.NO_GROUPING) {
+            groupField = tup.getField(gbField);
+            gFieldName = tup.getTupleDesc().getFieldName(gbField);
+        }
+        else
+            groupField = new IntField(Aggregator.NO_GROUPING);
+        aFieldName = tup.getTupleDesc().getFieldName(aField);
+        Group g = groups.get(groupField);
+        if (g == null) {
+            g = new Group();
+            groups.put(groupField, g);
+        }
+        g.count++;
+        Field f = tup.getField(aField);
+        if (aFieldType == Type.DOUBLE_TYPE) {
+            double v = ((DoubleField) f).getValue();
+            g.dsum += v;
+            g.dmin = Math.min(g.dmin, v);
+            g.dmax = Math.max(g.dmax, v);
+        } else {
+            long v = aFieldType == Type.LONG_TYPE
+                    ? ((LongField) f).getValue() : ((DateField) f).getTime();
+            g.sum += v;
+            g.min = Math.min(g.min, v);
+            g.max = Math.max(g.max, v);
+        }
+    }
+
+    /**
+     * Create a OpIterator over group aggregate results.
+     *
+     * @return a OpIterator whose tuples are the pair (groupVal, aggregateVal)
+     *         if using group, or a single (aggregateVal) if no grouping.
+     */
+    public OpIterator iterator() {
+        TupleDesc desc = getTupleDesc();
+        List<Tuple> tuples = new ArrayList<>();
+        for (Map.Entry<Field, Group> entry : groups.entrySet()) {
+            Tuple tuple = new Tuple(desc);
+            if (gbField == Aggregator.NO_GROUPING) {
+                tuple.setField(0, result(entry.getValue()));
+            }
+            else {
+                tuple.setField(0, entry.getKey());
+                tuple.setField(1, result(entry.getValue()));
+            }
+            tuples.add(tuple);
+        }
+        return new TupleIterator(desc, tuples);
+    }
+
+    private Field result(Group g) {
+        if (operator == Op.COUNT)
+            return new IntField((int) g.count);
+        if (aFieldType == Type.DOUBLE_TYPE) {
+            switch (operator) {
+            case MIN: return new DoubleField(g.dmin);
+            case MAX: return new DoubleField(g.dmax);
+            case SUM: return new DoubleField(g.dsum);
+            default: return new DoubleField(g.dsum / g.count);
+            }
+        }
+        long v;
+        switch (operator) {
+        case MIN: v = g.min; break;
+        case MAX: v = g.max; break;
+        case SUM: v = g.sum; break;
+        default: v = g.sum / g.count; break;
+        }
+        return aFieldType == Type.DATE_TYPE ? new DateField(v) : new LongField(v);
+    }
+
+    /**
+     * Create a TupleDesc of the aggregate results: (aggregateVal) or
+     * (groupVal, aggregateVal), named after the input fields.
+     */
+    private TupleDesc getTupleDesc() {
+        Type resultType = resultType(aFieldType, operator);
+        if (gbField == Aggregator.NO_GROUPING)
+            return new TupleDesc(new Type[] { resultType }, new String[] { aFieldName });
+        return new TupleDesc(new Type[] { gbFieldType, resultType },
+                new String[] { gFieldName, aFieldName });
+    }
+}
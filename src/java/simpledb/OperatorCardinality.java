@@ -47,6 +47,11 @@ public class OperatorCardinality {
                             .estimateTableCardinality(1.0);
                 }
             }
+            // LIMIT returns at most its limit
+            int limit = o instanceof Limit ? ((Limit) o).getLimit()
+                    : o instanceof TopN ? ((TopN) o).getLimit() : -1;
+            if (limit >= 0)
+                childC = Math.min(childC, limit);
             o.setEstimatedCardinality(childC);
             return hasJoinPK;
         }
@@ -1,20 +1,45 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
  * OrderBy is an operator that implements a relational ORDER BY.
+ * <p>
+ * The tuples are sorted with an external merge sort within a memory
+ * budget: the child is read in runs of as many tuples as the budget holds,
+ * each sorted in memory. If the child fits in one run, its tuples are
+ * returned from memory. Otherwise each run is spilled to a temporary
+ * {@link SpillFile}, and the runs are merged with a loser tree as the
+ * tuples are returned, so the first tuple is returned as soon as the runs
+ * are written; when there are more than MAX_FAN_IN runs, they are first
+ * merged MAX_FAN_IN at a time into longer runs. Tuples with equal sort
+ * fields are returned in the order of the child.
  */
 public class OrderBy extends Operator {
 
     private static final long serialVersionUID = 1L;
+    /** The memory budget of the sort, in bytes, unless otherwise specified */
+    public static final long DEFAULT_MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 8;
+    /** The number of runs merged at once */
+    public static final int MAX_FAN_IN = 64;
+    // the estimated memory taken by a tuple in addition to its fields; the
+    // tuples kept are detached, so they do not keep the pages they were
+    // read from in memory
+    static final int TUPLE_OVERHEAD = 64;
+
     private OpIterator child;
     private TupleDesc td;
-    private ArrayList<Tuple> childTups = new ArrayList<Tuple>();
     private int orderByField;
     private String orderByFieldName;
-    private Iterator<Tuple> it;
     private boolean asc;
+    private final long memoryBudget;
+    // the sorted tuples, if they fit in memory, and the index of the next
+    private transient Tuple[] childTups;
+    private transient int numTups, next;
+    // otherwise the sorted runs, and their merge
+    private transient List<SpillFile> runs;
+    private transient LoserTree merge;
 
     /**
      * Creates a new OrderBy node over the tuples from the iterator.
@@ -27,11 +52,29 @@ public class OrderBy extends Operator {
      *            the tuples to sort.
      */
     public OrderBy(int orderbyField, boolean asc, OpIterator child) {
+        this(orderbyField, asc, child, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Creates a new OrderBy node over the tuples from the iterator, which
+     * holds at most about memoryBudget bytes of tuples in memory.
+     * 
+     * @param orderbyField
+     *            the field to which the sort is applied.
+     * @param asc
+     *            true if the sort order is ascending.
+     * @param child
+     *            the tuples to sort.
+     * @param memoryBudget
+     *            the memory budget of the sort, in bytes.
+     */
+    public OrderBy(int orderbyField, boolean asc, OpIterator child, long memoryBudget) {
         this.child = child;
         td = child.getTupleDesc();
         this.orderByField = orderbyField;
         this.orderByFieldName = td.getFieldName(orderbyField);
         this.asc = asc;
+        this.memoryBudget = memoryBudget;
     }
     
     public boolean isASC()
@@ -56,21 +99,91 @@ public class OrderBy extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
-        // load all the tuples in a collection, and sort it
-        while (child.hasNext())
-            childTups.add((Tuple) child.next());
-        Collections.sort(childTups, new TupleComparator(orderByField, asc));
-        it = childTups.iterator();
+        Comparator<Tuple> comparator = new TupleComparator(orderByField, asc,
+                td.getFieldType(orderByField));
+        int runSize = (int) Math.max(2, Math.min(Integer.MAX_VALUE - 8,
+                memoryBudget / (td.getSize() + TUPLE_OVERHEAD)));
+        // load the tuples in runs that fit in memory, and sort each
+        childTups = new Tuple[Math.min(runSize, 1024)];
+        numTups = 0;
+        runs = new ArrayList<SpillFile>();
+        try {
+            while (child.hasNext()) {
+                if (numTups == runSize) {
+                    Arrays.sort(childTups, 0, numTups, comparator);
+                    runs.add(spill(childTups, numTups));
+                    Arrays.fill(childTups, null);
+                    numTups = 0;
+                }
+                if (numTups == childTups.length)
+                    childTups = Arrays.copyOf(childTups, (int) Math.min(runSize, 2L * numTups));
+                Tuple t = child.next();
+                t.detach();
+                childTups[numTups++] = t;
+            }
+            Arrays.sort(childTups, 0, numTups, comparator);
+            if (!runs.isEmpty()) {
+                runs.add(spill(childTups, numTups));
+                childTups = null;
+                numTups = 0;
+                while (runs.size() > MAX_FAN_IN)
+                    mergePass(comparator);
+                merge = new LoserTree(runs, comparator);
+            }
+        } catch (IOException e) {
+            throw new DbException("cannot spill sorted run: " + e.getMessage());
+        }
+        next = 0;
         super.open();
     }
 
+    /** Write the first n tuples to a new run */
+    private SpillFile spill(Tuple[] tuples, int n) throws IOException {
+        SpillFile run = new SpillFile(td);
+        for (int i = 0; i < n; i++)
+            run.add(tuples[i]);
+        return run;
+    }
+
+    /**
+     * Merge each MAX_FAN_IN consecutive runs into one, keeping the runs in
+     * order so that the sort stays stable
+     */
+    private void mergePass(Comparator<Tuple> comparator)
+            throws IOException, DbException, TransactionAbortedException {
+        List<SpillFile> merged = new ArrayList<SpillFile>();
+        for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+            List<SpillFile> group = runs.subList(i, Math.min(i + MAX_FAN_IN, runs.size()));
+            SpillFile run = new SpillFile(td);
+            LoserTree tree = new LoserTree(group, comparator);
+            for (Tuple t = tree.next(); t != null; t = tree.next())
+                run.add(t);
+            tree.close();
+            for (SpillFile f : group)
+                f.close();
+            merged.add(run);
+        }
+        runs = merged;
+    }
+
     public void close() {
         super.close();
-        it = null;
+        child.close();
+        childTups = null;
+        numTups = 0;
+        if (merge != null)
+            merge.close();
+        merge = null;
+        if (runs != null)
+            for (SpillFile run : runs)
+                run.close();
+        runs = null;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        it = childTups.iterator();
+        next = 0;
+        if (merge != null)
+            merge.rewind();
     }
 
     /**
@@ -82,9 +195,11 @@ public class OrderBy extends Operator {
      */
     protected Tuple fetchNext() throws NoSuchElementException,
             TransactionAbortedException, DbException {
-        if (it != null && it.hasNext()) {
-            return it.next();
-        } else
+        if (merge != null)
+            return merge.next();
+        if (childTups != null && next < numTups)
+            return childTups[next++];
+        else
             return null;
     }
 
@@ -98,26 +213,86 @@ public class OrderBy extends Operator {
         this.child = children[0];
     }
 
-}
+    /**
+     * A loser tree over sorted runs, which returns their tuples in order
+     * with about log2(k) comparisons per tuple for k runs. Each internal
+     * node holds the run that lost the comparison at that node, and node 0
+     * the overall winner; only the path from the winner's leaf to the root
+     * is replayed when the winner advances. Ties go to the earlier run, so
+     * the merge is stable.
+     */
+    private static class LoserTree {
+        private final DbFileIterator[] runs;
+        private final Comparator<Tuple> comparator;
+        // the next tuple of each run, null once it is exhausted
+        private final Tuple[] heads;
+        private final int[] tree;
 
-class TupleComparator implements Comparator<Tuple> {
-    int field;
-    boolean asc;
+        LoserTree(List<SpillFile> files, Comparator<Tuple> comparator)
+                throws DbException, TransactionAbortedException {
+            this.comparator = comparator;
+            runs = new DbFileIterator[files.size()];
+            for (int i = 0; i < runs.length; i++) {
+                runs[i] = files.get(i).iterator();
+                runs[i].open();
+            }
+            heads = new Tuple[runs.length];
+            tree = new int[runs.length];
+            init();
+        }
 
-    public TupleComparator(int field, boolean asc) {
-        this.field = field;
-        this.asc = asc;
-    }
+        private void init() throws DbException, TransactionAbortedException {
+            for (int i = 0; i < runs.length; i++)
+                heads[i] = runs[i].hasNext() ? runs[i].next() : null;
+            // -1 beats every run, so each leaf is played up to the root
+            Arrays.fill(tree, -1);
+            for (int i = runs.length - 1; i >= 0; i--)
+                replay(i);
+        }
 
-    public int compare(Tuple o1, Tuple o2) {
-        Field t1 = (o1).getField(field);
-        Field t2 = (o2).getField(field);
-        if (t1.compare(Predicate.Op.EQUALS, t2))
-            return 0;
-        if (t1.compare(Predicate.Op.GREATER_THAN, t2))
-            return asc ? 1 : -1;
-        else
-            return asc ? -1 : 1;
+        /** @return true if run a comes before run b */
+        private boolean beats(int a, int b) {
+            if (a < 0 || b < 0)
+                return a < 0;
+            if (heads[a] == null || heads[b] == null)
+                return heads[b] == null && (heads[a] != null || a < b);
+            int c = comparator.compare(heads[a], heads[b]);
+            return c != 0 ? c < 0 : a < b;
+        }
+
+        /** Play the head of run s up the tree */
+        private void replay(int s) {
+            for (int t = (s + runs.length) >> 1; t > 0; t >>= 1) {
+                if (!beats(s, tree[t])) {
+                    int loser = s;
+                    s = tree[t];
+                    tree[t] = loser;
+                }
+            }
+            tree[0] = s;
+        }
+
+        /** @return the next tuple of the merge, or null at the end */
+        Tuple next() throws DbException, TransactionAbortedException {
+            int w = tree[0];
+            Tuple t = heads[w];
+            if (t == null)
+                return null;
+            heads[w] = runs[w].hasNext() ? runs[w].next() : null;
+            replay(w);
+            return t;
+        }
+
+        void rewind() throws DbException, TransactionAbortedException {
+            for (DbFileIterator run : runs)
+                run.rewind();
+            init();
+        }
+
+        void close() {
+            for (DbFileIterator run : runs)
+                run.close();
+        }
     }
-    
+
 }
@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.nio.ByteBuffer;
+
 /**
  * Page is the interface used to represent pages that are resident in the
  * BufferPool.  Typically, DbFiles will read and write pages from disk.
@@ -46,6 +48,15 @@ public interface Page {
 
     public byte[] getPageData();
 
+  /**
+   * Write the bytes returned by getPageData to the specified buffer, at its
+   * position, without allocating them. Used to write pages to disk through
+   * reusable buffers.
+   */
+    default void writePageData(ByteBuffer buf) {
+        buf.put(getPageData());
+    }
+
     /** Provide a representation of this page before any modifications were made
         to it.  Used by recovery.
     */
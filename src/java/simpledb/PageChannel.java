@@ -0,0 +1,304 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * PageChannel is the long-lived FileChannel a DbFile does its page I/O
+ * through. All reads and writes are positional, so they never move a shared
+ * file pointer and concurrent readers of the same file do not need to be
+ * serialized. The channel is opened on first use and reopened if it was
+ * closed (by {@link #close()}, or because a thread was interrupted in the
+ * middle of an I/O).
+ * <p>
+ * In memory-mapped mode the file is also mapped read-only, in segments of
+ * {@link #SEGMENT_SIZE} bytes, and {@link #slice(long, int)} hands out views
+ * of the mapping so that a page can be decoded without a system call or a
+ * copy into a private buffer. A segment that no longer covers the requested
+ * range because the file grew is mapped again with the new length. Writes
+ * still go through the channel; the OS keeps the mapping coherent with them.
+ * <p>
+ * If the channel has {@link PageChecksums}, the checksum of each page is
+ * computed from the buffer it is serialized into and saved before the page
+ * is written, and {@link #verify} checks the pages read against them.
+ *
+ * @Threadsafe
+ */
+public class PageChannel {
+
+    /** Size of the regions the file is mapped in, in bytes */
+    public static final long SEGMENT_SIZE = 1L << 30;
+
+    /** Upper bound on the number of pages coalesced into a single write */
+    public static final int MAX_COALESCED_PAGES = 64;
+
+    private static final MappedByteBuffer[] NO_SEGMENTS = new MappedByteBuffer[0];
+
+    // the pages are serialized into a direct buffer of the writing thread,
+    // which is shared by all the files and reused from write to write
+    private static final ThreadLocal<ByteBuffer> writeBuffers = new ThreadLocal<>();
+
+    private final File file;
+    private volatile FileChannel channel;
+
+    private volatile boolean memoryMapped = false;
+    // replaced, never modified, under the monitor of this
+    private volatile MappedByteBuffer[] segments = NO_SEGMENTS;
+
+    // the checksums of the pages, or null if they are not checksummed
+    private volatile PageChecksums checksums;
+
+    public PageChannel(File file) {
+        this.file = file;
+    }
+
+    private FileChannel channel() throws IOException {
+        FileChannel ch = channel;
+        if (ch != null && ch.isOpen())
+            return ch;
+        synchronized (this) {
+            if (channel == null || !channel.isOpen())
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+            return channel;
+        }
+    }
+
+    /**
+     * Read bytes starting at the specified file offset until dst is full or
+     * the end of the file is reached.
+     *
+     * @return the number of bytes read, 0 if position is at or past the end
+     *   of the file
+     */
+    public int read(ByteBuffer dst, long position) throws IOException {
+        int start = dst.position();
+        try {
+            readFully(channel(), dst, position);
+        } catch (ClosedChannelException e) {
+            if (Thread.currentThread().isInterrupted())
+                throw e;
+            // another thread closed the channel under us: start over
+            dst.position(start);
+            readFully(channel(), dst, position);
+        }
+        return dst.position() - start;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer dst, long position) throws IOException {
+        long offset = position;
+        while (dst.hasRemaining()) {
+            int n = ch.read(dst, offset);
+            if (n < 0)
+                break;
+            offset += n;
+        }
+    }
+
+    /**
+     * Write all the remaining bytes of src at the specified file offset.
+     */
+    public void write(ByteBuffer src, long position) throws IOException {
+        int start = src.position();
+        try {
+            writeFully(channel(), src, position);
+        } catch (ClosedChannelException e) {
+            if (Thread.currentThread().isInterrupted())
+                throw e;
+            src.position(start);
+            writeFully(channel(), src, position);
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer src, long position) throws IOException {
+        long offset = position;
+        while (src.hasRemaining())
+            offset += ch.write(src, offset);
+    }
+
+    /**
+     * Write the data of the specified page at the specified file offset.
+     */
+    public void writePage(Page page, long position) throws IOException {
+        writePages(Collections.singletonList(page), p -> position);
+    }
+
+    /**
+     * Write the remaining bytes of data, the data of the page whose page
+     * number is key, at the specified file offset, recording its checksum
+     * as writing a page does.
+     */
+    public void writePage(int key, ByteBuffer data, long position) throws IOException {
+        PageChecksums sums = checksums;
+        if (sums != null) {
+            sums.record(key, data);
+            sums.save(key, key);
+        }
+        write(data, position);
+    }
+
+    /**
+     * Write the data of the specified pages, sorted by offset in the file.
+     * Runs of pages that are adjacent in the file are serialized one after
+     * the other into a reusable buffer, and written with a single write of
+     * up to {@link #MAX_COALESCED_PAGES} pages.
+     *
+     * @param offset returns the offset of a page in the file
+     */
+    public void writePages(List<? extends Page> pages, ToLongFunction<Page> offset) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        ByteBuffer buf = writeBuffer(pageSize);
+        PageChecksums sums = checksums;
+        int i = 0;
+        while (i < pages.size()) {
+            long start = offset.applyAsLong(pages.get(i));
+            int first = pages.get(i).getId().getPageNumber();
+            buf.clear();
+            while (i < pages.size() && buf.remaining() >= pageSize
+                    && offset.applyAsLong(pages.get(i)) == start + buf.position()) {
+                int pageStart = buf.position();
+                pages.get(i).writePageData(buf);
+                if (sums != null) {
+                    ByteBuffer data = buf.duplicate();
+                    data.position(pageStart).limit(buf.position());
+                    sums.record(pages.get(i).getId().getPageNumber(), data);
+                }
+                i++;
+            }
+            // adjacent pages have consecutive numbers
+            if (sums != null)
+                sums.save(first, pages.get(i - 1).getId().getPageNumber());
+            buf.flip();
+            write(buf, start);
+        }
+    }
+
+    /**
+     * Return the write buffer of the calling thread, large enough for
+     * {@link #MAX_COALESCED_PAGES} pages of the specified size.
+     */
+    private static ByteBuffer writeBuffer(int pageSize) {
+        ByteBuffer buf = writeBuffers.get();
+        if (buf == null || buf.capacity() < MAX_COALESCED_PAGES * pageSize) {
+            buf = ByteBuffer.allocateDirect(MAX_COALESCED_PAGES * pageSize);
+            writeBuffers.set(buf);
+        }
+        return buf;
+    }
+
+    /**
+     * Set the checksums the pages written through this channel are
+     * recorded in, and the pages read are verified against; null turns
+     * checksums off.
+     */
+    public void setChecksums(PageChecksums checksums) {
+        this.checksums = checksums;
+    }
+
+    /** Return the checksums of the pages, or null if there are none */
+    public PageChecksums getChecksums() {
+        return checksums;
+    }
+
+    /**
+     * Check the remaining bytes of data, read for the specified page,
+     * against the checksums of the page, if the channel has any.
+     *
+     * @throws CorruptPageException if they match none of them
+     */
+    public void verify(PageId pid, ByteBuffer data) {
+        PageChecksums sums = checksums;
+        if (sums != null && !sums.matches(pid.getPageNumber(), data))
+            throw new CorruptPageException(pid, file);
+    }
+
+    /**
+     * Turn memory-mapped mode on or off. Turning it off drops the mapping.
+     */
+    public synchronized void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+        if (!memoryMapped)
+            segments = NO_SEGMENTS;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Return a read-only view of the len bytes of the file at the specified
+     * offset, backed by the mapping of the file.
+     *
+     * @return the view, or null if the channel is not in memory-mapped mode,
+     *   if the range is not entirely inside the file or if it straddles two
+     *   segments; read the bytes with {@link #read(ByteBuffer, long)} then
+     */
+    public ByteBuffer slice(long position, int len) throws IOException {
+        if (!memoryMapped || len <= 0)
+            return null;
+        int seg = (int) (position / SEGMENT_SIZE);
+        long segStart = seg * SEGMENT_SIZE;
+        long end = position + len;
+        if (end > segStart + SEGMENT_SIZE)
+            return null;
+        MappedByteBuffer[] segs = segments;
+        MappedByteBuffer mapping = seg < segs.length ? segs[seg] : null;
+        if (mapping == null || mapping.capacity() < end - segStart) {
+            mapping = map(seg, end);
+            if (mapping == null)
+                return null;
+        }
+        ByteBuffer view = mapping.duplicate();
+        view.position((int) (position - segStart));
+        view.limit((int) (end - segStart));
+        return view.slice();
+    }
+
+    /**
+     * Map segment seg again, as far as the file currently extends, if it
+     * does not reach end yet.
+     *
+     * @return the mapping, or null if the file ends before end
+     */
+    private synchronized MappedByteBuffer map(int seg, long end) throws IOException {
+        if (!memoryMapped)
+            return null;
+        long segStart = seg * SEGMENT_SIZE;
+        MappedByteBuffer[] segs = segments;
+        if (seg < segs.length && segs[seg] != null && segs[seg].capacity() >= end - segStart)
+            return segs[seg];
+        FileChannel ch = channel();
+        long size = ch.size();
+        if (end > size)
+            return null;
+        MappedByteBuffer mapping = ch.map(FileChannel.MapMode.READ_ONLY, segStart,
+                Math.min(SEGMENT_SIZE, size - segStart));
+        MappedByteBuffer[] grown = Arrays.copyOf(segs, Math.max(segs.length, seg + 1));
+        grown[seg] = mapping;
+        segments = grown;
+        return mapping;
+    }
+
+    /**
+     * Close the channel, and the file of the checksums, and drop the
+     * mapping. They are recreated if the file is accessed again.
+     */
+    public synchronized void close() throws IOException {
+        segments = NO_SEGMENTS;
+        if (checksums != null)
+            checksums.close();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * PageChecksums keeps a checksum of every page of a DbFile, in a file next
+ * to it, so that a page read back from disk can be told apart from one
+ * that was torn by a crash in the middle of its write or damaged since.
+ * The page formats have no room for a header, so the checksums live in
+ * this side file rather than in the pages.
+ * <p>
+ * The checksum is a CRC32C (CRC32 on runtimes before Java 9), computed
+ * straight from the buffer the page is serialized into or read from. Each
+ * page has two: the one of its last write and the one before. A checksum
+ * is saved before the page itself is written, so a page whose write never
+ * happened still matches the previous one, while a torn page matches
+ * neither. Neither file is forced to disk, consistently with the pages,
+ * which are only handed to the OS at commit.
+ * <p>
+ * A page is identified by its key, its page number. A checksum of 0 means
+ * that the page is unknown (e.g. the file was written before checksums
+ * were turned on), and any data matches it.
+ *
+ * @see PageChannel
+ * @Threadsafe
+ */
+public class PageChecksums {
+
+    private static final int UNKNOWN = 0;
+    // bytes per page in the file: the current checksum, then the previous
+    private static final int ENTRY_SIZE = 8;
+
+    private static final MethodHandle NEW_CHECKSUM;
+    private static final MethodHandle UPDATE;
+
+    static {
+        // CRC32C is hardware-accelerated, but only exists since Java 9
+        Class<?> c;
+        try {
+            c = Class.forName("java.util.zip.CRC32C");
+        } catch (ClassNotFoundException e) {
+            c = CRC32.class;
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            NEW_CHECKSUM = lookup.findConstructor(c, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Checksum.class));
+            UPDATE = lookup.findVirtual(c, "update", MethodType.methodType(void.class, ByteBuffer.class))
+                    .asType(MethodType.methodType(void.class, Checksum.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final ThreadLocal<Checksum> checksums = ThreadLocal.withInitial(() -> {
+        try {
+            return (Checksum) NEW_CHECKSUM.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final File file;
+    private final PageChannel channel;
+    // sums[2 * key] is the current checksum of a page, sums[2 * key + 1]
+    // the previous one; guarded by this
+    private int[] sums;
+
+    /**
+     * Open the checksums stored in the specified file, creating it if it
+     * does not exist. The checksums of the keys from numKeys on are
+     * dropped: those pages are past the end of the data file.
+     */
+    public PageChecksums(File file, int numKeys) throws IOException {
+        this.file = file;
+        int keys;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            keys = (int) Math.min(Math.max(numKeys, 0), raf.length() / ENTRY_SIZE);
+            byte[] entries = new byte[keys * ENTRY_SIZE];
+            raf.readFully(entries);
+            sums = new int[Math.max(2 * keys, 64)];
+            ByteBuffer.wrap(entries).asIntBuffer().get(sums, 0, 2 * keys);
+            raf.setLength((long) keys * ENTRY_SIZE);
+        }
+        channel = new PageChannel(file);
+    }
+
+    /** Return the file the checksums of the specified data file are stored in */
+    public static File of(File dataFile) {
+        return new File(dataFile.getPath() + ".crc");
+    }
+
+    /**
+     * Return the checksum of the remaining bytes of data, never 0. The
+     * position of data is left unchanged.
+     */
+    public static int checksum(ByteBuffer data) {
+        Checksum crc = checksums.get();
+        crc.reset();
+        try {
+            UPDATE.invokeExact(crc, data.duplicate());
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+        int sum = (int) crc.getValue();
+        return sum == UNKNOWN ? 1 : sum;
+    }
+
+    /**
+     * Record the checksum of the data of the page with the specified key,
+     * about to be written. The checksum is only saved by {@link #save}.
+     */
+    public synchronized void record(int key, ByteBuffer data) {
+        int sum = checksum(data);
+        if (2 * key + 1 >= sums.length)
+            sums = Arrays.copyOf(sums, Math.max(2 * sums.length, 2 * key + 2));
+        if (sums[2 * key] != sum) {
+            sums[2 * key + 1] = sums[2 * key];
+            sums[2 * key] = sum;
+        }
+    }
+
+    /**
+     * Write the checksums of the keys from first to last, inclusive, to the
+     * file.
+     */
+    public synchronized void save(int first, int last) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((last - first + 1) * ENTRY_SIZE);
+        int end = Math.min(2 * last + 2, sums.length);
+        if (2 * first < end)
+            buf.asIntBuffer().put(sums, 2 * first, end - 2 * first);
+        // under the monitor, so that saves of the same keys do not race
+        channel.write(buf, (long) first * ENTRY_SIZE);
+    }
+
+    /**
+     * Return true if the remaining bytes of data match the current or the
+     * previous checksum of the page with the specified key, or if the page
+     * has none.
+     */
+    public boolean matches(int key, ByteBuffer data) {
+        int current, previous;
+        synchronized (this) {
+            if (2 * key + 1 >= sums.length)
+                return true;
+            current = sums[2 * key];
+            previous = sums[2 * key + 1];
+        }
+        if (current == UNKNOWN)
+            return true;
+        int sum = checksum(data);
+        return sum == current || sum == previous;
+    }
+
+    /** Return the file the checksums are stored in */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Close the file of the checksums. It is reopened if they are saved
+     * again.
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+}
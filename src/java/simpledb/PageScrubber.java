@@ -0,0 +1,115 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PageScrubber verifies the pages of the checksummed tables of the catalog
+ * against their checksums from a background thread, so that a page that
+ * is damaged on disk is noticed even if no query reads it for a long time.
+ * Only cold pages are verified: the pages cached in the BufferPool are
+ * skipped, since they are not read from disk, and the scrubber reads the
+ * pages straight from the files, leaving the pool untouched.
+ *
+ * @see DbFile#scrub
+ * @Threadsafe
+ */
+public class PageScrubber {
+
+    private final long periodMillis;
+    // guarded by this
+    private ScheduledExecutorService executor;
+    // table id -> numbers of the corrupt pages found by the last pass
+    private Map<Integer, List<Integer>> corrupt = Collections.emptyMap();
+
+    /**
+     * Create a scrubber that verifies all the checksummed tables every
+     * periodMillis milliseconds once started.
+     */
+    public PageScrubber(long periodMillis) {
+        this.periodMillis = periodMillis;
+    }
+
+    /** Start verifying the tables in the background */
+    public synchronized void start() {
+        if (executor != null)
+            return;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "page-scrubber");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                scrub();
+            } catch (RuntimeException e) {
+                // e.g. a table removed from the catalog during the pass
+                e.printStackTrace();
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Stop verifying the tables in the background */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Verify the cold pages of all the checksummed tables of the catalog
+     * once, and report the corrupt ones on System.err.
+     *
+     * @return table id -> numbers of the corrupt pages of the table
+     */
+    public Map<Integer, List<Integer>> scrub() {
+        Catalog catalog = Database.getCatalog();
+        BufferPool pool = Database.getBufferPool();
+        Map<Integer, List<Integer>> found = new HashMap<>();
+        Iterator<Integer> tables = catalog.tableIdIterator();
+        while (tables.hasNext()) {
+            int tableid = tables.next();
+            DbFile file = catalog.getDatabaseFile(tableid);
+            if (!file.isChecksummed())
+                continue;
+            List<Integer> pages;
+            try {
+                pages = file.scrub(pool::isCached);
+            } catch (IOException e) {
+                e.printStackTrace();
+                continue;
+            }
+            if (pages.isEmpty())
+                continue;
+            found.put(tableid, pages);
+            System.err.println("Pages " + pages + " of table "
+                    + catalog.getTableName(tableid) + " do not match their checksums");
+        }
+        synchronized (this) {
+            corrupt = found;
+        }
+        return found;
+    }
+
+    /**
+     * Return the corrupt pages found by the last pass.
+     *
+     * @return table id -> numbers of the corrupt pages of the table
+     */
+    public synchronized Map<Integer, List<Integer>> getCorruptPages() {
+        Map<Integer, List<Integer>> copy = new HashMap<>();
+        for (Map.Entry<Integer, List<Integer>> e : corrupt.entrySet())
+            copy.put(e.getKey(), new ArrayList<>(e.getValue()));
+        return copy;
+    }
+}
@@ -0,0 +1,144 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PageWriter writes the pages forced to disk by committing transactions
+ * from a background thread. The requests of all the transactions that
+ * commit while a batch is being written are gathered into the next batch,
+ * whose pages are sorted by table and page number and handed to
+ * {@link DbFile#writePages}, which coalesces adjacent pages into single
+ * writes. Concurrent commits thus share their disk writes (group commit).
+ * <p>
+ * The BufferPool is NO STEAL and FORCE, so dirty pages always belong to
+ * running transactions and are never written by eviction; the commit-time
+ * writes are the only ones on the query path.
+ *
+ * @Threadsafe
+ */
+public class PageWriter {
+
+    private static final ExecutorService writerThread;
+    static {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+                    Thread t = new Thread(r, "page-writer");
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        writerThread = executor;
+    }
+
+    private static final Comparator<Page> DISK_ORDER =
+            Comparator.<Page>comparingInt(p -> p.getId().getTableId())
+                    .thenComparingInt(p -> p.getId().getPageNumber());
+
+    private static class Request {
+        final List<Page> pages;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Request(List<Page> pages) {
+            this.pages = pages;
+        }
+    }
+
+    // guarded by this
+    private final ArrayList<Request> queue = new ArrayList<>();
+    private boolean scheduled = false;
+
+    /**
+     * Write the specified pages to disk, and wait until they are written.
+     * The pages must not be modified until the call returns.
+     *
+     * @throws IOException if a page could not be written
+     */
+    public void write(List<Page> pages) throws IOException {
+        if (pages.isEmpty())
+            return;
+        Request request = new Request(pages);
+        synchronized (this) {
+            queue.add(request);
+            if (!scheduled) {
+                scheduled = true;
+                writerThread.execute(this::drain);
+            }
+        }
+        try {
+            request.done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /** Write batches of requests until the queue is empty */
+    private void drain() {
+        while (true) {
+            ArrayList<Request> batch;
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    scheduled = false;
+                    return;
+                }
+                batch = new ArrayList<>(queue);
+                queue.clear();
+            }
+            ArrayList<Page> pages = new ArrayList<>();
+            for (Request request : batch)
+                pages.addAll(request.pages);
+            HashMap<Integer, Throwable> failed = writeSorted(pages);
+            for (Request request : batch) {
+                Throwable error = null;
+                for (Page p : request.pages) {
+                    error = failed.get(p.getId().getTableId());
+                    if (error != null)
+                        break;
+                }
+                if (error == null)
+                    request.done.complete(null);
+                else
+                    request.done.completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * Write the specified pages in disk order, table by table.
+     *
+     * @return the error each table whose pages could not all be written
+     *   failed with
+     */
+    static HashMap<Integer, Throwable> writeSorted(List<Page> pages) {
+        HashMap<Integer, Throwable> failed = new HashMap<>();
+        pages.sort(DISK_ORDER);
+        int i = 0;
+        while (i < pages.size()) {
+            int tableId = pages.get(i).getId().getTableId();
+            int j = i;
+            while (j < pages.size() && pages.get(j).getId().getTableId() == tableId)
+                j++;
+            try {
+                Database.getCatalog().getDatabaseFile(tableId)
+                        .writePages(new ArrayList<>(pages.subList(i, j)));
+            } catch (IOException | RuntimeException e) {
+                failed.put(tableId, e);
+            }
+            i = j;
+        }
+        return failed;
+    }
+}
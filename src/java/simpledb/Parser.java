@@ -4,6 +4,8 @@ import Zql.*;
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import jline.ArgumentCompletor;
 import jline.ConsoleReader;
@@ -273,12 +275,84 @@ public class Parser {
     private Transaction curtrans = null;
     private boolean inUserTrans = false;
 
+    private static final Pattern LIMIT = Pattern.compile(
+            "(?is)^(.*?)(?:\\s+limit\\s+(\\d+))?(?:\\s+offset\\s+(\\d+))?\\s*(;?)\\s*$");
+
+    /**
+     * A statement without the LIMIT n and OFFSET m clauses at its end, which
+     * Zql cannot parse, and their values: -1 and 0 if it has none.
+     */
+    static class StrippedStatement {
+        final String statement;
+        final int limit;
+        final int offset;
+
+        StrippedStatement(String statement, int limit, int offset) {
+            this.statement = statement;
+            this.limit = limit;
+            this.offset = offset;
+        }
+
+        boolean hasLimit() {
+            return limit >= 0 || offset > 0;
+        }
+
+        /**
+         * Add the LIMIT and OFFSET, if any, to the plan of the statement,
+         * which must be a SELECT.
+         */
+        void addTo(LogicalPlan lp) {
+            if (hasLimit())
+                lp.addLimit(limit, offset);
+        }
+    }
+
+    /**
+     * Remove the LIMIT n and OFFSET m clauses at the end of the statement s.
+     * They apply to the top-level SELECT only: the caller adds them to its
+     * plan, and rejects them on any other statement.
+     */
+    static StrippedStatement stripLimit(String s) throws simpledb.ParsingException {
+        Matcher m = LIMIT.matcher(s);
+        if (!m.matches() || (m.group(2) == null && m.group(3) == null))
+            return new StrippedStatement(s, -1, 0);
+        try {
+            int limit = m.group(2) != null ? Integer.parseInt(m.group(2)) : -1;
+            int offset = m.group(3) != null ? Integer.parseInt(m.group(3)) : 0;
+            return new StrippedStatement(m.group(1) + m.group(4), limit, offset);
+        } catch (NumberFormatException e) {
+            throw new simpledb.ParsingException("LIMIT or OFFSET out of range");
+        }
+    }
+
+    /** Read the rest of the statement in is, and remove its LIMIT */
+    private static StrippedStatement stripLimit(InputStream is) throws IOException,
+            simpledb.ParsingException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        for (int n = is.read(buf); n >= 0; n = is.read(buf))
+            out.write(buf, 0, n);
+        return stripLimit(out.toString("UTF-8"));
+    }
+
     public Query handleQueryStatement(ZQuery s, TransactionId tId)
             throws TransactionAbortedException, DbException, IOException,
             simpledb.ParsingException, Zql.ParseException {
+        return handleQueryStatement(s, tId, new StrippedStatement(null, -1, 0));
+    }
+
+    /**
+     * Same as {@link #handleQueryStatement(ZQuery, TransactionId)}, for the
+     * SELECT s with the LIMIT and OFFSET removed from it by stripLimit.
+     */
+    private Query handleQueryStatement(ZQuery s, TransactionId tId,
+            StrippedStatement stripped) throws TransactionAbortedException,
+            DbException, IOException, simpledb.ParsingException,
+            Zql.ParseException {
         Query query = new Query(tId);
 
         LogicalPlan lp = parseQueryLogicalPlan(tId, s);
+        stripped.addTo(lp);
         OpIterator physicalPlan = lp.physicalPlan(tId,
                 TableStats.getStatsMap(), explain);
         query.setPhysicalPlan(physicalPlan);
@@ -356,7 +430,19 @@ public class Parser {
                     throw new simpledb.ParsingException(
                             "Complex expressions not allowed in INSERT statements.");
                 ZConstant zc = (ZConstant) e;
-                if (zc.getType() == ZConstant.NUMBER) {
+                if (zc.getType() == ZConstant.NUMBER
+                        && (td.getFieldType(i) == Type.LONG_TYPE
+                            || td.getFieldType(i) == Type.DOUBLE_TYPE)
+                        || zc.getType() == ZConstant.STRING
+                        && td.getFieldType(i) == Type.DATE_TYPE) {
+                    try {
+                        t.setField(i, td.getFieldType(i).parse(zc.getValue()));
+                    } catch (IllegalArgumentException ex) {
+                        throw new simpledb.ParsingException("Value "
+                                + zc.getValue() + " is not a valid "
+                                + td.getFieldType(i) + ".");
+                    }
+                } else if (zc.getType() == ZConstant.NUMBER) {
                     if (td.getFieldType(i) != Type.INT_TYPE) {
                         throw new simpledb.ParsingException("Value "
                                 + zc.getValue()
@@ -365,7 +451,9 @@ public class Parser {
                     IntField f = new IntField(new Integer(zc.getValue()));
                     t.setField(i, f);
                 } else if (zc.getType() == ZConstant.STRING) {
-                    if (td.getFieldType(i) != Type.STRING_TYPE) {
+                    if (td.getFieldType(i) != Type.STRING_TYPE
+                            && td.getFieldType(i) != Type.VARCHAR_TYPE
+                            && td.getFieldType(i) != Type.DICT_TYPE) {
                         throw new simpledb.ParsingException("Value "
                                 + zc.getValue()
                                 + " is a string, expected an integer.");
@@ -465,12 +553,14 @@ public class Parser {
 
     public LogicalPlan generateLogicalPlan(TransactionId tid, String s)
             throws simpledb.ParsingException {
-        ByteArrayInputStream bis = new ByteArrayInputStream(s.getBytes());
+        StrippedStatement stripped = stripLimit(s);
+        ByteArrayInputStream bis = new ByteArrayInputStream(stripped.statement.getBytes());
         ZqlParser p = new ZqlParser(bis);
         try {
             ZStatement stmt = p.readStatement();
             if (stmt instanceof ZQuery) {
                 LogicalPlan lp = parseQueryLogicalPlan(tid, (ZQuery) stmt);
+                stripped.addTo(lp);
                 return lp;
             }
         } catch (Zql.ParseException e) {
@@ -503,8 +593,13 @@ public class Parser {
 
     public void processNextStatement(InputStream is) {
         try {
-            ZqlParser p = new ZqlParser(is);
+            StrippedStatement stripped = stripLimit(is);
+            ZqlParser p = new ZqlParser(new ByteArrayInputStream(
+                    stripped.statement.getBytes("UTF-8")));
             ZStatement s = p.readStatement();
+            if (stripped.hasLimit() && !(s instanceof ZQuery))
+                throw new simpledb.ParsingException(
+                        "LIMIT and OFFSET are only supported on SELECT statements");
 
             Query query = null;
             if (s instanceof ZTransactStmt)
@@ -525,7 +620,7 @@ public class Parser {
                                 curtrans.getId());
                     else if (s instanceof ZQuery)
                         query = handleQueryStatement((ZQuery) s,
-                                curtrans.getId());
+                                curtrans.getId(), stripped);
                     else {
                         System.out
                                 .println("Can't parse "
@@ -581,7 +676,7 @@ public class Parser {
     // Basic SQL completions
     public static final String[] SQL_COMMANDS = { "select", "from", "where",
             "group by", "max(", "min(", "avg(", "count", "rollback", "commit",
-            "insert", "delete", "values", "into" };
+            "insert", "delete", "values", "into", "limit", "offset" };
 
     public static void main(String argv[]) throws IOException {
 
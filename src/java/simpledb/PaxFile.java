@@ -0,0 +1,42 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * PaxFile is a HeapFile whose pages are PaxPages, which store the tuples of
+ * the page column by column, for analytic tables whose scans read a few of
+ * their fields. The tuples of a PaxPage are decoded lazily, field by
+ * field, so a SeqScan over a PaxFile only decodes the fields the operators
+ * above it access, and reads them from contiguous bytes. Everything else
+ * (free space map, checksums, compression) works as for other HeapFiles.
+ * <p>
+ * The fields must have fixed lengths. HeapFileEncoder writes PaxFiles when
+ * asked for a columnar layout.
+ *
+ * @see PaxPage
+ * @see HeapFileEncoder
+ */
+public class PaxFile extends HeapFile {
+
+    /**
+     * Constructs a PaxFile backed by the specified file.
+     *
+     * @throws IllegalArgumentException if td has variable-length fields
+     */
+    public PaxFile(File f, TupleDesc td) {
+        super(f, checkFixedLength(td));
+    }
+
+    @Override
+    protected HeapFilePage newPage(HeapPageId pid, ByteBuffer data) throws IOException {
+        return new PaxPage(pid, data);
+    }
+
+    private static TupleDesc checkFixedLength(TupleDesc td) {
+        if (SlottedHeapPage.isUsedFor(td))
+            throw new IllegalArgumentException("a PaxFile cannot store variable-length fields: " + td);
+        return td;
+    }
+}
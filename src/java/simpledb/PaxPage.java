@@ -0,0 +1,95 @@
+package simpledb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * PaxPage is a HeapPage whose slots are laid out by column (PAX, Partition
+ * Attributes Across): the header is followed by one minipage per field,
+ * which holds that field of every slot of the page, one after the other.
+ * A page holds as many tuples as a HeapPage of the same table, with the
+ * same header, and its tuples are decoded lazily in the same way, so a
+ * scan that only reads some of the fields of the tuples (e.g. those of a
+ * predicate and of an aggregate) only touches the minipages of those
+ * fields, and reads each of them sequentially.
+ *
+ * @see PaxFile
+ * @see HeapPage
+ */
+public class PaxPage extends HeapPage {
+
+    // offset of the minipage of each field
+    private final int[] minipageOffsets;
+    // length of each field
+    private final int[] fieldLengths;
+
+    /**
+     * Create a PaxPage from a set of bytes of data read from disk. The page
+     * reads from data as long as it is not modified, so the array must not
+     * be changed afterwards.
+     */
+    public PaxPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a PaxPage from a set of bytes of data read from disk.
+     */
+    public PaxPage(HeapPageId id, ByteBuffer data) throws IOException {
+        super(id, data);
+        fieldLengths = new int[td.numFields()];
+        for (int j = 0; j < fieldLengths.length; j++)
+            fieldLengths[j] = td.getFieldLen(j);
+        minipageOffsets = minipageOffsets(td, numSlots, header.length);
+    }
+
+    private static int[] minipageOffsets(TupleDesc td, int numSlots, int headerSize) {
+        int[] offsets = new int[td.numFields()];
+        int offset = headerSize;
+        for (int j = 0; j < offsets.length; j++) {
+            offsets[j] = offset;
+            offset += numSlots * td.getFieldLen(j);
+        }
+        return offsets;
+    }
+
+    @Override
+    int fieldOffset(int slotId, int j) {
+        return minipageOffsets[j] + slotId * fieldLengths[j];
+    }
+
+    @Override
+    HeapPage newPage(ByteBuffer data) throws IOException {
+        return new PaxPage(pid, data);
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    @Override
+    public PaxPage getBeforeImage() {
+        return (PaxPage) super.getBeforeImage();
+    }
+
+    /**
+     * Return the bytes of the PaxPage holding the same tuples as the
+     * HeapPage of a table with the specified TupleDesc whose bytes are
+     * rows. The pages have the same length.
+     */
+    public static byte[] fromRows(TupleDesc td, byte[] rows) {
+        int tupleSize = td.getSize();
+        int numSlots = rows.length * 8 / (tupleSize * 8 + 1);
+        int headerSize = (numSlots + 7) / 8;
+        int[] offsets = minipageOffsets(td, numSlots, headerSize);
+        byte[] columns = new byte[rows.length];
+        System.arraycopy(rows, 0, columns, 0, headerSize);
+        for (int slot = 0; slot < numSlots; slot++) {
+            int src = headerSize + slot * tupleSize;
+            for (int j = 0; j < offsets.length; j++) {
+                int len = td.getFieldLen(j);
+                System.arraycopy(rows, src, columns, offsets[j] + slot * len, len);
+                src += len;
+            }
+        }
+        return columns;
+    }
+}
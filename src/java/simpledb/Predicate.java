@@ -46,6 +46,9 @@ public class Predicate implements Serializable {
     private final int field;
     private final Op operator;
     private final Field operand;
+    // the code of the operand in the dictionary it was last looked up in
+    private transient StringDictionary operandDictionary;
+    private transient int operandCode;
 
     /**
      * Constructor.
@@ -103,7 +106,72 @@ public class Predicate implements Serializable {
      */
     public boolean filter(Tuple t) {
         // some code goes here
-        return t.getField(field).compare(operator, operand);
+        // compare integers without creating IntFields
+        if (operand instanceof IntField
+                && t.getTupleDesc().getFieldType(field) == Type.INT_TYPE)
+            return IntField.compare(t.getInt(field), operator, ((IntField) operand).getValue());
+        return filter(t.getField(field));
+    }
+
+    /**
+     * Compares the field number of the selected rows of b to the operand,
+     * and narrows the selection of b to the rows for which the comparison
+     * is true.
+     *
+     * @param b
+     *            The batch to filter
+     */
+    public void filter(TupleBatch b) {
+        int[] sel = b.selection();
+        int n = b.size();
+        int kept = 0;
+        if (operand instanceof IntField
+                && b.getTupleDesc().getFieldType(field) == Type.INT_TYPE) {
+            int[] v = b.ints(field);
+            int value = ((IntField) operand).getValue();
+            for (int i = 0; i < n; i++) {
+                int r = sel[i];
+                if (IntField.compare(v[r], operator, value))
+                    sel[kept++] = r;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                int r = sel[i];
+                if (filter(b.getField(field, r)))
+                    sel[kept++] = r;
+            }
+        }
+        b.setSize(kept);
+    }
+
+    private boolean filter(Field f) {
+        // compare dictionary-encoded strings for equality by their codes
+        if (f instanceof DictionaryField && operand instanceof StringField
+                && (operator == Op.EQUALS || operator == Op.NOT_EQUALS)) {
+            DictionaryField d = (DictionaryField) f;
+            boolean equal = d.getCode() == operandCode(d.getDictionary());
+            return operator == Op.EQUALS ? equal : !equal;
+        }
+        return f.compare(operator, operand);
+    }
+
+    /**
+     * Return the code of the operand in the specified dictionary, or -1 if
+     * the dictionary does not have it.
+     */
+    private int operandCode(StringDictionary dictionary) {
+        if (dictionary == operandDictionary)
+            return operandCode;
+        int code = operand instanceof DictionaryField
+                && ((DictionaryField) operand).getDictionary() == dictionary
+                ? ((DictionaryField) operand).getCode()
+                : dictionary.lookup(((StringField) operand).getValue());
+        // a string that is not in the dictionary yet may be added later
+        if (code >= 0) {
+            operandDictionary = dictionary;
+            operandCode = code;
+        }
+        return code;
     }
 
     /**
@@ -5,12 +5,13 @@ import java.util.*;
 /**
  * Project is an operator that implements a relational projection.
  */
-public class Project extends Operator {
+public class Project extends Operator implements BatchOpIterator {
 
     private static final long serialVersionUID = 1L;
     private OpIterator child;
     private TupleDesc td;
     private ArrayList<Integer> outFieldIds;
+    private transient TupleBatch buffer;
 
     /**
      * Constructor accepts a child operator to read tuples to apply projection
@@ -73,13 +74,29 @@ public class Project extends Operator {
             Tuple newTuple = new Tuple(td);
             newTuple.setRecordId(t.getRecordId());
             for (int i = 0; i < td.numFields(); i++) {
-                newTuple.setField(i, t.getField(outFieldIds.get(i)));
+                newTuple.setField(i, t, outFieldIds.get(i));
             }
             return newTuple;
         }
         return null;
     }
 
+    /**
+     * Returns the projection of the next batch of the child, which shares
+     * its column vectors rather than copying them.
+     */
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (buffer == null)
+            buffer = new TupleBatch(child.getTupleDesc());
+        TupleBatch b = TupleBatch.next(child, buffer);
+        if (b == null)
+            return null;
+        int[] columns = new int[outFieldIds.size()];
+        for (int i = 0; i < columns.length; i++)
+            columns[i] = outFieldIds.get(i);
+        return b.project(columns, td);
+    }
+
     @Override
     public OpIterator[] getChildren() {
         return new OpIterator[] { this.child };
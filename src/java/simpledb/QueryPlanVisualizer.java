@@ -15,6 +15,8 @@ public class QueryPlanVisualizer {
     static final String SCAN = "scan";
     static final String ORDERBY = "o";
     static final String GROUPBY = "g";
+    static final String LIMIT = "limit";
+    static final String TOPN = "top";
     static final String SPACE = "  ";
 
     private int calculateQueryPlanTreeDepth(OpIterator root) {
@@ -238,6 +240,34 @@ public class QueryPlanVisualizer {
                                 - currentStartPosition);
                 thisNode.leftChild = child;
                 thisNode.height = currentDepth;
+            } else if (plan instanceof Limit || plan instanceof TopN) {
+                String name;
+                if (plan instanceof Limit) {
+                    Limit l = (Limit) plan;
+                    name = LIMIT;
+                    thisNode.text = String.format("%1$s(%2$d offset %3$d),card:%4$d",
+                            LIMIT, l.getLimit(), l.getOffset(), l.getEstimatedCardinality());
+                } else {
+                    TopN t = (TopN) plan;
+                    name = TOPN;
+                    thisNode.text = String.format("%1$s(%2$s limit %3$d offset %4$d),card:%5$d",
+                            TOPN, children[0].getTupleDesc().getFieldName(t.getOrderByField()),
+                            t.getLimit(), t.getOffset(), t.getEstimatedCardinality());
+                }
+                int upBarShift = parentUpperBarStartShift;
+                if (name.length() / 2 > parentUpperBarStartShift)
+                    upBarShift = name.length() / 2;
+                SubTreeDescriptor child = this.buildTree(queryPlanDepth,
+                        currentDepth + 2 + adjustDepth, children[0],
+                        currentStartPosition, upBarShift);
+                thisNode.upBarPosition = child.upBarPosition;
+                thisNode.textStartPosition = thisNode.upBarPosition
+                        - name.length() / 2;
+                thisNode.width = Math.max(child.width,
+                        thisNode.textStartPosition + thisNode.text.length()
+                                - currentStartPosition);
+                thisNode.leftChild = child;
+                thisNode.height = currentDepth;
             } else if (plan instanceof Project) {
                 Project p = (Project) plan;
                 String fields = "";
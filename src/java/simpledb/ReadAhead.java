@@ -0,0 +1,156 @@
+package simpledb;
+
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * ReadAhead reads the pages a scan is about to request into the BufferPool
+ * on a background I/O thread, so that the scan finds them cached instead
+ * of waiting for the disk. The read-ahead follows the pages it reads, so it
+ * also works when the next page is only known once the current one has
+ * been read, as when walking the leaf chain of a B+ tree.
+ * <p>
+ * The scan calls {@link #access(PageId)} before it requests each page.
+ * Reading ahead starts with the second page accessed, and then keeps up to
+ * window pages read ahead of the scan. The window adapts to the rate the
+ * scan consumes pages at: it doubles whenever the scan catches up with a
+ * page that is still being read, and halves whenever a page read ahead was
+ * evicted before the scan got to it.
+ * <p>
+ * A ReadAhead belongs to a single iterator. Its pages are read without
+ * locks, see {@link BufferPool#prefetchPage}.
+ */
+public class ReadAhead {
+
+    /** Number of threads reading ahead, shared by all the scans */
+    public static final int IO_THREADS = 4;
+
+    /** Number of pages read ahead when a scan starts */
+    public static final int INITIAL_WINDOW = 4;
+
+    /** Upper bound on the number of pages read ahead of a scan */
+    public static final int MAX_WINDOW = 32;
+
+    private static final ExecutorService ioThreads;
+    static {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(IO_THREADS, IO_THREADS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+                    Thread t = new Thread(r, "read-ahead");
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        ioThreads = executor;
+    }
+
+    private final BufferPool pool;
+    private final BufferRing ring;
+    private final Function<Page, PageId> successor;
+    private final int maxWindow;
+
+    // all guarded by this
+    private int window;
+    // pages read ahead (or being read) that the scan has not accessed yet
+    private final HashSet<PageId> ahead = new HashSet<>();
+    // next page to read ahead, and page being read ahead
+    private PageId next, reading;
+    private PageId lastAccessed;
+    private int accesses = 0;
+    private boolean running = false;
+    private boolean closed = false;
+
+    private ReadAhead(BufferPool pool, BufferRing ring, Function<Page, PageId> successor, int maxWindow) {
+        this.pool = pool;
+        this.ring = ring;
+        this.successor = successor;
+        this.maxWindow = maxWindow;
+        this.window = Math.min(INITIAL_WINDOW, maxWindow);
+    }
+
+    /**
+     * Return the read-ahead for a scan through a pool of poolPages frames,
+     * or null if the pool is too small to read ahead. Pages read ahead must
+     * not be recycled by the ring of the scan, or evicted, before the scan
+     * gets to them, which bounds the window to half the ring or a quarter
+     * of the pool.
+     */
+    static ReadAhead forScan(BufferPool pool, BufferRing ring, int poolPages,
+                             Function<Page, PageId> successor) {
+        int maxWindow = Math.min(MAX_WINDOW, ring != null ? ring.size() / 2 : poolPages / 4);
+        if (maxWindow < 1)
+            return null;
+        return new ReadAhead(pool, ring, successor, maxWindow);
+    }
+
+    /** Return the current number of pages read ahead of the scan */
+    public synchronized int getWindow() {
+        return window;
+    }
+
+    /**
+     * Tell the read-ahead that the scan is about to request the specified
+     * page, and read ahead of it.
+     */
+    public synchronized void access(PageId pid) {
+        if (closed)
+            return;
+        if (ahead.remove(pid)) {
+            if (pid.equals(reading) || pool.isReading(pid))
+                window = Math.min(maxWindow, window * 2);
+            else if (!pool.isCached(pid))
+                window = Math.max(1, window / 2);
+        } else if (!pid.equals(reading)) {
+            // the scan is not where we read ahead (yet): start over from here
+            ahead.clear();
+            next = pid;
+        }
+        lastAccessed = pid;
+        if (++accesses < 2)
+            return;
+        if (!running && next != null && ahead.size() < window) {
+            running = true;
+            ioThreads.execute(this::readAhead);
+        }
+    }
+
+    /** Stop reading ahead */
+    public synchronized void close() {
+        closed = true;
+        ahead.clear();
+    }
+
+    /** Read pages ahead of the scan until the window is full */
+    private void readAhead() {
+        while (true) {
+            PageId pid;
+            synchronized (this) {
+                if (closed || next == null || ahead.size() >= window) {
+                    running = false;
+                    return;
+                }
+                pid = next;
+                next = null;
+                reading = pid;
+                // the page the scan is reading only tells us where to go next
+                if (!pid.equals(lastAccessed))
+                    ahead.add(pid);
+            }
+            Page page = pool.prefetchPage(pid, ring);
+            synchronized (this) {
+                reading = null;
+                if (page == null) {
+                    // leave the rest of the pages to the scan
+                    running = false;
+                    return;
+                }
+                // unless the scan made us start over meanwhile
+                if (next == null)
+                    next = successor.apply(page);
+            }
+        }
+    }
+}
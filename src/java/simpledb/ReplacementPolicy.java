@@ -0,0 +1,66 @@
+package simpledb;
+
+/**
+ * ReplacementPolicy decides which page the BufferPool evicts when it needs
+ * a free frame. The BufferPool reports every hit, admission and removal of
+ * a page, and asks the policy for a victim when it is full.
+ * <p>
+ * Implementations do not need to be thread safe: the BufferPool only calls
+ * them while holding the lock of its page table. Hits are recorded without
+ * that lock and reported later, in batches, so a policy may miss some hits
+ * under contention (see {@link HitBuffer}).
+ *
+ * @see BufferPool
+ */
+public interface ReplacementPolicy {
+
+    /** The replacement policies a BufferPool can be created with. */
+    public enum Kind {
+        LRU, CLOCK, TWO_Q, ARC;
+
+        /** Create a new, empty policy of this kind for a pool of the given size */
+        public ReplacementPolicy create(int capacity) {
+            switch (this) {
+                case CLOCK:
+                    return new ClockReplacementPolicy();
+                case TWO_Q:
+                    return new TwoQueueReplacementPolicy(capacity);
+                case ARC:
+                    return new ArcReplacementPolicy(capacity);
+                default:
+                    return new LruReplacementPolicy();
+            }
+        }
+    }
+
+    /** Tells the policy whether a cached page may be evicted right now. */
+    public interface Evictable {
+        boolean canEvict(PageId pid);
+    }
+
+    /**
+     * Called when a page that is already cached is requested again.
+     */
+    public void pageHit(PageId pid);
+
+    /**
+     * Called when a page is brought into the pool.
+     */
+    public void pageAdded(PageId pid);
+
+    /**
+     * Called when a page leaves the pool for a reason other than eviction
+     * (e.g. it was discarded). The policy must forget about the page.
+     */
+    public void pageRemoved(PageId pid);
+
+    /**
+     * Choose a page to evict and stop tracking it as cached.
+     *
+     * @param incoming the page about to be read into the freed frame, or
+     *   null if it is not known
+     * @param evictable filter on the pages that may be chosen
+     * @return the page to evict, or null if no cached page may be evicted
+     */
+    public PageId evict(PageId incoming, Evictable evictable);
+}
@@ -0,0 +1,92 @@
+package simpledb;
+
+import java.io.*;
+import java.util.Iterator;
+
+/**
+ * Measures the throughput of sequential page reads from a HeapFile through
+ * the FileChannel path and through the memory-mapped path.
+ * <p>
+ * Usage:
+ * <pre>
+ *   java -cp dist/simpledb.jar simpledb.ScanBenchmark file megabytes [channel|mmap|both] [passes]
+ * </pre>
+ * The file is (re)generated with two int columns if it does not have the
+ * requested size. Every pass reads all the pages of the file with readPage
+ * and iterates over their tuples, bypassing the BufferPool so that only the
+ * read path is measured. The first pass of each mode runs with a freshly
+ * opened file; for a truly cold number drop the OS page cache before running
+ * a single mode, e.g. with <tt>sync; echo 3 &gt; /proc/sys/vm/drop_caches</tt>.
+ * The other passes are warm.
+ */
+public class ScanBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: ScanBenchmark file megabytes [channel|mmap|both] [passes]");
+            return;
+        }
+        File f = new File(args[0]);
+        long megabytes = Long.parseLong(args[1]);
+        String mode = args.length > 2 ? args[2] : "both";
+        int passes = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf);
+        long numPages = megabytes * 1024 * 1024 / BufferPool.getPageSize();
+        if (f.length() != numPages * BufferPool.getPageSize())
+            generate(hf, numPages);
+
+        if (!mode.equals("mmap"))
+            run(hf, false, passes);
+        if (!mode.equals("channel"))
+            run(hf, true, passes);
+    }
+
+    /** Fill the file with numPages full pages */
+    private static void generate(HeapFile hf, long numPages) throws IOException, DbException {
+        System.out.println("Generating " + numPages + " pages in " + hf.getFile());
+        HeapPage page = new HeapPage(new HeapPageId(hf.getId(), 0), HeapPage.createEmptyPageData());
+        for (int i = 0; page.getNumEmptySlots() > 0; i++)
+            page.insertTuple(Utility.getHeapTuple(new int[] {i, -i}));
+        byte[] data = page.getPageData();
+
+        hf.close();
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(hf.getFile()), 1 << 20);
+        try {
+            for (long i = 0; i < numPages; i++)
+                out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void run(HeapFile hf, boolean memoryMapped, int passes) throws IOException {
+        hf.close();
+        hf.setMemoryMapped(memoryMapped);
+        String name = memoryMapped ? "mmap" : "channel";
+        for (int pass = 0; pass < passes; pass++) {
+            long start = System.nanoTime();
+            long tuples = scan(hf);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double megabytes = (double) hf.numPages() * BufferPool.getPageSize() / (1024 * 1024);
+            System.out.printf("%-8s %-5s %10.1f MB/s %12.0f tuples/s%n", name,
+                    pass == 0 ? "cold" : "warm", megabytes / seconds, tuples / seconds);
+        }
+        hf.setMemoryMapped(false);
+    }
+
+    private static long scan(HeapFile hf) {
+        long tuples = 0;
+        int numPages = hf.numPages();
+        for (int i = 0; i < numPages; i++) {
+            Page p = hf.readPage(new HeapPageId(hf.getId(), i));
+            Iterator<Tuple> it = ((HeapFilePage) p).iterator();
+            while (it.hasNext()) {
+                it.next();
+                tuples++;
+            }
+        }
+        return tuples;
+    }
+}
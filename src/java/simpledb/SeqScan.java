@@ -7,7 +7,7 @@ import java.util.*;
  * each tuple of a table in no particular order (e.g., as they are laid out on
  * disk).
  */
-public class SeqScan implements OpIterator {
+public class SeqScan implements BatchOpIterator {
 
     private static final long serialVersionUID = 1L;
 
@@ -17,6 +17,7 @@ public class SeqScan implements OpIterator {
     private int tableid;
     private String tableAlias;
     private TupleDesc tupleDesc;
+    private transient TupleBatch batch;
 
     /**
      * Creates a sequential scan over the specified table as a part of the
@@ -77,6 +78,7 @@ public class SeqScan implements OpIterator {
         // some code goes here
         this.tableid = tableid;
         this.tableAlias = tableAlias;
+        this.batch = null;
     }
 
     public SeqScan(TransactionId tid, int tableId) {
@@ -124,6 +126,19 @@ public class SeqScan implements OpIterator {
         return this.iter.next();
     }
 
+    /**
+     * Returns the next tuples of the table as a batch, whose columns are
+     * only decoded when an operator reads them.
+     */
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (batch == null)
+            batch = new TupleBatch(getTupleDesc());
+        batch.clear();
+        while (!batch.isFull() && this.iter.hasNext())
+            batch.addTuple(this.iter.next());
+        return batch.numRows() == 0 ? null : batch;
+    }
+
     public void close() {
         // some code goes here
         this.iter.close();
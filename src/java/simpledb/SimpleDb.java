@@ -34,6 +34,16 @@ public class SimpleDb {
                             ts[index++]=Type.INT_TYPE;
                         else if (s.toLowerCase().equals("string"))
                                 ts[index++]=Type.STRING_TYPE;
+                        else if (s.toLowerCase().equals("varchar"))
+                                ts[index++]=Type.VARCHAR_TYPE;
+                        else if (s.toLowerCase().equals("long"))
+                                ts[index++]=Type.LONG_TYPE;
+                        else if (s.toLowerCase().equals("double"))
+                                ts[index++]=Type.DOUBLE_TYPE;
+                        else if (s.toLowerCase().equals("date"))
+                                ts[index++]=Type.DATE_TYPE;
+                        else if (s.toLowerCase().equals("dict"))
+                                ts[index++]=Type.DICT_TYPE;
                             else {
                                 System.err.println("Unknown type " + s);
                                 return;
@@ -67,6 +77,19 @@ public class SimpleDb {
                it.close();
             }
         }
+        else if (args[0].equals("compress")) {
+            // rewrite a table file with its pages compressed
+            File tableFile = new File(args[1]);
+            File tmp = new File(args[1] + ".tmp");
+            try {
+                CompressedPageFile.compress(tableFile, tmp);
+                if (!tmp.renameTo(tableFile)
+                        || !CompressedPageFile.indexOf(tmp).renameTo(CompressedPageFile.indexOf(tableFile)))
+                    throw new IOException("could not replace " + tableFile);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
         else if (args[0].equals("parser")) {
             // Strip the first argument and call the parser
             String[] newargs = new String[args.length-1];
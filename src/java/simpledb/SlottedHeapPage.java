@@ -0,0 +1,421 @@
+package simpledb;
+
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * SlottedHeapPage is the page format of HeapFiles whose tuples have
+ * variable-length fields (see {@link Type#isVariableLength}): each record
+ * takes only the bytes its values need, so a page holds as many short
+ * strings as fit instead of a fixed number of slots of the maximum size.
+ * <p>
+ * The page starts with the number of slots and the offset where the
+ * records start, followed by the slot directory, which grows towards the
+ * end of the page while the records are packed from the end of the page
+ * towards the directory:
+ * <pre>
+ * | slots | records start | offset, length of slot 0 | ... | free | records |
+ * </pre>
+ * All of these are unsigned 16 bit integers, and a records start of 0
+ * stands for the end of the page, so an all-zero page is empty. A free
+ * slot has offset 0; its number is reused by the next insert, so the
+ * RecordIds of the other tuples never change. Deleting a record leaves a
+ * hole in the records, and the records are compacted when an insert needs
+ * the room.
+ * <p>
+ * Like {@link HeapPage}, the page reads from the bytes it was created from
+ * until it is first modified, and those bytes are its before image. The
+ * header and the directory are kept up to date in the bytes of the page,
+ * so getPageData is a copy. Each call of the iterator decodes a new tuple,
+ * which only its reader uses, and which the page does not keep.
+ *
+ * @see HeapFile
+ * @see HeapPage
+ */
+public class SlottedHeapPage implements HeapFilePage {
+
+    /** Size in bytes of the fixed header: the slot count and records start */
+    static final int HEADER_SIZE = 4;
+    /** Size in bytes of an entry of the slot directory */
+    static final int SLOT_SIZE = 4;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+
+    // raw contents of the page, read only until the page is first modified
+    private ByteBuffer data;
+    private boolean privateData = false;
+    private int numSlots;
+    private int recordsStart;
+    // bytes taken by the records of used slots
+    private int usedBytes;
+
+    private boolean dirty = false;
+    private TransactionId lastTransactionId;
+
+    // contents of the page before it was first modified since it was read
+    // or last committed, or null if it was not modified
+    private ByteBuffer oldData;
+    private final Object oldDataLock = new Object();
+
+    /**
+     * Create a SlottedHeapPage from a set of bytes of data read from disk.
+     * The page reads from data as long as it is not modified, so the array
+     * must not be changed afterwards.
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a SlottedHeapPage from a set of bytes of data read from disk,
+     * for a table of the catalog.
+     */
+    public SlottedHeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this(id, Database.getCatalog().getTupleDesc(id.getTableId()), data);
+    }
+
+    /**
+     * Create a SlottedHeapPage of a table with the specified TupleDesc,
+     * which need not be in the catalog (e.g. while a file is encoded).
+     */
+    SlottedHeapPage(HeapPageId id, TupleDesc td, ByteBuffer data) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        if (pageSize > 1 << 16)
+            throw new IOException("pages of " + pageSize + " bytes are too large for the slotted format");
+        this.pid = id;
+        this.td = td;
+        this.data = data.slice();
+        if (this.data.remaining() < pageSize)
+            throw new IOException("page " + id + " is only " + this.data.remaining() + " bytes long");
+
+        numSlots = this.data.getShort(0) & 0xffff;
+        recordsStart = this.data.getShort(2) & 0xffff;
+        if (recordsStart == 0)
+            recordsStart = pageSize;
+        if (recordsStart < directoryEnd() || recordsStart > pageSize)
+            throw new IOException("page " + id + " has a corrupt header");
+        for (int i = 0; i < numSlots; i++)
+            if (isSlotUsed(i))
+                usedBytes += recordLength(i);
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public SlottedHeapPage getBeforeImage() {
+        try {
+            ByteBuffer oldDataRef = null;
+            synchronized(oldDataLock)
+            {
+                oldDataRef = oldData != null ? oldData : data;
+            }
+            return new SlottedHeapPage(pid, td, oldDataRef.duplicate());
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        synchronized(oldDataLock)
+        {
+        // the current bytes become the before image, and are copied again
+        // before the next modification
+        privateData = false;
+        oldData = null;
+        }
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /**
+     * Returns true if associated slot on this page holds a record.
+     */
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < numSlots && recordOffset(i) != 0;
+    }
+
+    /**
+     * Returns the number of slots of the directory, used or not.
+     */
+    public int getNumSlots() {
+        return numSlots;
+    }
+
+    /**
+     * Returns the number of bytes not taken by the header, the slot
+     * directory and the records, including the holes left by deletes.
+     */
+    public int getFreeBytes() {
+        return BufferPool.getPageSize() - directoryEnd() - usedBytes;
+    }
+
+    public boolean hasRoomFor(Tuple t) {
+        int needed = recordLength(td, t);
+        if (firstFreeSlot() < 0)
+            needed += SLOT_SIZE;
+        return needed <= getFreeBytes();
+    }
+
+    public int getFreeSpaceCategory() {
+        return FreeSpaceMap.category(getFreeBytes(), BufferPool.getPageSize() - HEADER_SIZE);
+    }
+
+    /**
+     * Return the smallest free space category such that every slotted page
+     * of that category has room for the specified tuple.
+     */
+    static int minCategory(TupleDesc td, Tuple t) {
+        int capacity = BufferPool.getPageSize() - HEADER_SIZE;
+        int needed = recordLength(td, t) + SLOT_SIZE;
+        // FreeSpaceMap.category rounds down, except that any free space is
+        // at least category 1
+        int category = (int) (((long) needed * 255 + capacity - 1) / capacity);
+        return Math.min(255, Math.max(2, category));
+    }
+
+    /**
+     * Returns true if the tables with the specified TupleDesc store their
+     * tuples in SlottedHeapPages, i.e. if any of their fields has a
+     * variable length.
+     */
+    public static boolean isUsedFor(TupleDesc td) {
+        for (int j = 0; j < td.numFields(); j++)
+            if (td.getFieldType(j).isVariableLength())
+                return true;
+        return false;
+    }
+
+    /** Return the number of bytes the record of the specified tuple takes */
+    static int recordLength(TupleDesc td, Tuple t) {
+        int len = 0;
+        for (int j = 0; j < td.numFields(); j++)
+            len += td.getFieldLen(j, t.getField(j));
+        return len;
+    }
+
+    private int directoryEnd() {
+        return HEADER_SIZE + numSlots * SLOT_SIZE;
+    }
+
+    private int recordOffset(int i) {
+        return data.getShort(HEADER_SIZE + i * SLOT_SIZE) & 0xffff;
+    }
+
+    private int recordLength(int i) {
+        return data.getShort(HEADER_SIZE + i * SLOT_SIZE + 2) & 0xffff;
+    }
+
+    private void setSlot(int i, int offset, int length) {
+        data.putShort(HEADER_SIZE + i * SLOT_SIZE, (short) offset);
+        data.putShort(HEADER_SIZE + i * SLOT_SIZE + 2, (short) length);
+    }
+
+    private void writeHeader() {
+        data.putShort(0, (short) numSlots);
+        data.putShort(2, (short) (recordsStart == BufferPool.getPageSize() ? 0 : recordsStart));
+    }
+
+    /** Return the first free slot of the directory, -1 if none */
+    private int firstFreeSlot() {
+        for (int i = 0; i < numSlots; i++)
+            if (!isSlotUsed(i))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Copy the raw bytes of the page before modifying them for the first
+     * time, since they may be shared (e.g. with a memory mapped file or a
+     * before image). The bytes copied are the before image of the page.
+     */
+    private void makeDataPrivate() {
+        if (privateData)
+            return;
+        synchronized(oldDataLock)
+        {
+        oldData = data;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(BufferPool.getPageSize());
+        ByteBuffer src = data.duplicate();
+        src.position(0);
+        src.limit(BufferPool.getPageSize());
+        copy.put(src);
+        copy.clear();
+        data = copy;
+        privateData = true;
+    }
+
+    /**
+     * Move the records of the used slots next to each other at the end of
+     * the page, so that all the free space is between the directory and the
+     * records. Slot numbers do not change.
+     */
+    private void compact() {
+        int pageSize = BufferPool.getPageSize();
+        ByteBuffer copy = ByteBuffer.allocate(pageSize);
+        int end = pageSize;
+        for (int i = 0; i < numSlots; i++) {
+            int offset = HEADER_SIZE + i * SLOT_SIZE;
+            if (!isSlotUsed(i))
+                continue;
+            int len = recordLength(i);
+            end -= len;
+            System.arraycopy(data.array(), data.arrayOffset() + recordOffset(i),
+                    copy.array(), end, len);
+            copy.putShort(offset, (short) end);
+            copy.putShort(offset + 2, (short) len);
+        }
+        data = copy;
+        recordsStart = end;
+        writeHeader();
+    }
+
+    /** Decode the tuple in the specified (used) slot */
+    private Tuple readTuple(int slotId) {
+        Tuple t = new Tuple(td);
+        int offset = recordOffset(slotId);
+        for (int j = 0; j < td.numFields(); j++) {
+            Type type = td.getFieldType(j);
+            if (type == Type.INT_TYPE)
+                t.setInt(j, data.getInt(offset));
+            else
+                t.setField(j, td.parseField(j, data, offset));
+            offset += td.getFieldLen(j, data, offset);
+        }
+        t.setRecordId(new RecordId(pid, slotId));
+        return t;
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page.
+     * Used to serialize this page to disk.
+     */
+    public byte[] getPageData() {
+        byte[] pageData = new byte[BufferPool.getPageSize()];
+        writePageData(ByteBuffer.wrap(pageData));
+        return pageData;
+    }
+
+    public void writePageData(ByteBuffer dst) {
+        ByteBuffer src = data.duplicate();
+        src.position(0);
+        src.limit(BufferPool.getPageSize());
+        dst.put(src);
+    }
+
+    /**
+     * Delete the specified tuple from the page. Its slot becomes free, and
+     * the free slots at the end of the directory are dropped.
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !rid.getPageId().equals(pid) || !isSlotUsed(rid.getTupleNumber()))
+            throw new DbException("The tuple to delete is not in page " + pid +
+                    " or the tuple slot is already empty");
+        int slotId = rid.getTupleNumber();
+        makeDataPrivate();
+        int offset = recordOffset(slotId);
+        int len = recordLength(slotId);
+        usedBytes -= len;
+        // the first record can be given back right away, other records
+        // leave a hole until the page is compacted
+        if (offset == recordsStart)
+            recordsStart += len;
+        setSlot(slotId, 0, 0);
+        while (numSlots > 0 && !isSlotUsed(numSlots - 1))
+            numSlots--;
+        if (numSlots == 0) {
+            // an emptied page starts over, as an all-zero page
+            Arrays.fill(data.array(), data.arrayOffset(), data.arrayOffset() + BufferPool.getPageSize(), (byte) 0);
+            recordsStart = BufferPool.getPageSize();
+        }
+        writeHeader();
+    }
+
+    /**
+     * Adds the specified tuple to the page, in the first free slot of the
+     * directory or a new one, and sets its RecordId.
+     * @throws DbException if the page has no room for the tuple or tupledesc
+     *         is mismatch.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc()))
+            throw new DbException("TupleDesc of the tuple does not match page " + pid);
+        if (!hasRoomFor(t))
+            throw new DbException("Page " + pid + " has no room for the tuple.");
+        makeDataPrivate();
+        int slotId = firstFreeSlot();
+        if (slotId < 0)
+            slotId = numSlots++;
+        int len = recordLength(td, t);
+        setSlot(slotId, 0, 0);
+        if (recordsStart - len < directoryEnd())
+            compact();
+        recordsStart -= len;
+        ByteBuffer record = data.duplicate();
+        record.position(recordsStart);
+        for (int j = 0; j < td.numFields(); j++)
+            td.writeField(j, t.getField(j), record);
+        setSlot(slotId, recordsStart, len);
+        usedBytes += len;
+        writeHeader();
+
+        t.setRecordId(new RecordId(pid, slotId));
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.dirty = dirty;
+        this.lastTransactionId = tid;
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return dirty ? lastTransactionId : null;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            private int next = nextUsedSlot(0);
+
+            public boolean hasNext() {
+                return next < numSlots;
+            }
+
+            public Tuple next() {
+                if (next >= numSlots)
+                    throw new NoSuchElementException();
+                Tuple t = readTuple(next);
+                next = nextUsedSlot(next + 1);
+                return t;
+            }
+        };
+    }
+
+    /** Return the first used slot from the specified one on, numSlots if none */
+    private int nextUsedSlot(int from) {
+        int i = from;
+        while (i < numSlots && !isSlotUsed(i))
+            i++;
+        return i;
+    }
+}
@@ -0,0 +1,155 @@
+package simpledb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * SpillFile is a temporary file of tuples, which operators write the tuples
+ * they cannot keep in memory to and read them back from, in the order they
+ * were added. It is deleted when it is closed, or at the latest when the
+ * JVM exits.
+ * <p>
+ * Each tuple is stored as its length followed by its fields, in the format
+ * of the pages. The fields are written and read with the TupleDesc of the
+ * first tuple added, which is that of its table for the tuples of a scan,
+ * so that dictionary-encoded fields are stored as their codes. The
+ * TupleDescs of other operators have no dictionaries, and their
+ * dictionary-encoded fields are stored as strings (see Type.DICT_TYPE).
+ */
+public class SpillFile {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final TupleDesc td;
+    private final File file;
+    // the TupleDesc the fields are written and read with
+    private TupleDesc layout;
+    private DataOutputStream out;
+    private ByteBuffer buf;
+    private int size;
+
+    /**
+     * Create an empty spill file for tuples with the specified TupleDesc.
+     */
+    public SpillFile(TupleDesc td) throws IOException {
+        this.td = td;
+        this.layout = td;
+        this.file = File.createTempFile("simpledb", ".spill");
+        file.deleteOnExit();
+        this.out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), BUFFER_SIZE));
+        this.buf = ByteBuffer.allocate(td.getSize());
+    }
+
+    /** Append the specified tuple to the file */
+    public void add(Tuple t) throws IOException {
+        if (size == 0) {
+            layout = t.getTupleDesc();
+            buf = ByteBuffer.allocate(layout.getSize());
+        }
+        buf.clear();
+        for (int i = 0; i < layout.numFields(); i++) {
+            if (layout.getFieldType(i) == Type.INT_TYPE)
+                buf.putInt(t.getInt(i));
+            else
+                layout.writeField(i, t.getField(i), buf);
+        }
+        out.writeInt(buf.position());
+        out.write(buf.array(), 0, buf.position());
+        size++;
+    }
+
+    /** Return the number of tuples in the file */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return an iterator over the tuples of the file, in the order they
+     * were added. No tuple may be added once it is opened.
+     */
+    public DbFileIterator iterator() {
+        return new AbstractDbFileIterator() {
+            private DataInputStream in;
+            private int read;
+
+            public void open() throws DbException {
+                try {
+                    out.flush();
+                    in = new DataInputStream(new BufferedInputStream(
+                            new FileInputStream(file), BUFFER_SIZE));
+                } catch (IOException e) {
+                    throw new DbException("cannot read spill file " + file + ": " + e.getMessage());
+                }
+                read = 0;
+            }
+
+            protected Tuple readNext() throws DbException {
+                if (in == null || read == size)
+                    return null;
+                try {
+                    int length = in.readInt();
+                    byte[] data = new byte[length];
+                    in.readFully(data);
+                    ByteBuffer fields = ByteBuffer.wrap(data);
+                    Tuple t = new Tuple(layout);
+                    int offset = 0;
+                    for (int i = 0; i < layout.numFields(); i++) {
+                        Type type = layout.getFieldType(i);
+                        if (type == Type.INT_TYPE)
+                            t.setInt(i, fields.getInt(offset));
+                        else
+                            t.setField(i, layout.parseField(i, fields, offset));
+                        offset += layout.getFieldLen(i, fields, offset);
+                    }
+                    read++;
+                    return t;
+                } catch (EOFException e) {
+                    throw new DbException("spill file " + file + " is truncated");
+                } catch (IOException e) {
+                    throw new DbException("cannot read spill file " + file + ": " + e.getMessage());
+                }
+            }
+
+            public void rewind() throws DbException {
+                close();
+                open();
+            }
+
+            public void close() {
+                super.close();
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        // explicitly ignored
+                    }
+                    in = null;
+                }
+            }
+        };
+    }
+
+    /** Return the TupleDesc of the tuples of the file */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /** Close and delete the file */
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            // explicitly ignored
+        }
+        file.delete();
+    }
+}
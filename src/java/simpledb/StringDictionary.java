@@ -0,0 +1,122 @@
+package simpledb;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * StringDictionary maps the distinct strings of a dictionary-encoded column
+ * (see {@link Type#DICT_TYPE}) to dense integer codes, in the order the
+ * strings were first added. Codes are never removed or reused, so a code
+ * stored in a page stays valid. New strings are saved to the
+ * {@link DictionaryFile} of the table before their code is returned.
+ * <p>
+ * Decoding a code is an array lookup without locking; adding a string is
+ * synchronized.
+ *
+ * @Threadsafe
+ */
+public class StringDictionary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // the strings by code; replaced by a larger copy when it is full
+    private volatile String[] values = new String[16];
+    private volatile int size = 0;
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+
+    private final transient DictionaryFile file;
+    private final int column;
+
+    /**
+     * Create an empty dictionary for the specified column, whose strings
+     * are saved to file (or nowhere, if file is null).
+     */
+    StringDictionary(DictionaryFile file, int column) {
+        this.file = file;
+        this.column = column;
+    }
+
+    /** Return the number of strings in the dictionary */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the string with the specified code.
+     * @throws IllegalArgumentException if there is no such code
+     */
+    public String value(int code) {
+        // size is written after values, so read it first
+        if (code < 0 || code >= size)
+            throw new IllegalArgumentException("no string with code " + code);
+        return values[code];
+    }
+
+    /** Return the code of the specified string, or -1 if it has none */
+    public int lookup(String s) {
+        Integer code = codes.get(truncate(s));
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Return the code of the value of the specified StringField, adding the
+     * value to the dictionary if it is new.
+     */
+    public int encode(Field f) {
+        if (f instanceof DictionaryField && ((DictionaryField) f).getDictionary() == this)
+            return ((DictionaryField) f).getCode();
+        return encode(((StringField) f).getValue());
+    }
+
+    /**
+     * Return the code of the specified string, adding it to the dictionary
+     * if it is new.
+     */
+    public int encode(String s) {
+        s = truncate(s);
+        Integer code = codes.get(s);
+        if (code != null)
+            return code;
+        synchronized (this) {
+            code = codes.get(s);
+            if (code != null)
+                return code;
+            if (file != null) {
+                try {
+                    file.append(column, s);
+                } catch (IOException e) {
+                    throw new RuntimeException("could not save the dictionary of column " + column, e);
+                }
+            }
+            return add(s);
+        }
+    }
+
+    /** Return the field of the string with the specified code */
+    public DictionaryField field(int code) {
+        return new DictionaryField(this, code);
+    }
+
+    /**
+     * Add a string known to be new, e.g. while the dictionary is read, and
+     * return its code.
+     */
+    synchronized int add(String s) {
+        int code = size;
+        String[] v = values;
+        if (code == v.length)
+            v = Arrays.copyOf(v, v.length * 2);
+        v[code] = s;
+        values = v;
+        size = code + 1;
+        // only publish the code once value() can decode it
+        codes.put(s, code);
+        return code;
+    }
+
+    private static String truncate(String s) {
+        return s.length() > Type.STRING_LEN ? s.substring(0, Type.STRING_LEN) : s;
+    }
+}
@@ -0,0 +1,218 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * TopN is an operator that implements ORDER BY with a LIMIT (and OFFSET):
+ * it returns the same tuples as a Limit over an OrderBy, but only keeps the
+ * first offset + limit tuples in the order in memory, in a bounded heap,
+ * rather than sorting all the tuples of its child. That takes
+ * O(n log(offset + limit)) time and O(offset + limit) memory for n tuples.
+ * <p>
+ * The heap is a max-heap on the order: its root is the kept tuple that
+ * comes last, which each new tuple only has to be compared to. Ties are
+ * broken by the order of the child, so TopN returns the tuples that the
+ * stable sort of OrderBy would.
+ */
+public class TopN extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private OpIterator child;
+    private final int orderByField;
+    private final boolean asc;
+    private final int limit;
+    private final int offset;
+    // the kept tuples, and the position of each in the child
+    private transient Tuple[] heap;
+    private transient long[] seqs;
+    private transient int size;
+    private transient Comparator<Tuple> comparator;
+    // the index of the next tuple to return, once the heap is sorted
+    private transient int next;
+
+    /**
+     * Creates a new TopN node over the tuples from the iterator.
+     *
+     * @param orderbyField
+     *            the field to which the sort is applied.
+     * @param asc
+     *            true if the sort order is ascending.
+     * @param limit
+     *            the maximum number of tuples to return.
+     * @param offset
+     *            the number of tuples to skip at the start of the order.
+     * @param child
+     *            the tuples to sort.
+     */
+    public TopN(int orderbyField, boolean asc, int limit, int offset, OpIterator child) {
+        this.orderByField = orderbyField;
+        this.asc = asc;
+        this.limit = limit;
+        this.offset = offset;
+        this.child = child;
+    }
+
+    /**
+     * Return true if a TopN keeping n tuples of the specified TupleDesc fits
+     * in the memory budget of an OrderBy, which otherwise sorts them better.
+     */
+    public static boolean fits(TupleDesc td, long n) {
+        return n * (td.getSize() + OrderBy.TUPLE_OVERHEAD) <= OrderBy.DEFAULT_MEMORY_BUDGET;
+    }
+
+    public boolean isASC() {
+        return this.asc;
+    }
+
+    public int getOrderByField() {
+        return this.orderByField;
+    }
+
+    /** @return the maximum number of tuples returned */
+    public int getLimit() {
+        return limit;
+    }
+
+    /** @return the number of tuples skipped at the start of the order */
+    public int getOffset() {
+        return offset;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    /** @return the order of the kept tuples i and j, ties broken by position */
+    private int compare(int i, int j) {
+        int c = comparator.compare(heap[i], heap[j]);
+        return c != 0 ? c : Long.compare(seqs[i], seqs[j]);
+    }
+
+    private void swap(int i, int j) {
+        Tuple t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+        long s = seqs[i];
+        seqs[i] = seqs[j];
+        seqs[j] = s;
+    }
+
+    /** Move the tuple at i down the heap of the first n tuples */
+    private void siftDown(int i, int n) {
+        while (true) {
+            int largest = i;
+            int l = 2 * i + 1;
+            int r = l + 1;
+            if (l < n && compare(l, largest) > 0)
+                largest = l;
+            if (r < n && compare(r, largest) > 0)
+                largest = r;
+            if (largest == i)
+                return;
+            swap(i, largest);
+            i = largest;
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (compare(i, parent) <= 0)
+                return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        TupleDesc td = child.getTupleDesc();
+        Type type = td.getFieldType(orderByField);
+        comparator = new TupleComparator(orderByField, asc, type);
+        int k = (int) Math.min(Integer.MAX_VALUE - 8, (long) limit + offset);
+        heap = new Tuple[Math.min(k, 1024)];
+        seqs = new long[heap.length];
+        size = 0;
+        if (k > 0) {
+            // the child is consumed a batch at a time
+            TupleBatch buffer = new TupleBatch(td);
+            long seq = 0;
+            TupleBatch b;
+            while ((b = TupleBatch.next(child, buffer)) != null) {
+                for (int i = 0; i < b.size(); i++, seq++) {
+                    int row = b.row(i);
+                    if (size < k) {
+                        if (size == heap.length) {
+                            heap = Arrays.copyOf(heap, (int) Math.min(k, 2L * size));
+                            seqs = Arrays.copyOf(seqs, heap.length);
+                        }
+                        heap[size] = b.getTuple(row);
+                        heap[size].detach();
+                        seqs[size] = seq;
+                        siftUp(size++);
+                        continue;
+                    }
+                    // a tuple that does not come before the root, including
+                    // one equal to it, which comes later in the child, is
+                    // dropped without being materialized
+                    if (type == Type.INT_TYPE) {
+                        int c = Integer.compare(b.getInt(orderByField, row), heap[0].getInt(orderByField));
+                        if ((asc ? c : -c) >= 0)
+                            continue;
+                    } else if (comparator.compare(b.getTuple(row), heap[0]) >= 0) {
+                        continue;
+                    }
+                    heap[0] = b.getTuple(row);
+                    heap[0].detach();
+                    seqs[0] = seq;
+                    siftDown(0, size);
+                }
+            }
+        }
+        // sort the heap in place
+        for (int n = size - 1; n > 0; n--) {
+            swap(0, n);
+            siftDown(0, n);
+        }
+        next = offset;
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        heap = null;
+        seqs = null;
+        size = 0;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        next = offset;
+    }
+
+    /**
+     * Operator.fetchNext implementation. Returns the kept tuples in order,
+     * after the offset.
+     *
+     * @return The next tuple in the ordering, or null if there are no more
+     *         tuples
+     */
+    protected Tuple fetchNext() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (heap != null && next < size)
+            return heap[next++];
+        return null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child = children[0];
+    }
+
+}
@@ -2,20 +2,32 @@ package simpledb;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
 
 /**
  * Tuple maintains information about the contents of a tuple. Tuples have a
  * specified schema specified by a TupleDesc object and contain Field objects
  * with the data for each field.
+ * <p>
+ * The values of integer fields are kept in an int array rather than as one
+ * IntField object per field: {@link #getField} creates the IntField when it
+ * is asked for, and operators that only need the value read it with
+ * {@link #getInt} and copy it with {@link #setField(int, Tuple, int)}
+ * without creating any Field.
  */
 public class Tuple implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    // marks, in values, an integer field whose value is in ints (an enum,
+    // so that it stays the same object when a tuple is deserialized)
+    private enum Marker { INT_VALUE }
+    private static final Object INT_VALUE = Marker.INT_VALUE;
+
     private TupleDesc tupleDesc;
-    private ArrayList<Field> fields;
+    // for each field, null if it is not set, the Field, or INT_VALUE
+    private Object[] values;
+    private int[] ints;
     private RecordId recordId;
 
     /**
@@ -68,12 +80,29 @@ public class Tuple implements Serializable {
      */
     public void setField(int i, Field f) {
         // some code goes here
-        if (fields.size() <= i) {
-            for (int j = fields.size(); j <= i; j++) {
-                fields.add(null);
-            }
-        }
-        fields.set(i, f);
+        if (f instanceof IntField)
+            setInt(i, ((IntField) f).getValue());
+        else
+            values[i] = f;
+    }
+
+    /**
+     * Set the ith field of this tuple to the specified integer.
+     */
+    public void setInt(int i, int value) {
+        ints[i] = value;
+        values[i] = INT_VALUE;
+    }
+
+    /**
+     * Set the ith field of this tuple to the value of field j of src,
+     * without creating a Field if it is an integer.
+     */
+    public void setField(int i, Tuple src, int j) {
+        if (src.holdsInt(j))
+            setInt(i, src.getInt(j));
+        else
+            setField(i, src.getField(j));
     }
 
     /**
@@ -84,7 +113,47 @@ public class Tuple implements Serializable {
      */
     public Field getField(int i) {
         // some code goes here
-        return fields.get(i);
+        Object v = values[i];
+        if (v == INT_VALUE)
+            return new IntField(ints[i]);
+        return (Field) v;
+    }
+
+    /**
+     * @return the value of the ith field, which must be a set integer field.
+     *
+     * @param i
+     *            field index to return. Must be a valid index.
+     */
+    public int getInt(int i) {
+        if (values[i] == INT_VALUE)
+            return ints[i];
+        return ((IntField) getField(i)).getValue();
+    }
+
+    /**
+     * @return whether the ith field is set
+     */
+    protected boolean isSet(int i) {
+        return values[i] != null;
+    }
+
+    /**
+     * @return whether the ith field holds an integer that {@link #getInt}
+     *         returns without creating a Field
+     */
+    protected boolean holdsInt(int i) {
+        return values[i] == INT_VALUE;
+    }
+
+    /**
+     * Make this tuple independent of the page it was read from, if it reads
+     * its fields lazily from one (see HeapPage), so that keeping it does
+     * not keep the bytes of the page in memory. Its values are the same
+     * either way. Operators that keep tuples beyond the next call to
+     * next() detach them; other tuples are not changed.
+     */
+    public void detach() {
     }
 
     /**
@@ -98,9 +167,9 @@ public class Tuple implements Serializable {
     public String toString() {
         // some code goes here
         StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < fields.size(); i++) {
-            sb.append(fields.get(i).toString());
-            if (i < fields.size() - 1) {
+        for (int i = 0; i < values.length; i++) {
+            sb.append(getField(i).toString());
+            if (i < values.length - 1) {
                 sb.append("\t");
             }
         }
@@ -115,6 +184,9 @@ public class Tuple implements Serializable {
     public Iterator<Field> fields()
     {
         // some code goes here
+        ArrayList<Field> fields = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++)
+            fields.add(getField(i));
         return fields.iterator();
     }
 
@@ -125,9 +197,7 @@ public class Tuple implements Serializable {
     {
         // some code goes here
         this.tupleDesc = td;
-        this.fields = new ArrayList<>(td.numFields());
-        for (int i = 0; i < td.numFields(); i++) {
-            this.fields.add(null);
-        }
+        this.values = new Object[td.numFields()];
+        this.ints = new int[td.numFields()];
     }
 }
\ No newline at end of file
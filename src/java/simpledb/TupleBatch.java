@@ -0,0 +1,304 @@
+package simpledb;
+
+/**
+ * TupleBatch is a batch of up to a few thousand rows that operators pass to
+ * each other with a single {@link BatchOpIterator#nextBatch} call, instead
+ * of one call per tuple. The values of the rows are kept in one vector per
+ * column, an int[] for integer columns and a Field[] for the others, and
+ * the rows that are part of the batch are listed, in ascending order, by
+ * its selection vector: a filter drops rows by shortening the selection
+ * rather than by copying the rows it keeps.
+ * <p>
+ * A batch filled with the tuples of a scan keeps the tuples themselves, and
+ * only reads a column into its vector when the column is asked for, so a
+ * scan still only decodes the fields the operators above it access, and
+ * {@link #getTuple} returns the tuple as the scan read it. A batch may also
+ * be a projection of another batch, sharing its vectors and selection.
+ * <p>
+ * A batch belongs to the operator that returned it, which reuses it: it is
+ * only valid until the next call to nextBatch on that operator.
+ *
+ * @see BatchOpIterator
+ */
+public class TupleBatch {
+
+    /** The number of rows a batch holds by default */
+    public static final int DEFAULT_CAPACITY = 2048;
+
+    private final TupleDesc td;
+    private final int capacity;
+    // the tuples of the rows filled with addTuple, null for the others
+    private final Tuple[] tuples;
+    // the batch this one is a projection of, or null
+    private final TupleBatch source;
+    // one vector per column, of ints for INT_TYPE columns and of Fields for
+    // the others, allocated when the column is first set or read
+    private final int[][] ints;
+    private final Field[][] fields;
+    // whether the values of the selected tuples are in the vector of a column
+    private final boolean[] loaded;
+    private int numRows;
+    private int[] selection;
+    private int size;
+
+    /**
+     * Create an empty batch of rows with the specified TupleDesc, holding
+     * up to DEFAULT_CAPACITY rows.
+     */
+    public TupleBatch(TupleDesc td) {
+        this(td, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an empty batch of rows with the specified TupleDesc, holding
+     * up to capacity rows.
+     */
+    public TupleBatch(TupleDesc td, int capacity) {
+        this.td = td;
+        this.capacity = capacity;
+        this.tuples = new Tuple[capacity];
+        this.source = null;
+        this.ints = new int[td.numFields()][];
+        this.fields = new Field[td.numFields()][];
+        this.loaded = new boolean[td.numFields()];
+        this.selection = new int[capacity];
+    }
+
+    /** Create a projection of source on the specified columns */
+    private TupleBatch(TupleDesc td, TupleBatch source, int[] columns) {
+        this.td = td;
+        this.capacity = source.capacity;
+        this.tuples = null;
+        this.source = source;
+        this.ints = new int[columns.length][];
+        this.fields = new Field[columns.length][];
+        this.loaded = new boolean[columns.length];
+        for (int j = 0; j < columns.length; j++) {
+            if (source.td.getFieldType(columns[j]) == Type.INT_TYPE)
+                ints[j] = source.ints(columns[j]);
+            else
+                fields[j] = source.fields(columns[j]);
+            loaded[j] = true;
+        }
+        this.numRows = source.numRows;
+        this.selection = source.selection;
+        this.size = source.size;
+    }
+
+    /**
+     * Return the next batch of rows of the specified iterator: its own
+     * batch if it is a BatchOpIterator, otherwise the buffer, filled with
+     * the next tuples it returns. This adapts row-at-a-time iterators to
+     * operators that consume batches.
+     *
+     * @param buffer the batch to fill, of the TupleDesc of the iterator
+     * @return the batch, or null if the iterator has no more tuples
+     */
+    public static TupleBatch next(OpIterator it, TupleBatch buffer)
+            throws DbException, TransactionAbortedException {
+        if (it instanceof BatchOpIterator)
+            return ((BatchOpIterator) it).nextBatch();
+        buffer.clear();
+        while (!buffer.isFull() && it.hasNext())
+            buffer.addTuple(it.next());
+        return buffer.numRows() == 0 ? null : buffer;
+    }
+
+    /** @return the TupleDesc of the rows */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /** @return the number of rows in the batch, selected or not */
+    public int numRows() {
+        return numRows;
+    }
+
+    /** @return the number of selected rows */
+    public int size() {
+        return size;
+    }
+
+    /** @return true if no row can be added to the batch */
+    public boolean isFull() {
+        return numRows == capacity;
+    }
+
+    /** Return the row number of the ith selected row */
+    public int row(int i) {
+        return selection[i];
+    }
+
+    /**
+     * Return the selection vector: its first size() entries are the
+     * numbers of the selected rows. A filter may overwrite them with a
+     * subset of them, in the same order, and then call {@link #setSize}.
+     */
+    public int[] selection() {
+        return selection;
+    }
+
+    /** Set the number of selected rows */
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    /** Remove all the rows of the batch */
+    public void clear() {
+        if (source != null)
+            throw new UnsupportedOperationException("a projection is not filled");
+        for (int r = 0; r < numRows; r++)
+            tuples[r] = null;
+        numRows = 0;
+        size = 0;
+        java.util.Arrays.fill(loaded, false);
+    }
+
+    /** Add the specified tuple to the batch, as a selected row */
+    public void addTuple(Tuple t) {
+        tuples[numRows] = t;
+        selection[size++] = numRows++;
+        java.util.Arrays.fill(loaded, false);
+    }
+
+    /**
+     * Add a selected row to the batch, whose values are then set with
+     * {@link #setInt} and {@link #setField}.
+     *
+     * @return the number of the row
+     */
+    public int addRow() {
+        if (source != null)
+            throw new UnsupportedOperationException("a projection is not filled");
+        selection[size++] = numRows;
+        return numRows++;
+    }
+
+    /** Set integer column j of the specified row */
+    public void setInt(int j, int row, int value) {
+        if (ints[j] == null)
+            ints[j] = new int[capacity];
+        ints[j][row] = value;
+    }
+
+    /** Set column j of the specified row */
+    public void setField(int j, int row, Field f) {
+        if (td.getFieldType(j) == Type.INT_TYPE) {
+            setInt(j, row, ((IntField) f).getValue());
+            return;
+        }
+        if (fields[j] == null)
+            fields[j] = new Field[capacity];
+        fields[j][row] = f;
+    }
+
+    /**
+     * Set column j of the specified row to field i of the specified tuple,
+     * without creating an IntField for integers.
+     */
+    public void setField(int j, int row, Tuple t, int i) {
+        if (td.getFieldType(j) == Type.INT_TYPE)
+            setInt(j, row, t.getInt(i));
+        else
+            setField(j, row, t.getField(i));
+    }
+
+    /**
+     * Set column j of the specified row to column i of row srcRow of the
+     * batch src.
+     */
+    public void setField(int j, int row, TupleBatch src, int i, int srcRow) {
+        if (td.getFieldType(j) == Type.INT_TYPE)
+            setInt(j, row, src.getInt(i, srcRow));
+        else
+            setField(j, row, src.getField(i, srcRow));
+    }
+
+    /**
+     * Return the vector of integer column j, holding the values of the
+     * selected rows.
+     */
+    public int[] ints(int j) {
+        if (!loaded[j]) {
+            if (ints[j] == null)
+                ints[j] = new int[capacity];
+            int[] v = ints[j];
+            for (int i = 0; i < size; i++) {
+                int r = selection[i];
+                if (tuples[r] != null)
+                    v[r] = tuples[r].getInt(j);
+            }
+            loaded[j] = true;
+        }
+        return ints[j];
+    }
+
+    /**
+     * Return the vector of column j, which must not be an integer column,
+     * holding the values of the selected rows.
+     */
+    public Field[] fields(int j) {
+        if (!loaded[j]) {
+            if (fields[j] == null)
+                fields[j] = new Field[capacity];
+            Field[] v = fields[j];
+            for (int i = 0; i < size; i++) {
+                int r = selection[i];
+                if (tuples[r] != null)
+                    v[r] = tuples[r].getField(j);
+            }
+            loaded[j] = true;
+        }
+        return fields[j];
+    }
+
+    /** Return integer column j of the specified row */
+    public int getInt(int j, int row) {
+        if (tuples != null && tuples[row] != null)
+            return tuples[row].getInt(j);
+        return ints[j][row];
+    }
+
+    /** Return column j of the specified row */
+    public Field getField(int j, int row) {
+        if (tuples != null && tuples[row] != null)
+            return tuples[row].getField(j);
+        if (td.getFieldType(j) == Type.INT_TYPE)
+            return new IntField(ints[j][row]);
+        return fields[j][row];
+    }
+
+    /** Return the RecordId of the tuple of the specified row, if it has one */
+    public RecordId getRecordId(int row) {
+        if (source != null)
+            return source.getRecordId(row);
+        return tuples[row] != null ? tuples[row].getRecordId() : null;
+    }
+
+    /**
+     * Return the specified row as a tuple: the tuple added to the batch, or
+     * a new tuple with the values of the row.
+     */
+    public Tuple getTuple(int row) {
+        if (tuples != null && tuples[row] != null)
+            return tuples[row];
+        Tuple t = new Tuple(td);
+        for (int j = 0; j < td.numFields(); j++) {
+            if (td.getFieldType(j) == Type.INT_TYPE)
+                t.setInt(j, ints[j][row]);
+            else
+                t.setField(j, fields[j][row]);
+        }
+        t.setRecordId(getRecordId(row));
+        return t;
+    }
+
+    /**
+     * Return the projection of this batch on the specified columns, with
+     * the specified TupleDesc, which shares the vectors and the selection
+     * of this batch.
+     */
+    public TupleBatch project(int[] columns, TupleDesc td) {
+        return new TupleBatch(td, this, columns);
+    }
+}
@@ -0,0 +1,40 @@
+package simpledb;
+
+import java.util.Comparator;
+
+/**
+ * Compares tuples on one of their fields, in ascending or descending order,
+ * for OrderBy and TopN.
+ */
+class TupleComparator implements Comparator<Tuple> {
+    int field;
+    boolean asc;
+    // whether the field is compared as an int, without IntFields
+    boolean ints;
+
+    public TupleComparator(int field, boolean asc) {
+        this.field = field;
+        this.asc = asc;
+    }
+
+    public TupleComparator(int field, boolean asc, Type type) {
+        this(field, asc);
+        this.ints = type == Type.INT_TYPE;
+    }
+
+    public int compare(Tuple o1, Tuple o2) {
+        if (ints) {
+            int c = Integer.compare(o1.getInt(field), o2.getInt(field));
+            return asc ? c : -c;
+        }
+        Field t1 = (o1).getField(field);
+        Field t2 = (o2).getField(field);
+        if (t1.compare(Predicate.Op.EQUALS, t2))
+            return 0;
+        if (t1.compare(Predicate.Op.GREATER_THAN, t2))
+            return asc ? 1 : -1;
+        else
+            return asc ? -1 : 1;
+    }
+    
+}
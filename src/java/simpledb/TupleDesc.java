@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -25,9 +26,19 @@ public class TupleDesc implements Serializable {
          * */
         public final String fieldName;
 
+        /**
+         * The dictionary of a dictionary-encoded field of a table, or null
+         * */
+        final StringDictionary dictionary;
+
         public TDItem(Type t, String n) {
+            this(t, n, null);
+        }
+
+        TDItem(Type t, String n, StringDictionary dictionary) {
             this.fieldName = n;
             this.fieldType = t;
+            this.dictionary = dictionary;
         }
 
         public boolean equals(Object o) {
@@ -77,6 +88,18 @@ public class TupleDesc implements Serializable {
         }
     }
 
+    /**
+     * Create a copy of td whose fields have the specified dictionaries (see
+     * {@link DictionaryFile#attachTo}).
+     */
+    TupleDesc(TupleDesc td, StringDictionary[] dictionaries) {
+        items = new ArrayList<>(td.numFields());
+        for (int i = 0; i < td.numFields(); i++) {
+            TDItem item = td.items.get(i);
+            items.add(new TDItem(item.fieldType, item.fieldName, dictionaries[i]));
+        }
+    }
+
     /**
      * Constructor. Create a new tuple desc with typeAr.length fields with
      * fields of the specified types, with anonymous (unnamed) fields.
@@ -129,6 +152,62 @@ public class TupleDesc implements Serializable {
         return items.get(i).fieldType;
     }
 
+    /**
+     * Gets the dictionary of the ith field of this TupleDesc, if it is the
+     * TupleDesc of a table whose ith field is dictionary-encoded.
+     *
+     * @return the dictionary of the ith field, or null
+     */
+    public StringDictionary getDictionary(int i) throws NoSuchElementException {
+        if (i >= items.size()) throw new NoSuchElementException();
+        return items.get(i).dictionary;
+    }
+
+    /**
+     * Decode field i of a tuple of this TupleDesc stored in buf at the
+     * specified offset, through its dictionary if it has one.
+     */
+    public Field parseField(int i, ByteBuffer buf, int offset) {
+        TDItem item = items.get(i);
+        if (item.dictionary != null)
+            return item.dictionary.field(buf.getInt(offset));
+        return item.fieldType.parse(buf, offset);
+    }
+
+    /**
+     * Write field f as field i of a tuple of this TupleDesc to buf, at its
+     * position, encoding it with its dictionary if it has one.
+     */
+    public void writeField(int i, Field f, ByteBuffer buf) {
+        TDItem item = items.get(i);
+        if (item.dictionary != null)
+            buf.putInt(item.dictionary.encode(f));
+        else
+            item.fieldType.write(f, buf);
+    }
+
+    /**
+     * Return the number of bytes field i of a tuple of this TupleDesc stored
+     * in buf at the specified offset takes.
+     */
+    public int getFieldLen(int i, ByteBuffer buf, int offset) {
+        TDItem item = items.get(i);
+        if (item.dictionary != null)
+            return 4;
+        return item.fieldType.getLen(buf, offset);
+    }
+
+    /**
+     * Return the number of bytes {@link #writeField} stores field f as field
+     * i of a tuple of this TupleDesc in.
+     */
+    public int getFieldLen(int i, Field f) {
+        TDItem item = items.get(i);
+        if (item.dictionary != null)
+            return 4;
+        return item.fieldType.getLen(f);
+    }
+
     /**
      * Find the index of the field with a given name.
      *
@@ -147,6 +226,17 @@ public class TupleDesc implements Serializable {
         throw new NoSuchElementException();
     }
 
+    /**
+     * Return the number of bytes field i takes in a fixed-width slot: the
+     * length of its type, or 4 for the code of a field with a dictionary.
+     */
+    public int getFieldLen(int i) {
+        TDItem item = items.get(i);
+        if (item.dictionary != null)
+            return 4;
+        return item.fieldType.getLen();
+    }
+
     /**
      * @return The size (in bytes) of tuples corresponding to this TupleDesc.
      *         Note that tuples from a given TupleDesc are of a fixed size.
@@ -155,7 +245,7 @@ public class TupleDesc implements Serializable {
         // some code goes here
         int size = 0;
         for (int i = 0; i < items.size(); i++) {
-            size += items.get(i).fieldType.getLen();
+            size += getFieldLen(i);
         }
         return size;
     }
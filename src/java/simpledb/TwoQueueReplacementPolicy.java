@@ -0,0 +1,74 @@
+package simpledb;
+
+/**
+ * 2Q replacement (Johnson and Shasha, VLDB '94). Pages seen for the first
+ * time go into a small FIFO queue (A1in); only pages that are requested
+ * again after they were evicted from it, which is remembered in a ghost
+ * queue of page ids (A1out), are promoted to the main LRU queue (Am).
+ * A sequential scan therefore only cycles through A1in and leaves the hot
+ * pages in Am alone.
+ */
+public class TwoQueueReplacementPolicy implements ReplacementPolicy {
+
+    private final int maxIn;
+    private final int maxOut;
+
+    private final LruReplacementPolicy.PageList a1in = new LruReplacementPolicy.PageList();
+    private final LruReplacementPolicy.PageList a1out = new LruReplacementPolicy.PageList();
+    private final LruReplacementPolicy.PageList am = new LruReplacementPolicy.PageList();
+
+    /**
+     * @param capacity number of frames of the buffer pool. A1in gets a
+     *   quarter of them and A1out remembers half as many ids as there are
+     *   frames, the values recommended by the paper.
+     */
+    public TwoQueueReplacementPolicy(int capacity) {
+        this.maxIn = Math.max(1, capacity / 4);
+        this.maxOut = Math.max(1, capacity / 2);
+    }
+
+    public void pageHit(PageId pid) {
+        // hits in A1in are treated as correlated references and ignored
+        if (am.contains(pid))
+            am.addMostRecent(pid);
+    }
+
+    public void pageAdded(PageId pid) {
+        if (am.contains(pid) || a1in.contains(pid))
+            return;
+        if (a1out.remove(pid))
+            am.addMostRecent(pid);
+        else
+            a1in.addMostRecent(pid);
+    }
+
+    public void pageRemoved(PageId pid) {
+        if (!a1in.remove(pid))
+            am.remove(pid);
+    }
+
+    public PageId evict(PageId incoming, Evictable evictable) {
+        PageId victim = null;
+        if (a1in.size() > maxIn || am.size() == 0) {
+            victim = a1in.removeLeastRecent(evictable);
+            if (victim != null) {
+                remember(victim);
+                return victim;
+            }
+        }
+        victim = am.removeLeastRecent(evictable);
+        if (victim == null) {
+            // everything in Am is pinned, fall back to A1in
+            victim = a1in.removeLeastRecent(evictable);
+            if (victim != null)
+                remember(victim);
+        }
+        return victim;
+    }
+
+    private void remember(PageId pid) {
+        a1out.addMostRecent(pid);
+        if (a1out.size() > maxOut)
+            a1out.removeLeastRecent();
+    }
+}
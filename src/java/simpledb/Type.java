@@ -2,6 +2,7 @@ package simpledb;
 
 import java.text.ParseException;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Class representing a type in SimpleDB.
@@ -24,6 +25,16 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            return new IntField(buf.getInt(offset));
+        }
+
+        @Override
+        public Field parse(String s) {
+            return new IntField(Integer.parseInt(s.trim()));
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -42,6 +53,194 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            int strLen = Math.max(0, Math.min(STRING_LEN, buf.getInt(offset)));
+            byte bs[] = new byte[strLen];
+            ByteBuffer src = buf.duplicate();
+            src.position(offset + 4);
+            src.get(bs);
+            return new StringField(new String(bs), STRING_LEN);
+        }
+    }, VARCHAR_TYPE() {
+        /**
+         * A string of up to STRING_LEN bytes, stored with a two byte length
+         * and only as many bytes as it has. In the fixed-width slots of
+         * HeapPage and the BTree pages it takes its maximum length.
+         */
+        @Override
+        public int getLen() {
+            return STRING_LEN+2;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                int strLen = Math.min(STRING_LEN, dis.readUnsignedShort());
+                byte bs[] = new byte[strLen];
+                dis.readFully(bs);
+                dis.skipBytes(STRING_LEN-strLen);
+                return new StringField(new String(bs), STRING_LEN);
+            } catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            int strLen = Math.min(STRING_LEN, buf.getShort(offset) & 0xffff);
+            byte bs[] = new byte[strLen];
+            ByteBuffer src = buf.duplicate();
+            src.position(offset + 2);
+            src.get(bs);
+            return new StringField(new String(bs), STRING_LEN);
+        }
+
+        @Override
+        public boolean isVariableLength() {
+            return true;
+        }
+
+        @Override
+        public int getLen(ByteBuffer buf, int offset) {
+            return 2 + Math.min(STRING_LEN, buf.getShort(offset) & 0xffff);
+        }
+
+        @Override
+        public int getLen(Field f) {
+            return 2 + Math.min(STRING_LEN, ((StringField) f).getValue().length());
+        }
+
+        @Override
+        public void write(Field f, ByteBuffer buf) {
+            String value = ((StringField) f).getValue();
+            int len = Math.min(STRING_LEN, value.length());
+            buf.putShort((short) len);
+            // like DataOutputStream.writeBytes, keep the low byte of each char
+            for (int i = 0; i < len; i++)
+                buf.put((byte) value.charAt(i));
+        }
+    }, LONG_TYPE() {
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                return new LongField(dis.readLong());
+            }  catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            return new LongField(buf.getLong(offset));
+        }
+
+        @Override
+        public Field parse(String s) {
+            return new LongField(Long.parseLong(s.trim()));
+        }
+    }, DOUBLE_TYPE() {
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                return new DoubleField(dis.readDouble());
+            }  catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            return new DoubleField(buf.getDouble(offset));
+        }
+
+        @Override
+        public Field parse(String s) {
+            return new DoubleField(Double.parseDouble(s.trim()));
+        }
+    }, DATE_TYPE() {
+        /**
+         * A date and time, stored as the milliseconds since the epoch.
+         * @see DateField
+         */
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                return new DateField(dis.readLong());
+            }  catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            return new DateField(buf.getLong(offset));
+        }
+
+        @Override
+        public Field parse(String s) {
+            return DateField.parse(s);
+        }
+    }, DICT_TYPE() {
+        /**
+         * A string of up to STRING_LEN bytes of a dictionary-encoded column,
+         * stored in the pages of its table as its 4 byte code in the
+         * dictionary of the column. The fields are DictionaryFields, read
+         * and written through the dictionaries of the TupleDesc of their
+         * table (see {@link TupleDesc#parseField} and
+         * {@link TupleDesc#writeField}).
+         * <p>
+         * The TupleDescs of operators above a scan, and of B+ trees, have no
+         * dictionaries, so the methods of this type store the string itself,
+         * as VARCHAR_TYPE does, and {@link #getLen()} is the length of a
+         * VARCHAR_TYPE; {@link TupleDesc#getFieldLen(int)} is 4 for a column
+         * with a dictionary.
+         */
+        @Override
+        public int getLen() {
+            return VARCHAR_TYPE.getLen();
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            return VARCHAR_TYPE.parse(dis);
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf, int offset) {
+            return VARCHAR_TYPE.parse(buf, offset);
+        }
+
+        @Override
+        public int getLen(ByteBuffer buf, int offset) {
+            return VARCHAR_TYPE.getLen(buf, offset);
+        }
+
+        @Override
+        public int getLen(Field f) {
+            return VARCHAR_TYPE.getLen(f);
+        }
+
+        @Override
+        public void write(Field f, ByteBuffer buf) {
+            VARCHAR_TYPE.write(f, buf);
+        }
     };
     
     public static final int STRING_LEN = 128;
@@ -51,6 +250,38 @@ public enum Type implements Serializable {
    */
     public abstract int getLen();
 
+  /**
+   * @return whether fields of this type are stored in fewer than
+   *   {@link #getLen()} bytes when they are shorter
+   */
+    public boolean isVariableLength() {
+        return false;
+    }
+
+  /**
+   * @return the number of bytes the field stored in buf at the specified
+   *   offset takes, at most {@link #getLen()}.
+   */
+    public int getLen(ByteBuffer buf, int offset) {
+        return getLen();
+    }
+
+  /**
+   * @return the number of bytes {@link #write} stores the specified field
+   *   of this type in, at most {@link #getLen()}.
+   */
+    public int getLen(Field f) {
+        return getLen();
+    }
+
+  /**
+   * Write the specified field of this type to buf, at its position, in the
+   * format {@link #parse(ByteBuffer, int)} reads.
+   */
+    public void write(Field f, ByteBuffer buf) {
+        f.serialize(buf);
+    }
+
   /**
    * @return a Field object of the same type as this object that has contents
    *   read from the specified DataInputStream.
@@ -60,4 +291,23 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field object of the same type as this object that has contents
+   *   read from the specified buffer at the specified offset. The position
+   *   of the buffer is not changed, so buffers can be shared by threads.
+   * @param buf The buffer to read from
+   * @param offset The offset of the field in buf
+   */
+    public abstract Field parse(ByteBuffer buf, int offset);
+
+  /**
+   * @return a Field object of the same type as this object whose value is
+   *   written in the specified text, as in data files and queries. Strings
+   *   are truncated to {@link #STRING_LEN}.
+   * @throws IllegalArgumentException if s is not a value of this type
+   */
+    public Field parse(String s) {
+        return new StringField(s, STRING_LEN);
+    }
+
 }
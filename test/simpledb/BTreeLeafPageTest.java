@@ -12,6 +12,7 @@ import java.util.*;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -336,6 +337,47 @@ public class BTreeLeafPageTest extends SimpleDbTestBase {
 		}
 	}
 
+	/**
+	 * Unit test for BTreeLeafPage.getPageData() after the page was modified
+	 */
+	@Test public void getPageDataAfterModification() throws Exception {
+		BTreeLeafPage page = new BTreeLeafPage(pid, EXAMPLE_DATA, 0);
+		page.deleteTuple(page.iterator().next());
+		page.insertTuple(BTreeUtility.getBTreeTuple(new int[] {5, 6}));
+		page.setRightSiblingId(new BTreePageId(pid.getTableId(), 3, BTreePageId.LEAF));
+		byte[] data = page.getPageData();
+		assertEquals(BufferPool.getPageSize(), data.length);
+
+		BTreeLeafPage copy = new BTreeLeafPage(pid, data, 0);
+		assertEquals(page.getRightSiblingId(), copy.getRightSiblingId());
+		assertEquals(page.getNumEmptySlots(), copy.getNumEmptySlots());
+		Iterator<Tuple> it = page.iterator();
+		Iterator<Tuple> copyIt = copy.iterator();
+		while (it.hasNext())
+			assertTrue(TestUtil.compareTuples(it.next(), copyIt.next()));
+		assertFalse(copyIt.hasNext());
+		assertArrayEquals(data, copy.getPageData());
+	}
+
+	/**
+	 * Unit test for BTreeLeafPage.getBeforeImage(): only the changes made
+	 * after the last setBeforeImage() are missing from the before image
+	 */
+	@Test public void beforeImage() throws Exception {
+		BTreeLeafPage page = new BTreeLeafPage(pid, EXAMPLE_DATA, 0);
+		BTreePageId sibling = new BTreePageId(pid.getTableId(), 3, BTreePageId.LEAF);
+		page.setRightSiblingId(sibling);
+		assertArrayEquals(EXAMPLE_DATA, page.getBeforeImage().getPageData());
+
+		page.setBeforeImage();
+		byte[] committed = page.getPageData();
+		page.deleteTuple(page.iterator().next());
+		page.setRightSiblingId(null);
+		BTreeLeafPage before = page.getBeforeImage();
+		assertArrayEquals(committed, before.getPageData());
+		assertEquals(sibling, before.getRightSiblingId());
+	}
+
 	/**
 	 * JUnit suite target
 	 */
@@ -133,6 +133,41 @@ public class BufferPoolWriteTest extends TestUtil.CreateHeapFile {
     	assertEquals(10, count);
     }
 
+    private static Tuple first(HeapFile hf, TransactionId tid) throws Exception {
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        Tuple t = it.next();
+        it.close();
+        return t;
+    }
+
+    /**
+     * A tuple handed out by a scan keeps its values after its slot is
+     * deleted and reused by a later transaction, or by its own.
+     */
+    @Test public void scannedTupleKeepsValues() throws Exception {
+        ArrayList<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 1, null, rows);
+        TransactionId t1 = new TransactionId();
+        Tuple kept = first(hf, t1);
+        Database.getBufferPool().transactionComplete(t1);
+
+        TransactionId t2 = new TransactionId();
+        Database.getBufferPool().deleteTuple(t2, first(hf, t2));
+        Tuple inserted = Utility.getHeapTuple(999, 2);
+        Database.getBufferPool().insertTuple(t2, hf.getId(), inserted);
+        assertEquals(kept.getRecordId(), inserted.getRecordId());
+        Database.getBufferPool().transactionComplete(t2);
+        assertEquals(rows.get(0), SystemTestUtil.tupleToList(kept));
+
+        TransactionId t3 = new TransactionId();
+        kept = first(hf, t3);
+        Database.getBufferPool().deleteTuple(t3, first(hf, t3));
+        Database.getBufferPool().insertTuple(t3, hf.getId(), Utility.getHeapTuple(5, 2));
+        assertEquals(SystemTestUtil.tupleToList(inserted), SystemTestUtil.tupleToList(kept));
+        Database.getBufferPool().transactionComplete(t3);
+    }
+
     /**
      * JUnit suite target
      */
@@ -0,0 +1,100 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class CompressedPageFileTest extends SimpleDbTestBase {
+
+    private ArrayList<ArrayList<Integer>> tuples;
+    private File plain;
+    private File packed;
+
+    /** A table of small values, compressed */
+    @Before public void compressTable() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        plain = SystemTestUtil.createRandomHeapFileUnopened(3, 5000, 100, null, tuples);
+        packed = File.createTempFile("compressed", ".dat");
+        packed.deleteOnExit();
+        CompressedPageFile.indexOf(packed).deleteOnExit();
+        CompressedPageFile.compress(plain, packed);
+    }
+
+    private HeapFile open(File f) {
+        return Utility.openHeapFile(3, f);
+    }
+
+    /**
+     * The compressed file reads back the same tuples, from the same number
+     * of pages, in less space.
+     */
+    @Test public void readBack() throws Exception {
+        HeapFile hf = open(packed);
+        assertEquals(plain.length() / BufferPool.getPageSize(), hf.numPages());
+        assertTrue(packed.length() < plain.length() / 2);
+        SystemTestUtil.matchTuples(hf, tuples);
+    }
+
+    /**
+     * Tuples inserted into a compressed table are written compressed, and
+     * read back after the table is reopened.
+     */
+    @Test public void insert() throws Exception {
+        HeapFile hf = open(packed);
+        int pages = hf.numPages();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 1000; i++) {
+            Tuple t = new Tuple(hf.getTupleDesc());
+            for (int j = 0; j < 3; j++)
+                t.setField(j, new IntField(-i));
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+            ArrayList<Integer> values = new ArrayList<Integer>();
+            for (int j = 0; j < 3; j++)
+                values.add(-i);
+            tuples.add(values);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(hf.numPages() > pages);
+        hf.close();
+
+        Database.reset();
+        SystemTestUtil.matchTuples(open(packed), tuples);
+    }
+
+    /**
+     * An extent that does not decompress is reported as a corrupt page.
+     */
+    @Test public void corruptExtent() throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(packed, "rw")) {
+            raf.seek(40);
+            raf.write(raf.read() ^ 0xff);
+        }
+        HeapFile hf = open(packed);
+        try {
+            Database.getBufferPool().getPage(new TransactionId(),
+                    new HeapPageId(hf.getId(), 0), Permissions.READ_ONLY);
+            fail("expected DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedPageFileTest.class);
+    }
+}
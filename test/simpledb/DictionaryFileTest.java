@@ -0,0 +1,222 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class DictionaryFileTest extends SimpleDbTestBase {
+
+    private static final String[] STATUS = { "open", "closed", "pending" };
+    private static final Type[] TYPES = { Type.INT_TYPE, Type.DICT_TYPE };
+    private static final int ROWS = 3000;
+
+    private File dat;
+
+    /**
+     * Encode a table whose second column has three distinct strings.
+     */
+    @Before public void encodeTable() throws IOException {
+        File text = File.createTempFile("dict", ".txt");
+        text.deleteOnExit();
+        FileWriter w = new FileWriter(text);
+        for (int i = 0; i < ROWS; i++)
+            w.write(i + "," + STATUS[i % STATUS.length] + "\n");
+        w.close();
+        dat = File.createTempFile("dict", ".dat");
+        dat.deleteOnExit();
+        DictionaryFile.of(dat).deleteOnExit();
+        HeapFileEncoder.convert(text, dat, BufferPool.getPageSize(), 2, TYPES);
+    }
+
+    private HeapFile open() {
+        HeapFile hf = new HeapFile(dat, new TupleDesc(TYPES));
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        return hf;
+    }
+
+    private int count(HeapFile hf, Predicate p) throws Exception {
+        TransactionId tid = new TransactionId();
+        Filter f = new Filter(p, new SeqScan(tid, hf.getId(), ""));
+        f.open();
+        int n = 0;
+        while (f.hasNext()) {
+            Tuple t = f.next();
+            if (p.getOp() == Predicate.Op.EQUALS)
+                assertEquals(((StringField) p.getOperand()).getValue(),
+                        ((StringField) t.getField(1)).getValue());
+            n++;
+        }
+        f.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return n;
+    }
+
+    /**
+     * The pages store 4 byte codes instead of fixed-size strings, and the
+     * strings read back from them.
+     */
+    @Test public void encodeAndScan() throws Exception {
+        HeapFile hf = open();
+        int stringTupleSize = Type.INT_TYPE.getLen() + Type.STRING_TYPE.getLen();
+        int fixedPages = ROWS / (BufferPool.getPageSize() * 8 / (stringTupleSize * 8 + 1)) + 1;
+        assertTrue(hf.numPages() * 10 < fixedPages);
+        assertEquals(STATUS.length, hf.getTupleDesc().getDictionary(1).size());
+
+        assertEquals(ROWS / 3, count(hf, new Predicate(1, Predicate.Op.EQUALS,
+                new StringField("closed", Type.STRING_LEN))));
+        assertEquals(ROWS - ROWS / 3, count(hf, new Predicate(1, Predicate.Op.NOT_EQUALS,
+                new StringField("pending", Type.STRING_LEN))));
+        assertEquals(0, count(hf, new Predicate(1, Predicate.Op.EQUALS,
+                new StringField("missing", Type.STRING_LEN))));
+        // other comparisons still compare the strings
+        assertEquals(ROWS / 3, count(hf, new Predicate(1, Predicate.Op.LESS_THAN,
+                new StringField("open", Type.STRING_LEN))));
+    }
+
+    /**
+     * New strings are added to the dictionary file, and found again when
+     * the table is opened again.
+     */
+    @Test public void insertAndReopen() throws Exception {
+        HeapFile hf = open();
+        TransactionId tid = new TransactionId();
+        Tuple t = new Tuple(hf.getTupleDesc());
+        t.setField(0, new IntField(-1));
+        t.setField(1, new StringField("escalated", Type.STRING_LEN));
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(4, hf.getTupleDesc().getDictionary(1).size());
+
+        HeapFile reopened = open();
+        assertNotSame(hf.getTupleDesc().getDictionary(1), reopened.getTupleDesc().getDictionary(1));
+        assertEquals(3, reopened.getTupleDesc().getDictionary(1).lookup("escalated"));
+        assertEquals(1, count(reopened, new Predicate(1, Predicate.Op.EQUALS,
+                new StringField("escalated", Type.STRING_LEN))));
+    }
+
+    /**
+     * The TupleDesc of an operator above the scan has no dictionaries, so
+     * its dictionary-encoded fields are written and read as strings.
+     */
+    @Test public void withoutDictionary() throws Exception {
+        HeapFile hf = open();
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, hf.getId(), "");
+        TupleDesc td = scan.getTupleDesc();
+        assertEquals(null, td.getDictionary(1));
+        scan.open();
+        Field f = scan.next().getField(1);
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        ByteBuffer buf = ByteBuffer.allocate(Type.DICT_TYPE.getLen());
+        td.writeField(1, f, buf);
+        assertEquals(buf.position(), td.getFieldLen(1, f));
+        assertEquals(buf.position(), td.getFieldLen(1, buf, 0));
+        assertEquals(f, td.parseField(1, buf, 0));
+        assertEquals(STATUS.length, hf.getTupleDesc().getDictionary(1).size());
+    }
+
+    /**
+     * A fixed-width slot of a dictionary-encoded field holds its code with a
+     * dictionary, and the longest string without one.
+     */
+    @Test public void fixedWidth() throws Exception {
+        HeapFile hf = open();
+        assertEquals(4, hf.getTupleDesc().getFieldLen(1));
+        assertEquals(8, hf.getTupleDesc().getSize());
+        TupleDesc td = new TupleDesc(TYPES);
+        assertEquals(Type.VARCHAR_TYPE.getLen(), td.getFieldLen(1));
+
+        // a page of a table without dictionaries, e.g. a B+ tree's
+        Database.getCatalog().addTable(new TestUtil.SkeletonFile(-1, td), SystemTestUtil.getUUID());
+        HeapPage page = new HeapPage(new HeapPageId(-1, 0), HeapPage.createEmptyPageData());
+        char[] longest = new char[Type.STRING_LEN];
+        Arrays.fill(longest, 'x');
+        for (int i = 0; i < 2; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField(new String(longest), Type.STRING_LEN));
+            page.insertTuple(t);
+        }
+        Iterator<Tuple> it = page.iterator();
+        for (int i = 0; i < 2; i++) {
+            Tuple t = it.next();
+            assertEquals(i, t.getInt(0));
+            assertEquals(new String(longest), ((StringField) t.getField(1)).getValue());
+        }
+    }
+
+    /**
+     * A record cut short by a crash is dropped when the file is read.
+     */
+    @Test public void truncatedRecord() throws Exception {
+        File f = DictionaryFile.of(dat);
+        long length = f.length();
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.seek(length);
+        raf.writeShort(1);
+        raf.writeShort(20);
+        raf.write(new byte[] { 'a', 'b' });
+        raf.close();
+
+        DictionaryFile dictionaries = new DictionaryFile(f, new TupleDesc(TYPES));
+        assertEquals(STATUS.length, dictionaries.getDictionary(1).size());
+        assertEquals(length, f.length());
+        assertEquals(STATUS.length, dictionaries.getDictionary(1).encode("new"));
+        dictionaries.close();
+        assertEquals("new", new DictionaryFile(f, new TupleDesc(TYPES)).getDictionary(1).value(3));
+    }
+
+    /**
+     * A code another thread can see decodes, even while it is being added.
+     */
+    @Test public void concurrentEncode() throws Exception {
+        final StringDictionary dictionary = new StringDictionary(null, 1);
+        final int strings = 200000;
+        final Exception[] error = new Exception[1];
+        Thread reader = new Thread(() -> {
+            try {
+                for (int i = 0; i < strings; ) {
+                    int code = dictionary.lookup("s" + i);
+                    if (code >= 0) {
+                        assertEquals("s" + i, dictionary.value(code));
+                        i++;
+                    }
+                }
+            } catch (Exception e) {
+                error[0] = e;
+            }
+        });
+        reader.start();
+        for (int i = 0; i < strings; i++)
+            dictionary.encode("s" + i);
+        reader.join();
+        if (error[0] != null)
+            throw error[0];
+        assertEquals(strings, dictionary.size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DictionaryFileTest.class);
+    }
+}
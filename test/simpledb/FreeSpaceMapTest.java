@@ -0,0 +1,148 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+
+    /**
+     * find returns the first page of at least the requested category, and
+     * follows the updates.
+     */
+    @Test public void findFirstPageWithRoom() {
+        FreeSpaceMap map = new FreeSpaceMap();
+        assertEquals(-1, map.find(1));
+        for (int i = 0; i < 100; i++)
+            map.update(i, 0);
+        assertEquals(100, map.numPages());
+        assertEquals(-1, map.find(1));
+
+        map.update(70, 200);
+        map.update(42, 10);
+        assertEquals(42, map.find(1));
+        assertEquals(42, map.find(10));
+        assertEquals(70, map.find(11));
+        assertEquals(-1, map.find(201));
+
+        map.update(42, 0);
+        assertEquals(70, map.find(1));
+        // past the end of the map
+        map.update(1000, 255);
+        assertEquals(1001, map.numPages());
+        assertEquals(1000, map.find(201));
+    }
+
+    @Test public void category() {
+        assertEquals(0, FreeSpaceMap.category(0, 504));
+        assertEquals(1, FreeSpaceMap.category(1, 504));
+        assertEquals(255, FreeSpaceMap.category(504, 504));
+    }
+
+    /**
+     * A saved map is only loaded back while the data file is unchanged.
+     */
+    @Test public void saveAndLoad() throws Exception {
+        File data = File.createTempFile("fsm", ".dat");
+        File saved = new File(data.getPath() + ".fsm");
+        data.deleteOnExit();
+        saved.deleteOnExit();
+
+        FreeSpaceMap map = new FreeSpaceMap();
+        map.update(3, 17);
+        map.save(saved, data);
+        FreeSpaceMap loaded = FreeSpaceMap.load(saved, data);
+        assertNotNull(loaded);
+        assertEquals(4, loaded.numPages());
+        assertEquals(17, loaded.get(3));
+        assertEquals(3, loaded.find(1));
+
+        assertTrue(data.setLastModified(data.lastModified() + 10000));
+        assertNull(FreeSpaceMap.load(saved, data));
+    }
+
+    /**
+     * An insert into a table whose only free slot is on its last page only
+     * visits (and locks) that page.
+     */
+    @Test public void insertOnlyVisitsPageWithRoom() throws Exception {
+        // 504 two-column tuples fit on a page
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 5 - 1, null, null);
+        assertEquals(5, hf.numPages());
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(1, 2));
+        for (int i = 0; i < 4; i++)
+            assertFalse(Database.getBufferPool().holdsLock(tid, new HeapPageId(hf.getId(), i)));
+        assertTrue(Database.getBufferPool().holdsLock(tid, new HeapPageId(hf.getId(), 4)));
+        assertEquals(5, hf.numPages());
+        assertEquals(0, hf.freeSpaceMap().get(4));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Only a HeapFile asked to save its map next to it on close, and
+     * loads it back from there.
+     */
+    @Test public void savedOnlyIfAsked() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 600, null, null);
+        File saved = hf.freeSpaceMapFile();
+        saved.deleteOnExit();
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(1, 2));
+        Database.getBufferPool().transactionComplete(tid);
+        hf.close();
+        assertFalse(saved.exists());
+
+        hf.setFreeSpaceMapSaved(true);
+        hf.close();
+        assertTrue(saved.exists());
+        assertEquals(hf.freeSpaceMap().get(1),
+                FreeSpaceMap.load(saved, hf.getFile()).get(1));
+    }
+
+    /**
+     * An aborted insert or delete leaves the map as it was before the
+     * transaction.
+     */
+    @Test public void abortRevertsMap() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 2 - 1, null, null);
+        FreeSpaceMap map = hf.freeSpaceMap();
+        int before = map.get(1);
+        assertTrue(before > 0);
+
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(1, 2));
+        assertEquals(0, map.get(1));
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertEquals(before, map.get(1));
+
+        tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        Tuple t = it.next();
+        it.close();
+        assertEquals(0, t.getRecordId().getPageId().getPageNumber());
+        Database.getBufferPool().deleteTuple(tid, t);
+        assertTrue(map.get(0) > 0);
+        Database.getBufferPool().transactionComplete(tid, false);
+        assertEquals(0, map.get(0));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
@@ -0,0 +1,149 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class HashEquiJoinTest extends SimpleDbTestBase {
+
+    private static final JoinPredicate PRED = new JoinPredicate(1, Predicate.Op.EQUALS, 0);
+
+    /** The rows of the equi-join of build and probe on PRED, as strings */
+    private static List<String> expected(List<ArrayList<Integer>> build, List<ArrayList<Integer>> probe) {
+        Map<Integer, List<ArrayList<Integer>>> byKey = new HashMap<Integer, List<ArrayList<Integer>>>();
+        for (ArrayList<Integer> row : build) {
+            List<ArrayList<Integer>> l = byKey.get(row.get(1));
+            if (l == null)
+                byKey.put(row.get(1), l = new ArrayList<ArrayList<Integer>>());
+            l.add(row);
+        }
+        List<String> rows = new ArrayList<String>();
+        for (ArrayList<Integer> p : probe) {
+            List<ArrayList<Integer>> l = byKey.get(p.get(0));
+            if (l == null)
+                continue;
+            for (ArrayList<Integer> b : l) {
+                ArrayList<Integer> row = new ArrayList<Integer>(b);
+                row.addAll(p);
+                rows.add(row.toString());
+            }
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private static List<String> rows(HashEquiJoin join, boolean batches) throws Exception {
+        List<String> rows = new ArrayList<String>();
+        if (batches) {
+            TupleBatch b;
+            while ((b = join.nextBatch()) != null)
+                for (int i = 0; i < b.size(); i++)
+                    rows.add(SystemTestUtil.tupleToList(b.getTuple(b.row(i))).toString());
+        } else {
+            for (ArrayList<Integer> row : SystemTestUtil.rows(join))
+                rows.add(row.toString());
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    /**
+     * A build side larger than MAP_SIZE is partitioned and spilled, and the
+     * join returns the same tuples, a tuple or a batch at a time, also
+     * after a rewind.
+     */
+    @Test public void spill() throws Exception {
+        ArrayList<ArrayList<Integer>> build = new ArrayList<ArrayList<Integer>>();
+        ArrayList<ArrayList<Integer>> probe = new ArrayList<ArrayList<Integer>>();
+        HeapFile hf1 = SystemTestUtil.createRandomHeapFile(2, 2 * HashEquiJoin.MAP_SIZE + 5000, 8000, null, build);
+        HeapFile hf2 = SystemTestUtil.createRandomHeapFile(2, 3000, 8000, null, probe);
+        List<String> expected = expected(build, probe);
+        assertTrue(expected.size() > 0);
+
+        TransactionId tid = new TransactionId();
+        HashEquiJoin join = new HashEquiJoin(PRED, new SeqScan(tid, hf1.getId()), new SeqScan(tid, hf2.getId()));
+        join.open();
+        assertEquals(expected, rows(join, false));
+        join.rewind();
+        assertEquals(expected, rows(join, true));
+        join.close();
+    }
+
+    /**
+     * A partition that does not fit in MAP_SIZE tuples either, here because
+     * all the tuples have the same key, is spilled too and joined a hash
+     * table at a time.
+     */
+    @Test public void skew() throws Exception {
+        int key = 0;
+        while (HashEquiJoin.partitionOf(new IntField(key)) != 0)
+            key++;
+        ArrayList<ArrayList<Integer>> build = new ArrayList<ArrayList<Integer>>();
+        HeapFile hf1 = SystemTestUtil.createRandomHeapFile(2, HashEquiJoin.MAP_SIZE + 5000,
+                Collections.singletonMap(1, key), build);
+        ArrayList<ArrayList<Integer>> probe = new ArrayList<ArrayList<Integer>>();
+        for (int k : new int[] { key + 1, key, key + 2 }) {
+            ArrayList<Integer> row = new ArrayList<Integer>();
+            row.add(k);
+            row.add(-k);
+            probe.add(row);
+        }
+        OpIterator probeScan = TestUtil.createTupleList(2, new int[] { key + 1, -key - 1, key, -key, key + 2, -key - 2 });
+
+        HashEquiJoin join = new HashEquiJoin(PRED, new SeqScan(new TransactionId(), hf1.getId()), probeScan);
+        join.open();
+        List<String> rows = rows(join, false);
+        assertEquals(build.size(), rows.size());
+        assertEquals(expected(build, probe), rows);
+        join.close();
+    }
+
+    /**
+     * A build side larger than MAP_SIZE that comes from a join, whose
+     * TupleDesc has no dictionary, spills its dictionary-encoded strings
+     * as strings.
+     */
+    @Test public void spillDictionaryColumn() throws Exception {
+        int rows = HashEquiJoin.MAP_SIZE + 5000;
+        HeapFile dict = SystemTestUtil.createDictHeapFile(rows, 37);
+        ArrayList<ArrayList<Integer>> ids = new ArrayList<ArrayList<Integer>>();
+        HeapFile probe = SystemTestUtil.createRandomHeapFile(1, 500, rows, null, ids);
+
+        TransactionId tid = new TransactionId();
+        HashEquiJoin build = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, dict.getId(), "a"), new SeqScan(tid, dict.getId(), "b"));
+        HashEquiJoin join = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                build, new SeqScan(tid, probe.getId()));
+        join.open();
+        int n = 0;
+        while (join.hasNext()) {
+            Tuple t = join.next();
+            int id = t.getInt(0);
+            assertEquals(id, t.getInt(4));
+            assertEquals("s" + id % 37, ((StringField) t.getField(1)).getValue());
+            assertEquals("s" + id % 37, ((StringField) t.getField(3)).getValue());
+            n++;
+        }
+        assertEquals(ids.size(), n);
+        join.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashEquiJoinTest.class);
+    }
+}
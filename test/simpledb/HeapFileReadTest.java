@@ -77,6 +77,31 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         assertFalse(page.isSlotUsed(20));
     }
 
+    /**
+     * Unit test for HeapFile.readPage() in memory-mapped mode: pages decode
+     * the same, and pages appended after the file was mapped are visible.
+     */
+    @Test
+    public void readPageMemoryMapped() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 0);
+        byte[] expected = hf.readPage(pid).getPageData();
+
+        hf.setMemoryMapped(true);
+        assertTrue(hf.isMemoryMapped());
+        HeapPage page = (HeapPage) hf.readPage(pid);
+        assertEquals(484, page.getNumEmptySlots());
+        assertArrayEquals(expected, page.getPageData());
+
+        HeapPageId appended = new HeapPageId(hf.getId(), 1);
+        hf.writePage(new HeapPage(appended, expected));
+        assertEquals(2, hf.numPages());
+        assertArrayEquals(expected, hf.readPage(appended).getPageData());
+
+        // a page past the end of the file still reads as an empty page
+        HeapPage empty = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 2));
+        assertEquals(504, empty.getNumEmptySlots());
+    }
+
     @Test
     public void testIteratorBasic() throws Exception {
         HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null,
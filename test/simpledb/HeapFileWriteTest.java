@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.util.ArrayList;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,6 +45,30 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    /**
+     * Unit test for HeapFile.writePages(): pages given out of order, some of
+     * them adjacent on disk, all end up at their place.
+     */
+    @Test public void writePages() throws Exception {
+        int[] pageNumbers = {3, 0, 1, 5};
+        ArrayList<Page> pages = new ArrayList<>();
+        for (int pgNo : pageNumbers) {
+            HeapPage page = new HeapPage(new HeapPageId(empty.getId(), pgNo),
+                    HeapPage.createEmptyPageData());
+            for (int i = 0; i <= pgNo; i++)
+                page.insertTuple(Utility.getHeapTuple(pgNo, 2));
+            pages.add(page);
+        }
+        empty.writePages(new ArrayList<>(pages));
+        assertEquals(6, empty.numPages());
+        for (Page page : pages) {
+            Page read = empty.readPage(page.getId());
+            assertArrayEquals(page.getPageData(), read.getPageData());
+        }
+        HeapPage gap = (HeapPage) empty.readPage(new HeapPageId(empty.getId(), 2));
+        assertEquals(504, gap.getNumEmptySlots());
+    }
+
     /**
      * JUnit suite target
      */
@@ -1,9 +1,12 @@
 package simpledb;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 
@@ -126,6 +129,60 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * A tuple read from a page keeps its values after its slot is deleted
+     * and reused.
+     */
+    @Test public void tupleOutlivesSlot() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        Tuple first = page.iterator().next();
+        Tuple expected = Utility.getHeapTuple(new int[] {
+                ((IntField) first.getField(0)).getValue(),
+                ((IntField) first.getField(1)).getValue() });
+        page.deleteTuple(first);
+        int free = page.getNumEmptySlots();
+        for (int i = 0; i < free; i++)
+            page.insertTuple(Utility.getHeapTuple(-1, 2));
+        assertTrue(TestUtil.compareTuples(expected, first));
+    }
+
+    /**
+     * Each reader of a page gets its own tuples, and a detached tuple keeps
+     * its values after its slot is deleted and reused by another tuple.
+     */
+    @Test public void detachedTuple() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        Tuple first = page.iterator().next();
+        Tuple other = page.iterator().next();
+        assertTrue(first != other);
+        Tuple expected = Utility.getHeapTuple(new int[] {
+                other.getInt(0), other.getInt(1) });
+        other.detach();
+        page.deleteTuple(first);
+        int free = page.getNumEmptySlots();
+        for (int i = 0; i < free; i++)
+            page.insertTuple(Utility.getHeapTuple(-1, 2));
+        assertTrue(TestUtil.compareTuples(expected, other));
+    }
+
+    /**
+     * The before image is the page as read until setBeforeImage, and then
+     * the page as it was when setBeforeImage was called.
+     */
+    @Test public void beforeImage() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, page.getBeforeImage().getPageData());
+        page.insertTuple(Utility.getHeapTuple(-1, 2));
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, page.getBeforeImage().getPageData());
+
+        page.setBeforeImage();
+        byte[] committed = page.getPageData();
+        assertArrayEquals(committed, page.getBeforeImage().getPageData());
+        page.deleteTuple(page.iterator().next());
+        assertArrayEquals(committed, page.getBeforeImage().getPageData());
+        assertFalse(Arrays.equals(committed, page.getPageData()));
+    }
+
     /**
      * JUnit suite target
      */
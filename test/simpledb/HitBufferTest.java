@@ -0,0 +1,74 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class HitBufferTest extends SimpleDbTestBase {
+
+    /**
+     * The hits of one thread are drained in order, as long as the buffer
+     * is drained when it asks to be.
+     */
+    @Test public void drainInOrder() {
+        HitBuffer buffer = new HitBuffer();
+        List<PageId> expected = new ArrayList<PageId>();
+        List<PageId> drained = new ArrayList<PageId>();
+        for (int i = 0; i < 10 * HitBuffer.STRIPE_SIZE; i++) {
+            PageId pid = new HeapPageId(1, i);
+            expected.add(pid);
+            if (buffer.record(pid))
+                buffer.drain(drained::add);
+        }
+        buffer.drain(drained::add);
+        assertEquals(expected, drained);
+        buffer.drain(drained::add);
+        assertEquals(expected.size(), drained.size());
+    }
+
+    /**
+     * A full buffer drops hits rather than block, and hits recorded by
+     * concurrent threads are drained at most once.
+     */
+    @Test public void concurrentHits() throws Exception {
+        final HitBuffer buffer = new HitBuffer();
+        final int threads = 8;
+        final int hitsPerThread = 100000;
+        final AtomicInteger drained = new AtomicInteger();
+        Thread[] ts = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int table = t;
+            ts[t] = new Thread(() -> {
+                for (int i = 0; i < hitsPerThread; i++) {
+                    if (buffer.record(new HeapPageId(table, i)) && i % 7 == 0) {
+                        synchronized (buffer) {
+                            buffer.drain(pid -> drained.incrementAndGet());
+                        }
+                    }
+                }
+            });
+            ts[t].start();
+        }
+        for (Thread t : ts)
+            t.join();
+        buffer.drain(pid -> drained.incrementAndGet());
+        assertTrue(drained.get() > 0);
+        assertTrue(drained.get() <= threads * hitsPerThread);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HitBufferTest.class);
+    }
+}
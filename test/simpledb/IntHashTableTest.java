@@ -0,0 +1,60 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class IntHashTableTest extends SimpleDbTestBase {
+
+    /**
+     * Keys get consecutive group numbers in the order they are first
+     * added, across the growth of the table, and are found again.
+     */
+    @Test public void addAndFind() {
+        IntHashTable table = new IntHashTable();
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        Random r = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            int key = r.nextInt(50000) - 25000;
+            Integer group = expected.get(key);
+            if (group == null)
+                expected.put(key, group = expected.size());
+            assertEquals((int) group, table.add(key));
+        }
+        assertEquals(expected.size(), table.size());
+        for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+            assertEquals((int) e.getValue(), table.find(e.getKey()));
+            assertEquals((int) e.getKey(), table.key(e.getValue()));
+        }
+        assertEquals(-1, table.find(25000));
+        assertEquals(-1, table.find(Integer.MIN_VALUE));
+    }
+
+    /** A cleared table numbers its keys from 0 again */
+    @Test public void clear() {
+        IntHashTable table = new IntHashTable(4);
+        for (int i = 0; i < 100; i++)
+            table.add(i * 1024);
+        table.clear();
+        assertEquals(0, table.size());
+        assertEquals(-1, table.find(0));
+        assertEquals(0, table.add(5));
+        assertEquals(1, table.add(0));
+        assertEquals(0, table.find(5));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IntHashTableTest.class);
+    }
+}
@@ -0,0 +1,164 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class LockManagerTest extends SimpleDbTestBase {
+
+    /** Time to wait for a thread to block or finish, in ms */
+    private static final int TIMEOUT = 5000;
+
+    private LockManager lm;
+    private TransactionId[] tids;
+    private PageId[] pages;
+
+    /**
+     * Three transactions, from the oldest to the youngest, each holding an
+     * exclusive lock on a page of its own.
+     */
+    @Before public void setUp() throws Exception {
+        lm = new LockManager();
+        tids = new TransactionId[3];
+        pages = new PageId[3];
+        for (int i = 0; i < 3; i++) {
+            tids[i] = new TransactionId();
+            pages[i] = new HeapPageId(1, i);
+            lm.acquireLock(tids[i], pages[i], Permissions.READ_WRITE);
+        }
+    }
+
+    /**
+     * Requests the next transaction's page for a transaction, and releases
+     * its locks if it is aborted, as the BufferPool would.
+     */
+    private class Grabber extends Thread {
+        final int t;
+        volatile boolean acquired = false;
+        volatile boolean aborted = false;
+
+        Grabber(int t) {
+            this.t = t;
+        }
+
+        public void run() {
+            try {
+                lm.acquireLock(tids[t], pages[(t + 1) % 3], Permissions.READ_WRITE);
+                acquired = true;
+            } catch (TransactionAbortedException e) {
+                aborted = true;
+                lm.releaseAllLocks(tids[t]);
+            }
+        }
+    }
+
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (thread.getState() != Thread.State.WAITING) {
+            if (!thread.isAlive() || System.currentTimeMillis() > deadline)
+                fail("the lock request did not block");
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Make each transaction request the page of the next one, in the
+     * specified order, so that the last request closes the cycle
+     * t0 -> t1 -> t2 -> t0, and check that the expected transaction is
+     * aborted while the other two get their locks one after the other.
+     */
+    private void breakCycle(LockManager.VictimPolicy policy, int[] order, int victim)
+            throws Exception {
+        lm.setVictimPolicy(policy);
+        Grabber[] grabbers = new Grabber[3];
+        for (int i = 0; i < 3; i++) {
+            int t = order[i];
+            grabbers[t] = new Grabber(t);
+            grabbers[t].start();
+            if (i < 2)
+                awaitBlocked(grabbers[t]);
+        }
+
+        grabbers[victim].join(TIMEOUT);
+        assertTrue(grabbers[victim].aborted);
+        // the victim released its page to the transaction waiting for it,
+        // which in turn releases its own to the last one
+        int next = (victim + 2) % 3;
+        grabbers[next].join(TIMEOUT);
+        assertTrue(grabbers[next].acquired);
+        int last = (victim + 1) % 3;
+        assertFalse(grabbers[last].acquired || grabbers[last].aborted);
+        lm.releaseAllLocks(tids[next]);
+        grabbers[last].join(TIMEOUT);
+        assertTrue(grabbers[last].acquired);
+        assertTrue(lm.holdsLock(tids[last], pages[(last + 1) % 3]));
+        lm.releaseAllLocks(tids[last]);
+    }
+
+    /** The youngest transaction is aborted, here by the request that closes the cycle */
+    @Test public void youngestRequesting() throws Exception {
+        breakCycle(LockManager.VictimPolicy.YOUNGEST, new int[] { 0, 1, 2 }, 2);
+    }
+
+    /** The youngest transaction is aborted while it waits for another page */
+    @Test public void youngestWaiting() throws Exception {
+        breakCycle(LockManager.VictimPolicy.YOUNGEST, new int[] { 1, 2, 0 }, 2);
+    }
+
+    /** The transaction holding the fewest locks is aborted, even if older */
+    @Test public void fewestLocks() throws Exception {
+        lm.acquireLock(tids[0], new HeapPageId(2, 0), Permissions.READ_ONLY);
+        lm.acquireLock(tids[0], new HeapPageId(2, 1), Permissions.READ_ONLY);
+        lm.acquireLock(tids[2], new HeapPageId(2, 2), Permissions.READ_ONLY);
+        breakCycle(LockManager.VictimPolicy.FEWEST_LOCKS, new int[] { 1, 2, 0 }, 1);
+    }
+
+    /** The transaction that has written the least log is aborted, even the oldest */
+    @Test public void leastLog() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 1, null, null);
+        Page page = hf.readPage(new HeapPageId(hf.getId(), 0));
+        Database.getLogFile().logWrite(tids[1], page, page);
+        Database.getLogFile().logWrite(tids[2], page, page);
+        assertEquals(0, Database.getLogFile().getLogBytesWritten(tids[0]));
+        breakCycle(LockManager.VictimPolicy.LEAST_LOG, new int[] { 2, 0, 1 }, 0);
+    }
+
+    /**
+     * A waiter that is interrupted is aborted, keeps its interrupt status,
+     * and no longer holds up the transactions behind it.
+     */
+    @Test public void interruptedWaiter() throws Exception {
+        final boolean[] interrupted = new boolean[1];
+        Grabber waiter = new Grabber(0) {
+            public void run() {
+                super.run();
+                interrupted[0] = Thread.currentThread().isInterrupted();
+            }
+        };
+        waiter.start();
+        awaitBlocked(waiter);
+        waiter.interrupt();
+        waiter.join(TIMEOUT);
+        assertTrue(waiter.aborted);
+        assertTrue(interrupted[0]);
+        lm.releaseAllLocks(tids[1]);
+        lm.acquireLock(tids[2], pages[1], Permissions.READ_WRITE);
+        assertTrue(lm.holdsLock(tids[2], pages[1]));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockManagerTest.class);
+    }
+}
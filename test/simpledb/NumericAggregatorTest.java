@@ -0,0 +1,116 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class NumericAggregatorTest extends SimpleDbTestBase {
+
+  private static final TupleDesc TD = new TupleDesc(
+      new Type[] { Type.INT_TYPE, Type.LONG_TYPE, Type.DOUBLE_TYPE, Type.DATE_TYPE });
+
+  private ArrayList<Tuple> tuples;
+
+  private static Tuple tuple(int group, long l, double d, String date) {
+    Tuple t = new Tuple(TD);
+    t.setField(0, new IntField(group));
+    t.setField(1, new LongField(l));
+    t.setField(2, new DoubleField(d));
+    t.setField(3, DateField.parse(date));
+    return t;
+  }
+
+  @Before public void createTuples() {
+    tuples = new ArrayList<Tuple>();
+    tuples.add(tuple(1, 5000000000L, 1.5, "2020-01-01"));
+    tuples.add(tuple(1, 7000000001L, -2.25, "2021-06-30 12:00:00"));
+    tuples.add(tuple(2, -3L, 10.0, "1999-12-31"));
+  }
+
+  /** Run the aggregate over the tuples, and return the results by group */
+  private Map<Field, Field> aggregate(int afield, Aggregator.Op op) throws Exception {
+    NumericAggregator agg = new NumericAggregator(0, Type.INT_TYPE, afield,
+        TD.getFieldType(afield), op);
+    for (Tuple t : tuples)
+      agg.mergeTupleIntoGroup(t);
+    OpIterator it = agg.iterator();
+    it.open();
+    Map<Field, Field> results = new HashMap<Field, Field>();
+    while (it.hasNext()) {
+      Tuple t = it.next();
+      assertEquals(NumericAggregator.resultType(TD.getFieldType(afield), op),
+          it.getTupleDesc().getFieldType(1));
+      results.put(t.getField(0), t.getField(1));
+    }
+    it.close();
+    return results;
+  }
+
+  /**
+   * Sums of longs do not overflow an int, and averages round like those of
+   * IntegerAggregator.
+   */
+  @Test public void longs() throws Exception {
+    assertEquals(new LongField(12000000001L), aggregate(1, Aggregator.Op.SUM).get(new IntField(1)));
+    assertEquals(new LongField(6000000000L), aggregate(1, Aggregator.Op.AVG).get(new IntField(1)));
+    assertEquals(new LongField(-3L), aggregate(1, Aggregator.Op.MIN).get(new IntField(2)));
+    assertEquals(new IntField(2), aggregate(1, Aggregator.Op.COUNT).get(new IntField(1)));
+  }
+
+  @Test public void doubles() throws Exception {
+    assertEquals(new DoubleField(-0.75), aggregate(2, Aggregator.Op.SUM).get(new IntField(1)));
+    assertEquals(new DoubleField(-0.375), aggregate(2, Aggregator.Op.AVG).get(new IntField(1)));
+    assertEquals(new DoubleField(1.5), aggregate(2, Aggregator.Op.MAX).get(new IntField(1)));
+  }
+
+  @Test public void dates() throws Exception {
+    Field max = aggregate(3, Aggregator.Op.MAX).get(new IntField(1));
+    assertEquals("2021-06-30 12:00:00", max.toString());
+    assertEquals(DateField.parse("1999-12-31"), aggregate(3, Aggregator.Op.MIN).get(new IntField(2)));
+  }
+
+  @Test(expected=IllegalArgumentException.class) public void sumOfDates() {
+    new NumericAggregator(0, Type.INT_TYPE, 3, Type.DATE_TYPE, Aggregator.Op.SUM);
+  }
+
+  /**
+   * The new types compare as numbers, and read back from a page as they
+   * were written.
+   */
+  @Test public void compareAndStore() throws Exception {
+    assertTrue(new DateField(1).compare(Predicate.Op.LESS_THAN, DateField.parse("1970-01-02")));
+    assertTrue(new LongField(Long.MAX_VALUE).compare(Predicate.Op.GREATER_THAN, new LongField(1L << 40)));
+    assertFalse(new DoubleField(Double.NaN).compare(Predicate.Op.LESS_THAN, new DoubleField(1.0)));
+    assertEquals(DateField.parse("2021-06-30 12:00:00.250").toString(), "2021-06-30 12:00:00.250");
+
+    Database.getCatalog().addTable(new TestUtil.SkeletonFile(-1, TD), "numeric");
+    HeapPageId pid = new HeapPageId(-1, 0);
+    HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+    for (Tuple t : tuples)
+      page.insertTuple(t);
+    HeapPage copy = new HeapPage(pid, page.getPageData());
+    int i = 0;
+    for (Iterator<Tuple> it = copy.iterator(); it.hasNext(); i++)
+      assertTrue(TestUtil.compareTuples(tuples.get(i), it.next()));
+    assertEquals(tuples.size(), i);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(NumericAggregatorTest.class);
+  }
+}
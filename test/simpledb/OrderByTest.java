@@ -0,0 +1,109 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class OrderByTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 10000;
+
+    private HeapFile hf;
+    private ArrayList<ArrayList<Integer>> tuples;
+
+    /** A table of 2 int columns, with many duplicates in column 0 */
+    @Before public void createTable() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        hf = SystemTestUtil.createRandomHeapFile(2, ROWS, 500, null, tuples);
+    }
+
+    /** The rows of the table stably sorted on column 0 */
+    private List<ArrayList<Integer>> expected(final boolean asc) {
+        List<ArrayList<Integer>> sorted = new ArrayList<ArrayList<Integer>>(tuples);
+        Collections.sort(sorted, new Comparator<ArrayList<Integer>>() {
+            public int compare(ArrayList<Integer> a, ArrayList<Integer> b) {
+                int c = a.get(0).compareTo(b.get(0));
+                return asc ? c : -c;
+            }
+        });
+        return sorted;
+    }
+
+    private void check(long memoryBudget) throws Exception {
+        for (boolean asc : new boolean[] { true, false }) {
+            OrderBy sort = new OrderBy(0, asc,
+                    new SeqScan(new TransactionId(), hf.getId()), memoryBudget);
+            sort.open();
+            List<ArrayList<Integer>> expected = expected(asc);
+            assertEquals(expected, SystemTestUtil.rows(sort));
+            sort.rewind();
+            assertEquals(expected, SystemTestUtil.rows(sort));
+            sort.close();
+        }
+    }
+
+    /** A child that fits in memory is sorted in memory, stably */
+    @Test public void inMemory() throws Exception {
+        check(OrderBy.DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * A child that does not fit in memory is sorted in runs that are
+     * merged, in more than one pass when there are more than MAX_FAN_IN,
+     * and still stably.
+     */
+    @Test public void external() throws Exception {
+        int tupleSize = hf.getTupleDesc().getSize() + 64;
+        // about 20 runs
+        check((long) tupleSize * ROWS / 20);
+        // about 200 runs
+        check((long) tupleSize * ROWS / 200);
+    }
+
+    /**
+     * Dictionary-encoded strings above a scan, whose TupleDesc has no
+     * dictionary, are spilled and read back as strings.
+     */
+    @Test public void dictionaryColumn() throws Exception {
+        HeapFile dict = SystemTestUtil.createDictHeapFile(ROWS, 37);
+        ArrayList<Integer> fields = new ArrayList<Integer>();
+        fields.add(1);
+        fields.add(0);
+        TransactionId tid = new TransactionId();
+        Project project = new Project(fields, new Type[] { Type.DICT_TYPE, Type.INT_TYPE },
+                new SeqScan(tid, dict.getId()));
+        OrderBy sort = new OrderBy(0, true, project, 4096);
+        sort.open();
+        String last = "";
+        int n = 0;
+        while (sort.hasNext()) {
+            Tuple t = sort.next();
+            String s = ((StringField) t.getField(0)).getValue();
+            assertTrue(s.compareTo(last) >= 0);
+            assertEquals("s" + t.getInt(1) % 37, s);
+            last = s;
+            n++;
+        }
+        assertEquals(ROWS, n);
+        sort.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(OrderByTest.class);
+    }
+}
@@ -0,0 +1,156 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PageChecksumsTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+
+    /**
+     * A checksummed table of a few pages, all of whose pages were written
+     * since checksums were turned on.
+     */
+    @Before public void createTable() throws Exception {
+        hf = SystemTestUtil.createRandomHeapFile(2, 2000, null, null);
+        PageChecksums.of(hf.getFile()).deleteOnExit();
+        hf.setChecksummed(true);
+        for (int i = 0; i < hf.numPages(); i++)
+            hf.writePage(hf.readPage(new HeapPageId(hf.getId(), i)));
+        assertTrue(hf.numPages() >= 3);
+    }
+
+    private void corrupt(int pageNumber, int offset) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(hf.getFile(), "rw")) {
+            long pos = (long) pageNumber * BufferPool.getPageSize() + offset;
+            raf.seek(pos);
+            int b = raf.read();
+            raf.seek(pos);
+            raf.write(b ^ 0x10);
+        }
+    }
+
+    private Page getPage(int pageNumber) throws Exception {
+        return Database.getBufferPool().getPage(new TransactionId(),
+                new HeapPageId(hf.getId(), pageNumber), Permissions.READ_ONLY);
+    }
+
+    /**
+     * A page with a flipped bit is reported by the BufferPool as a
+     * DbException naming the page; the other pages read fine.
+     */
+    @Test public void corruptPage() throws Exception {
+        corrupt(1, 100);
+        getPage(0);
+        try {
+            getPage(1);
+            fail("expected DbException");
+        } catch (DbException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("page 1 of table " + hf.getId()));
+        }
+        getPage(2);
+    }
+
+    /**
+     * A page whose write never reached the file still matches its previous
+     * checksum; a page whose write was torn halfway matches neither.
+     */
+    @Test public void tornWrite() throws Exception {
+        byte[] before = new byte[BufferPool.getPageSize()];
+        try (RandomAccessFile raf = new RandomAccessFile(hf.getFile(), "r")) {
+            raf.readFully(before);
+        }
+        HeapPage page = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0));
+        // change both halves of the page
+        Tuple last = null;
+        for (Iterator<Tuple> it = page.iterator(); it.hasNext(); )
+            last = it.next();
+        page.deleteTuple(page.iterator().next());
+        page.deleteTuple(last);
+        byte[] after = page.getPageData();
+        hf.writePage(page);
+
+        // the write never happened
+        try (RandomAccessFile raf = new RandomAccessFile(hf.getFile(), "rw")) {
+            raf.write(before);
+        }
+        hf.readPage(page.getId());
+
+        // only the first half of the page made it to disk
+        try (RandomAccessFile raf = new RandomAccessFile(hf.getFile(), "rw")) {
+            raf.write(after, 0, after.length / 2);
+        }
+        try {
+            hf.readPage(page.getId());
+            fail("expected CorruptPageException");
+        } catch (CorruptPageException e) {
+            assertEquals(page.getId(), e.getPageId());
+        }
+
+        // so did the rest
+        try (RandomAccessFile raf = new RandomAccessFile(hf.getFile(), "rw")) {
+            raf.write(after);
+        }
+        hf.readPage(page.getId());
+    }
+
+    /**
+     * The checksums survive reopening the file, and so does the detection
+     * of a page damaged while the table was closed.
+     */
+    @Test public void reopen() throws Exception {
+        hf.close();
+        corrupt(2, BufferPool.getPageSize() - 1);
+        HeapFile reopened = new HeapFile(hf.getFile(), hf.getTupleDesc());
+        reopened.setChecksummed(true);
+        reopened.readPage(new HeapPageId(reopened.getId(), 1));
+        try {
+            reopened.readPage(new HeapPageId(reopened.getId(), 2));
+            fail("expected CorruptPageException");
+        } catch (CorruptPageException e) {
+            // explicitly ignored
+        }
+    }
+
+    /**
+     * The scrubber finds the corrupt pages that are not cached, and leaves
+     * the cached ones alone.
+     */
+    @Test public void scrubber() throws Exception {
+        getPage(1);
+        corrupt(1, 10);
+        corrupt(2, 10);
+        PageScrubber scrubber = new PageScrubber(1000);
+        Map<Integer, List<Integer>> found = scrubber.scrub();
+        assertEquals(Collections.singletonMap(hf.getId(), Collections.singletonList(2)), found);
+        assertEquals(found, scrubber.getCorruptPages());
+        assertFalse(Database.getBufferPool().isCached(new HeapPageId(hf.getId(), 2)));
+
+        assertEquals(Arrays.asList(1, 2), hf.scrub(pid -> false));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageChecksumsTest.class);
+    }
+}
@@ -0,0 +1,159 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PaxPageTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.LONG_TYPE });
+
+    private HeapPageId pid;
+
+    @Before public void addTable() {
+        this.pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, TD), SystemTestUtil.getUUID());
+    }
+
+    private static Tuple tuple(int i) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField("s" + i, Type.STRING_LEN));
+        t.setField(2, new LongField(1000L * i));
+        return t;
+    }
+
+    private static List<Tuple> tuples(HeapPage page) {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext())
+            tuples.add(it.next());
+        return tuples;
+    }
+
+    /**
+     * Each field of the tuples is stored in the minipage of its column,
+     * and the bytes read back into the same tuples.
+     */
+    @Test public void minipages() throws Exception {
+        PaxPage page = new PaxPage(pid, HeapPage.createEmptyPageData());
+        for (int i = 0; i < 10; i++)
+            page.insertTuple(tuple(i));
+        byte[] data = page.getPageData();
+        int numSlots = page.getNumSlots();
+        int header = (numSlots + 7) / 8;
+        // the integers of slots 0 and 1 are adjacent, then come the strings
+        assertEquals(1, ByteBuffer.wrap(data).getInt(header + 4));
+        assertEquals(3000L, ByteBuffer.wrap(data).getLong(
+                header + numSlots * (4 + Type.STRING_TYPE.getLen()) + 3 * 8));
+
+        List<Tuple> copy = tuples(new PaxPage(pid, data));
+        assertEquals(10, copy.size());
+        for (int i = 0; i < 10; i++)
+            assertTrue(TestUtil.compareTuples(tuple(i), copy.get(i)));
+    }
+
+    /**
+     * A HeapPage transposed by fromRows is a PaxPage with the same tuples.
+     */
+    @Test public void fromRows() throws Exception {
+        HeapPage rows = new HeapPage(pid, HeapPage.createEmptyPageData());
+        for (int i = 0; i < rows.getNumSlots(); i += 2)
+            rows.insertTuple(tuple(i));
+        PaxPage columns = new PaxPage(pid, PaxPage.fromRows(TD, rows.getPageData()));
+        List<Tuple> expected = tuples(rows);
+        List<Tuple> actual = tuples(columns);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(TestUtil.compareTuples(expected.get(i), actual.get(i)));
+            assertEquals(expected.get(i).getRecordId(), actual.get(i).getRecordId());
+        }
+    }
+
+    /**
+     * A deleted slot is cleared in every minipage, and the before image is
+     * a PaxPage too.
+     */
+    @Test public void deleteAndBeforeImage() throws Exception {
+        PaxPage page = new PaxPage(pid, HeapPage.createEmptyPageData());
+        page.insertTuple(tuple(1));
+        page.setBeforeImage();
+        byte[] committed = page.getPageData();
+        Tuple t = page.iterator().next();
+        page.deleteTuple(t);
+        assertFalse(page.iterator().hasNext());
+        assertArrayEquals(HeapPage.createEmptyPageData(), page.getPageData());
+        PaxPage before = page.getBeforeImage();
+        assertArrayEquals(committed, before.getPageData());
+        assertEquals(1, tuples(before).size());
+    }
+
+    /**
+     * A PaxFile written by HeapFileEncoder answers a filtered aggregate as
+     * a HeapFile of the same rows does.
+     */
+    @Test public void paxFile() throws Exception {
+        File text = File.createTempFile("pax", ".txt");
+        text.deleteOnExit();
+        FileWriter w = new FileWriter(text);
+        for (int i = 0; i < 3000; i++)
+            w.write(i + ",name" + i + "," + (i % 7) + "\n");
+        w.close();
+        Type[] types = new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.LONG_TYPE };
+        File rowFile = File.createTempFile("rows", ".dat");
+        File paxFile = File.createTempFile("pax", ".dat");
+        rowFile.deleteOnExit();
+        paxFile.deleteOnExit();
+        HeapFileEncoder.convert(text, rowFile, BufferPool.getPageSize(), 3, types, ',', false);
+        HeapFileEncoder.convert(text, paxFile, BufferPool.getPageSize(), 3, types, ',', true);
+        assertEquals(rowFile.length(), paxFile.length());
+
+        HeapFile rows = new HeapFile(rowFile, TD);
+        HeapFile pax = new PaxFile(paxFile, TD);
+        Database.getCatalog().addTable(rows, "rows");
+        Database.getCatalog().addTable(pax, "pax");
+        int expected = 0;
+        for (int i = 6; i < 3000; i += 7)
+            expected += i;
+        assertEquals(expected, sumWhere(rows));
+        assertEquals(expected, sumWhere(pax));
+    }
+
+    /** Return SELECT SUM(f0) FROM f WHERE f2 > 5 */
+    private static int sumWhere(HeapFile f) throws Exception {
+        TransactionId tid = new TransactionId();
+        OpIterator scan = new SeqScan(tid, f.getId());
+        Filter filter = new Filter(new Predicate(2, Predicate.Op.GREATER_THAN, new LongField(5)), scan);
+        Aggregate sum = new Aggregate(filter, 0, Aggregator.NO_GROUPING, Aggregator.Op.SUM);
+        sum.open();
+        int result = ((IntField) sum.next().getField(0)).getValue();
+        sum.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return result;
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxPageTest.class);
+    }
+}
@@ -0,0 +1,112 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ReadAheadTest extends SimpleDbTestBase {
+
+    private static final int PAGES = 30;
+    // 504 two-column tuples fit on a page
+    private static final int ROWS = PAGES * 504;
+
+    private HeapFile hf;
+    private TransactionId tid;
+    private BufferPool bp;
+    private ReadAhead readAhead;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<>();
+        hf = SystemTestUtil.createRandomHeapFile(2, ROWS, null, tuples);
+        assertEquals(PAGES, hf.numPages());
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+        readAhead = bp.newReadAhead(null, page -> {
+            int next = page.getId().getPageNumber() + 1;
+            return next < PAGES ? new HeapPageId(hf.getId(), next) : null;
+        });
+        assertNotNull(readAhead);
+    }
+
+    @After public void tearDown() throws Exception {
+        readAhead.close();
+        bp.transactionComplete(tid);
+    }
+
+    private Page read(int pageNumber) throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), pageNumber);
+        readAhead.access(pid);
+        return bp.getPage(tid, pid, Permissions.READ_ONLY);
+    }
+
+    /** Wait until at least count pages have been read ahead */
+    private void awaitPrefetches(long count) throws InterruptedException {
+        for (int i = 0; i < 500 && bp.getPrefetchCount() < count; i++)
+            Thread.sleep(10);
+        assertTrue(bp.getPrefetchCount() >= count);
+    }
+
+    /**
+     * Once a scan has read two pages in a row, the next pages are read
+     * into the pool before the scan requests them.
+     */
+    @Test public void readsAheadOfScan() throws Exception {
+        read(0);
+        read(1);
+        awaitPrefetches(ReadAhead.INITIAL_WINDOW);
+        long misses = bp.getMissCount();
+        for (int i = 2; i < 2 + ReadAhead.INITIAL_WINDOW; i++)
+            read(i);
+        assertEquals(misses, bp.getMissCount());
+    }
+
+    /**
+     * A page read ahead that was evicted before the scan got to it halves
+     * the window.
+     */
+    @Test public void windowShrinksWhenPagesAreWasted() throws Exception {
+        read(0);
+        read(1);
+        awaitPrefetches(ReadAhead.INITIAL_WINDOW);
+        assertEquals(ReadAhead.INITIAL_WINDOW, readAhead.getWindow());
+        bp.discardPage(new HeapPageId(hf.getId(), 2));
+        read(2);
+        assertEquals(ReadAhead.INITIAL_WINDOW / 2, readAhead.getWindow());
+    }
+
+    /**
+     * A scan with read-ahead returns every tuple, and every page is read
+     * from disk exactly once.
+     */
+    @Test public void scanReadsEveryPageOnce() throws Exception {
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(ROWS, count);
+        assertEquals(PAGES, bp.getMissCount() + bp.getPrefetchCount());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
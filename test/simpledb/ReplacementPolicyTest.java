@@ -0,0 +1,149 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ReplacementPolicyTest extends SimpleDbTestBase {
+
+    private static final int CAPACITY = 40;
+    private static final int HOT_PAGES = 5;
+
+    /**
+     * Minimal model of the BufferPool page table driving a policy: counts
+     * the hits on the pages of table 0.
+     */
+    private static class Simulator {
+        final ReplacementPolicy policy;
+        final HashSet<PageId> cached = new HashSet<>();
+        int hotHits = 0;
+        int hotAccesses = 0;
+
+        Simulator(ReplacementPolicy.Kind kind) {
+            policy = kind.create(CAPACITY);
+        }
+
+        void access(PageId pid) {
+            boolean hot = pid.getTableId() == 0;
+            if (hot)
+                hotAccesses++;
+            if (cached.contains(pid)) {
+                if (hot)
+                    hotHits++;
+                policy.pageHit(pid);
+                return;
+            }
+            if (cached.size() >= CAPACITY) {
+                PageId victim = policy.evict(pid, p -> true);
+                assertNotNull(victim);
+                assertTrue(cached.remove(victim));
+            }
+            cached.add(pid);
+            policy.pageAdded(pid);
+        }
+
+        void accessHotPages() {
+            for (int i = 0; i < HOT_PAGES; i++)
+                access(new HeapPageId(0, i));
+        }
+    }
+
+    /**
+     * Warm up with a hot set re-referenced after some unrelated pages, then
+     * run a long sequential scan with point lookups on the hot set every 50
+     * scanned pages, more than the pool holds. Returns the hit ratio of the lookups during the scan.
+     */
+    private double hotHitRatioDuringScan(ReplacementPolicy.Kind kind) {
+        Simulator sim = new Simulator(kind);
+        sim.accessHotPages();
+        for (int i = 0; i < CAPACITY; i++)
+            sim.access(new HeapPageId(1, i));
+        sim.accessHotPages();
+
+        sim.hotHits = 0;
+        sim.hotAccesses = 0;
+        for (int i = 0; i < 1000; i++) {
+            sim.access(new HeapPageId(2, i));
+            if (i % 50 == 0)
+                sim.accessHotPages();
+        }
+        return (double) sim.hotHits / sim.hotAccesses;
+    }
+
+    /**
+     * A scan larger than the pool flushes the hot pages out of an LRU pool.
+     */
+    @Test public void lruIsNotScanResistant() {
+        assertTrue(hotHitRatioDuringScan(ReplacementPolicy.Kind.LRU) < 0.5);
+    }
+
+    @Test public void twoQueueKeepsHotPagesDuringScan() {
+        assertTrue(hotHitRatioDuringScan(ReplacementPolicy.Kind.TWO_Q) > 0.95);
+    }
+
+    @Test public void arcKeepsHotPagesDuringScan() {
+        assertTrue(hotHitRatioDuringScan(ReplacementPolicy.Kind.ARC) > 0.95);
+    }
+
+    /**
+     * Pages rejected by the filter (dirty pages, for the BufferPool) are
+     * never chosen, and evict returns null when no page can be evicted.
+     */
+    @Test public void evictRespectsFilter() {
+        for (ReplacementPolicy.Kind kind : ReplacementPolicy.Kind.values()) {
+            ReplacementPolicy policy = kind.create(4);
+            PageId pinned0 = new HeapPageId(0, 0);
+            PageId pinned1 = new HeapPageId(0, 1);
+            PageId free = new HeapPageId(0, 2);
+            policy.pageAdded(pinned0);
+            policy.pageAdded(pinned1);
+            policy.pageAdded(free);
+
+            assertEquals(kind.toString(), free,
+                    policy.evict(null, p -> !p.equals(pinned0) && !p.equals(pinned1)));
+            assertNull(kind.toString(),
+                    policy.evict(null, p -> !p.equals(pinned0) && !p.equals(pinned1)));
+            policy.pageRemoved(pinned0);
+            assertEquals(kind.toString(), pinned1, policy.evict(null, p -> true));
+            assertNull(kind.toString(), policy.evict(null, p -> true));
+        }
+    }
+
+    /**
+     * BufferPool counts the page requests it serves from memory.
+     */
+    @Test public void bufferPoolHitCounters() throws Exception {
+        java.io.File f = java.io.File.createTempFile("policy", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = Utility.createEmptyHeapFile(f.getAbsolutePath(), 2);
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(1, 2));
+        Database.getBufferPool().transactionComplete(tid);
+
+        BufferPool bp = Database.resetBufferPool(10, ReplacementPolicy.Kind.ARC);
+        tid = new TransactionId();
+        PageId pid = new HeapPageId(hf.getId(), 0);
+        bp.getPage(tid, pid, Permissions.READ_ONLY);
+        bp.getPage(tid, pid, Permissions.READ_ONLY);
+        bp.getPage(tid, pid, Permissions.READ_ONLY);
+        assertEquals(1, bp.getMissCount());
+        assertEquals(2, bp.getHitCount());
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReplacementPolicyTest.class);
+    }
+}
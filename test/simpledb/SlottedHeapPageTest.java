@@ -0,0 +1,229 @@
+package simpledb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class SlottedHeapPageTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD =
+            new TupleDesc(new Type[] { Type.INT_TYPE, Type.VARCHAR_TYPE });
+
+    private HeapPageId pid;
+
+    @Before public void addTable() {
+        this.pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, TD), SystemTestUtil.getUUID());
+    }
+
+    private static Tuple tuple(int i, String s) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        return t;
+    }
+
+    private static List<Tuple> tuples(SlottedHeapPage page) {
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext())
+            tuples.add(it.next());
+        return tuples;
+    }
+
+    private SlottedHeapPage emptyPage() throws IOException {
+        return new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+    }
+
+    /**
+     * Short strings take only their own length, so a page holds many more
+     * of them than fixed-size slots of the maximum length.
+     */
+    @Test public void fillsByLength() throws Exception {
+        SlottedHeapPage page = emptyPage();
+        int n = 0;
+        while (page.hasRoomFor(tuple(n, "abc")))
+            page.insertTuple(tuple(n++, "abc"));
+        int fixedSlots = BufferPool.getPageSize() * 8 / (TD.getSize() * 8 + 1);
+        assertTrue(n > 5 * fixedSlots);
+        assertTrue(page.getFreeSpaceCategory() <= 1);
+
+        try {
+            page.insertTuple(tuple(0, "abc"));
+            throw new Exception("page should be full; expected DbException");
+        } catch (DbException e) {
+            // explicitly ignored
+        }
+    }
+
+    /**
+     * The bytes of a page read back into the same tuples, with the same
+     * RecordIds.
+     */
+    @Test public void roundTrip() throws Exception {
+        SlottedHeapPage page = emptyPage();
+        for (int i = 0; i < 20; i++)
+            page.insertTuple(tuple(i, "value " + i));
+        SlottedHeapPage copy = new SlottedHeapPage(pid, page.getPageData());
+        List<Tuple> expected = tuples(page);
+        List<Tuple> actual = tuples(copy);
+        assertEquals(20, actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(TestUtil.compareTuples(expected.get(i), actual.get(i)));
+            assertEquals(expected.get(i).getRecordId(), actual.get(i).getRecordId());
+        }
+        assertArrayEquals(page.getPageData(), copy.getPageData());
+    }
+
+    /**
+     * Deleted slots are reused and the records are compacted when an
+     * insert needs the space of the holes; other tuples keep their slots.
+     */
+    @Test public void deleteAndCompact() throws Exception {
+        SlottedHeapPage page = emptyPage();
+        String longString = new String(new char[100]).replace('\0', 'x');
+        while (page.hasRoomFor(tuple(0, longString)))
+            page.insertTuple(tuple(page.getNumSlots(), longString));
+        int slots = page.getNumSlots();
+
+        // free every other record, leaving holes smaller than a long record
+        List<Tuple> all = tuples(page);
+        for (int i = 1; i < all.size() - 1; i += 2)
+            page.deleteTuple(all.get(i));
+        // records twice as long only fit after compaction
+        int inserted = 0;
+        String longer = longString + longString.substring(0, 27);
+        while (page.hasRoomFor(tuple(-1, longer))) {
+            page.insertTuple(tuple(-1, longer));
+            inserted++;
+        }
+        assertTrue(inserted > 0);
+        assertEquals(slots, page.getNumSlots());
+
+        SlottedHeapPage copy = new SlottedHeapPage(pid, page.getPageData());
+        int kept = 0;
+        for (Tuple t : tuples(copy)) {
+            int i = ((IntField) t.getField(0)).getValue();
+            if (i >= 0) {
+                // the surviving tuples kept their slots
+                assertEquals(i, t.getRecordId().getTupleNumber());
+                assertEquals(longString, ((StringField) t.getField(1)).getValue());
+                kept++;
+            } else {
+                assertEquals(longer, ((StringField) t.getField(1)).getValue());
+            }
+        }
+        assertEquals(all.size() - (all.size() - 1) / 2, kept);
+    }
+
+    /**
+     * Deleting the last slots shrinks the directory, and an emptied page
+     * is all zeroes again.
+     */
+    @Test public void deleteAll() throws Exception {
+        SlottedHeapPage page = emptyPage();
+        for (int i = 0; i < 10; i++)
+            page.insertTuple(tuple(i, "s" + i));
+        List<Tuple> all = tuples(page);
+        page.deleteTuple(all.get(9));
+        assertEquals(9, page.getNumSlots());
+        for (int i = 0; i < 9; i++)
+            page.deleteTuple(all.get(i));
+        assertEquals(0, page.getNumSlots());
+        assertFalse(page.iterator().hasNext());
+        assertArrayEquals(HeapPage.createEmptyPageData(), page.getPageData());
+    }
+
+    /**
+     * Each reader of a page gets its own tuples, which keep their values
+     * after their slot is deleted and reused.
+     */
+    @Test public void tuplePerReader() throws Exception {
+        SlottedHeapPage page = emptyPage();
+        page.insertTuple(tuple(1, "one"));
+        Tuple first = page.iterator().next();
+        Tuple other = page.iterator().next();
+        assertTrue(first != other);
+        page.deleteTuple(first);
+        page.insertTuple(tuple(2, "two"));
+        assertTrue(TestUtil.compareTuples(tuple(1, "one"), other));
+        assertTrue(TestUtil.compareTuples(tuple(2, "two"), page.iterator().next()));
+    }
+
+    /**
+     * The before image is the page as read until setBeforeImage.
+     */
+    @Test public void beforeImage() throws Exception {
+        SlottedHeapPage page = emptyPage();
+        page.insertTuple(tuple(1, "one"));
+        assertArrayEquals(HeapPage.createEmptyPageData(), page.getBeforeImage().getPageData());
+        page.setBeforeImage();
+        byte[] committed = page.getPageData();
+        page.insertTuple(tuple(2, "two"));
+        assertArrayEquals(committed, page.getBeforeImage().getPageData());
+    }
+
+    /**
+     * HeapFileEncoder writes tables with VARCHAR fields as slotted pages,
+     * which HeapFile reads back.
+     */
+    @Test public void encodeAndScan() throws Exception {
+        File text = File.createTempFile("varchar", ".txt");
+        text.deleteOnExit();
+        FileWriter w = new FileWriter(text);
+        int rows = 2000;
+        for (int i = 0; i < rows; i++)
+            w.write(i + ",name" + i + "\n");
+        w.close();
+        File dat = File.createTempFile("varchar", ".dat");
+        dat.deleteOnExit();
+        HeapFileEncoder.convert(text, dat, BufferPool.getPageSize(), 2,
+                new Type[] { Type.INT_TYPE, Type.VARCHAR_TYPE });
+        HeapFile hf = new HeapFile(dat, TD);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        assertTrue(hf.numPages() < rows / (BufferPool.getPageSize() / TD.getSize()));
+
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int i = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(i, ((IntField) t.getField(0)).getValue());
+            assertEquals("name" + i, ((StringField) t.getField(1)).getValue());
+            i++;
+        }
+        it.close();
+        assertEquals(rows, i);
+
+        // an insert fits in the free space of the last page
+        int pages = hf.numPages();
+        Database.getBufferPool().insertTuple(tid, hf.getId(), tuple(rows, "last"));
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(pages, hf.numPages());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapPageTest.class);
+    }
+}
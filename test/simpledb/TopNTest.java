@@ -0,0 +1,207 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class TopNTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 5000;
+
+    private HeapFile hf;
+
+    /** A table of 2 int columns, with many duplicates in column 0 */
+    @Before public void createTable() throws Exception {
+        hf = SystemTestUtil.createRandomHeapFile(2, ROWS, 200, null,
+                new ArrayList<ArrayList<Integer>>(), "c");
+        Database.getCatalog().addTable(hf, "t");
+    }
+
+    /**
+     * TopN returns the tuples of a Limit over an OrderBy, including which of
+     * the tuples with equal values, for limits below, around and above the
+     * number of tuples.
+     */
+    @Test public void sameAsLimitOfOrderBy() throws Exception {
+        int[][] limits = { { 0, 0 }, { 1, 0 }, { 10, 0 }, { 10, 25 },
+                { 150, 3 }, { ROWS - 5, 2 }, { ROWS + 10, 0 }, { 20, ROWS } };
+        for (boolean asc : new boolean[] { true, false }) {
+            for (int[] l : limits) {
+                Limit expected = new Limit(l[0], l[1], new OrderBy(0, asc,
+                        new SeqScan(new TransactionId(), hf.getId())));
+                TopN topN = new TopN(0, asc, l[0], l[1],
+                        new SeqScan(new TransactionId(), hf.getId()));
+                expected.open();
+                topN.open();
+                List<ArrayList<Integer>> rows = SystemTestUtil.rows(expected);
+                assertEquals(rows, SystemTestUtil.rows(topN));
+                topN.rewind();
+                assertEquals(rows, SystemTestUtil.rows(topN));
+                topN.close();
+                expected.close();
+            }
+        }
+    }
+
+    /** A child that counts the tuples read from it */
+    private static class CountingIterator extends Operator {
+        private static final long serialVersionUID = 1L;
+        private OpIterator child;
+        int count;
+
+        CountingIterator(OpIterator child) {
+            this.child = child;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            child.open();
+            super.open();
+        }
+
+        public void close() {
+            super.close();
+            child.close();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            child.rewind();
+        }
+
+        protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+            if (!child.hasNext())
+                return null;
+            count++;
+            return child.next();
+        }
+
+        public TupleDesc getTupleDesc() {
+            return child.getTupleDesc();
+        }
+
+        public OpIterator[] getChildren() {
+            return new OpIterator[] { child };
+        }
+
+        public void setChildren(OpIterator[] children) {
+            child = children[0];
+        }
+    }
+
+    /** Limit skips the offset and stops reading its child after the limit */
+    @Test public void limitStopsEarly() throws Exception {
+        CountingIterator child = new CountingIterator(
+                new SeqScan(new TransactionId(), hf.getId()));
+        Limit limit = new Limit(5, 10, child);
+        limit.open();
+        assertEquals(5, SystemTestUtil.rows(limit).size());
+        assertTrue(child.count <= 16);
+        limit.close();
+
+        limit = new Limit(-1, ROWS - 3, new SeqScan(new TransactionId(), hf.getId()));
+        limit.open();
+        assertEquals(3, SystemTestUtil.rows(limit).size());
+        limit.close();
+    }
+
+    /** LIMIT and OFFSET are taken off the end of a statement */
+    @Test public void stripLimit() throws Exception {
+        Parser.StrippedStatement s = Parser.stripLimit(
+                "SELECT * FROM t ORDER BY t.c0 LIMIT 10 OFFSET 5;");
+        assertEquals("SELECT * FROM t ORDER BY t.c0;", s.statement);
+        assertEquals(10, s.limit);
+        assertEquals(5, s.offset);
+        s = Parser.stripLimit("select * from t limit 3");
+        assertEquals("select * from t", s.statement);
+        assertEquals(3, s.limit);
+        assertEquals(0, s.offset);
+        s = Parser.stripLimit("SELECT * FROM t;");
+        assertEquals("SELECT * FROM t;", s.statement);
+        assertTrue(!s.hasLimit());
+    }
+
+    private int count(OpIterator plan) throws Exception {
+        plan.open();
+        int n = SystemTestUtil.rows(plan).size();
+        plan.close();
+        return n;
+    }
+
+    /**
+     * The LIMIT of a statement applies to its top-level SELECT, not to a
+     * subquery, and a DELETE with a LIMIT is rejected rather than run
+     * without it.
+     */
+    @Test public void limitOfStatement() throws Exception {
+        TransactionId tid = new TransactionId();
+        TableStats.setTableStats("t", new TableStats(hf.getId(), 1));
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put("t", TableStats.getTableStats("t"));
+        Parser p = new Parser();
+        OpIterator plan = p.generateLogicalPlan(tid,
+                "SELECT * FROM t WHERE t.c0 = (SELECT t2.c0 FROM t t2 WHERE t2.c1 < 100) LIMIT 3;")
+                .physicalPlan(tid, stats, false);
+        assertEquals(3, count(plan));
+        Database.getBufferPool().transactionComplete(tid);
+
+        p.processNextStatement("DELETE FROM t WHERE t.c0 >= 0 LIMIT 1;");
+        tid = new TransactionId();
+        assertEquals(ROWS, count(new SeqScan(tid, hf.getId())));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** An ORDER BY with a small LIMIT is planned as a TopN, a large one not */
+    @Test public void plan() throws Exception {
+        TransactionId tid = new TransactionId();
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put("t", new TableStats(hf.getId(), 1));
+        Parser p = new Parser();
+
+        OpIterator plan = p.generateLogicalPlan(tid,
+                "SELECT * FROM t ORDER BY t.c0 DESC LIMIT 10 OFFSET 5;")
+                .physicalPlan(tid, stats, false);
+        assertTrue(find(plan, TopN.class));
+        plan.open();
+        assertEquals(10, SystemTestUtil.rows(plan).size());
+        plan.close();
+
+        plan = p.generateLogicalPlan(tid,
+                "SELECT * FROM t ORDER BY t.c0 LIMIT 2000000000;")
+                .physicalPlan(tid, stats, false);
+        assertTrue(!find(plan, TopN.class) && find(plan, Limit.class));
+
+        plan = p.generateLogicalPlan(tid, "SELECT * FROM t LIMIT 7;")
+                .physicalPlan(tid, stats, false);
+        assertTrue(find(plan, Limit.class));
+        plan.open();
+        assertEquals(7, SystemTestUtil.rows(plan).size());
+        plan.close();
+    }
+
+    private static boolean find(OpIterator it, Class<?> c) {
+        if (c.isInstance(it))
+            return true;
+        if (it instanceof Operator)
+            for (OpIterator child : ((Operator) it).getChildren())
+                if (child != null && find(child, c))
+                    return true;
+        return false;
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TopNTest.class);
+    }
+}
@@ -0,0 +1,187 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class TupleBatchTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 5000;
+    private static final int MAX_VALUE = 1000;
+
+    private TransactionId tid;
+    private HeapFile hf;
+    private ArrayList<ArrayList<Integer>> tuples;
+
+    /** A table of a few batches of 3 int columns */
+    @Before public void createTable() throws Exception {
+        tid = new TransactionId();
+        tuples = new ArrayList<ArrayList<Integer>>();
+        hf = SystemTestUtil.createRandomHeapFile(3, ROWS, MAX_VALUE, null, tuples);
+    }
+
+    private SeqScan scan() {
+        return new SeqScan(tid, hf.getId(), "t");
+    }
+
+    private static List<ArrayList<Integer>> drainBatches(BatchOpIterator it) throws Exception {
+        List<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+        it.open();
+        TupleBatch b;
+        while ((b = it.nextBatch()) != null) {
+            assertTrue(b.size() > 0);
+            for (int i = 0; i < b.size(); i++)
+                rows.add(SystemTestUtil.tupleToList(b.getTuple(b.row(i))));
+        }
+        it.close();
+        return rows;
+    }
+
+    private static void sort(List<ArrayList<Integer>> rows) {
+        Collections.sort(rows, new Comparator<ArrayList<Integer>>() {
+            public int compare(ArrayList<Integer> a, ArrayList<Integer> b) {
+                for (int i = 0; i < a.size(); i++) {
+                    int c = a.get(i).compareTo(b.get(i));
+                    if (c != 0)
+                        return c;
+                }
+                return 0;
+            }
+        });
+    }
+
+    /**
+     * A filter narrows the selection of the scan batches, which keep the
+     * tuples of the scan, and a projection of them returns the selected
+     * rows in order.
+     */
+    @Test public void scanFilterProject() throws Exception {
+        Filter filter = new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(MAX_VALUE / 4)), scan());
+        filter.open();
+        TupleBatch b = filter.nextBatch();
+        assertNotNull(b);
+        assertTrue(b.size() < b.numRows());
+        Tuple t = b.getTuple(b.row(0));
+        assertNotNull(t.getRecordId());
+        filter.close();
+
+        ArrayList<Integer> fields = new ArrayList<Integer>();
+        fields.add(2);
+        fields.add(1);
+        Project project = new Project(fields, new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+                new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(MAX_VALUE / 4)), scan()));
+        List<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> row : tuples) {
+            if (row.get(1) < MAX_VALUE / 4) {
+                ArrayList<Integer> out = new ArrayList<Integer>();
+                out.add(row.get(2));
+                out.add(row.get(1));
+                expected.add(out);
+            }
+        }
+        assertEquals(expected, drainBatches(project));
+    }
+
+    /**
+     * Aggregates consume their child in batches, with and without
+     * grouping, and compute the same results as over the tuples.
+     */
+    @Test public void aggregate() throws Exception {
+        for (Aggregator.Op op : new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.COUNT,
+                Aggregator.Op.MIN, Aggregator.Op.MAX, Aggregator.Op.AVG }) {
+            Filter filter = new Filter(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(MAX_VALUE / 2)), scan());
+            Aggregate agg = new Aggregate(filter, 2, Aggregator.NO_GROUPING, op);
+            long sum = 0, count = 0;
+            int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+            for (ArrayList<Integer> row : tuples) {
+                if (row.get(0) > MAX_VALUE / 2) {
+                    int v = row.get(2);
+                    sum += v;
+                    count++;
+                    min = Math.min(min, v);
+                    max = Math.max(max, v);
+                }
+            }
+            long expected = op == Aggregator.Op.SUM ? sum : op == Aggregator.Op.COUNT ? count
+                    : op == Aggregator.Op.MIN ? min : op == Aggregator.Op.MAX ? max : sum / count;
+            List<ArrayList<Integer>> result = drainBatches(agg);
+            assertEquals(op.toString(), 1, result.size());
+            assertEquals(op.toString(), expected, (long) result.get(0).get(0));
+        }
+
+        Aggregate grouped = new Aggregate(scan(), 2, 1, Aggregator.Op.SUM);
+        Aggregate reference = new Aggregate(new TupleIterator(hf.getTupleDesc(), tupleList()), 2, 1, Aggregator.Op.SUM);
+        List<ArrayList<Integer>> batches = drainBatches(grouped);
+        reference.open();
+        List<ArrayList<Integer>> rows = SystemTestUtil.rows(reference);
+        reference.close();
+        sort(batches);
+        sort(rows);
+        assertEquals(rows, batches);
+    }
+
+    private List<Tuple> tupleList() {
+        List<Tuple> list = new ArrayList<Tuple>();
+        for (ArrayList<Integer> row : tuples) {
+            Tuple t = new Tuple(hf.getTupleDesc());
+            for (int i = 0; i < row.size(); i++)
+                t.setField(i, new IntField(row.get(i)));
+            list.add(t);
+        }
+        return list;
+    }
+
+    /**
+     * A hash join probed a batch at a time returns the same tuples as
+     * probed a tuple at a time, including when its build side is read
+     * through the row adapter.
+     */
+    @Test public void hashJoin() throws Exception {
+        ArrayList<ArrayList<Integer>> small = new ArrayList<ArrayList<Integer>>();
+        HeapFile other = SystemTestUtil.createRandomHeapFile(2, 300, MAX_VALUE, null, small);
+        JoinPredicate pred = new JoinPredicate(1, Predicate.Op.EQUALS, 0);
+
+        HashEquiJoin join = new HashEquiJoin(pred, new SeqScan(tid, other.getId(), "o"), scan());
+        join.open();
+        List<ArrayList<Integer>> rows = SystemTestUtil.rows(join);
+        join.close();
+        List<ArrayList<Integer>> batches = drainBatches(new HashEquiJoin(pred,
+                new SeqScan(tid, other.getId(), "o"), scan()));
+        assertTrue(rows.size() > TupleBatch.DEFAULT_CAPACITY / 2);
+        sort(rows);
+        sort(batches);
+        assertEquals(rows, batches);
+
+        List<Tuple> otherTuples = new ArrayList<Tuple>();
+        for (ArrayList<Integer> row : small) {
+            Tuple t = new Tuple(other.getTupleDesc());
+            for (int i = 0; i < row.size(); i++)
+                t.setField(i, new IntField(row.get(i)));
+            otherTuples.add(t);
+        }
+        List<ArrayList<Integer>> adapted = drainBatches(new HashEquiJoin(pred,
+                new TupleIterator(other.getTupleDesc(), otherTuples), scan()));
+        sort(adapted);
+        assertEquals(rows, adapted);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TupleBatchTest.class);
+    }
+}
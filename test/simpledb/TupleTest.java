@@ -1,6 +1,7 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Ignore;
@@ -30,6 +31,27 @@ public class TupleTest extends SimpleDbTestBase {
         assertEquals(new IntField(37), tup.getField(1));
     }
 
+    /**
+     * Unit test for Tuple.getInt(), Tuple.setInt() and copying fields
+     * between tuples
+     */
+    @Test public void intFields() {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        Tuple tup = new Tuple(td);
+        assertNull(tup.getField(0));
+        tup.setInt(0, 42);
+        tup.setField(1, new StringField("abc", Type.STRING_LEN));
+        assertEquals(42, tup.getInt(0));
+        assertEquals(new IntField(42), tup.getField(0));
+
+        Tuple copy = new Tuple(td);
+        copy.setField(0, tup, 0);
+        copy.setField(1, tup, 1);
+        assertEquals(42, copy.getInt(0));
+        assertEquals(tup.getField(1), copy.getField(1));
+        assertEquals(tup.toString(), copy.toString());
+    }
+
     /**
      * Unit test for Tuple.getTupleDesc()
      */
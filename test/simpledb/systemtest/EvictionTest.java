@@ -40,6 +40,36 @@ public class EvictionTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * A scan over a table larger than the pool reads through a small ring of
+     * frames, so the pages of another table that were cached before the scan
+     * are still cached after it.
+     */
+    @Test public void testLargeScanKeepsWorkingSet() throws IOException, DbException, TransactionAbortedException {
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(2, 1000, null, null);
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, 1024*50, null, null);
+        BufferPool bp = Database.resetBufferPool(BUFFER_PAGES);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < hot.numPages(); i++)
+            bp.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+
+        SeqScan scan = new SeqScan(tid, big.getId(), "");
+        scan.open();
+        int count = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            count++;
+        }
+        scan.close();
+        assertEquals(1024*50, count);
+
+        bp.resetStats();
+        for (int i = 0; i < hot.numPages(); i++)
+            bp.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+        assertEquals(0, bp.getMissCount());
+        bp.transactionComplete(tid);
+    }
+
     public static void insertRow(HeapFile f, Transaction t) throws DbException,
             TransactionAbortedException {
         // Create a row to insert
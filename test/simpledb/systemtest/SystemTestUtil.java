@@ -1,6 +1,7 @@
 package simpledb.systemtest;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -52,6 +53,27 @@ public class SystemTestUtil {
         return Utility.openHeapFile(columns, colPrefix, temp);
     }
 
+    /**
+     * Create a table whose rows i are (i, "s" + i % distinct), with the
+     * strings dictionary-encoded, and add it to the catalog.
+     */
+    public static HeapFile createDictHeapFile(int rows, int distinct) throws IOException {
+        File text = File.createTempFile("dict", ".txt");
+        text.deleteOnExit();
+        FileWriter w = new FileWriter(text);
+        for (int i = 0; i < rows; i++)
+            w.write(i + ",s" + (i % distinct) + "\n");
+        w.close();
+        File dat = File.createTempFile("dict", ".dat");
+        dat.deleteOnExit();
+        DictionaryFile.of(dat).deleteOnExit();
+        Type[] types = { Type.INT_TYPE, Type.DICT_TYPE };
+        HeapFileEncoder.convert(text, dat, BufferPool.getPageSize(), 2, types);
+        HeapFile hf = new HeapFile(dat, new TupleDesc(types));
+        Database.getCatalog().addTable(hf, getUUID());
+        return hf;
+    }
+
     public static File createRandomHeapFileUnopened(int columns, int rows,
             int maxValue, Map<Integer, Integer> columnSpecification,
             ArrayList<ArrayList<Integer>> tuples) throws IOException {
@@ -94,6 +116,15 @@ public class SystemTestUtil {
         return list;
     }
 
+    /** Return the remaining tuples of an open iterator, as by tupleToList */
+    public static List<ArrayList<Integer>> rows(OpIterator it)
+            throws DbException, TransactionAbortedException {
+        List<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+        while (it.hasNext())
+            rows.add(tupleToList(it.next()));
+        return rows;
+    }
+
     public static void matchTuples(DbFile f, List<ArrayList<Integer>> tuples)
             throws DbException, TransactionAbortedException, IOException {
         TransactionId tid = new TransactionId();